@@ -0,0 +1,66 @@
+package io.blushine.rmw;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.blushine.rmw.item.ItemActivity;
+import io.blushine.rmw.util.Histogram;
+import io.blushine.rmw.util.Metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the time from when {@link ItemActivity} is started until it has been drawn. The first
+ * launch is the cold start of the process, the instrumentation has already started the process so
+ * it's measured from when the process was started. The other launches are warm starts, the time
+ * from when the activity is created is reported for all launches. Run with
+ * {@code ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=io.blushine.rmw.StartupBenchmark}
+ * and read the percentiles in the test output or logcat
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+private static final String TAG = StartupBenchmark.class.getSimpleName();
+private static final int LAUNCHES = 20;
+
+@Test
+public void timeToFirstDraw() {
+	Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+	Histogram coldTimeToFirstDraw = Metrics.histogram("Startup.cold_time_to_first_draw_us");
+	Histogram timeToFirstDraw = Metrics.histogram("Startup.time_to_first_draw_us");
+	
+	for (int i = 0; i < LAUNCHES; i++) {
+		Intent intent = new Intent(instrumentation.getTargetContext(), ItemActivity.class);
+		intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+		Activity activity = instrumentation.startActivitySync(intent);
+		instrumentation.waitForIdleSync();
+		activity.finish();
+		instrumentation.waitForIdleSync();
+	}
+	
+	assertEquals(1, coldTimeToFirstDraw.getCount());
+	assertTrue(timeToFirstDraw.getCount() >= LAUNCHES);
+	
+	Bundle results = new Bundle();
+	report(results, "cold_ms", coldTimeToFirstDraw);
+	report(results, "activity_ms", timeToFirstDraw);
+	instrumentation.sendStatus(0, results);
+}
+
+private static void report(Bundle results, String name, Histogram histogram) {
+	String report = "p50=" + histogram.getValueAtPercentile(50) / 1000 +
+			" p90=" + histogram.getValueAtPercentile(90) / 1000 +
+			" max=" + histogram.getMax() / 1000;
+	results.putString(name, report);
+	Log.i(TAG, name + " " + report);
+}
+}
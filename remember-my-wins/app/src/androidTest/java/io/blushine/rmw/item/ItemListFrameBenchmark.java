@@ -0,0 +1,191 @@
+package io.blushine.rmw.item;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Debug;
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.blushine.rmw.util.Histogram;
+import io.blushine.rmw.util.Metrics;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the frame times and the garbage collections while flinging through {@link #ITEM_COUNT}
+ * items in an {@link ItemAdapter}, shown in {@link ItemActivity} in place of its content. The GC
+ * count and the bytes allocated per bound row show the churn of binding rows, they are only
+ * available from Android M. Run with
+ * {@code ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=io.blushine.rmw.item.ItemListFrameBenchmark}
+ * and read the results in the test output or logcat
+ */
+@RunWith(AndroidJUnit4.class)
+public class ItemListFrameBenchmark {
+private static final String TAG = ItemListFrameBenchmark.class.getSimpleName();
+private static final int ITEM_COUNT = 10000;
+private static final int FLINGS = 20;
+/** Pixels per second, faster than flings are allowed to be so every fling is at the max speed */
+private static final int FLING_VELOCITY = 100000;
+private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+/** Frames that take longer than this at 60 Hz are janky */
+private static final long JANK_US = 17 * 1000;
+private static final long IDLE_POLL_MS = 50;
+
+@Test
+public void flingItems() throws Exception {
+	Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+	Intent intent = new Intent(instrumentation.getTargetContext(), ItemActivity.class);
+	intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+	Activity activity = instrumentation.startActivitySync(intent);
+	instrumentation.waitForIdleSync();
+	
+	List<Item> items = createItems();
+	RecyclerView[] lists = new RecyclerView[1];
+	instrumentation.runOnMainSync(() -> {
+		RecyclerView list = new RecyclerView(activity);
+		list.setLayoutManager(new LinearLayoutManager(activity));
+		ItemAdapter adapter = new ItemAdapter();
+		adapter.replaceItems(items, null);
+		list.setAdapter(adapter);
+		activity.setContentView(list);
+		lists[0] = list;
+	});
+	RecyclerView list = lists[0];
+	instrumentation.waitForIdleSync();
+	
+	Histogram frameTimes = Metrics.histogram(TAG + ".frame_us");
+	Histogram bindLatency = Metrics.histogram("ItemAdapter.bind.latency_us");
+	FrameRecorder frameRecorder = new FrameRecorder(frameTimes);
+	long bindCountBefore = bindLatency.getCount();
+	long gcCountBefore = getRuntimeStat("art.gc.gc-count");
+	long bytesAllocatedBefore = getRuntimeStat("art.gc.bytes-allocated");
+	
+	instrumentation.runOnMainSync(frameRecorder::start);
+	for (int i = 0; i < FLINGS; i++) {
+		instrumentation.runOnMainSync(() -> list.fling(0, FLING_VELOCITY));
+		awaitScrollIdle(instrumentation, list);
+	}
+	instrumentation.runOnMainSync(frameRecorder::stop);
+	
+	long bindCount = bindLatency.getCount() - bindCountBefore;
+	long gcCount = getRuntimeStat("art.gc.gc-count") - gcCountBefore;
+	long bytesAllocated = getRuntimeStat("art.gc.bytes-allocated") - bytesAllocatedBefore;
+	activity.finish();
+	instrumentation.waitForIdleSync();
+	
+	assertTrue(frameTimes.getCount() > 0);
+	assertTrue(bindCount > 0);
+	
+	Bundle results = new Bundle();
+	report(results, "frame_ms", "p50=" + frameTimes.getValueAtPercentile(50) / 1000.0 +
+			" p90=" + frameTimes.getValueAtPercentile(90) / 1000.0 +
+			" p99=" + frameTimes.getValueAtPercentile(99) / 1000.0 +
+			" max=" + frameTimes.getMax() / 1000.0);
+	report(results, "janky_frames", frameRecorder.mJankyCount + " of " + frameTimes.getCount());
+	report(results, "bind_us", "count=" + bindCount + " p90=" + bindLatency.getValueAtPercentile(90));
+	if (gcCount >= 0 && bytesAllocated >= 0) {
+		report(results, "gc", "count=" + gcCount + " bytes_per_bind=" + bytesAllocated / bindCount);
+	}
+	instrumentation.sendStatus(0, results);
+}
+
+/**
+ * Wait until the list has stopped scrolling
+ */
+private static void awaitScrollIdle(Instrumentation instrumentation, RecyclerView list) throws InterruptedException {
+	boolean[] idle = {false};
+	while (!idle[0]) {
+		Thread.sleep(IDLE_POLL_MS);
+		instrumentation.runOnMainSync(() -> idle[0] = list.getScrollState() == RecyclerView.SCROLL_STATE_IDLE);
+	}
+}
+
+/**
+ * @return the ART runtime statistic, -1 if not available
+ */
+private static long getRuntimeStat(String name) {
+	if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+		return -1;
+	}
+	String value = Debug.getRuntimeStat(name);
+	return value != null ? Long.parseLong(value) : -1;
+}
+
+private static void report(Bundle results, String name, String report) {
+	results.putString(name, report);
+	Log.i(TAG, name + " " + report);
+}
+
+/**
+ * @return one item a day with the newest first, the text differs in length like real wins
+ */
+private static List<Item> createItems() {
+	List<Item> items = new ArrayList<>(ITEM_COUNT);
+	for (int i = ITEM_COUNT; i > 0; --i) {
+		Item item = new Item();
+		item.setId(String.valueOf(i));
+		item.setCategoryId("1");
+		StringBuilder text = new StringBuilder("Win " + i);
+		for (int word = 0; word < i % 12; ++word) {
+			text.append(" and another thing");
+		}
+		item.setText(text.toString());
+		item.setDate(i * DAY_MILLIS);
+		items.add(item);
+	}
+	return items;
+}
+
+/**
+ * Records the time between frames while started, on the main thread
+ */
+private static class FrameRecorder implements Choreographer.FrameCallback {
+	private final Histogram mFrameTimes;
+	private boolean mStarted = false;
+	private long mLastFrameNanos = 0;
+	int mJankyCount = 0;
+	
+	FrameRecorder(Histogram frameTimes) {
+		mFrameTimes = frameTimes;
+	}
+	
+	void start() {
+		mStarted = true;
+		Choreographer.getInstance().postFrameCallback(this);
+	}
+	
+	void stop() {
+		mStarted = false;
+		Choreographer.getInstance().removeFrameCallback(this);
+	}
+	
+	@Override
+	public void doFrame(long frameTimeNanos) {
+		if (mLastFrameNanos != 0) {
+			long frameUs = (frameTimeNanos - mLastFrameNanos) / 1000;
+			mFrameTimes.record(frameUs);
+			if (frameUs > JANK_US) {
+				++mJankyCount;
+			}
+		}
+		mLastFrameNanos = frameTimeNanos;
+		if (mStarted) {
+			Choreographer.getInstance().postFrameCallback(this);
+		}
+	}
+}
+}
@@ -14,8 +14,8 @@ import io.blushine.utils.EventBus;
  * Adds a new category
  */
 public class CategoryAddFragment extends CategoryDialogFragment {
-private static final String CATEGORY_COUNT_ARG = "category_count";
-private int mNextOrder = 1;
+private static final String NEXT_ORDER_ARG = "next_order";
+private int mNextOrder = CategoryOrder.ORDER_GAP;
 
 @Override
 public void onViewCreatedImpl(View view, @Nullable Bundle savedInstanceState) {
@@ -25,24 +25,27 @@ public void onViewCreatedImpl(View view, @Nullable Bundle savedInstanceState) {
 	setBackMessage(R.string.category_add_discard);
 }
 
-public void setArguments(int categoryCount) {
+/**
+ * @param nextOrder order of the new category, see {@link CategoryOrder#nextOrder(Category)}
+ */
+public void setArguments(int nextOrder) {
 	Bundle bundle = new Bundle(1);
-	bundle.putInt(CATEGORY_COUNT_ARG, categoryCount);
+	bundle.putInt(NEXT_ORDER_ARG, nextOrder);
 	setArguments(bundle);
 }
 
 @Override
 protected void onDeclareArguments() {
 	super.onDeclareArguments();
-	declareArgument(CATEGORY_COUNT_ARG, ArgumentRequired.REQUIRED);
+	declareArgument(NEXT_ORDER_ARG, ArgumentRequired.REQUIRED);
 }
 
 @Override
 protected void onArgumentsSet() {
 	super.onArgumentsSet();
 	
-	mNextOrder = ((int) getArgument(CATEGORY_COUNT_ARG)) + 1;
-	
+	mNextOrder = getArgument(NEXT_ORDER_ARG);
+
 }
 
 @Override
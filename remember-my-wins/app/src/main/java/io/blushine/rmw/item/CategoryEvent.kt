@@ -6,8 +6,9 @@ import io.blushine.android.common.ObjectEvent
  * Category event
  * @param movedFrom set if this is a move event
  * @param movedTo set if this is a move event
+ * @param isRemoteChange true if the categories were changed outside of this device
  */
-internal class CategoryEvent @JvmOverloads constructor(action: Actions, items: List<Category> = listOf(), val movedFrom: Int = -1, val movedTo: Int = -1) : ObjectEvent<Category>(action, items) {
+internal class CategoryEvent @JvmOverloads constructor(action: Actions, items: List<Category> = listOf(), val movedFrom: Int = -1, val movedTo: Int = -1, val isRemoteChange: Boolean = false) : ObjectEvent<Category>(action, items) {
 	constructor(action: ObjectEvent.Actions, category: Category) : this(action, listOf(category))
 
 	fun isMoveEvent(): Boolean {
@@ -0,0 +1,101 @@
+package io.blushine.rmw.item;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps the category ids of an imported backup to the ids of the stored categories. An imported
+ * category uses the stored category with the same name (ignoring case), categories that don't
+ * exist are added after the stored ones. The stored categories are rebalanced if there's no room
+ * after them, see {@link CategoryOrder}.
+ */
+public class CategoryImportMap {
+/** Stored category ids by lower case name */
+private final Map<String, String> mExistingIds = new HashMap<>();
+private final Map<String, String> mIdMap = new HashMap<>();
+/** Stored and added categories sorted by order */
+private final List<Category> mCategories = new ArrayList<>();
+
+/**
+ * @param existingCategories all stored categories
+ */
+public CategoryImportMap(@NotNull Iterable<Category> existingCategories) {
+	for (Category category : existingCategories) {
+		mExistingIds.put(toNameKey(category), category.getId());
+		mCategories.add(category);
+	}
+	Collections.sort(mCategories);
+}
+
+/**
+ * Map an imported category to the stored category with the same name, or add it if there is none
+ * @param category the imported category. Gets the order after all stored categories if it's added
+ * @param inserter stores the category if it doesn't exist yet
+ * @param updater stores the new order of categories that were rebalanced to make room for it
+ */
+public void map(@NotNull Category category, @NotNull Inserter inserter, @NotNull Updater updater) {
+	String nameKey = toNameKey(category);
+	String existingId = mExistingIds.get(nameKey);
+	
+	// Found category with same name -> Use its id
+	if (existingId != null) {
+		mIdMap.put(category.getId(), existingId);
+	}
+	// Didn't find category with same name -> Insert category after the existing ones
+	else {
+		String importedId = category.getId();
+		for (Category rebalancedCategory : CategoryOrder.makeRoomAfter(mCategories)) {
+			updater.update(rebalancedCategory);
+		}
+		Category lastCategory = !mCategories.isEmpty() ? mCategories.get(mCategories.size() - 1) : null;
+		category.setOrder(CategoryOrder.nextOrder(lastCategory));
+		inserter.insert(category);
+		mCategories.add(category);
+		mIdMap.put(importedId, category.getId());
+		mExistingIds.put(nameKey, category.getId());
+	}
+}
+
+/**
+ * Get the stored id of an imported category
+ * @param importedId id of the category in the backup
+ * @return id of the stored category, null if the category wasn't imported
+ */
+@Nullable
+public String getId(@NotNull String importedId) {
+	return mIdMap.get(importedId);
+}
+
+private static String toNameKey(@NotNull Category category) {
+	return category.getName().toLowerCase(Locale.ROOT);
+}
+
+/**
+ * Stores a new category
+ */
+public interface Inserter {
+	/**
+	 * Store the category and set its id
+	 * @param category the category to store
+	 */
+	void insert(@NotNull Category category);
+}
+
+/**
+ * Stores the new order of a category
+ */
+public interface Updater {
+	/**
+	 * Store the category that got a new order
+	 * @param category the category to update
+	 */
+	void update(@NotNull Category category);
+}
+}
@@ -0,0 +1,148 @@
+package io.blushine.rmw.item;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sparse ordering of categories. Categories are ordered with gaps between them so a category can
+ * be added or moved by only changing its own order, it gets an order between its new neighbors.
+ * When there's no gap left, or no room after the last category before the order would overflow,
+ * all categories are spread out again (rebalanced).
+ */
+public class CategoryOrder {
+/** Gap between categories when they are added last or rebalanced */
+public static final int ORDER_GAP = 1 << 16;
+/** Highest order of the last category that still has room for a category after it */
+public static final int ORDER_MAX = Integer.MAX_VALUE - ORDER_GAP;
+
+private CategoryOrder() {}
+
+/**
+ * Get the order for a category that is added after all other categories. Call
+ * {@link #makeRoomAfter(List)} first so the order doesn't overflow
+ * @param lastCategory the current last category, null if there are no categories
+ * @return order for the new category
+ * @throws IllegalStateException if there's no room after the last category
+ */
+public static int nextOrder(@Nullable Category lastCategory) {
+	if (!hasRoomAfter(lastCategory)) {
+		throw new IllegalStateException("No room after the last category, rebalance first");
+	}
+	
+	if (lastCategory != null) {
+		return lastCategory.getOrder() + ORDER_GAP;
+	} else {
+		return ORDER_GAP;
+	}
+}
+
+/**
+ * @param lastCategory the current last category, null if there are no categories
+ * @return true if a category can be added after the last category without rebalancing
+ */
+public static boolean hasRoomAfter(@Nullable Category lastCategory) {
+	return lastCategory == null || lastCategory.getOrder() <= ORDER_MAX;
+}
+
+/**
+ * Make room for a category after the last category. All categories are rebalanced if the order
+ * of the next category would overflow
+ * @param categories all categories in their correct order
+ * @return categories that got a new order, empty if there already was room
+ */
+@NotNull
+public static List<Category> makeRoomAfter(@NotNull List<Category> categories) {
+	Category lastCategory = !categories.isEmpty() ? categories.get(categories.size() - 1) : null;
+	if (hasRoomAfter(lastCategory)) {
+		return Collections.emptyList();
+	} else {
+		return rebalance(categories);
+	}
+}
+
+/**
+ * Get an order between two categories
+ * @param before the category before, null if placing first
+ * @param after the category after, null if placing last
+ * @return order between the categories, null if there's no gap between them or no room after the
+ * last category
+ */
+@Nullable
+public static Integer orderBetween(@Nullable Category before, @Nullable Category after) {
+	if (after == null) {
+		return hasRoomAfter(before) ? nextOrder(before) : null;
+	}
+	
+	int beforeOrder = before != null ? before.getOrder() : 0;
+	int afterOrder = after.getOrder();
+	int order = beforeOrder + (afterOrder - beforeOrder) / 2;
+	if (order > beforeOrder && order < afterOrder) {
+		return order;
+	} else {
+		return null;
+	}
+}
+
+/**
+ * Give a moved category an order between its new neighbors. All categories are rebalanced if
+ * there's no gap left between the neighbors, or no room when it's moved last
+ * @param categories all categories, the moved category is already at its new position
+ * @param movedPosition the new position of the moved category
+ * @return categories that got a new order
+ */
+@NotNull
+public static List<Category> move(@NotNull List<Category> categories, int movedPosition) {
+	Category movedCategory = categories.get(movedPosition);
+	Category before = movedPosition > 0 ? categories.get(movedPosition - 1) : null;
+	Category after = movedPosition < categories.size() - 1 ? categories.get(movedPosition + 1) : null;
+	
+	Integer newOrder = orderBetween(before, after);
+	if (newOrder != null) {
+		movedCategory.setOrder(newOrder);
+		return Collections.singletonList(movedCategory);
+	} else {
+		return rebalance(categories);
+	}
+}
+
+/**
+ * Spread out the order of all categories with {@link #ORDER_GAP} between them
+ * @param categories all categories in their correct order
+ * @return categories that got a new order
+ */
+@NotNull
+public static List<Category> rebalance(@NotNull List<Category> categories) {
+	List<Category> changedCategories = new ArrayList<>();
+	for (int i = 0; i < categories.size(); ++i) {
+		Category category = categories.get(i);
+		int order = (i + 1) * ORDER_GAP;
+		if (category.getOrder() != order) {
+			category.setOrder(order);
+			changedCategories.add(category);
+		}
+	}
+	return changedCategories;
+}
+
+/**
+ * Check if the categories use the old dense order (1, 2, 3...) that needs to be migrated with
+ * {@link #rebalance(List)}
+ * @param categories all categories sorted by order
+ * @return true if the categories use the old dense order
+ */
+public static boolean isDenseOrder(@NotNull List<Category> categories) {
+	if (categories.isEmpty()) {
+		return false;
+	}
+	for (int i = 0; i < categories.size(); ++i) {
+		if (categories.get(i).getOrder() != i + 1) {
+			return false;
+		}
+	}
+	return true;
+}
+}
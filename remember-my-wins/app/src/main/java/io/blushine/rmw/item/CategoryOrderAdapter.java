@@ -6,81 +6,66 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import io.blushine.android.ui.list.AdvancedAdapter;
 import io.blushine.rmw.R;
+import io.blushine.rmw.util.MeasuredOperation;
+import io.blushine.rmw.util.Metrics;
+import io.blushine.rmw.util.SortedLists;
 
 /**
  * Adapter for viewing and reordering categories
  */
 class CategoryOrderAdapter extends AdvancedAdapter<Category, CategoryOrderAdapter.ViewHolder> {
+private static final MeasuredOperation BIND = Metrics.operation("CategoryOrderAdapter.bind");
+/** Categories that got a new order since {@link #takeChangedCategories()} was last called */
+private final Set<Category> mChangedCategories = new LinkedHashSet<>();
+
 @Override
 public void add(List<Category> newCategories) {
-	List<Category> existingCategories = getItems();
-	
 	for (Category category : newCategories) {
-		boolean added = false;
-		
-		// TODO could probably add item directly into the specific place
-		for (int i = 0; i < existingCategories.size(); ++i) {
-			Category currentCategory = existingCategories.get(i);
-			
-			boolean isNewBeforeCurrentCategory = category.compareTo(currentCategory) < 1;
-			if (isNewBeforeCurrentCategory) {
-				add(i, category);
-				added = true;
-				break;
-			}
-		}
-		
-		// Add to the end of the list
-		if (!added) {
-			add(getItemCount(), category);
-		}
+		add(SortedLists.insertIndex(getItems(), category, Category::compareTo), category);
 	}
-	
-	updateOrder();
-}
-
-@Override
-public void remove(int itemIndex) {
-	super.remove(itemIndex);
-	updateOrder();
 }
 
+/**
+ * Move a category. Only the moved category gets a new order, unless there's no gap left at the
+ * new position. Then all categories get a new order
+ */
 @Override
 public void move(int fromPosition, int toPosition) {
-	Category categoryToMove = getItem(fromPosition);
-	
-	// Update category order
-	int adjustOrderDiff = toPosition - fromPosition;
-	int newOrder = categoryToMove.getOrder() + adjustOrderDiff;
-	categoryToMove.setOrder(newOrder);
-	
-	
-	// Increase or decrease the category order?
-	int increment;
-	int beginIndex;
-	int endIndex;
-	if (fromPosition < toPosition) {
-		increment = -1;
-		beginIndex = fromPosition + 1;
-		endIndex = toPosition;
-	} else {
-		increment = 1;
-		beginIndex = toPosition;
-		endIndex = fromPosition - 1;
-	}
-	
-	// Adjust order for the rest of the categories
-	for (int i = beginIndex; i <= endIndex; ++i) {
-		Category category = getItem(i);
-		newOrder = category.getOrder() + increment;
-		category.setOrder(newOrder);
-	}
-	
 	super.move(fromPosition, toPosition);
+	
+	mChangedCategories.addAll(CategoryOrder.move(getItems(), toPosition));
+}
+
+/**
+ * Get and clear the categories that got a new order when they were moved
+ * @return categories with a new order that need to be saved
+ */
+List<Category> takeChangedCategories() {
+	List<Category> changedCategories = new ArrayList<>(mChangedCategories);
+	mChangedCategories.clear();
+	return changedCategories;
+}
+
+/**
+ * Make room for a new category after all existing categories. Call before {@link #getNextOrder()}
+ * @return categories that got a new order and need to be saved, usually none
+ */
+List<Category> makeRoomForNextCategory() {
+	return CategoryOrder.makeRoomAfter(getItems());
+}
+
+/**
+ * @return order for a new category added after all existing categories
+ */
+int getNextOrder() {
+	return CategoryOrder.nextOrder(getItemCount() > 0 ? getItem(getItemCount() - 1) : null);
 }
 
 @Override
@@ -91,15 +76,10 @@ protected ViewHolder onCreateView(ViewGroup parent, int viewType) {
 
 @Override
 protected void onBindView(ViewHolder view, int position) {
+	long startedAt = BIND.begin();
 	final Category category = getItem(position);
 	view.mName.setText(category.getName());
-}
-
-private void updateOrder() {
-	for (int i = 0; i < getItemCount(); ++i) {
-		Category category = getItem(i);
-		category.setOrder(i + 1);
-	}
+	BIND.end(startedAt);
 }
 
 static class ViewHolder extends RecyclerView.ViewHolder {
@@ -95,8 +95,14 @@ public void onViewCreatedImpl(View view, @Nullable Bundle savedInstanceState) {
 	mAddButton = mView.findViewById(R.id.add_button);
 	mAddButton.setVisibility(View.GONE);
 	mAddButton.setOnClickListener(v -> {
+		// Make room after the last category first, rebalanced categories need to be saved
+		List<Category> rebalancedCategories = mCategoryAdapter.makeRoomForNextCategory();
+		if (!rebalancedCategories.isEmpty()) {
+			mEventBus.post(new CategoryEvent(ObjectEvent.Actions.EDIT, rebalancedCategories));
+		}
+		
 		CategoryAddFragment categoryAddFragment = new CategoryAddFragment();
-		categoryAddFragment.setArguments(mCategoryAdapter.getItemCount());
+		categoryAddFragment.setArguments(mCategoryAdapter.getNextOrder());
 		categoryAddFragment.show();
 	});
 	
@@ -124,23 +130,10 @@ public void onClick(Category item) {
 
 @Override
 public void onMoved(Category item, int fromPosition, int toPosition) {
-	List<Category> categoriesToUpdate = new ArrayList<>(Math.abs(toPosition - fromPosition + 1));
-	
-	// Increase or decrease the category order?
-	int beginIndex;
-	int endIndex;
-	if (fromPosition < toPosition) {
-		beginIndex = fromPosition;
-		endIndex = toPosition;
-	} else {
-		beginIndex = toPosition;
-		endIndex = fromPosition;
-	}
-	
-	// Adjust order for the rest of the categories
-	for (int i = beginIndex; i <= endIndex; ++i) {
-		Category category = mCategoryAdapter.getItem(i);
-		categoriesToUpdate.add(category);
+	// Usually only the moved category, all categories if they had to be rebalanced
+	List<Category> categoriesToUpdate = mCategoryAdapter.takeChangedCategories();
+	if (categoriesToUpdate.isEmpty()) {
+		return;
 	}
 	
 	mEventBus.post(new CategoryEvent(ObjectEvent.Actions.EDIT, categoriesToUpdate, fromPosition, toPosition));
@@ -150,14 +143,11 @@ public void onMoved(Category item, int fromPosition, int toPosition) {
 @Subscribe
 public void onCategory(CategoryEvent event) {
 	switch (event.getAction()) {
-	case ADD:
+	// Added categories get their ids when they have been stored
+	case ADDED:
 		mCategoryAdapter.add(event.getObjects());
 		break;
 	
-	case ADD_FAILED:
-		mCategoryAdapter.remove(event.getObjects());
-		break;
-	
 	case EDIT:
 		if (!event.isMoveEvent() && event.hasObjects()) {
 			mCategoryAdapter.notifyItemChanged(event.getFirstObject());
@@ -167,6 +157,8 @@ public void onCategory(CategoryEvent event) {
 	case EDIT_FAILED:
 		if (event.isMoveEvent()) {
 			mCategoryAdapter.move(event.getMovedTo(), event.getMovedFrom());
+			// Moved back, no need to save the order
+			mCategoryAdapter.takeChangedCategories();
 		} else if (event.hasObjects()) {
 			mCategoryAdapter.notifyItemChanged(event.getFirstObject());
 		}
@@ -1,6 +1,7 @@
 package io.blushine.rmw.item;
 
 import android.os.Bundle;
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -10,26 +11,37 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
-import com.squareup.otto.Subscribe;
-
 import java.util.List;
 
 import io.blushine.android.ui.list.ClickListener;
 import io.blushine.rmw.R;
-import io.blushine.utils.EventBus;
+import io.blushine.rmw.util.Histogram;
+import io.blushine.rmw.util.Metrics;
+import io.blushine.rmw.util.SortedLists;
 
 /**
  * Page fragment for showing all the items in a category
  */
-public class CategoryPageFragment extends io.blushine.android.Fragment implements ClickListener<Item> {
+public class CategoryPageFragment extends io.blushine.android.Fragment implements ClickListener<Item>, ItemEventRouter.Listener {
 private static final String CATEGORY_ARG = "category";
-private static final EventBus mEventBus = EventBus.getInstance();
 private static final String TAG = CategoryPageFragment.class.getSimpleName();
 private static final ItemRepo mItemRepo = ItemRepo.getInstance();
+private static final ItemEventRouter mItemEventRouter = ItemEventRouter.getInstance();
+/** Time from when the page is shown until it shows its first item, 0 if it already had items */
+private static final Histogram TIME_TO_FIRST_ITEM = Metrics.histogram(TAG + ".time_to_first_item_us");
+/** Number of items in a page, also used when prefetching */
+static final int PAGE_SIZE = 50;
+/** Fetch the next page when there are fewer items than this left below the last visible item */
+private static final int PAGE_PREFETCH_DISTANCE = 15;
 private Category mCategory = new Category();
 private ItemAdapter mItemAdapter = null;
 private RecyclerView mItemListView = null;
+private LinearLayoutManager mLayoutManager = null;
+private boolean mHasMorePages = false;
+private boolean mFetchingPage = false;
 private FloatingActionButton mAddButton;
+/** When the page was shown without items, -1 when not waiting for the first item */
+private long mShownAt = -1;
 
 /**
  * Set the argument used for an instance
@@ -64,13 +76,35 @@ public void onViewCreatedImpl(View view, @Nullable Bundle savedInstanceState) {
 	mItemAdapter.addEditFunctionality(this);
 	mItemListView = mView.findViewById(R.id.item_list);
 	mItemListView.setHasFixedSize(true);
-	RecyclerView.LayoutManager layoutManager = new LinearLayoutManager(getActivity());
-	mItemListView.setLayoutManager(layoutManager);
+	mLayoutManager = new LinearLayoutManager(getActivity());
+	mItemListView.setLayoutManager(mLayoutManager);
 	mItemListView.setAdapter(mItemAdapter);
+	mItemListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+		@Override
+		public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+			if (dy > 0) {
+				populateNextPage();
+			}
+		}
+	});
 	mAddButton = mView.getRootView().findViewById(R.id.add_button);
+	mItemEventRouter.register(getCategoryId(), this);
+	// Only category pages handle changed items
+	if (mCategory != null) {
+		mItemRepo.listenToItems(getCategoryId());
+	}
 	populateItems();
 }
 
+@Override
+public void onDestroyView() {
+	super.onDestroyView();
+	mItemEventRouter.unregister(getCategoryId(), this);
+	if (mCategory != null) {
+		mItemRepo.stopListeningToItems(getCategoryId());
+	}
+}
+
 @Override
 protected void onArgumentsSet() {
 	super.onArgumentsSet();
@@ -88,19 +122,49 @@ public View onCreateViewImpl(LayoutInflater inflater, ViewGroup container, Bundl
  */
 private void populateItems() {
 	if (mItemAdapter.getItemCount() == 0) {
-		List<Item> items;
-		if (mCategory == null) {
-			mItemRepo.getItems();
-		} else {
-			mItemRepo.getItems(mCategory.getId());
-		}
+		mFetchingPage = true;
+		mItemRepo.getItems(getCategoryId(), null, PAGE_SIZE);
 	}
 }
 
-@Override
-public void onCreate(Bundle savedInstanceState) {
-	super.onCreate(savedInstanceState);
-	mEventBus.register(this);
+/**
+ * Fetch the next page of items if the list is scrolled close to the last fetched item
+ */
+private void populateNextPage() {
+	if (!mHasMorePages || mFetchingPage) {
+		return;
+	}
+	
+	int itemCount = mItemAdapter.getItemCount();
+	int lastVisiblePosition = mLayoutManager.findLastVisibleItemPosition();
+	if (itemCount > 0 && lastVisiblePosition >= itemCount - PAGE_PREFETCH_DISTANCE) {
+		mFetchingPage = true;
+		Item lastItem = mItemAdapter.getItem(itemCount - 1);
+		mItemRepo.getItems(getCategoryId(), lastItem, PAGE_SIZE);
+	}
+}
+
+/**
+ * @return id of the category to display, {@link ItemEventKt#GET_ALL_ITEMS} when displaying all categories
+ */
+private String getCategoryId() {
+	return mCategory != null ? mCategory.getId() : ItemEventKt.GET_ALL_ITEMS;
+}
+
+/**
+ * Skip items that sort after the last fetched item. These will instead be fetched with a later
+ * page. Compared by date and id like the pages, so items on the same date as the last item aren't
+ * fetched twice
+ * @param items the items to filter
+ * @return items that belong to the already fetched pages
+ */
+private List<Item> filterFetchedPages(List<Item> items) {
+	if (!mHasMorePages || mItemAdapter.getItemCount() == 0) {
+		return items;
+	}
+	
+	Item lastItem = mItemAdapter.getItem(mItemAdapter.getItemCount() - 1);
+	return SortedLists.notAfter(items, lastItem, ItemKt.NEWEST_FIRST);
 }
 
 @Override
@@ -109,6 +173,32 @@ public void onResume() {
 	super.onResume();
 	
 	mItemListView.invalidate();
+	
+	// Only the selected page is resumed
+	if (mItemAdapter.getItemCount() > 0) {
+		TIME_TO_FIRST_ITEM.record(0);
+	} else {
+		mShownAt = System.nanoTime();
+	}
+}
+
+@Override
+public void onPause() {
+	super.onPause();
+	mShownAt = -1;
+}
+
+/**
+ * Record the time to the first item if the page is shown and waiting for it. Empty categories
+ * stop waiting when they get their first page
+ */
+private void recordTimeToFirstItem() {
+	if (mShownAt != -1) {
+		if (mItemAdapter.getItemCount() > 0) {
+			TIME_TO_FIRST_ITEM.record((System.nanoTime() - mShownAt) / 1000);
+		}
+		mShownAt = -1;
+	}
 }
 
 @Override
@@ -121,7 +211,6 @@ public void onStop() {
 public void onDestroy() {
 	Log.d(TAG, "onDestroy() — " + getCategoryName());
 	super.onDestroy();
-	mEventBus.unregister(this);
 }
 
 private String getCategoryName() {
@@ -137,41 +226,56 @@ public void onClick(Item item) {
 	}
 }
 
-@SuppressWarnings("unused")
-@Subscribe
-public void onItem(ItemEvent event) {
-	// Only handle events for our category
-	if (mCategory != null && event.hasObjects() && event.getFirstObject().getCategoryId().equals(mCategory.getId())) {
-		switch (event.getAction()) {
-		case ADDED:
-			if (mItemAdapter.getItemCount() == 0) {
-				mItemAdapter.setItems(event.getObjects());
-			} else {
-				mItemAdapter.add(event.getObjects());
-			}
-			break;
-		
-		case EDITED:
-			// Remove and add - Updates the location in the adapter if date was changed
-			mItemAdapter.remove(event.getObjects());
-			mItemAdapter.add(event.getObjects());
-			break;
-		
-		case REMOVED:
-			// Removed all
-			if (mItemAdapter.getItemCount() == event.getObjects().size()) {
-				mItemAdapter.clear();
-			}
-			// Removed one or more
-			else {
-				mItemAdapter.remove(event.getObjects());
-			}
-			break;
-		
-		case GET_RESPONSE:
-			mItemAdapter.setItems(event.getObjects());
-			break;
+@Override
+public void onItemEvent(ItemEvent event) {
+	List<Item> items;
+	switch (event.getAction()) {
+	case GET_RESPONSE:
+		// Wait for the live items before fetching the next page
+		boolean waitForLiveItems = event.isSnapshot();
+		if (event.isNextPage()) {
+			mItemAdapter.addToEnd(event.getObjects());
+			mFetchingPage = waitForLiveItems;
+		} else {
+			// The next page is fetched after the last item, wait until the items have been replaced
+			mFetchingPage = true;
+			mItemAdapter.replaceItems(event.getObjects(), () -> mFetchingPage = waitForLiveItems);
 		}
+		mItemAdapter.setTotalCount(event.getTotalCount());
+		mHasMorePages = event.getHasMorePages();
+		recordTimeToFirstItem();
+		break;
+	
+	case GET_FAILED:
+		mFetchingPage = false;
+		break;
+	
+	case ADDED:
+		items = filterFetchedPages(event.getObjects());
+		mItemAdapter.add(items);
+		changeTotalCount(event.getObjects().size());
+		break;
+	
+	case EDITED:
+		// Updates the location in the adapter if date was changed
+		mItemAdapter.update(event.getObjects(), !mHasMorePages);
+		break;
+	
+	case REMOVED:
+		mItemAdapter.removeItems(event.getObjects());
+		changeTotalCount(-event.getObjects().size());
+		break;
 	}
 }
+
+/**
+ * Change the number of items in the category, also counts items in pages that haven't been fetched
+ * @param change number of added items, negative for removed items
+ */
+private void changeTotalCount(int change) {
+	int totalCount = mItemAdapter.getTotalCount();
+	if (totalCount >= 0) {
+		mItemAdapter.setTotalCount(Math.max(totalCount + change, 0));
+	}
 }
+}
\ No newline at end of file
@@ -1,29 +1,45 @@
 package io.blushine.rmw.item;
 
 
-import android.os.Parcelable;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
-import androidx.fragment.app.FragmentManager;
-import androidx.fragment.app.FragmentPagerAdapter;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.viewpager2.adapter.FragmentStateAdapter;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+
+import io.blushine.rmw.util.SortedLists;
 
 /**
- * Adapter for switching between item lists
+ * Adapter for switching between item lists. Pages have stable ids so only the pages close to the
+ * current page are kept, the others are removed and only their state is saved. Changes are
+ * dispatched as inserted, removed, moved or changed pages so tabs and pages that didn't change are
+ * kept
  */
-class CategoryPagerAdapter extends FragmentPagerAdapter {
-private List<Category> mCategories = new ArrayList<>();
+class CategoryPagerAdapter extends FragmentStateAdapter {
+private final List<Category> mCategories = new ArrayList<>();
+/** Position of each category by category id, rebuilt when a lookup finds it out of date */
+private final Map<String, Integer> mPositions = new HashMap<>();
+/** Page ids of categories that are being added and don't have an id yet */
+private final Map<Category, Long> mPendingIds = new IdentityHashMap<>();
+private long mNextPendingId = -1;
 
-CategoryPagerAdapter(@NonNull FragmentManager fragmentManager) {
-	super(fragmentManager);
+/**
+ * @param fragment the fragment that contains the pages
+ */
+CategoryPagerAdapter(@NonNull Fragment fragment) {
+	super(fragment);
 }
 
+@NonNull
 @Override
-public Fragment getItem(int position) {
+public Fragment createFragment(int position) {
 	Category category = mCategories.get(position);
 	CategoryPageFragment fragment = new CategoryPageFragment();
 	fragment.setArguments(category);
@@ -31,17 +47,43 @@ public Fragment getItem(int position) {
 }
 
 @Override
-public void restoreState(Parcelable state, ClassLoader loader) {
-	super.restoreState(state, loader);
+public int getItemCount() {
+	return mCategories.size();
 }
 
+/**
+ * Categories are stored in SQLite in both storage locations so the id is the row id. Categories
+ * that are being added get a negative id until they have been added
+ */
 @Override
-public int getCount() {
-	return mCategories.size();
+public long getItemId(int position) {
+	Category category = mCategories.get(position);
+	if (!category.getId().isEmpty()) {
+		return Long.parseLong(category.getId());
+	}
+	
+	Long pendingId = mPendingIds.get(category);
+	if (pendingId == null) {
+		pendingId = mNextPendingId--;
+		mPendingIds.put(category, pendingId);
+	}
+	return pendingId;
 }
 
 @Override
-public CharSequence getPageTitle(int position) {
+public boolean containsItem(long itemId) {
+	if (itemId < 0) {
+		return mPendingIds.containsValue(itemId);
+	} else {
+		return getPosition(Long.toString(itemId)) != -1;
+	}
+}
+
+/**
+ * @param position the position of the page
+ * @return title of the page, the name of the category
+ */
+CharSequence getPageTitle(int position) {
 	Category category = mCategories.get(position);
 	return category.getName();
 }
@@ -51,35 +93,40 @@ public CharSequence getPageTitle(int position) {
  * @param newCategory the category to add
  */
 void addItem(Category newCategory) {
-	boolean added = false;
-	
-	for (int i = 0; i < mCategories.size(); ++i) {
-		Category currentCategory = mCategories.get(i);
-		
-		boolean isNewNewerThanCurrentItem = currentCategory.compareTo(newCategory) > 0;
-		if (isNewNewerThanCurrentItem) {
-			mCategories.add(i, newCategory);
-			added = true;
-			break;
-		}
-	}
-	
-	// Add to the end of the list
-	if (!added) {
-		mCategories.add(newCategory);
-	}
-	
-	notifyDataSetChanged();
+	int index = SortedLists.insertIndex(mCategories, newCategory, Category::compareTo);
+	mCategories.add(index, newCategory);
+	mPositions.clear();
+	notifyItemInserted(index);
 }
 
 /**
- * Set the categories
+ * Set the categories. Only pages that changed are updated
  * @param categories list of all categories
  */
 void setItems(List<Category> categories) {
+	List<Category> oldCategories = new ArrayList<>(mCategories);
+	List<String> oldNames = getNames();
 	mCategories.clear();
 	mCategories.addAll(categories);
-	notifyDataSetChanged();
+	mPendingIds.clear();
+	dispatchChanges(oldCategories, oldNames);
+}
+
+/**
+ * Update categories and sort them again
+ * @param editedCategories the edited categories, categories that aren't in the adapter are skipped
+ */
+void editItems(List<Category> editedCategories) {
+	List<Category> oldCategories = new ArrayList<>(mCategories);
+	List<String> oldNames = getNames();
+	for (Category editedCategory : editedCategories) {
+		Category category = findCategory(editedCategory);
+		if (category != null) {
+			category.set(editedCategory);
+		}
+	}
+	Collections.sort(mCategories);
+	dispatchChanges(oldCategories, oldNames);
 }
 
 /**
@@ -87,16 +134,38 @@ void setItems(List<Category> categories) {
  * @param category the category to remove
  */
 void removeItem(Category category) {
-	mCategories.remove(category);
-	notifyDataSetChanged();
+	int index = getPosition(category);
+	if (index != -1) {
+		Category removedCategory = mCategories.remove(index);
+		mPendingIds.remove(removedCategory);
+		mPositions.clear();
+		notifyItemRemoved(index);
+	}
+}
+
+/**
+ * Make room for a new category after all existing categories. Call before {@link #getNextOrder()}
+ * @return categories that got a new order and need to be saved, usually none
+ */
+List<Category> makeRoomForNextCategory() {
+	return CategoryOrder.makeRoomAfter(mCategories);
+}
+
+/**
+ * @return order for a new category added after all existing categories
+ */
+int getNextOrder() {
+	return CategoryOrder.nextOrder(!mCategories.isEmpty() ? mCategories.get(mCategories.size() - 1) : null);
 }
 
 /**
  * Sort categories. Call this after you've changed the {@link Category#order} of several items
  */
 void sortItems() {
+	List<Category> oldCategories = new ArrayList<>(mCategories);
+	List<String> oldNames = getNames();
 	Collections.sort(mCategories);
-	notifyDataSetChanged();
+	dispatchChanges(oldCategories, oldNames);
 }
 
 /**
@@ -120,19 +189,90 @@ Category getCategory(int position) {
  */
 @Nullable
 Category findCategory(Category searchCategory) {
+	int position = getPosition(searchCategory);
+	return position != -1 ? mCategories.get(position) : null;
+}
+
+/**
+ * Get the position of a category
+ * @param searchCategory search for a category that matches this category (with {@link Object#equals(Object)})
+ * @return position of the category, -1 if there are no matches
+ */
+int getPosition(Category searchCategory) {
+	return getPosition(searchCategory.getId());
+}
+
+/**
+ * Get the position of a category from the index. Categories get their id after they have been
+ * added to the adapter, so the index is rebuilt if the category isn't found or has moved
+ * @param categoryId id of the category
+ * @return position of the category, -1 if there are no matches
+ */
+private int getPosition(String categoryId) {
+	Integer position = mPositions.get(categoryId);
+	if (position == null || !mCategories.get(position).getId().equals(categoryId)) {
+		updatePositions();
+		position = mPositions.get(categoryId);
+	}
+	return position != null ? position : -1;
+}
+
+private void updatePositions() {
+	mPositions.clear();
+	for (int i = 0; i < mCategories.size(); i++) {
+		mPositions.put(mCategories.get(i).getId(), i);
+	}
+}
+
+private List<String> getNames() {
+	List<String> names = new ArrayList<>(mCategories.size());
 	for (Category category : mCategories) {
-		if (category.equals(searchCategory)) {
-			return category;
-		}
+		names.add(category.getName());
 	}
-	return null;
+	return names;
+}
+
+/**
+ * Notify which pages have been inserted, removed, moved or renamed since the categories were
+ * changed
+ * @param oldCategories the categories before they were changed
+ * @param oldNames the names of the categories before they were changed
+ */
+private void dispatchChanges(List<Category> oldCategories, List<String> oldNames) {
+	mPositions.clear();
+	DiffUtil.calculateDiff(new DiffUtil.Callback() {
+		@Override
+		public int getOldListSize() {
+			return oldCategories.size();
+		}
+		
+		@Override
+		public int getNewListSize() {
+			return mCategories.size();
+		}
+		
+		@Override
+		public boolean areItemsTheSame(int oldPosition, int newPosition) {
+			Category oldCategory = oldCategories.get(oldPosition);
+			Category newCategory = mCategories.get(newPosition);
+			return oldCategory == newCategory || (!newCategory.getId().isEmpty() && oldCategory.equals(newCategory));
+		}
+		
+		@Override
+		public boolean areContentsTheSame(int oldPosition, int newPosition) {
+			return oldNames.get(oldPosition).equals(mCategories.get(newPosition).getName());
+		}
+	}).dispatchUpdatesTo(this);
 }
 
 /**
  * Remove all categories
  */
 void clear() {
+	int count = mCategories.size();
 	mCategories.clear();
-	notifyDataSetChanged();
+	mPendingIds.clear();
+	mPositions.clear();
+	notifyItemRangeRemoved(0, count);
 }
 }
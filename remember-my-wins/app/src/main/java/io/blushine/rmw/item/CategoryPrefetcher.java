@@ -0,0 +1,97 @@
+package io.blushine.rmw.item;
+
+import androidx.annotation.NonNull;
+import androidx.viewpager2.widget.ViewPager2;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Prefetches the items of the categories next to the pages that the pager keeps, so their pages
+ * show their items at once when they're created. Pages within the offscreen page limit fetch their
+ * own items, the categories just outside of it are prefetched at low priority. Prefetches are
+ * scheduled when the pager stops on a page, and prefetches of categories that are no longer next
+ * to the current page are cancelled
+ */
+class CategoryPrefetcher extends ViewPager2.OnPageChangeCallback {
+private static final ItemRepo mItemRepo = ItemRepo.getInstance();
+private final CategoryPagerAdapter mAdapter;
+/** Distance from the current page to the prefetched categories */
+private final int mDistance;
+/** Categories that are being prefetched */
+private final Set<String> mCategoryIds = new HashSet<>();
+private int mPosition = 0;
+private int mScrollState = ViewPager2.SCROLL_STATE_IDLE;
+
+/**
+ * @param adapter the adapter of the pages
+ * @param offscreenPageLimit number of pages the pager keeps on each side of the current page
+ */
+CategoryPrefetcher(@NonNull CategoryPagerAdapter adapter, int offscreenPageLimit) {
+	mAdapter = adapter;
+	mDistance = offscreenPageLimit + 1;
+}
+
+@Override
+public void onPageSelected(int position) {
+	mPosition = position;
+	// Wait until the pager stops, the user can scroll past several pages
+	if (mScrollState == ViewPager2.SCROLL_STATE_IDLE) {
+		prefetch(position);
+	}
+}
+
+@Override
+public void onPageScrollStateChanged(int state) {
+	mScrollState = state;
+	if (state == ViewPager2.SCROLL_STATE_IDLE) {
+		prefetch(mPosition);
+	}
+}
+
+/**
+ * Prefetch the categories next to a page and cancel the other prefetches. Call this when the
+ * categories have changed
+ * @param position position of the current page
+ */
+void prefetch(int position) {
+	mPosition = position;
+	Set<String> categoryIds = new HashSet<>(2);
+	addCategoryId(categoryIds, position + mDistance);
+	addCategoryId(categoryIds, position - mDistance);
+	
+	List<String> passedCategoryIds = new ArrayList<>(mCategoryIds);
+	passedCategoryIds.removeAll(categoryIds);
+	for (String categoryId : passedCategoryIds) {
+		mItemRepo.cancelPrefetch(categoryId);
+	}
+	
+	mCategoryIds.clear();
+	mCategoryIds.addAll(categoryIds);
+	for (String categoryId : categoryIds) {
+		mItemRepo.prefetchItems(categoryId, CategoryPageFragment.PAGE_SIZE);
+	}
+}
+
+/**
+ * Cancel all prefetches, call before the pager is destroyed
+ */
+void cancel() {
+	for (String categoryId : mCategoryIds) {
+		mItemRepo.cancelPrefetch(categoryId);
+	}
+	mCategoryIds.clear();
+}
+
+private void addCategoryId(Set<String> categoryIds, int position) {
+	if (position >= 0 && position < mAdapter.getItemCount()) {
+		Category category = mAdapter.getCategory(position);
+		// Categories that are being added don't have any items
+		if (category != null && !category.getId().isEmpty()) {
+			categoryIds.add(category.getId());
+		}
+	}
+}
+}
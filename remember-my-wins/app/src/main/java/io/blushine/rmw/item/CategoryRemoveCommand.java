@@ -51,7 +51,8 @@ private void remove() {
 @SuppressWarnings("unused")
 @Subscribe
 public synchronized void onItemEvent(ItemEvent event) {
-	if (event.getCategoryId().equals(mCategory.getId())) {
+	// The snapshot only has the newest items
+	if (event.getCategoryId().equals(mCategory.getId()) && !event.isSnapshot()) {
 		switch (event.getAction()) {
 		case GET_RESPONSE:
 			mItems = event.getObjects();
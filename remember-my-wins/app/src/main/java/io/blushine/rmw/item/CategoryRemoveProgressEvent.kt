@@ -0,0 +1,10 @@
+package io.blushine.rmw.item
+
+/**
+ * Sent while the items of a removed category are being removed from the cloud, before the
+ * category document itself is removed
+ * @param category the category that is being removed, only the id is set
+ * @param removedItemCount number of items in the category that have been removed so far
+ * @param isCompleted true when the category and all its items have been removed
+ */
+internal class CategoryRemoveProgressEvent(val category: Category, val removedItemCount: Int, val isCompleted: Boolean)
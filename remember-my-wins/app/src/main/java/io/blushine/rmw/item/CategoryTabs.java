@@ -0,0 +1,180 @@
+package io.blushine.rmw.item;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.viewpager2.widget.ViewPager2;
+
+import com.google.android.material.tabs.TabLayout;
+
+/**
+ * Keeps the category tabs in sync with the category pages. Tabs are inserted, removed, moved and
+ * renamed when the pages change instead of being recreated, so each tab view only gets its long
+ * press listener when it's added
+ */
+class CategoryTabs extends RecyclerView.AdapterDataObserver {
+private final TabLayout mTabLayout;
+private final ViewPager2 mViewPager;
+private final CategoryPagerAdapter mAdapter;
+private final OnLongClickListener mLongClickListener;
+/** True while tabs are changed, the tab layout then selects tabs that shouldn't change the page */
+private boolean mUpdatingTabs = false;
+private final TabLayout.OnTabSelectedListener mTabSelectedListener = new TabLayout.OnTabSelectedListener() {
+	@Override
+	public void onTabSelected(TabLayout.Tab tab) {
+		if (!mUpdatingTabs) {
+			mViewPager.setCurrentItem(tab.getPosition(), true);
+		}
+	}
+	
+	@Override
+	public void onTabUnselected(TabLayout.Tab tab) {}
+	
+	@Override
+	public void onTabReselected(TabLayout.Tab tab) {}
+};
+private final ViewPager2.OnPageChangeCallback mPageChangeCallback = new ViewPager2.OnPageChangeCallback() {
+	@Override
+	public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
+		mTabLayout.setScrollPosition(position, positionOffset, false);
+	}
+	
+	@Override
+	public void onPageSelected(int position) {
+		selectTab(position);
+	}
+};
+private final View.OnLongClickListener mTabLongClickListener = tabView -> {
+	// Tabs move so the position is looked up when the tab is pressed
+	int position = ((ViewGroup) tabView.getParent()).indexOfChild(tabView);
+	Category category = position != -1 ? mAdapter.getCategory(position) : null;
+	if (category != null) {
+		mLongClickListener.onLongClick(category);
+	}
+	return true;
+};
+
+/**
+ * @param tabLayout the tabs to keep in sync
+ * @param viewPager the pages the tabs switch between
+ * @param adapter the adapter of the pages
+ * @param longClickListener called with the category of a tab when it's long pressed
+ */
+CategoryTabs(@NonNull TabLayout tabLayout, @NonNull ViewPager2 viewPager, @NonNull CategoryPagerAdapter adapter, @NonNull OnLongClickListener longClickListener) {
+	mTabLayout = tabLayout;
+	mViewPager = viewPager;
+	mAdapter = adapter;
+	mLongClickListener = longClickListener;
+}
+
+/**
+ * Add tabs for all pages and start keeping them in sync
+ */
+void attach() {
+	mAdapter.registerAdapterDataObserver(this);
+	mViewPager.registerOnPageChangeCallback(mPageChangeCallback);
+	mTabLayout.addOnTabSelectedListener(mTabSelectedListener);
+	onChanged();
+}
+
+/**
+ * Stop keeping the tabs in sync. Call this before the views are destroyed
+ */
+void detach() {
+	mAdapter.unregisterAdapterDataObserver(this);
+	mViewPager.unregisterOnPageChangeCallback(mPageChangeCallback);
+	mTabLayout.removeOnTabSelectedListener(mTabSelectedListener);
+}
+
+/**
+ * Listens to long presses on tabs
+ */
+interface OnLongClickListener {
+	/**
+	 * Called when a tab is long pressed
+	 * @param category the category of the tab
+	 */
+	void onLongClick(Category category);
+}
+
+/**
+ * Select a tab without changing the page
+ * @param position position of the tab
+ */
+void selectTab(int position) {
+	TabLayout.Tab tab = mTabLayout.getTabAt(position);
+	if (tab != null && !tab.isSelected()) {
+		boolean updatingTabs = mUpdatingTabs;
+		mUpdatingTabs = true;
+		tab.select();
+		mUpdatingTabs = updatingTabs;
+	}
+}
+
+private void addTab(int position) {
+	TabLayout.Tab tab = mTabLayout.newTab();
+	tab.setText(mAdapter.getPageTitle(position));
+	mTabLayout.addTab(tab, position, false);
+	
+	ViewGroup tabStrip = (ViewGroup) mTabLayout.getChildAt(0);
+	View tabView = tabStrip.getChildAt(position);
+	tabView.setLongClickable(true);
+	tabView.setOnLongClickListener(mTabLongClickListener);
+}
+
+@Override
+public void onChanged() {
+	mUpdatingTabs = true;
+	mTabLayout.removeAllTabs();
+	for (int i = 0; i < mAdapter.getItemCount(); i++) {
+		addTab(i);
+	}
+	mUpdatingTabs = false;
+	selectTab(mViewPager.getCurrentItem());
+}
+
+@Override
+public void onItemRangeInserted(int positionStart, int itemCount) {
+	mUpdatingTabs = true;
+	for (int i = positionStart; i < positionStart + itemCount; i++) {
+		addTab(i);
+	}
+	mUpdatingTabs = false;
+}
+
+@Override
+public void onItemRangeRemoved(int positionStart, int itemCount) {
+	mUpdatingTabs = true;
+	for (int i = positionStart + itemCount - 1; i >= positionStart; i--) {
+		mTabLayout.removeTabAt(i);
+	}
+	mUpdatingTabs = false;
+}
+
+@Override
+public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+	mUpdatingTabs = true;
+	for (int i = 0; i < itemCount; i++) {
+		TabLayout.Tab tab = mTabLayout.getTabAt(fromPosition);
+		boolean selected = tab != null && tab.isSelected();
+		mTabLayout.removeTabAt(fromPosition);
+		addTab(toPosition);
+		if (selected) {
+			selectTab(toPosition);
+		}
+	}
+	mUpdatingTabs = false;
+}
+
+@Override
+public void onItemRangeChanged(int positionStart, int itemCount) {
+	for (int i = positionStart; i < positionStart + itemCount; i++) {
+		TabLayout.Tab tab = mTabLayout.getTabAt(i);
+		if (tab != null) {
+			tab.setText(mAdapter.getPageTitle(i));
+		}
+	}
+}
+}
@@ -10,6 +10,33 @@ import java.util.*
 @JvmField
 val DATE_FORMAT: SimpleDateFormat = DateFormats.getMediumDateFormat()
 
+/**
+ * Sorts items in the same order as the gateways return them: by date with the newest first, then
+ * by id with the highest first
+ */
+@JvmField
+internal val NEWEST_FIRST: Comparator<Item> = Comparator { left, right ->
+	val dateDiff = java.lang.Long.compare(right.date, left.date)
+	if (dateDiff != 0) {
+		dateDiff
+	} else {
+		compareIds(right.id, left.id)
+	}
+}
+
+/**
+ * Compare ids numerically when both are numbers (SQLite), otherwise as strings (Firestore)
+ */
+private fun compareIds(left: String, right: String): Int {
+	val leftNumber = left.toLongOrNull()
+	val rightNumber = right.toLongOrNull()
+	return if (leftNumber != null && rightNumber != null) {
+		java.lang.Long.compare(leftNumber, rightNumber)
+	} else {
+		left.compareTo(right)
+	}
+}
+
 /**
  * A celebration item
  */
@@ -77,6 +104,14 @@ internal class Item() : Comparable<Item>, Parcelable {
 		return 0
 	}
 
+	fun set(item: Item) {
+		userId = item.userId
+		id = item.id
+		categoryId = item.categoryId
+		text = item.text
+		date = item.date
+	}
+
 	companion object CREATOR : Parcelable.Creator<Item> {
 		override fun createFromParcel(parcel: Parcel): Item {
 			return Item(parcel)
@@ -1,84 +1,445 @@
 package io.blushine.rmw.item;
 
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LongSparseArray;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.widget.AppCompatTextView;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
+import io.blushine.android.task.ThreadPools;
 import io.blushine.android.ui.list.AdvancedAdapter;
 import io.blushine.rmw.R;
+import io.blushine.rmw.util.MeasuredOperation;
+import io.blushine.rmw.util.Metrics;
+import io.blushine.rmw.util.SortedLists;
+
+import static io.blushine.rmw.item.ItemKt.NEWEST_FIRST;
 
 /**
- * Adapter for viewing celebration items
+ * Adapter for viewing celebration items. Items are sorted by {@link ItemKt#NEWEST_FIRST}. Only use
+ * the methods declared here to change the items, they apply a pending {@link #replaceItems} first
  */
 class ItemAdapter extends AdvancedAdapter<Item, ItemAdapter.ViewHolder> {
+/** Payload for only updating the count of a row */
+private static final Object PAYLOAD_COUNT = new Object();
+private static final MeasuredOperation BIND = Metrics.operation("ItemAdapter.bind");
+private static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+private static final int DATE_STRINGS_MAX = 4096;
+/** Larger counts are formatted on every bind, only categories with more wins than this get there */
+private static final int COUNT_STRINGS_MAX = 10000;
+/** Formatted counts, index is the count. Only accessed from the main thread */
+private static final ArrayList<String> mCountStrings = new ArrayList<>();
+/** Measures the text layouts, one thread is enough as only the rows that are shown are bound */
+private static final Executor mTextExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "item-text"));
+private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+/** Own copy of the item date format, its time zone is changed when the device's is */
+private final SimpleDateFormat mDateFormat = (SimpleDateFormat) ItemKt.DATE_FORMAT.clone();
+/** Formatted dates by local epoch day */
+private final LongSparseArray<String> mDateStrings = new LongSparseArray<>();
+/** Time zone the cached dates are in, null if it has changed */
+private TimeZone mTimeZone = null;
+/** Clears the cached dates when the time zone is changed, registered while attached to a list */
+private final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
+	@Override
+	public void onReceive(Context context, Intent intent) {
+		onTimeZoneChanged();
+	}
+};
+/** Text metrics of the item texts, they all have the same text appearance. Created on the first bind */
+private PrecomputedTextCompat.Params mTextParams = null;
+/** Incremented for every replace, used to skip diffs that finished after a newer replace */
+private int mReplaceGeneration = 0;
+/** Items of the replace whose difference is being calculated, null if no replace is pending */
+private List<Item> mPendingItems = null;
+/** Called when the pending replace has been applied */
+private Runnable mPendingReplaced = null;
+/** Number of items in the category including pages that haven't been fetched, -1 if not known */
+private int mTotalCount = -1;
 
 /**
  * Add items to the correct chronological position
  * @param newItems the items to add
  */
 public void add(List<Item> newItems) {
-	List<Item> existingItems = getItems();
-	int notifyChangedTo = 0;
+	finishReplace();
+	int lastAddedIndex = -1;
 	
 	for (Item item : newItems) {
-		boolean added = false;
-		for (int i = 0; i < existingItems.size(); ++i) {
-			Item listItem = existingItems.get(i);
-			
-			boolean isNewNewerThanCurrentItem = item.compareTo(listItem) > 0;
-			if (isNewNewerThanCurrentItem) {
-				add(i, item);
-				added = true;
-				
-				if (notifyChangedTo < i) {
-					notifyChangedTo = i;
-				}
-				break;
-			}
+		int index = insertIndex(item);
+		add(index, item);
+		
+		if (lastAddedIndex >= index) {
+			++lastAddedIndex;
+		} else {
+			lastAddedIndex = index;
+		}
+	}
+	
+	// Update count for all later items (i.e. lower index)
+	notifyCountChanged(lastAddedIndex);
+}
+
+/**
+ * Add items to the end of the list, used when fetching the next page of items
+ * @param newItems the items to add. Should be sorted and older than all existing items
+ */
+void addToEnd(List<Item> newItems) {
+	finishReplace();
+	int existingCount = getItemCount();
+	int position = existingCount;
+	for (Item item : newItems) {
+		add(position, item);
+		++position;
+	}
+	
+	// Update count for all earlier items
+	if (!newItems.isEmpty()) {
+		notifyCountChanged(existingCount);
+	}
+}
+
+/**
+ * Update edited items and move them if their date was changed
+ * @param editedItems the edited items
+ * @param canAddToEnd false if items that end up last should be removed instead, they will be
+ * fetched with a later page
+ */
+void update(List<Item> editedItems, boolean canAddToEnd) {
+	finishReplace();
+	List<Item> items = getItems();
+	
+	for (Item item : editedItems) {
+		int fromIndex = items.indexOf(item);
+		if (fromIndex == -1) {
+			continue;
 		}
 		
-		// Add to the end of the list
-		if (!added) {
-			add(getItemCount(), item);
-			notifyChangedTo = getItemCount();
+		items.remove(fromIndex);
+		int toIndex = insertIndex(item);
+		
+		if (toIndex == items.size() && !canAddToEnd) {
+			notifyItemRemoved(fromIndex);
+			notifyCountChanged(fromIndex);
+			continue;
+		}
+		
+		items.add(toIndex, item);
+		if (fromIndex != toIndex) {
+			notifyItemMoved(fromIndex, toIndex);
+			int countChangedFrom = Math.min(fromIndex, toIndex);
+			int countChangedTo = Math.max(fromIndex, toIndex);
+			notifyItemRangeChanged(countChangedFrom, countChangedTo - countChangedFrom + 1, PAYLOAD_COUNT);
+		}
+		notifyItemChanged(toIndex);
+	}
+}
+
+/**
+ * Remove items by id. Items that haven't been fetched are skipped
+ * @param removedItems the items to remove
+ */
+void removeItems(List<Item> removedItems) {
+	finishReplace();
+	Set<String> removedIds = new HashSet<>(removedItems.size());
+	for (Item item : removedItems) {
+		removedIds.add(item.getId());
+	}
+	
+	List<Item> items = getItems();
+	int removedCount = 0;
+	for (Item item : items) {
+		if (removedIds.contains(item.getId())) {
+			++removedCount;
+		}
+	}
+	
+	// Removed all
+	if (removedCount == items.size()) {
+		clear();
+		return;
+	}
+	if (removedCount == 0) {
+		return;
+	}
+	
+	// Removed one or more, from the end so the indexes of the remaining removed items don't change
+	int lastRemovedIndex = -1;
+	for (int i = items.size() - 1; i >= 0; --i) {
+		if (removedIds.contains(items.get(i).getId())) {
+			items.remove(i);
+			notifyItemRemoved(i);
+			if (lastRemovedIndex == -1) {
+				lastRemovedIndex = i;
+			}
 		}
 	}
 	
-	// Update count for all later items
-	if (notifyChangedTo > 0) {
-		notifyItemRangeChanged(0, notifyChangedTo);
+	// Update count for all later items (i.e. lower index) that are left
+	notifyCountChanged(lastRemovedIndex - removedCount + 1);
+}
+
+/**
+ * Replace all items. Only the rows that changed are updated, the difference is calculated in a
+ * background thread. The items aren't changed until the difference has been applied, changing
+ * them before that applies the replace right away instead
+ * @param newItems all the new items, sorted by {@link ItemKt#NEWEST_FIRST}
+ * @param onReplaced called when the items have been replaced, not called if a newer replace is
+ * requested before that
+ */
+void replaceItems(List<Item> newItems, @Nullable Runnable onReplaced) {
+	// Skip the diff of an earlier replace, it's against the same items
+	++mReplaceGeneration;
+	mPendingItems = null;
+	mPendingReplaced = null;
+	
+	if (getItemCount() == 0) {
+		setItems(newItems);
+		if (onReplaced != null) {
+			onReplaced.run();
+		}
+		return;
+	}
+	
+	final int generation = mReplaceGeneration;
+	final List<Item> oldItems = new ArrayList<>(getItems());
+	final List<Item> replaceItems = new ArrayList<>(newItems);
+	mPendingItems = replaceItems;
+	mPendingReplaced = onReplaced;
+	
+	ThreadPools.CACHED_THREAD_POOL.execute(() -> {
+		DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(new ItemDiffCallback(oldItems, replaceItems), false);
+		
+		mMainHandler.post(() -> {
+			// A newer replace was requested or the items were changed before the diff was done
+			if (generation == mReplaceGeneration) {
+				applyReplace(diffResult);
+			}
+		});
+	});
+}
+
+/**
+ * Apply a pending replace right away so the items can be changed. The difference is then
+ * calculated against the current items on the main thread
+ */
+private void finishReplace() {
+	if (mPendingItems != null) {
+		++mReplaceGeneration;
+		List<Item> oldItems = new ArrayList<>(getItems());
+		applyReplace(DiffUtil.calculateDiff(new ItemDiffCallback(oldItems, mPendingItems), false));
+	}
+}
+
+/**
+ * Replace the items with the pending items
+ * @param diffResult difference between the current and pending items
+ */
+private void applyReplace(DiffUtil.DiffResult diffResult) {
+	List<Item> items = getItems();
+	int oldCount = items.size();
+	items.clear();
+	items.addAll(mPendingItems);
+	Runnable onReplaced = mPendingReplaced;
+	mPendingItems = null;
+	mPendingReplaced = null;
+	diffResult.dispatchUpdatesTo(this);
+	
+	if (oldCount != items.size()) {
+		notifyCountChanged(items.size());
+	}
+	if (onReplaced != null) {
+		onReplaced.run();
+	}
+}
+
+/**
+ * Set the number of items in the category. Items are numbered from this count so the numbers are
+ * right before all pages have been fetched
+ * @param totalCount number of items in the category, -1 to number the fetched items instead
+ */
+void setTotalCount(int totalCount) {
+	if (totalCount != mTotalCount) {
+		mTotalCount = totalCount;
+		notifyCountChanged(getItemCount());
 	}
 }
 
+/**
+ * @return number of items in the category, -1 if not known
+ */
+int getTotalCount() {
+	return mTotalCount;
+}
+
 @Override
 public void remove(int itemIndex) {
+	finishReplace();
 	super.remove(itemIndex);
 	
 	// Update count for all later items (i.e. lower index)
-	if (itemIndex > 0) {
-		notifyItemRangeChanged(0, itemIndex);
+	notifyCountChanged(itemIndex);
+}
+
+/**
+ * Find the sorted position of an item with a binary search
+ * @param item the item to find the position for
+ * @return index where the item should be inserted
+ */
+private int insertIndex(Item item) {
+	return SortedLists.insertIndex(getItems(), item, NEWEST_FIRST);
+}
+
+/**
+ * Update the count of the items before the specified index. The count is based on the position
+ * so it changes for all newer items when an item is added or removed
+ * @param toIndex update the count for all items before this index
+ */
+private void notifyCountChanged(int toIndex) {
+	if (toIndex > 0) {
+		notifyItemRangeChanged(0, toIndex, PAYLOAD_COUNT);
 	}
 }
 
+@Override
+public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+	super.onAttachedToRecyclerView(recyclerView);
+	recyclerView.getContext().registerReceiver(mTimeZoneReceiver, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+}
+
+@Override
+public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+	super.onDetachedFromRecyclerView(recyclerView);
+	recyclerView.getContext().unregisterReceiver(mTimeZoneReceiver);
+}
+
+/**
+ * Format the dates again in the new time zone
+ */
+private void onTimeZoneChanged() {
+	mTimeZone = null;
+	mDateStrings.clear();
+	notifyItemRangeChanged(0, getItemCount());
+}
+
 @Override
 protected ViewHolder onCreateView(ViewGroup parent, int viewType) {
 	View itemView = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item_item, parent, false);
 	return new ViewHolder(itemView);
 }
 
+@Override
+public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+	long startedAt = BIND.begin();
+	try {
+		if (!payloads.isEmpty() && onlyCountPayloads(payloads)) {
+			bindCount(holder, position);
+		} else {
+			super.onBindViewHolder(holder, position, payloads);
+		}
+	} finally {
+		BIND.end(startedAt);
+	}
+}
+
+private static boolean onlyCountPayloads(List<Object> payloads) {
+	for (Object payload : payloads) {
+		if (payload != PAYLOAD_COUNT) {
+			return false;
+		}
+	}
+	return true;
+}
+
 @Override
 protected void onBindView(ViewHolder view, int position) {
 	final Item item = getItem(position);
 	
-	view.mText.setText(item.getText());
-	view.mDate.setText(item.getDateFromFormat());
+	bindText(view.mText, item.getText());
+	view.mDate.setText(getDateString(item.getDate()));
+	bindCount(view, position);
+}
+
+private void bindCount(ViewHolder view, int position) {
+	int count = (mTotalCount >= 0 ? mTotalCount : getItemCount()) - position;
+	view.mCount.setText(getCountString(count));
+}
+
+/**
+ * Set the item text. The text layout is measured in a background thread when possible
+ */
+private void bindText(TextView textView, String text) {
+	if (textView instanceof AppCompatTextView) {
+		if (mTextParams == null) {
+			mTextParams = TextViewCompat.getTextMetricsParams(textView);
+		}
+		((AppCompatTextView) textView).setTextFuture(PrecomputedTextCompat.getTextFuture(text, mTextParams, mTextExecutor));
+	} else {
+		textView.setText(text);
+	}
+}
+
+/**
+ * Get the formatted date. Dates are only formatted once per day
+ * @param date time in milliseconds
+ * @return formatted date
+ */
+private String getDateString(long date) {
+	// TimeZone.getDefault() returns a copy, only get it again when the time zone has changed
+	if (mTimeZone == null) {
+		mTimeZone = TimeZone.getDefault();
+		mDateFormat.setTimeZone(mTimeZone);
+	}
+	long localDate = date + mTimeZone.getOffset(date);
+	// Round down dates before 1970 too
+	long epochDay = localDate >= 0 ? localDate / DAY_MILLIS : (localDate + 1) / DAY_MILLIS - 1;
 	
-	int count = getItemCount() - position;
-	view.mCount.setText(String.valueOf(count));
+	String dateString = mDateStrings.get(epochDay);
+	if (dateString == null) {
+		if (mDateStrings.size() >= DATE_STRINGS_MAX) {
+			mDateStrings.clear();
+		}
+		dateString = mDateFormat.format(new Date(date));
+		mDateStrings.put(epochDay, dateString);
+	}
+	return dateString;
+}
+
+/**
+ * Get the count as a string. Counts below {@link #COUNT_STRINGS_MAX} are only formatted once
+ * @param count the count to format
+ * @return formatted count
+ */
+private static String getCountString(int count) {
+	if (count < 0 || count >= COUNT_STRINGS_MAX) {
+		return String.valueOf(count);
+	}
+	for (int i = mCountStrings.size(); i <= count; ++i) {
+		mCountStrings.add(String.valueOf(i));
+	}
+	return mCountStrings.get(count);
 }
 
 static class ViewHolder extends RecyclerView.ViewHolder {
@@ -93,4 +454,39 @@ static class ViewHolder extends RecyclerView.ViewHolder {
 		mDate = (TextView) itemView.findViewById(R.id.item_date);
 	}
 }
+
+/**
+ * Finds the difference between two item lists. Items are the same if they have the same id
+ */
+private static class ItemDiffCallback extends DiffUtil.Callback {
+	private final List<Item> mOldItems;
+	private final List<Item> mNewItems;
+	
+	ItemDiffCallback(List<Item> oldItems, List<Item> newItems) {
+		mOldItems = oldItems;
+		mNewItems = newItems;
+	}
+	
+	@Override
+	public int getOldListSize() {
+		return mOldItems.size();
+	}
+	
+	@Override
+	public int getNewListSize() {
+		return mNewItems.size();
+	}
+	
+	@Override
+	public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+		return mOldItems.get(oldItemPosition).equals(mNewItems.get(newItemPosition));
+	}
+	
+	@Override
+	public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+		Item oldItem = mOldItems.get(oldItemPosition);
+		Item newItem = mNewItems.get(newItemPosition);
+		return oldItem.getDate() == newItem.getDate() && oldItem.getText().equals(newItem.getText());
+	}
+}
 }
@@ -0,0 +1,249 @@
+package io.blushine.rmw.item
+
+import android.os.Handler
+import android.os.Looper
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
+import com.google.gson.stream.JsonWriter
+import java.io.Closeable
+import java.io.IOException
+import java.io.InputStream
+import java.io.InputStreamReader
+import java.io.OutputStream
+import java.io.OutputStreamWriter
+
+/** Version of the backup format written by [ItemBackupWriter] */
+const val BACKUP_VERSION = 1
+/** Number of items to read and store in each transaction/batch when importing a backup */
+const val BACKUP_CHUNK_SIZE = 500
+private const val VERSION_FIELD = "version"
+private const val CATEGORIES_FIELD = "categories"
+private const val ITEMS_FIELD = "items"
+private const val ID_FIELD = "id"
+private const val NAME_FIELD = "name"
+private const val ORDER_FIELD = "order"
+private const val CATEGORY_ID_FIELD = "categoryId"
+private const val TEXT_FIELD = "text"
+private const val DATE_FIELD = "date"
+
+/**
+ * Listens to the progress of an export or import. All methods are called on the main thread
+ */
+internal interface BackupListener {
+	/**
+	 * Called after every chunk of items
+	 * @param itemCount number of items exported/imported so far
+	 */
+	fun onProgress(itemCount: Int)
+
+	/**
+	 * @param itemCount total number of items exported/imported
+	 */
+	fun onComplete(itemCount: Int)
+
+	/**
+	 * Called if the export/import failed. Imported chunks before the failure are kept
+	 */
+	fun onFailed(exception: Exception)
+}
+
+/**
+ * Forwards all calls to [listener] on the main thread, can be called from any thread
+ */
+internal class MainThreadBackupListener(private val listener: BackupListener) : BackupListener {
+	private val handler = Handler(Looper.getMainLooper())
+
+	override fun onProgress(itemCount: Int) {
+		handler.post { listener.onProgress(itemCount) }
+	}
+
+	override fun onComplete(itemCount: Int) {
+		handler.post { listener.onComplete(itemCount) }
+	}
+
+	override fun onFailed(exception: Exception) {
+		handler.post { listener.onFailed(exception) }
+	}
+}
+
+/**
+ * Writes a backup as a JSON stream, one category or item at a time. Write all categories before
+ * the items.
+ * ```
+ * {"version": 1, "categories": [{"id", "name", "order"}...], "items": [{"categoryId", "text", "date"}...]}
+ * ```
+ */
+internal class ItemBackupWriter(outputStream: OutputStream) : Closeable {
+	private val writer = JsonWriter(OutputStreamWriter(outputStream, Charsets.UTF_8))
+
+	/**
+	 * Begin the backup and write all categories
+	 * @param categories all categories to back up
+	 */
+	@Throws(IOException::class)
+	fun writeCategories(categories: List<Category>) {
+		writer.beginObject()
+		writer.name(VERSION_FIELD).value(BACKUP_VERSION.toLong())
+		writer.name(CATEGORIES_FIELD).beginArray()
+		for (category in categories) {
+			writer.beginObject()
+			writer.name(ID_FIELD).value(category.id)
+			writer.name(NAME_FIELD).value(category.name)
+			writer.name(ORDER_FIELD).value(category.order.toLong())
+			writer.endObject()
+		}
+		writer.endArray()
+		writer.name(ITEMS_FIELD).beginArray()
+	}
+
+	/**
+	 * Write an item. Call after [writeCategories]
+	 */
+	@Throws(IOException::class)
+	fun writeItem(categoryId: String, text: String, date: Long) {
+		writer.beginObject()
+		writer.name(CATEGORY_ID_FIELD).value(categoryId)
+		writer.name(TEXT_FIELD).value(text)
+		writer.name(DATE_FIELD).value(date)
+		writer.endObject()
+	}
+
+	/**
+	 * Write an item. Call after [writeCategories]
+	 */
+	@Throws(IOException::class)
+	fun writeItem(item: Item) {
+		writeItem(item.categoryId, item.text, item.date)
+	}
+
+	/**
+	 * End the backup, call after all items have been written
+	 */
+	@Throws(IOException::class)
+	fun finish() {
+		writer.endArray()
+		writer.endObject()
+		writer.flush()
+	}
+
+	override fun close() {
+		writer.close()
+	}
+}
+
+/**
+ * Reads a backup written by [ItemBackupWriter] as a stream, only the current chunk of items is
+ * held in memory
+ */
+internal class ItemBackupReader(inputStream: InputStream) : Closeable {
+	private val reader = JsonReader(InputStreamReader(inputStream, Charsets.UTF_8))
+	private var inItems = false
+	private var finished = false
+
+	/**
+	 * Read the backup version and all categories. Call this first
+	 * @return all categories in the backup
+	 * @throws IOException if the backup is invalid or has a newer version
+	 */
+	@Throws(IOException::class)
+	fun readCategories(): List<Category> {
+		val categories = ArrayList<Category>()
+		reader.beginObject()
+		while (reader.hasNext()) {
+			when (reader.nextName()) {
+				VERSION_FIELD -> {
+					val version = reader.nextInt()
+					if (version > BACKUP_VERSION) {
+						throw IOException("Unsupported backup version $version")
+					}
+				}
+				CATEGORIES_FIELD -> {
+					reader.beginArray()
+					while (reader.hasNext()) {
+						categories.add(readCategory())
+					}
+					reader.endArray()
+				}
+				ITEMS_FIELD -> {
+					reader.beginArray()
+					inItems = true
+					return categories
+				}
+				else -> reader.skipValue()
+			}
+		}
+		reader.endObject()
+		finished = true
+		return categories
+	}
+
+	/**
+	 * Read the next chunk of items. Call after [readCategories]
+	 * @param maxCount max number of items to read
+	 * @return next chunk of items, empty when all items have been read
+	 */
+	@Throws(IOException::class)
+	fun readItems(maxCount: Int = BACKUP_CHUNK_SIZE): List<Item> {
+		val items = ArrayList<Item>()
+		if (finished || !inItems) {
+			return items
+		}
+
+		while (items.size < maxCount && reader.hasNext()) {
+			items.add(readItem())
+		}
+
+		if (!reader.hasNext()) {
+			reader.endArray()
+			inItems = false
+			// Skip anything after the items
+			while (reader.hasNext()) {
+				reader.nextName()
+				reader.skipValue()
+			}
+			reader.endObject()
+			finished = true
+		}
+
+		return items
+	}
+
+	private fun readCategory(): Category {
+		val category = Category()
+		reader.beginObject()
+		while (reader.hasNext()) {
+			when (reader.nextName()) {
+				ID_FIELD -> category.id = reader.nextString()
+				NAME_FIELD -> category.name = reader.nextString()
+				ORDER_FIELD -> category.order = reader.nextInt()
+				else -> reader.skipValue()
+			}
+		}
+		reader.endObject()
+		return category
+	}
+
+	private fun readItem(): Item {
+		val item = Item()
+		reader.beginObject()
+		while (reader.hasNext()) {
+			when (reader.nextName()) {
+				CATEGORY_ID_FIELD -> item.categoryId = reader.nextString()
+				TEXT_FIELD -> item.text = if (reader.peek() == JsonToken.NULL) {
+					reader.nextNull()
+					""
+				} else {
+					reader.nextString()
+				}
+				DATE_FIELD -> item.date = reader.nextLong()
+				else -> reader.skipValue()
+			}
+		}
+		reader.endObject()
+		return item
+	}
+
+	override fun close() {
+		reader.close()
+	}
+}
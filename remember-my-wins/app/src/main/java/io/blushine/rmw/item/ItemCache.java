@@ -0,0 +1,344 @@
+package io.blushine.rmw.item;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.blushine.rmw.item.ItemEventKt.GET_ALL_ITEMS;
+import static io.blushine.rmw.item.ItemKt.NEWEST_FIRST;
+
+/**
+ * In-memory cache of items per category. Each category holds the newest items sorted by
+ * {@link ItemKt#NEWEST_FIRST}, either all items in the category or the pages fetched so far.
+ * Whole categories are evicted (least recently used first) when the cache holds too many items.
+ * Only use from the main thread.
+ */
+class ItemCache {
+private static final int MAX_ITEMS_DEFAULT = 5000;
+private final Map<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+private final int mMaxItems;
+private int mItemCount = 0;
+private int mHitCount = 0;
+private int mMissCount = 0;
+
+ItemCache() {
+	this(MAX_ITEMS_DEFAULT);
+}
+
+/**
+ * @param maxItems max number of items to hold in the cache
+ */
+ItemCache(int maxItems) {
+	mMaxItems = maxItems;
+}
+
+/**
+ * Get all items in a category
+ * @param categoryId the category to get the items from, {@link ItemEventKt#GET_ALL_ITEMS} for all categories
+ * @return all items in the category, null if not all items are cached
+ */
+@Nullable
+List<Item> getItems(@NotNull String categoryId) {
+	Entry entry = mEntries.get(categoryId);
+	if (entry != null && entry.mComplete) {
+		++mHitCount;
+		return new ArrayList<>(entry.mItems);
+	} else {
+		++mMissCount;
+		return null;
+	}
+}
+
+/**
+ * Get a page of items in a category
+ * @param categoryId the category to get the items from, {@link ItemEventKt#GET_ALL_ITEMS} for all categories
+ * @param afterItem last item in the previous page, null to get the first page
+ * @param limit max number of items in the page
+ * @return the page, null if the page isn't cached
+ */
+@Nullable
+Page getItems(@NotNull String categoryId, @Nullable Item afterItem, int limit) {
+	Entry entry = mEntries.get(categoryId);
+	if (entry != null) {
+		int fromIndex = 0;
+		if (afterItem != null) {
+			int afterIndex = Collections.binarySearch(entry.mItems, afterItem, NEWEST_FIRST);
+			fromIndex = afterIndex >= 0 ? afterIndex + 1 : -1;
+		}
+
+		if (fromIndex >= 0) {
+			int available = entry.mItems.size() - fromIndex;
+			if (available >= limit) {
+				++mHitCount;
+				boolean hasMorePages = available > limit || !entry.mComplete;
+				return new Page(entry.mItems.subList(fromIndex, fromIndex + limit), hasMorePages, entry.getTotalCount());
+			} else if (entry.mComplete) {
+				++mHitCount;
+				return new Page(entry.mItems.subList(fromIndex, entry.mItems.size()), false, entry.getTotalCount());
+			}
+		}
+	}
+
+	++mMissCount;
+	return null;
+}
+
+/**
+ * Check if the first page of a category is cached. Isn't counted as a hit or miss
+ * @param categoryId the category to check
+ * @param limit max number of items in the page
+ * @return true if the first page is cached
+ */
+boolean hasFirstPage(@NotNull String categoryId, int limit) {
+	Entry entry = mEntries.get(categoryId);
+	return entry != null && (entry.mItems.size() >= limit || entry.mComplete);
+}
+
+/**
+ * Get the first page of a category for the {@link ItemSnapshot}. Isn't counted as a hit or miss
+ * @param categoryId the category to get the items from
+ * @param limit max number of items in the page
+ * @return the first page, null if it isn't cached
+ */
+@Nullable
+Page getFirstPage(@NotNull String categoryId, int limit) {
+	if (!hasFirstPage(categoryId, limit)) {
+		return null;
+	}
+
+	Entry entry = mEntries.get(categoryId);
+	int toIndex = Math.min(limit, entry.mItems.size());
+	boolean hasMorePages = entry.mItems.size() > limit || !entry.mComplete;
+	return new Page(entry.mItems.subList(0, toIndex), hasMorePages, entry.getTotalCount());
+}
+
+/**
+ * Add fetched items to the cache
+ * @param categoryId the category the items were fetched from
+ * @param items the fetched items, sorted by {@link ItemKt#NEWEST_FIRST}
+ * @param isNextPage true if the items continue after already fetched items
+ * @param hasMorePages true if there are more items in the category after these
+ * @param totalCount number of items in the category, -1 if not known
+ */
+void putItems(@NotNull String categoryId, @NotNull List<Item> items, boolean isNextPage, boolean hasMorePages, int totalCount) {
+	Entry entry = mEntries.get(categoryId);
+	if (entry == null) {
+		// Can't cache a page without the pages before it
+		if (isNextPage) {
+			return;
+		}
+		entry = new Entry();
+		mEntries.put(categoryId, entry);
+	}
+
+	int sizeBefore = entry.mItems.size();
+	for (Item item : items) {
+		entry.insert(item, true);
+	}
+	if (!hasMorePages) {
+		entry.mComplete = true;
+	}
+	if (totalCount >= 0) {
+		entry.mTotalCount = totalCount;
+	}
+	mItemCount += entry.mItems.size() - sizeBefore;
+
+	evict(categoryId);
+}
+
+/**
+ * Add items to the cached categories
+ * @param items items that were added
+ */
+void onAdded(@NotNull List<Item> items) {
+	for (Item item : items) {
+		insert(item.getCategoryId(), item);
+		insert(GET_ALL_ITEMS, item);
+	}
+}
+
+/**
+ * Update items in the cached categories
+ * @param items items that were edited
+ */
+void onEdited(@NotNull List<Item> items) {
+	onRemoved(items);
+	onAdded(items);
+}
+
+/**
+ * Remove items from the cached categories
+ * @param items items that were removed
+ */
+void onRemoved(@NotNull List<Item> items) {
+	for (Item item : items) {
+		remove(item.getCategoryId(), item);
+		remove(GET_ALL_ITEMS, item);
+	}
+}
+
+/**
+ * Remove a category and its items from the cache
+ * @param category the category that was removed
+ */
+void onCategoryRemoved(@NotNull Category category) {
+	removeEntry(category.getId());
+	removeEntry(GET_ALL_ITEMS);
+}
+
+/**
+ * Remove all items from the cache
+ */
+void clear() {
+	mEntries.clear();
+	mItemCount = 0;
+}
+
+/**
+ * @return number of requests that were answered by the cache
+ */
+int getHitCount() {
+	return mHitCount;
+}
+
+/**
+ * @return number of requests that had to go to the gateway
+ */
+int getMissCount() {
+	return mMissCount;
+}
+
+private void insert(String categoryId, Item item) {
+	Entry entry = mEntries.get(categoryId);
+	if (entry == null) {
+		return;
+	}
+
+	// Counted even if the item is in a page that hasn't been fetched
+	entry.changeTotalCount(1);
+	if (entry.insert(item, false)) {
+		++mItemCount;
+		evict(categoryId);
+	}
+}
+
+private void remove(String categoryId, Item item) {
+	Entry entry = mEntries.get(categoryId);
+	if (entry == null) {
+		return;
+	}
+
+	entry.changeTotalCount(-1);
+	if (entry.remove(item)) {
+		--mItemCount;
+	}
+}
+
+private void removeEntry(String categoryId) {
+	Entry entry = mEntries.remove(categoryId);
+	if (entry != null) {
+		mItemCount -= entry.mItems.size();
+	}
+}
+
+/**
+ * Evict the least recently used categories until the cache fits
+ * @param keepCategoryId never evict this category
+ */
+private void evict(String keepCategoryId) {
+	Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+	while (mItemCount > mMaxItems && iterator.hasNext()) {
+		Map.Entry<String, Entry> eldest = iterator.next();
+		if (!eldest.getKey().equals(keepCategoryId)) {
+			mItemCount -= eldest.getValue().mItems.size();
+			iterator.remove();
+		}
+	}
+}
+
+/**
+ * A page of cached items
+ */
+static class Page {
+	final List<Item> mItems;
+	final boolean mHasMorePages;
+	/** Number of items in the category, -1 if not known */
+	final int mTotalCount;
+
+	Page(List<Item> items, boolean hasMorePages, int totalCount) {
+		mItems = new ArrayList<>(items);
+		mHasMorePages = hasMorePages;
+		mTotalCount = totalCount;
+	}
+}
+
+/**
+ * Cached items in a category. Always the newest items in the category without any gaps
+ */
+private static class Entry {
+	final ArrayList<Item> mItems = new ArrayList<>();
+	/** True if all items in the category are cached */
+	boolean mComplete = false;
+	/** Number of items in the category including items that aren't cached, -1 if not known */
+	int mTotalCount = -1;
+
+	/**
+	 * @return number of items in the category, -1 if not known
+	 */
+	int getTotalCount() {
+		return mComplete ? mItems.size() : mTotalCount;
+	}
+
+	/**
+	 * Change the number of items in the category if it's known
+	 * @param change number of added items, negative for removed items
+	 */
+	void changeTotalCount(int change) {
+		if (mTotalCount >= 0) {
+			mTotalCount += change;
+		}
+	}
+
+	/**
+	 * Insert an item in sorted order
+	 * @param item the item to insert
+	 * @param isFetched true if the item was fetched from the gateway. Other items older than the
+	 * last cached item are skipped if not all items are cached, they will be fetched with a later page instead
+	 * @return true if the item was inserted
+	 */
+	boolean insert(Item item, boolean isFetched) {
+		int index = Collections.binarySearch(mItems, item, NEWEST_FIRST);
+		if (index >= 0) {
+			mItems.set(index, item);
+			return false;
+		}
+
+		int insertIndex = -index - 1;
+		if (!isFetched && !mComplete && insertIndex == mItems.size()) {
+			return false;
+		}
+		mItems.add(insertIndex, item);
+		return true;
+	}
+
+	/**
+	 * Remove an item by id. The date may have changed so it can't be found by searching
+	 * @return true if the item was removed
+	 */
+	boolean remove(Item item) {
+		for (int i = 0; i < mItems.size(); ++i) {
+			if (mItems.get(i).equals(item)) {
+				mItems.remove(i);
+				return true;
+			}
+		}
+		return false;
+	}
+}
+}
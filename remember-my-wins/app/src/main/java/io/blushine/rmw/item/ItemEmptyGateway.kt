@@ -1,10 +1,14 @@
 package io.blushine.rmw.item
 
+import java.io.InputStream
+import java.io.OutputStream
+import java.util.concurrent.Future
+
 /**
  * Empty (invalid) gateway for items
  */
 internal class ItemEmptyGateway : ItemGateway {
-	override fun addCategory(category: Category) {
+	override fun addCategories(categories: List<Category>) {
 
 	}
 
@@ -16,7 +20,7 @@ internal class ItemEmptyGateway : ItemGateway {
 
 	}
 
-	override fun removeCategory(category: Category) {
+	override fun removeCategories(categories: List<Category>) {
 
 	}
 
@@ -28,6 +32,38 @@ internal class ItemEmptyGateway : ItemGateway {
 
 	}
 
+	override fun getItems(categoryId: String, afterDate: Long?, afterId: String?, limit: Int) {
+
+	}
+
+	override fun prefetchItems(categoryId: String, limit: Int): Future<*>? {
+		return null
+	}
+
+	override fun searchItems(query: String, categoryId: String, limit: Int) {
+
+	}
+
+	override fun listenToItems(categoryId: String) {
+
+	}
+
+	override fun stopListeningToItems(categoryId: String) {
+
+	}
+
+	override fun listenToCategories() {
+
+	}
+
+	override fun stopListeningToCategories() {
+
+	}
+
+	override fun stopListening() {
+
+	}
+
 	override fun updateItems(items: List<Item>) {
 
 	}
@@ -40,4 +76,12 @@ internal class ItemEmptyGateway : ItemGateway {
 
 	}
 
+	override fun exportData(outputStream: OutputStream, listener: BackupListener) {
+
+	}
+
+	override fun importData(inputStream: InputStream, listener: BackupListener) {
+
+	}
+
 }
\ No newline at end of file
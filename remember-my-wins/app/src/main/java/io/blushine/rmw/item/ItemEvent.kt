@@ -5,8 +5,81 @@ import io.blushine.android.common.ObjectEvent
 const val GET_ALL_ITEMS = "get_all_items"
 
 /**
- * Item event
+ * Item event. Changes and requests made on this device are created with the public constructors,
+ * get responses and remote changes with the factories in the companion object
+ * @param categoryId the category the items were fetched from, only set for get responses and for
+ * events delivered by [ItemEventRouter]
+ * @param isNextPage true if this is a page that continues directly after previously fetched items
+ * @param hasMorePages true if there are more items to fetch after this page
+ * @param isRemoteChange true if the items were changed outside of this device
+ * @param totalCount number of items in the category including items in later pages, only set for
+ * get responses. -1 if not known
+ * @param isPrefetch true if the items were fetched before they're shown, see
+ * [ItemGateway.prefetchItems]. Only the cache gets these
+ * @param isSnapshot true if the items were read from the [ItemSnapshot] of the last run. They're
+ * shown until the live items have been fetched but never cached
  */
-internal class ItemEvent @JvmOverloads constructor(action: Actions, items: List<Item> = listOf(), val categoryId: String = "") : ObjectEvent<Item>(action, items) {
+internal class ItemEvent private constructor(action: ObjectEvent.Actions, items: List<Item>, val categoryId: String, val isNextPage: Boolean, val hasMorePages: Boolean, val isRemoteChange: Boolean, val totalCount: Int, val isPrefetch: Boolean, val isSnapshot: Boolean) : ObjectEvent<Item>(action, items) {
+	@JvmOverloads
+	constructor(action: ObjectEvent.Actions, items: List<Item> = listOf()) : this(action, items, "", false, false, false, -1, false, false)
+
 	constructor(action: ObjectEvent.Actions, item: Item) : this(action, listOf(item))
+
+	/**
+	 * @return the same change with only the specified items, which are all in the category
+	 */
+	fun forCategory(categoryId: String, items: List<Item>): ItemEvent {
+		return ItemEvent(action, items, categoryId, false, false, isRemoteChange, -1, false, false)
+	}
+
+	companion object {
+		/**
+		 * All items of a category
+		 */
+		@JvmStatic
+		fun allItems(items: List<Item>, categoryId: String): ItemEvent {
+			return ItemEvent(ObjectEvent.Actions.GET_RESPONSE, items, categoryId, false, false, false, items.size, false, false)
+		}
+
+		/**
+		 * A page of items that is shown
+		 */
+		@JvmStatic
+		fun page(items: List<Item>, categoryId: String, isNextPage: Boolean, hasMorePages: Boolean, totalCount: Int): ItemEvent {
+			return ItemEvent(ObjectEvent.Actions.GET_RESPONSE, items, categoryId, isNextPage, hasMorePages, false, totalCount, false, false)
+		}
+
+		/**
+		 * The first page of a category that isn't shown yet, fetched for the cache
+		 */
+		@JvmStatic
+		fun prefetch(items: List<Item>, categoryId: String, hasMorePages: Boolean, totalCount: Int): ItemEvent {
+			return ItemEvent(ObjectEvent.Actions.GET_RESPONSE, items, categoryId, false, hasMorePages, false, totalCount, true, false)
+		}
+
+		/**
+		 * The first page of a category from the [ItemSnapshot] of the last run
+		 */
+		@JvmStatic
+		fun snapshot(items: List<Item>, categoryId: String, hasMorePages: Boolean, totalCount: Int): ItemEvent {
+			return ItemEvent(ObjectEvent.Actions.GET_RESPONSE, items, categoryId, false, hasMorePages, false, totalCount, false, true)
+		}
+
+		/**
+		 * Getting items failed
+		 */
+		@JvmStatic
+		@JvmOverloads
+		fun getFailed(categoryId: String, isNextPage: Boolean = false, isPrefetch: Boolean = false): ItemEvent {
+			return ItemEvent(ObjectEvent.Actions.GET_FAILED, listOf(), categoryId, isNextPage, false, false, -1, isPrefetch, false)
+		}
+
+		/**
+		 * Items changed on another device
+		 */
+		@JvmStatic
+		fun remoteChange(action: ObjectEvent.Actions, items: List<Item>): ItemEvent {
+			return ItemEvent(action, items, "", false, false, true, -1, false, false)
+		}
+	}
 }
@@ -0,0 +1,154 @@
+package io.blushine.rmw.item;
+
+import com.squareup.otto.Subscribe;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.blushine.utils.EventBus;
+
+/**
+ * Delivers {@link ItemEvent}s only to the listeners of the affected categories, instead of every
+ * listener receiving (and filtering) every event through the {@link EventBus}. Events with items
+ * in several categories are split into one event per category. Only use from the main thread.
+ */
+class ItemEventRouter {
+private static ItemEventRouter mInstance = null;
+private final Map<String, List<Listener>> mListeners = new HashMap<>();
+
+/**
+ * Enforces singleton pattern
+ */
+private ItemEventRouter() {
+	EventBus.getInstance().register(this);
+}
+
+/**
+ * Get singleton instance
+ * @return get instance
+ */
+static ItemEventRouter getInstance() {
+	if (mInstance == null) {
+		mInstance = new ItemEventRouter();
+	}
+	return mInstance;
+}
+
+/**
+ * Listen to item events for a category
+ * @param categoryId the category to listen to, {@link ItemEventKt#GET_ALL_ITEMS} to only get the
+ * get responses for all items
+ * @param listener receives the events
+ */
+void register(@NotNull String categoryId, @NotNull Listener listener) {
+	List<Listener> listeners = mListeners.get(categoryId);
+	if (listeners == null) {
+		listeners = new ArrayList<>(1);
+		mListeners.put(categoryId, listeners);
+	}
+	listeners.add(listener);
+}
+
+/**
+ * Stop listening to item events for a category
+ * @param categoryId the category to stop listening to
+ * @param listener the listener to remove
+ */
+void unregister(@NotNull String categoryId, @NotNull Listener listener) {
+	List<Listener> listeners = mListeners.get(categoryId);
+	if (listeners != null) {
+		listeners.remove(listener);
+		if (listeners.isEmpty()) {
+			mListeners.remove(categoryId);
+		}
+	}
+}
+
+@SuppressWarnings("unused")
+@Subscribe
+public void onItem(ItemEvent event) {
+	switch (event.getAction()) {
+	// Get responses are already for a specific category. Prefetched pages are only for the cache
+	case GET_RESPONSE:
+	case GET_FAILED:
+		if (!event.isPrefetch()) {
+			dispatch(event.getCategoryId(), event);
+		}
+		break;
+	
+	default:
+		if (event.hasObjects()) {
+			for (Map.Entry<String, List<Item>> entry : splitByCategory(event.getObjects()).entrySet()) {
+				String categoryId = entry.getKey();
+				if (mListeners.containsKey(categoryId)) {
+					dispatch(categoryId, event.forCategory(categoryId, entry.getValue()));
+				}
+			}
+		}
+		break;
+	}
+}
+
+private void dispatch(String categoryId, ItemEvent event) {
+	List<Listener> listeners = mListeners.get(categoryId);
+	if (listeners != null) {
+		// Copy, listeners can unregister when handling the event
+		for (Listener listener : new ArrayList<>(listeners)) {
+			listener.onItemEvent(event);
+		}
+	}
+}
+
+/**
+ * Split items by their category, keeps the order of the items within each category
+ * @param items the items to split
+ * @return category id to items in that category
+ */
+private static Map<String, List<Item>> splitByCategory(List<Item> items) {
+	// Usually all items are in one category, then they don't have to be copied
+	String firstCategoryId = items.get(0).getCategoryId();
+	if (isInCategory(items, firstCategoryId)) {
+		return Collections.singletonMap(firstCategoryId, items);
+	}
+	
+	Map<String, List<Item>> categoryItems = new LinkedHashMap<>();
+	for (Item item : items) {
+		List<Item> itemsInCategory = categoryItems.get(item.getCategoryId());
+		if (itemsInCategory == null) {
+			itemsInCategory = new ArrayList<>();
+			categoryItems.put(item.getCategoryId(), itemsInCategory);
+		}
+		itemsInCategory.add(item);
+	}
+	return categoryItems;
+}
+
+/**
+ * @return true if all items are in the category
+ */
+private static boolean isInCategory(List<Item> items, String categoryId) {
+	for (Item item : items) {
+		if (!item.getCategoryId().equals(categoryId)) {
+			return false;
+		}
+	}
+	return true;
+}
+
+/**
+ * Receives item events for the categories it's registered to
+ */
+interface Listener {
+	/**
+	 * Called on the main thread for events that affect the registered category
+	 * @param event event with only items in the registered category
+	 */
+	void onItemEvent(ItemEvent event);
+}
+}
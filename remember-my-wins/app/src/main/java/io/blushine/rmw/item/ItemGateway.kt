@@ -1,15 +1,19 @@
 package io.blushine.rmw.item
 
+import java.io.InputStream
+import java.io.OutputStream
+import java.util.concurrent.Future
+
 /**
  * Interface for all Item Gateways
  */
 internal interface ItemGateway {
 	/**
-	 * Add a new category. Will automatically set the category id, the category id won't be set
-	 * if it failed to add the category
-	 * @param category the category to add
+	 * Add several categories in one transaction. The passed categories aren't changed, the
+	 * [CategoryEvent] with all added categories has copies of them with their ids set
+	 * @param categories the categories to add
 	 */
-	fun addCategory(category: Category)
+	fun addCategories(categories: List<Category>)
 
 	/**
 	 * Get all categories
@@ -24,13 +28,15 @@ internal interface ItemGateway {
 	fun updateCategories(categories: List<Category>)
 
 	/**
-	 * Remove a category
-	 * @param category the category to remove
+	 * Remove several categories and their items in one transaction. Sends one [CategoryEvent]
+	 * with all categories
+	 * @param categories the categories to remove
 	 */
-	fun removeCategory(category: Category)
+	fun removeCategories(categories: List<Category>)
 
 	/**
-	 * Add several items. Will automatically set the item id
+	 * Add several items. The passed items aren't changed, the [ItemEvent] with all added items has
+	 * copies of them with their ids set
 	 * @param items the items to add
 	 */
 	fun addItems(items: List<Item>)
@@ -42,6 +48,65 @@ internal interface ItemGateway {
 	 */
 	fun getItems(categoryId: String)
 
+	/**
+	 * Get a page of items in the specified category. Items are ordered by date (newest first) and
+	 * then by id, the page continues directly after the item with the specified date and id.
+	 * @param categoryId the category id to get the items from, set to [GET_ALL_ITEMS] to get from all categories
+	 * @param afterDate date of the last item in the previous page, null to get the first page
+	 * @param afterId id of the last item in the previous page, null to get the first page
+	 * @param limit maximum number of items to get
+	 */
+	fun getItems(categoryId: String, afterDate: Long?, afterId: String?, limit: Int)
+
+	/**
+	 * Get the first page of items in a category at low priority, before the category is shown.
+	 * Sent as [ItemEvent] with [ItemEvent.isPrefetch] set, same as [getItems] otherwise
+	 * @param categoryId the category id to get the items from
+	 * @param limit maximum number of items to get
+	 * @return cancels the prefetch if it hasn't started, null if the prefetch can't be cancelled
+	 */
+	fun prefetchItems(categoryId: String, limit: Int): Future<*>?
+
+	/**
+	 * Search for items with words starting with all words in the query. The result is sent as an
+	 * [ItemSearchEvent] with the best match first
+	 * @param query the words to search for
+	 * @param categoryId the category to search in, set to [GET_ALL_ITEMS] to search all categories
+	 * @param limit maximum number of items to get
+	 */
+	fun searchItems(query: String, categoryId: String, limit: Int)
+
+	/**
+	 * Listen to changes of items in a category made outside of this device. Changes are sent as
+	 * [ItemEvent] with [ItemEvent.isRemoteChange] set. Every call has to be matched with a call to
+	 * [stopListeningToItems]
+	 * @param categoryId the category to listen to
+	 */
+	fun listenToItems(categoryId: String)
+
+	/**
+	 * Stop listening to changes of items in a category
+	 * @param categoryId the category to stop listening to
+	 */
+	fun stopListeningToItems(categoryId: String)
+
+	/**
+	 * Listen to changes of categories made outside of this device. Changes are sent as
+	 * [CategoryEvent] with [CategoryEvent.isRemoteChange] set. Every call has to be matched with a
+	 * call to [stopListeningToCategories]
+	 */
+	fun listenToCategories()
+
+	/**
+	 * Stop listening to changes of categories
+	 */
+	fun stopListeningToCategories()
+
+	/**
+	 * Stop all listeners, call before the gateway is replaced
+	 */
+	fun stopListening()
+
 	/**
 	 * Update all the specified items
 	 * @param items all items to update
@@ -62,4 +127,20 @@ internal interface ItemGateway {
 	 */
 	fun importData(categories: List<Category>, items: List<Item>)
 
+	/**
+	 * Export all categories and items as a JSON backup, see [ItemBackupWriter]. Items are written
+	 * as they are read so all items are never held in memory at once
+	 * @param outputStream where to write the backup, is closed when done
+	 * @param listener gets the progress of the export
+	 */
+	fun exportData(outputStream: OutputStream, listener: BackupListener)
+
+	/**
+	 * Import a JSON backup written by [exportData]. Same as [importData] but items are read and
+	 * stored in chunks of [BACKUP_CHUNK_SIZE]
+	 * @param inputStream the backup to import, is closed when done
+	 * @param listener gets the progress of the import
+	 */
+	fun importData(inputStream: InputStream, listener: BackupListener)
+
 }
\ No newline at end of file
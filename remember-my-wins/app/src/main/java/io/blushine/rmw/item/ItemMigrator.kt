@@ -0,0 +1,114 @@
+package io.blushine.rmw.item
+
+import android.util.Log
+import io.blushine.android.firebase.FirebaseAuth
+import io.blushine.rmw.item.firestore.MigrateToCloudTask
+import io.blushine.rmw.item.firestore.MigrateToLocalTask
+import io.blushine.rmw.settings.StorageLocations
+import io.blushine.rmw.util.SqliteExecutors
+import io.blushine.utils.EventBus
+import java.util.concurrent.CancellationException
+import java.util.concurrent.atomic.AtomicBoolean
+
+private val TAG = ItemMigrator::class.simpleName ?: "INVALID"
+
+/**
+ * Moves all categories and items when the storage location is changed. Both locations store the
+ * data in SQLite, moving to the cloud syncs all local rows and moving to the phone fetches
+ * everything from the cloud and pushes pending changes. The running migration is saved so it's
+ * resumed if the app is stopped, see [ItemPrefsGateway.getPendingMigration]. Moving to the cloud
+ * waits until a user is signed in. Progress is sent as [StorageMigrationEvent]. Only use from the
+ * main thread.
+ */
+internal class ItemMigrator {
+	private val eventBus = EventBus.getInstance()
+	private val syncStore = ItemSyncStore()
+	/** Cancels the running migration, null if no migration is running */
+	private var cancelled: AtomicBoolean? = null
+
+	/**
+	 * Start moving all categories and items to a storage location. A running migration is cancelled
+	 * @param storageLocation where to move the data
+	 */
+	fun migrate(storageLocation: StorageLocations) {
+		cancel()
+		ItemPrefsGateway.setPendingMigration(storageLocation)
+		if (!canMigrate(storageLocation)) {
+			eventBus.post(StorageMigrationEvent(StorageMigrationEvent.State.WAITING_FOR_SIGN_IN, storageLocation))
+			return
+		}
+		start(storageLocation)
+	}
+
+	/**
+	 * Resume the migration that was running when the app was stopped. It's only resumed if it
+	 * moves the data to the current storage location and can be run now, otherwise it's kept
+	 * pending without telling the user again
+	 * @param storageLocation the current storage location
+	 */
+	fun resume(storageLocation: StorageLocations) {
+		val pendingMigration = ItemPrefsGateway.getPendingMigration()
+		if (pendingMigration == storageLocation && canMigrate(storageLocation)) {
+			start(storageLocation)
+		}
+	}
+
+	/**
+	 * @return false if the data can't be moved to the storage location yet
+	 */
+	private fun canMigrate(storageLocation: StorageLocations): Boolean {
+		return storageLocation != StorageLocations.CLOUD || FirebaseAuth.getCurrentUser() != null
+	}
+
+	private fun start(storageLocation: StorageLocations) {
+		val cancelled = AtomicBoolean(false)
+		this.cancelled = cancelled
+
+		val onProgress = { movedCount: Int, totalCount: Int ->
+			SqliteExecutors.postOnMainThread(StorageMigrationEvent(StorageMigrationEvent.State.PROGRESS, storageLocation, movedCount, totalCount))
+		}
+		val task = if (storageLocation == StorageLocations.CLOUD) {
+			MigrateToCloudTask(syncStore, cancelled, onProgress)
+		} else {
+			MigrateToLocalTask(syncStore, cancelled, onProgress)
+		}
+
+		task.run().addOnCompleteListener { completedTask ->
+			// Replaced by a newer migration
+			if (this.cancelled !== cancelled) {
+				return@addOnCompleteListener
+			}
+			this.cancelled = null
+
+			val exception = completedTask.exception
+			val event = when {
+				completedTask.isSuccessful -> {
+					val counts = completedTask.result!!
+					// Moved again the next time the app is started
+					if (counts.isVerified()) {
+						ItemPrefsGateway.setPendingMigration(null)
+					}
+					val movedCount = counts.categoryCount + counts.itemCount
+					StorageMigrationEvent(StorageMigrationEvent.State.COMPLETED, storageLocation, movedCount, movedCount, counts)
+				}
+				exception is CancellationException || cancelled.get() -> {
+					ItemPrefsGateway.setPendingMigration(null)
+					StorageMigrationEvent(StorageMigrationEvent.State.CANCELLED, storageLocation)
+				}
+				else -> {
+					// Resumed the next time the app is started
+					Log.w(TAG, "migrate() — $storageLocation", exception)
+					StorageMigrationEvent(StorageMigrationEvent.State.FAILED, storageLocation)
+				}
+			}
+			eventBus.post(event)
+		}
+	}
+
+	/**
+	 * Stop the running migration after the current chunk. Everything moved until then is kept
+	 */
+	fun cancel() {
+		cancelled?.set(true)
+	}
+}
\ No newline at end of file
@@ -1,6 +1,7 @@
 package io.blushine.rmw.item
 
 import android.content.Context
+import io.blushine.rmw.settings.StorageLocations
 import io.blushine.rmw.util.AppActivity
 
 /**
@@ -8,9 +9,16 @@ import io.blushine.rmw.util.AppActivity
  */
 internal object ItemPrefsGateway {
 	private val ADDED_DEFAULT_CATEGORIES = "added_default_categories"
+	private val PENDING_CATEGORY_REMOVALS = "pending_category_removals"
+	private val SYNC_WATERMARK_PREFIX = "sync_watermark_"
+	private val SYNC_CURSOR_PREFIX = "sync_cursor_"
+	private val PENDING_MIGRATION = "pending_migration"
+	private val STATS_TIME_ZONE = "stats_time_zone"
 	private val PREFERENCE_NAME = "item_preferences"
-	private val preferences = AppActivity.getActivity()
-			.getSharedPreferences(PREFERENCE_NAME, Context.MODE_PRIVATE)
+	// Loaded the first time it's used, usually on a background thread during the startup
+	private val preferences by lazy {
+		AppActivity.getActivity().getSharedPreferences(PREFERENCE_NAME, Context.MODE_PRIVATE)
+	}
 
 	/**
 	 * @return true if we've already added the default categories
@@ -28,4 +36,123 @@ internal object ItemPrefsGateway {
 		editor.putBoolean(ADDED_DEFAULT_CATEGORIES, addedDefaultCategories)
 		editor.apply()
 	}
+
+	/**
+	 * @return categories whose documents were being removed from the cloud when the app was
+	 * stopped. Only the id and order are set
+	 */
+	fun getPendingCategoryRemovals(): List<Category> {
+		val removals = preferences.getStringSet(PENDING_CATEGORY_REMOVALS, null) ?: return listOf()
+		return removals.mapNotNull { removal ->
+			val separatorIndex = removal.indexOf(':')
+			val order = removal.substring(0, Math.max(separatorIndex, 0)).toIntOrNull()
+			if (order != null) {
+				val category = Category()
+				category.order = order
+				category.id = removal.substring(separatorIndex + 1)
+				category
+			} else {
+				null
+			}
+		}
+	}
+
+	/**
+	 * Save that a category is being removed so the removal can be resumed if the app is stopped
+	 * @param category the category that is being removed
+	 */
+	fun addPendingCategoryRemoval(category: Category) {
+		val removals = HashSet(preferences.getStringSet(PENDING_CATEGORY_REMOVALS, null) ?: setOf())
+		removals.add(toPendingRemoval(category))
+		preferences.edit().putStringSet(PENDING_CATEGORY_REMOVALS, removals).apply()
+	}
+
+	/**
+	 * Remove a saved category removal, call when the category has been removed
+	 * @param category the category that was being removed
+	 */
+	fun removePendingCategoryRemoval(category: Category) {
+		val removals = HashSet(preferences.getStringSet(PENDING_CATEGORY_REMOVALS, null) ?: setOf())
+		removals.remove(toPendingRemoval(category))
+		preferences.edit().putStringSet(PENDING_CATEGORY_REMOVALS, removals).apply()
+	}
+
+	/**
+	 * Get the time of the latest fetched change in a synced Firestore collection
+	 * @param collection name of the collection
+	 * @return server time of the latest fetched change, -1 if nothing has been fetched yet
+	 */
+	fun getSyncWatermark(collection: String): Long {
+		return preferences.getLong(SYNC_WATERMARK_PREFIX + collection, -1)
+	}
+
+	/**
+	 * Get where the first sync of a Firestore collection stopped. The first sync fetches all
+	 * documents by id, the watermark is only complete when it has fetched all of them
+	 * @param collection name of the collection
+	 * @return id of the last fetched document, null if the first sync isn't running or is done
+	 */
+	fun getSyncCursor(collection: String): String? {
+		return preferences.getString(SYNC_CURSOR_PREFIX + collection, null)
+	}
+
+	/**
+	 * Set the time of the latest fetched change in a synced Firestore collection
+	 * @param collection name of the collection
+	 * @param watermark server time of the latest fetched change
+	 * @param cursor id of the last fetched document while the first sync hasn't fetched all
+	 * documents, null when it's done
+	 */
+	fun setSyncWatermark(collection: String, watermark: Long, cursor: String? = null) {
+		val editor = preferences.edit()
+		editor.putLong(SYNC_WATERMARK_PREFIX + collection, watermark)
+		if (cursor != null) {
+			editor.putString(SYNC_CURSOR_PREFIX + collection, cursor)
+		} else {
+			editor.remove(SYNC_CURSOR_PREFIX + collection)
+		}
+		editor.apply()
+	}
+
+	/**
+	 * @return the storage location data was being moved to when the app was stopped, null if no
+	 * migration was running
+	 */
+	fun getPendingMigration(): StorageLocations? {
+		val key = preferences.getString(PENDING_MIGRATION, null) ?: return null
+		return StorageLocations.toEnum(key)
+	}
+
+	/**
+	 * Save the storage location data is being moved to so the migration can be resumed
+	 * @param storageLocation the location data is moved to, null when the migration is done
+	 */
+	fun setPendingMigration(storageLocation: StorageLocations?) {
+		val editor = preferences.edit()
+		if (storageLocation != null) {
+			editor.putString(PENDING_MIGRATION, storageLocation.key)
+		} else {
+			editor.remove(PENDING_MIGRATION)
+		}
+		editor.apply()
+	}
+
+	/**
+	 * @return id of the time zone the item stats were counted in, null if not saved yet
+	 */
+	fun getStatsTimeZone(): String? {
+		return preferences.getString(STATS_TIME_ZONE, null)
+	}
+
+	/**
+	 * Save the time zone the item stats were counted in
+	 * @param timeZone id of the time zone
+	 */
+	fun setStatsTimeZone(timeZone: String) {
+		preferences.edit().putString(STATS_TIME_ZONE, timeZone).apply()
+	}
+
+	private fun toPendingRemoval(category: Category): String {
+		return "${category.order}:${category.id}"
+	}
 }
\ No newline at end of file
@@ -1,23 +1,37 @@
 package io.blushine.rmw.item;
 
 import android.content.res.Resources;
+import android.os.Handler;
+import android.os.Looper;
 
 import com.squareup.otto.Subscribe;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
 
+import io.blushine.android.common.ObjectEvent;
 import io.blushine.android.firebase.FirebaseAuth;
 import io.blushine.android.ui.SnackbarHelper;
 import io.blushine.rmw.R;
-import io.blushine.rmw.item.firestore.ItemFirestoreGateway;
 import io.blushine.rmw.settings.SettingsRepo;
 import io.blushine.rmw.settings.StorageLocationSetEvent;
 import io.blushine.rmw.settings.StorageLocations;
 import io.blushine.rmw.util.AppActivity;
+import io.blushine.rmw.util.Counter;
+import io.blushine.rmw.util.Metrics;
 import io.blushine.rmw.util.Sqlite;
+import io.blushine.rmw.util.Startup;
 import io.blushine.utils.EventBus;
 
 import static io.blushine.rmw.item.ItemEventKt.GET_ALL_ITEMS;
@@ -26,7 +40,26 @@ import static io.blushine.rmw.item.ItemEventKt.GET_ALL_ITEMS;
  * Controller for getting celebration items and lists
  */
 class ItemRepo {
+private static final Counter PREFETCHES_CANCELLED = Metrics.counter("ItemRepo.prefetches_cancelled");
+/** Wait for more changes before the snapshot is written */
+private static final long SNAPSHOT_DELAY_MS = 1000;
 private static ItemRepo mInstance = null;
+private final ItemCache mCache = new ItemCache();
+private final ItemMigrator mMigrator = new ItemMigrator();
+/** Both storage locations keep their items in SQLite, the stats are always read from there */
+private final StatsGateway mStatsGateway = new StatsGateway();
+/** Prefetches that can still be cancelled, by category id */
+private final Map<String, Future<?>> mPrefetches = new HashMap<>();
+/** Ids of the categories that are being removed from the cloud and have been shown as such */
+private final Set<String> mShownCategoryRemovals = new HashSet<>();
+private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+private final Runnable mWriteSnapshot = this::writeSnapshot;
+/** Categories of the last response kept up to date with the changes, null until the first response */
+private List<Category> mCategories = null;
+/** Snapshot of the last run until its items have been shown */
+private ItemSnapshot mSnapshot = null;
+/** The category that is shown, its newest items are kept in the snapshot */
+private String mViewedCategoryId = "";
 private ItemGateway mCurrentGateway;
 private List<Item> mUndoItems = null;
 
@@ -36,25 +69,37 @@ private List<Item> mUndoItems = null;
 private ItemRepo() {
 	EventBus.getInstance().register(this);
 	
-	switch (SettingsRepo.INSTANCE.getStorageLocation()) {
+	StorageLocations storageLocation = SettingsRepo.INSTANCE.getStorageLocation();
+	switch (storageLocation) {
 	case CLOUD:
-		mCurrentGateway = new ItemFirestoreGateway();
+		mCurrentGateway = new ItemSyncGateway();
 		break;
 	case LOCAL:
 		mCurrentGateway = new ItemSqliteGateway();
 		break;
 	case NOT_SET:
 		// TODO remove, just for implementation and testing
-		mCurrentGateway = new ItemFirestoreGateway();
+		mCurrentGateway = new ItemSyncGateway();
 		// mCurrentGateway = new ItemEmptyGateway();
 		break;
 	}
 	
+	// Draw the first frame from the snapshot of the last run, the live data is fetched after it
+	ItemSnapshot snapshot = ItemSnapshot.read();
+	if (snapshot != null && snapshot.mStorageLocation.equals(storageLocation.getKey())) {
+		mSnapshot = snapshot;
+		mCategories = new ArrayList<>(snapshot.mCategories);
+		mViewedCategoryId = snapshot.mCategoryId;
+	}
+	
 	// Add default categories if first time
 	if (!ItemPrefsGateway.INSTANCE.hasAddedDefaultCategories()) {
 		createDefaultCategories();
 		ItemPrefsGateway.INSTANCE.setAddedDefaultCategories(true);
 	}
+	
+	// Resume moving the data if the app was stopped during the migration, not needed for the first frame
+	Startup.runAfterFirstDraw(() -> mMigrator.resume(SettingsRepo.INSTANCE.getStorageLocation()));
 }
 
 private void createDefaultCategories() {
@@ -63,25 +108,15 @@ private void createDefaultCategories() {
 	List<Category> defaultCategories = new ArrayList<>(2);
 	Category category = new Category();
 	category.setName(resources.getString(R.string.category_default_1_name));
-	category.setOrder(1);
+	category.setOrder(CategoryOrder.ORDER_GAP);
 	defaultCategories.add(category);
 	
 	category = new Category();
 	category.setName(resources.getString(R.string.category_default_2_name));
-	category.setOrder(2);
+	category.setOrder(2 * CategoryOrder.ORDER_GAP);
 	defaultCategories.add(category);
 	
-	addCategories(defaultCategories);
-}
-
-/**
- * Add new categories. Will automatically set the category id
- * @param categories the categories to add
- */
-private void addCategories(List<Category> categories) {
-	for (Category category : categories) {
-		mCurrentGateway.addCategory(category);
-	}
+	mCurrentGateway.addCategories(defaultCategories);
 }
 
 /**
@@ -98,10 +133,22 @@ static ItemRepo getInstance() {
 @SuppressWarnings("unused")
 @Subscribe
 public void onStorageLocation(StorageLocations storageLocation) {
+	mCache.clear();
+	mCategories = null;
+	mSnapshot = null;
+	mMainHandler.removeCallbacks(mWriteSnapshot);
+	ItemSnapshot.delete();
+	cancelAllPrefetches();
+	mCurrentGateway.stopListening();
+	
 	switch (storageLocation) {
 	case CLOUD:
 		FirebaseAuth.INSTANCE.getCurrentUser();
-		mCurrentGateway = new ItemFirestoreGateway();
+		// Cloud data is stored locally and synced
+		if (!Sqlite.isInitialized()) {
+			Sqlite.init();
+		}
+		mCurrentGateway = new ItemSyncGateway();
 		break;
 	case LOCAL:
 		if (!Sqlite.isInitialized()) {
@@ -113,16 +160,191 @@ public void onStorageLocation(StorageLocations storageLocation) {
 		throw new IllegalStateException("Storage location should never be NOT SET after it being set");
 	}
 	
+	// Both locations read from the same local store, the data is moved in the background
+	mMigrator.migrate(storageLocation);
 	EventBus.getInstance().post(new StorageLocationSetEvent(storageLocation));
 }
 
+@SuppressWarnings("unused")
+@Subscribe
+public void onStorageMigration(StorageMigrationEvent event) {
+	switch (event.getState()) {
+	case COMPLETED:
+		MigrationCounts counts = event.getCounts();
+		if (counts != null && counts.isVerified()) {
+			SnackbarHelper.showSnackbar(R.string.setting_store_location_moved);
+		} else {
+			SnackbarHelper.showSnackbar(R.string.setting_store_location_move_incomplete);
+		}
+		break;
+	
+	case FAILED:
+		SnackbarHelper.showSnackbar(R.string.setting_store_location_move_failed);
+		break;
+	
+	case WAITING_FOR_SIGN_IN:
+		SnackbarHelper.showSnackbar(R.string.setting_store_location_move_sign_in);
+		break;
+	
+	case PROGRESS:
+	case CANCELLED:
+		break;
+	}
+}
+
+@SuppressWarnings("unused")
+@Subscribe
+public void onCategoryRemoveProgress(CategoryRemoveProgressEvent event) {
+	String categoryId = event.getCategory().getId();
+	if (event.isCompleted()) {
+		mShownCategoryRemovals.remove(categoryId);
+	}
+	// Only shown once for each removal and not over the undo snackbar of the removed category
+	else if (!SnackbarHelper.isShownOrQueued() && mShownCategoryRemovals.add(categoryId)) {
+		SnackbarHelper.showSnackbar(R.string.category_remove_cloud_progress);
+	}
+}
+
 /**
  * Get all items from the specified categories, sorted by date. The result (all items) will be sent as a
  * {@link ItemEvent} with the action set as {@link io.blushine.android.common.ObjectEvent.Actions#GET_RESPONSE}.
  * @param categoryId the category to get all items from
  */
 void getItems(@NotNull String categoryId) {
-	mCurrentGateway.getItems(categoryId);
+	List<Item> cachedItems = mCache.getItems(categoryId);
+	if (cachedItems != null) {
+		EventBus.getInstance().post(ItemEvent.allItems(cachedItems, categoryId));
+	} else {
+		mCurrentGateway.getItems(categoryId);
+	}
+}
+
+/**
+ * Get a page of items from the specified category, sorted by date. The result will be sent as a
+ * {@link ItemEvent} with the action set as {@link io.blushine.android.common.ObjectEvent.Actions#GET_RESPONSE}
+ * and {@link ItemEvent#getHasMorePages()} set if there are more items to fetch.
+ * @param categoryId the category to get the items from, {@link ItemEventKt#GET_ALL_ITEMS} to get from all categories
+ * @param afterItem last item of the previous page, null to get the first page
+ * @param limit maximum number of items in the page
+ */
+void getItems(@NotNull String categoryId, @Nullable Item afterItem, int limit) {
+	ItemCache.Page cachedPage = mCache.getItems(categoryId, afterItem, limit);
+	if (cachedPage != null) {
+		boolean isNextPage = afterItem != null;
+		EventBus.getInstance().post(ItemEvent.page(cachedPage.mItems, categoryId, isNextPage, cachedPage.mHasMorePages, cachedPage.mTotalCount));
+	} else if (afterItem != null) {
+		mCurrentGateway.getItems(categoryId, afterItem.getDate(), afterItem.getId(), limit);
+	} else {
+		postSnapshotItems(categoryId);
+		// Fetched at normal priority instead
+		cancelPrefetch(categoryId);
+		mCurrentGateway.getItems(categoryId, null, null, limit);
+	}
+}
+
+/**
+ * Show the items of the snapshot while the first page is fetched, only the first time the
+ * category of the snapshot is shown
+ * @param categoryId the category that is fetched
+ */
+private void postSnapshotItems(String categoryId) {
+	if (mSnapshot != null && mSnapshot.mCategoryId.equals(categoryId)) {
+		ItemSnapshot snapshot = mSnapshot;
+		mSnapshot = null;
+		EventBus.getInstance().post(ItemEvent.snapshot(snapshot.mItems, categoryId, snapshot.mHasMorePages, snapshot.mTotalCount));
+	}
+}
+
+/**
+ * Set the category that is shown. The snapshot keeps its newest items and it's shown first on the
+ * next start
+ * @param category the category that is shown
+ */
+void setViewedCategory(@NotNull Category category) {
+	if (!category.getId().isEmpty() && !category.getId().equals(mViewedCategoryId)) {
+		mViewedCategoryId = category.getId();
+		scheduleSnapshot();
+	}
+}
+
+/**
+ * @return the category that was shown last, null if it isn't known or has been removed
+ */
+@Nullable
+Category getViewedCategory() {
+	if (mCategories != null) {
+		for (Category category : mCategories) {
+			if (category.getId().equals(mViewedCategoryId)) {
+				return category;
+			}
+		}
+	}
+	return null;
+}
+
+/**
+ * Write the snapshot when there haven't been any changes for a while
+ */
+private void scheduleSnapshot() {
+	mMainHandler.removeCallbacks(mWriteSnapshot);
+	mMainHandler.postDelayed(mWriteSnapshot, SNAPSHOT_DELAY_MS);
+}
+
+private void writeSnapshot() {
+	if (mCategories == null) {
+		return;
+	}
+	
+	String categoryId = "";
+	List<Item> items = Collections.emptyList();
+	boolean hasMorePages = false;
+	int totalCount = -1;
+	ItemCache.Page page = mCache.getFirstPage(mViewedCategoryId, CategoryPageFragment.PAGE_SIZE);
+	if (page != null) {
+		categoryId = mViewedCategoryId;
+		items = page.mItems;
+		hasMorePages = page.mHasMorePages;
+		totalCount = page.mTotalCount;
+	}
+	
+	String storageLocation = SettingsRepo.INSTANCE.getStorageLocation().getKey();
+	new ItemSnapshot(storageLocation, mCategories, categoryId, items, hasMorePages, totalCount).write();
+}
+
+/**
+ * Fetch the first page of items in a category into the cache at low priority, so the page is
+ * shown at once when the category is shown. Does nothing if the page is cached or already being
+ * prefetched
+ * @param categoryId the category to get the items from
+ * @param limit maximum number of items in the page
+ */
+void prefetchItems(@NotNull String categoryId, int limit) {
+	Future<?> prefetch = mPrefetches.get(categoryId);
+	if ((prefetch != null && !prefetch.isDone()) || mCache.hasFirstPage(categoryId, limit)) {
+		return;
+	}
+	
+	prefetch = mCurrentGateway.prefetchItems(categoryId, limit);
+	if (prefetch != null) {
+		mPrefetches.put(categoryId, prefetch);
+	}
+}
+
+/**
+ * Cancel prefetching the items in a category. Only prefetches that haven't started can be cancelled
+ * @param categoryId the category to stop prefetching
+ */
+void cancelPrefetch(@NotNull String categoryId) {
+	Future<?> prefetch = mPrefetches.remove(categoryId);
+	if (prefetch != null && prefetch.cancel(false)) {
+		PREFETCHES_CANCELLED.increment();
+	}
+}
+
+private void cancelAllPrefetches() {
+	for (String categoryId : new ArrayList<>(mPrefetches.keySet())) {
+		cancelPrefetch(categoryId);
+	}
 }
 
 @SuppressWarnings("unused")
@@ -139,7 +361,27 @@ public void onItem(ItemEvent event) {
 		mCurrentGateway.removeItems(event.getObjects());
 		break;
 	
+	case GET_RESPONSE:
+		if (event.isPrefetch()) {
+			mPrefetches.remove(event.getCategoryId());
+		}
+		// The live items follow the snapshot
+		if (event.isSnapshot()) {
+			break;
+		}
+		mCache.putItems(event.getCategoryId(), event.getObjects(), event.isNextPage(), event.getHasMorePages(), event.getTotalCount());
+		if (!event.isNextPage() && event.getCategoryId().equals(mViewedCategoryId)) {
+			scheduleSnapshot();
+		}
+		break;
+	
 	case ADDED:
+		mCache.onAdded(event.getObjects());
+		scheduleSnapshot();
+		if (event.isRemoteChange()) {
+			break;
+		}
+		
 		// Added items
 		if (mUndoItems == null) {
 			SnackbarHelper.showSnackbar(R.string.item_add_success);
@@ -152,12 +394,21 @@ public void onItem(ItemEvent event) {
 		break;
 	
 	case EDITED:
-		if (!SnackbarHelper.isShownOrQueued()) {
+		mCache.onEdited(event.getObjects());
+		scheduleSnapshot();
+		
+		if (!event.isRemoteChange() && !SnackbarHelper.isShownOrQueued()) {
 			SnackbarHelper.showSnackbar(R.string.item_edit_success);
 		}
 		break;
 	
 	case REMOVED:
+		mCache.onRemoved(event.getObjects());
+		scheduleSnapshot();
+		if (event.isRemoteChange()) {
+			break;
+		}
+		
 		SnackbarHelper.showSnackbarUndo(R.string.item_remove_success, v -> {
 			mUndoItems = event.getObjects();
 			mCurrentGateway.addItems(event.getObjects());
@@ -185,6 +436,12 @@ public void onItem(ItemEvent event) {
 		break;
 	
 	case GET_FAILED:
+		// The page is fetched again when it's shown
+		if (event.isPrefetch()) {
+			mPrefetches.remove(event.getCategoryId());
+			break;
+		}
+		
 		SnackbarHelper.showSnackbar(R.string.item_get_failed);
 		break;
 	}
@@ -192,18 +449,147 @@ public void onItem(ItemEvent event) {
 
 /**
  * Get all categories. The result (all categories) will be sent as a {@link CategoryEvent} with the
- * action set as {@link io.blushine.android.common.ObjectEvent.Actions#GET_RESPONSE}.
+ * action set as {@link io.blushine.android.common.ObjectEvent.Actions#GET_RESPONSE}. If the
+ * categories are cached they're sent directly, then they're fetched again and sent a second time.
  */
 void getCategories() {
+	if (mCategories != null) {
+		EventBus.getInstance().post(new CategoryEvent(ObjectEvent.Actions.GET_RESPONSE, copyCategories(mCategories)));
+	}
 	mCurrentGateway.getCategories();
 }
 
+/**
+ * Update the cached categories and the snapshot with added, edited or removed categories
+ * @param categories the changed categories
+ * @param isRemoved true if the categories were removed
+ */
+private void updateCachedCategories(List<Category> categories, boolean isRemoved) {
+	if (mCategories == null) {
+		return;
+	}
+	
+	mCategories.removeAll(categories);
+	if (!isRemoved) {
+		mCategories.addAll(copyCategories(categories));
+		Collections.sort(mCategories);
+	}
+	scheduleSnapshot();
+}
+
+/**
+ * Receivers change the categories they get, so each gets its own copies
+ * @param categories the categories to copy
+ * @return copies of the categories
+ */
+private static List<Category> copyCategories(List<Category> categories) {
+	List<Category> copies = new ArrayList<>(categories.size());
+	for (Category category : categories) {
+		Category copy = new Category();
+		copy.set(category);
+		copies.add(copy);
+	}
+	return copies;
+}
+
+/**
+ * Listen to changes of items in a category made on other devices. The changes are sent as
+ * {@link ItemEvent}s with {@link ItemEvent#isRemoteChange()} set. Call
+ * {@link #stopListeningToItems(String)} when done
+ * @param categoryId the category to listen to
+ */
+void listenToItems(@NotNull String categoryId) {
+	mCurrentGateway.listenToItems(categoryId);
+}
+
+/**
+ * Stop listening to changes of items in a category
+ * @param categoryId the category to stop listening to
+ */
+void stopListeningToItems(@NotNull String categoryId) {
+	mCurrentGateway.stopListeningToItems(categoryId);
+}
+
+/**
+ * Listen to changes of categories made on other devices. The changes are sent as
+ * {@link CategoryEvent}s with {@link CategoryEvent#isRemoteChange()} set. Call
+ * {@link #stopListeningToCategories()} when done
+ */
+void listenToCategories() {
+	mCurrentGateway.listenToCategories();
+}
+
+/**
+ * Stop listening to changes of categories
+ */
+void stopListeningToCategories() {
+	mCurrentGateway.stopListeningToCategories();
+}
+
+/**
+ * Search for items. The result will be sent as an {@link ItemSearchEvent} with the best match first
+ * @param query the words to search for, items with words starting with all the words are found
+ * @param categoryId the category to search in, null to search all categories
+ * @param limit maximum number of items to get
+ */
+void searchItems(@NotNull String query, @Nullable String categoryId, int limit) {
+	mCurrentGateway.searchItems(query, categoryId != null ? categoryId : GET_ALL_ITEMS, limit);
+}
+
+/**
+ * Get statistics of the items in a category. The result will be sent as a {@link StatsEvent}
+ * @param categoryId the category, null for all categories
+ */
+void getStats(@Nullable String categoryId) {
+	mStatsGateway.getStats(categoryId != null ? categoryId : GET_ALL_ITEMS);
+}
+
+/**
+ * Export all categories and items as a JSON backup
+ * @param outputStream where to write the backup, is closed when done
+ * @param listener gets the progress of the export
+ */
+void exportData(@NotNull OutputStream outputStream, @NotNull BackupListener listener) {
+	mCurrentGateway.exportData(outputStream, listener);
+}
+
+/**
+ * Import a JSON backup. Categories are fetched again when the import is done
+ * @param inputStream the backup to import, is closed when done
+ * @param listener gets the progress of the import
+ */
+void importData(@NotNull InputStream inputStream, @NotNull BackupListener listener) {
+	mCurrentGateway.importData(inputStream, new BackupListener() {
+		@Override
+		public void onProgress(int itemCount) {
+			listener.onProgress(itemCount);
+		}
+		
+		@Override
+		public void onComplete(int itemCount) {
+			mCache.clear();
+			mCategories = null;
+			getCategories();
+			listener.onComplete(itemCount);
+		}
+		
+		@Override
+		public void onFailed(@NotNull Exception exception) {
+			// Chunks before the failure have been imported
+			mCache.clear();
+			mCategories = null;
+			getCategories();
+			listener.onFailed(exception);
+		}
+	});
+}
+
 /**
  * Get all items from all categories, sorted by date. The result (all items) will be sent as a
  * {@link ItemEvent} with the action set as {@link io.blushine.android.common.ObjectEvent.Actions#GET_RESPONSE}.
  */
 void getItems() {
-	mCurrentGateway.getItems(GET_ALL_ITEMS);
+	getItems(GET_ALL_ITEMS);
 }
 
 @SuppressWarnings("unused")
@@ -211,29 +597,42 @@ void getItems() {
 public void onCategory(CategoryEvent event) {
 	switch (event.getAction()) {
 	case ADD:
-		addCategories(event.getObjects());
+		mCurrentGateway.addCategories(event.getObjects());
 		break;
 	case EDIT:
 		mCurrentGateway.updateCategories(event.getObjects());
 		break;
 	case REMOVE:
-		removeCategories(event.getObjects());
+		mCurrentGateway.removeCategories(event.getObjects());
+		break;
+	
+	case GET_RESPONSE:
+		mCategories = copyCategories(event.getObjects());
+		scheduleSnapshot();
 		break;
 	
 	case ADDED:
-		if (!SnackbarHelper.isShownOrQueued()) {
+		updateCachedCategories(event.getObjects(), false);
+		if (!event.isRemoteChange() && !SnackbarHelper.isShownOrQueued()) {
 			SnackbarHelper.showSnackbar(R.string.category_add_success);
 		}
 		break;
 	
 	case EDITED:
-		if (!SnackbarHelper.isShownOrQueued()) {
+		updateCachedCategories(event.getObjects(), false);
+		if (!event.isRemoteChange() && !SnackbarHelper.isShownOrQueued()) {
 			SnackbarHelper.showSnackbar(R.string.category_edit_success);
 		}
 		break;
 	
 	case REMOVED:
-		SnackbarHelper.showSnackbar(R.string.category_remove_success);
+		updateCachedCategories(event.getObjects(), true);
+		for (Category category : event.getObjects()) {
+			mCache.onCategoryRemoved(category);
+		}
+		if (!event.isRemoteChange()) {
+			SnackbarHelper.showSnackbar(R.string.category_remove_success);
+		}
 		break;
 	
 	case ADD_FAILED:
@@ -253,14 +652,4 @@ public void onCategory(CategoryEvent event) {
 		break;
 	}
 }
-
-/**
- * Remove categories
- * @param categories the categories to remove.
- */
-private void removeCategories(List<Category> categories) {
-	for (Category category : categories) {
-		mCurrentGateway.removeCategory(category);
-	}
-}
 }
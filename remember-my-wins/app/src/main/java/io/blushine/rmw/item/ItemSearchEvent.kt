@@ -0,0 +1,11 @@
+package io.blushine.rmw.item
+
+import io.blushine.android.common.ObjectEvent
+
+/**
+ * Search result event. Kept separate from [ItemEvent] so results aren't treated as fetched items
+ * @param query the search query
+ * @param categoryId the category that was searched, [GET_ALL_ITEMS] if all categories were searched
+ * @param items the matching items, best match first
+ */
+internal class ItemSearchEvent @JvmOverloads constructor(action: Actions, val query: String, val categoryId: String = GET_ALL_ITEMS, items: List<Item> = listOf()) : ObjectEvent<Item>(action, items)
@@ -0,0 +1,123 @@
+package io.blushine.rmw.item;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+import static io.blushine.rmw.item.ItemKt.NEWEST_FIRST;
+
+/**
+ * Helpers for ranking full-text search results. Words are matched by prefix, see
+ * {@link #tokenize(String)}, and scored with {@link #score(int, int, int)}
+ */
+class ItemSearchRanking {
+private ItemSearchRanking() {}
+
+/**
+ * Split text into lower case words. Everything that isn't a letter or digit separates words
+ * @param text the text to split
+ * @return all words in the text, in order
+ */
+@NotNull
+static List<String> tokenize(@NotNull String text) {
+	List<String> words = new ArrayList<>();
+	String lowerCaseText = text.toLowerCase(Locale.ROOT);
+	int wordStart = -1;
+	for (int i = 0; i <= lowerCaseText.length(); ++i) {
+		boolean isWordChar = i < lowerCaseText.length() && Character.isLetterOrDigit(lowerCaseText.charAt(i));
+		if (isWordChar && wordStart == -1) {
+			wordStart = i;
+		} else if (!isWordChar && wordStart != -1) {
+			words.add(lowerCaseText.substring(wordStart, i));
+			wordStart = -1;
+		}
+	}
+	return words;
+}
+
+/**
+ * Rank score for a matched word, a TF-IDF weight where rare words count more
+ * @param hitsInItem number of times the word was found in the item
+ * @param itemsWithHits number of items that contain the word
+ * @param itemCount total number of items
+ * @return score of the word for the item
+ */
+static double score(int hitsInItem, int itemsWithHits, int itemCount) {
+	if (itemsWithHits <= 0) {
+		return 0;
+	}
+	return hitsInItem * Math.log(1 + (double) itemCount / itemsWithHits);
+}
+
+/**
+ * Keeps the highest scored items. Items with the same score are ordered by {@link ItemKt#NEWEST_FIRST}
+ */
+static class Ranking {
+	private final int mLimit;
+	/** Lowest score first so the worst item can be removed when the ranking is full */
+	private final PriorityQueue<ScoredItem> mItems;
+	
+	/**
+	 * @param limit max number of items to keep
+	 */
+	Ranking(int limit) {
+		mLimit = limit;
+		mItems = new PriorityQueue<>(Math.max(1, limit + 1), Collections.reverseOrder());
+	}
+	
+	/**
+	 * Add an item to the ranking, skipped if the ranking is full of better items
+	 * @param item the matched item
+	 * @param score score of the match, higher is better
+	 */
+	void add(@NotNull Item item, double score) {
+		if (mLimit <= 0) {
+			return;
+		}
+		mItems.add(new ScoredItem(item, score));
+		if (mItems.size() > mLimit) {
+			mItems.poll();
+		}
+	}
+	
+	/**
+	 * @return the ranked items, best match first
+	 */
+	@NotNull
+	List<Item> getItems() {
+		List<ScoredItem> scoredItems = new ArrayList<>(mItems);
+		Collections.sort(scoredItems);
+		List<Item> items = new ArrayList<>(scoredItems.size());
+		for (ScoredItem scoredItem : scoredItems) {
+			items.add(scoredItem.mItem);
+		}
+		return items;
+	}
+}
+
+/**
+ * Item with a score, sorts the best match first
+ */
+private static class ScoredItem implements Comparable<ScoredItem> {
+	final Item mItem;
+	final double mScore;
+	
+	ScoredItem(Item item, double score) {
+		mItem = item;
+		mScore = score;
+	}
+	
+	@Override
+	public int compareTo(@NotNull ScoredItem other) {
+		int scoreDiff = Double.compare(other.mScore, mScore);
+		if (scoreDiff != 0) {
+			return scoreDiff;
+		}
+		return NEWEST_FIRST.compare(mItem, other.mItem);
+	}
+}
+}
@@ -0,0 +1,247 @@
+package io.blushine.rmw.item;
+
+import android.util.Log;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.blushine.rmw.util.AppActivity;
+import io.blushine.rmw.util.MeasuredOperation;
+import io.blushine.rmw.util.Metrics;
+
+/**
+ * Snapshot of the categories and the newest items of the last viewed category, so the first frame
+ * after a cold start is drawn without waiting for the gateway. Stored in a compact binary file that
+ * is memory mapped when it's read. The snapshot is only shown until the live data has been fetched,
+ * it's never put in the {@link ItemCache}. The file is written on a background thread.
+ */
+class ItemSnapshot {
+private static final String TAG = ItemSnapshot.class.getSimpleName();
+private static final String FILE_NAME = "item_snapshot.bin";
+/** "RMWS" */
+private static final int MAGIC = 0x524d5753;
+private static final int VERSION = 1;
+private static final MeasuredOperation READ = Metrics.operation(TAG + ".read");
+private static final MeasuredOperation WRITE = Metrics.operation(TAG + ".write");
+/** Writes and deletes the file in the order they were requested */
+private static final ExecutorService mWriter = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "snapshot-writer"));
+final String mStorageLocation;
+final List<Category> mCategories;
+/** The last viewed category, empty if there are no items in the snapshot */
+final String mCategoryId;
+/** The newest items in the last viewed category, sorted by {@link ItemKt#NEWEST_FIRST} */
+final List<Item> mItems;
+final boolean mHasMorePages;
+/** Number of items in the category, -1 if not known */
+final int mTotalCount;
+
+/**
+ * @param storageLocation key of the storage location the data was read from
+ * @param categories all categories
+ * @param categoryId the last viewed category, empty if there are no items
+ * @param items the newest items in the category
+ * @param hasMorePages true if there are more items in the category
+ * @param totalCount number of items in the category, -1 if not known
+ */
+ItemSnapshot(@NotNull String storageLocation, @NotNull List<Category> categories, @NotNull String categoryId, @NotNull List<Item> items, boolean hasMorePages, int totalCount) {
+	mStorageLocation = storageLocation;
+	mCategories = categories;
+	mCategoryId = categoryId;
+	mItems = items;
+	mHasMorePages = hasMorePages;
+	mTotalCount = totalCount;
+}
+
+private static File getFile() {
+	return new File(AppActivity.getActivity().getNoBackupFilesDir(), FILE_NAME);
+}
+
+/**
+ * Read the snapshot. The file is small and memory mapped so it can be read on the main thread
+ * @return the snapshot, null if there is no snapshot or it can't be read
+ */
+@Nullable
+static ItemSnapshot read() {
+	File file = getFile();
+	if (!file.exists()) {
+		return null;
+	}
+	
+	long startedAt = READ.begin();
+	try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"); FileChannel channel = randomAccessFile.getChannel()) {
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		ItemSnapshot snapshot = fromBuffer(buffer);
+		READ.recordRows(snapshot.mCategories.size() + snapshot.mItems.size());
+		return snapshot;
+	} catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+		Log.w(TAG, "read()", e);
+		READ.recordFailure();
+		delete();
+		return null;
+	} finally {
+		READ.end(startedAt);
+	}
+}
+
+/**
+ * Write the snapshot in the background. The file is replaced when the whole snapshot has been
+ * written so a snapshot is never read half written
+ */
+void write() {
+	// Serialized here, the categories and items are only used on the main thread
+	byte[] bytes = toBytes();
+	mWriter.execute(WRITE.measure(() -> {
+		File file = getFile();
+		File tempFile = new File(file.getPath() + ".tmp");
+		try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+			outputStream.write(bytes);
+			outputStream.getFD().sync();
+		} catch (IOException e) {
+			Log.w(TAG, "write()", e);
+			WRITE.recordFailure();
+			tempFile.delete();
+			return;
+		}
+		
+		if (!tempFile.renameTo(file)) {
+			Log.w(TAG, "write() — Failed to replace the snapshot");
+			WRITE.recordFailure();
+			tempFile.delete();
+		}
+	}));
+}
+
+/**
+ * Delete the snapshot in the background, after the snapshots that are being written
+ */
+static void delete() {
+	File file = getFile();
+	mWriter.execute(() -> {
+		if (file.exists() && !file.delete()) {
+			Log.w(TAG, "delete() — Failed to delete the snapshot");
+		}
+	});
+}
+
+private static ItemSnapshot fromBuffer(ByteBuffer buffer) {
+	if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+		throw new IllegalArgumentException("Not a snapshot or an old version");
+	}
+	
+	String storageLocation = getString(buffer);
+	int categoryCount = getCount(buffer);
+	List<Category> categories = new ArrayList<>(categoryCount);
+	for (int i = 0; i < categoryCount; ++i) {
+		Category category = new Category();
+		category.setUserId(getString(buffer));
+		category.setId(getString(buffer));
+		category.setName(getString(buffer));
+		category.setOrder(buffer.getInt());
+		categories.add(category);
+	}
+	
+	String categoryId = getString(buffer);
+	boolean hasMorePages = buffer.get() != 0;
+	int totalCount = buffer.getInt();
+	int itemCount = getCount(buffer);
+	List<Item> items = new ArrayList<>(itemCount);
+	for (int i = 0; i < itemCount; ++i) {
+		Item item = new Item();
+		item.setUserId(getString(buffer));
+		item.setId(getString(buffer));
+		item.setCategoryId(categoryId);
+		item.setText(getString(buffer));
+		item.setDate(buffer.getLong());
+		items.add(item);
+	}
+	
+	return new ItemSnapshot(storageLocation, categories, categoryId, items, hasMorePages, totalCount);
+}
+
+private byte[] toBytes() {
+	List<byte[]> strings = new ArrayList<>();
+	strings.add(mStorageLocation.getBytes(StandardCharsets.UTF_8));
+	for (Category category : mCategories) {
+		strings.add(category.getUserId().getBytes(StandardCharsets.UTF_8));
+		strings.add(category.getId().getBytes(StandardCharsets.UTF_8));
+		strings.add(category.getName().getBytes(StandardCharsets.UTF_8));
+	}
+	strings.add(mCategoryId.getBytes(StandardCharsets.UTF_8));
+	for (Item item : mItems) {
+		strings.add(item.getUserId().getBytes(StandardCharsets.UTF_8));
+		strings.add(item.getId().getBytes(StandardCharsets.UTF_8));
+		strings.add(item.getText().getBytes(StandardCharsets.UTF_8));
+	}
+	
+	// Magic, version, category count, category orders, has more pages, total count, item count and item dates
+	int size = 4 + 4 + 4 + 4 * mCategories.size() + 1 + 4 + 4 + 8 * mItems.size();
+	for (byte[] string : strings) {
+		size += 4 + string.length;
+	}
+	
+	ByteBuffer buffer = ByteBuffer.allocate(size);
+	int stringIndex = 0;
+	buffer.putInt(MAGIC);
+	buffer.putInt(VERSION);
+	putString(buffer, strings.get(stringIndex++));
+	buffer.putInt(mCategories.size());
+	for (Category category : mCategories) {
+		putString(buffer, strings.get(stringIndex++));
+		putString(buffer, strings.get(stringIndex++));
+		putString(buffer, strings.get(stringIndex++));
+		buffer.putInt(category.getOrder());
+	}
+	
+	putString(buffer, strings.get(stringIndex++));
+	buffer.put((byte) (mHasMorePages ? 1 : 0));
+	buffer.putInt(mTotalCount);
+	buffer.putInt(mItems.size());
+	for (Item item : mItems) {
+		putString(buffer, strings.get(stringIndex++));
+		putString(buffer, strings.get(stringIndex++));
+		putString(buffer, strings.get(stringIndex++));
+		buffer.putLong(item.getDate());
+	}
+	return buffer.array();
+}
+
+private static void putString(ByteBuffer buffer, byte[] string) {
+	buffer.putInt(string.length);
+	buffer.put(string);
+}
+
+/**
+ * @return a count that fits in the rest of the buffer
+ */
+private static int getCount(ByteBuffer buffer) {
+	int count = buffer.getInt();
+	if (count < 0 || count > buffer.remaining()) {
+		throw new IllegalArgumentException("Invalid count " + count);
+	}
+	return count;
+}
+
+private static String getString(ByteBuffer buffer) {
+	int length = buffer.getInt();
+	if (length < 0 || length > buffer.remaining()) {
+		throw new IllegalArgumentException("Invalid string length " + length);
+	}
+	byte[] string = new byte[length];
+	buffer.get(string);
+	return new String(string, StandardCharsets.UTF_8);
+}
+}
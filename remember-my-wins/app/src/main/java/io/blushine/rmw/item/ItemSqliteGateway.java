@@ -1,195 +1,404 @@
 package io.blushine.rmw.item;
 
-import android.content.ContentValues;
 import android.content.res.Resources;
 import android.database.Cursor;
-import android.os.AsyncTask;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
 import android.util.Log;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.sql.SQLException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Future;
 
 import io.blushine.android.common.ObjectEvent;
 import io.blushine.android.sqlite.SqliteGateway;
 import io.blushine.rmw.R;
 import io.blushine.rmw.util.AppActivity;
-import io.blushine.utils.EventBus;
+import io.blushine.rmw.util.MeasuredOperation;
+import io.blushine.rmw.util.Metrics;
+import io.blushine.rmw.util.Sqlite;
+import io.blushine.rmw.util.SqliteExecutors;
 
 /**
  * Gateway for getting categories and items
  */
 class ItemSqliteGateway extends SqliteGateway implements ItemGateway {
 private static final String TAG = ItemSqliteGateway.class.getSimpleName();
-private final EventBus mEventBus = EventBus.getInstance();
+private static final MeasuredOperation ADD_CATEGORIES = Metrics.operation(TAG + ".addCategories");
+private static final MeasuredOperation GET_CATEGORIES = Metrics.operation(TAG + ".getCategories");
+private static final MeasuredOperation UPDATE_CATEGORIES = Metrics.operation(TAG + ".updateCategories");
+private static final MeasuredOperation REMOVE_CATEGORIES = Metrics.operation(TAG + ".removeCategories");
+private static final MeasuredOperation ADD_ITEMS = Metrics.operation(TAG + ".addItems");
+private static final MeasuredOperation GET_ITEMS = Metrics.operation(TAG + ".getItems");
+private static final MeasuredOperation GET_ITEMS_PAGE = Metrics.operation(TAG + ".getItemsPage");
+private static final MeasuredOperation PREFETCH_ITEMS = Metrics.operation(TAG + ".prefetchItems");
+private static final MeasuredOperation SEARCH_ITEMS = Metrics.operation(TAG + ".searchItems");
+private static final MeasuredOperation UPDATE_ITEMS = Metrics.operation(TAG + ".updateItems");
+private static final MeasuredOperation REMOVE_ITEMS = Metrics.operation(TAG + ".removeItems");
+private static final MeasuredOperation IMPORT_DATA = Metrics.operation(TAG + ".importData");
+private static final MeasuredOperation IMPORT_BACKUP = Metrics.operation(TAG + ".importBackup");
+private static final MeasuredOperation EXPORT_BACKUP = Metrics.operation(TAG + ".exportBackup");
+/** Records changes of synced rows in the outbox */
+private final ItemSyncStore mSyncStore;
+/** True if new rows are synced */
+private final boolean mIsSynced;
+/** Reads the item counts for the get responses */
+private final StatsGateway mStatsGateway = new StatsGateway();
+private Statements mStatements = null;
+
+/**
+ * Gateway for local storage. New rows aren't synced, but changes of rows that have been synced
+ * before are still recorded so they are pushed if the cloud is used again
+ */
+ItemSqliteGateway() {
+	this(new ItemSyncStore(), false);
+}
+
+/**
+ * @param syncStore records changes of synced rows in the outbox
+ * @param isSynced true if new rows should be synced
+ */
+ItemSqliteGateway(@NotNull ItemSyncStore syncStore, boolean isSynced) {
+	mSyncStore = syncStore;
+	mIsSynced = isSynced;
+}
 
 private static String idToString(long id) {
 	return Long.toString(id);
 }
 
-public void addCategory(@NotNull Category category) {
-	Resources resources = AppActivity.getActivity().getResources();
-	
-	
-	// Update categories after this order
-	if (category.getOrder() > 0) {
-		try {
-			String sql = "UPDATE " + resources.getString(R.string.table_category) + " SET " +
-					resources.getString(R.string.table_category_order) + "=" + resources.getString(R.string.table_category_order) + "+1 " +
-					"WHERE " +
-					resources.getString(R.string.table_category_order) + ">=" + category.getOrder();
-			execSQL(sql);
-		} catch (SQLException e) {
-			Log.e(TAG, "removeCategory() — Invalid SQL syntax", e);
-		}
+/**
+ * Convert an insert row id to an id string
+ * @param id the row id returned from an insert
+ * @return id as a string, empty string if the insert failed
+ */
+private static String insertIdToString(long id) {
+	if (id != -1) {
+		return idToString(id);
+	} else {
+		return "";
 	}
-	
-	
-	ContentValues contentValues = new ContentValues();
-	contentValues.put(resources.getString(R.string.table_category_order), category.getOrder());
-	contentValues.put(resources.getString(R.string.table_category_name), category.getName());
-	
-	
-	long id = insert(resources.getString(R.string.table_category), contentValues);
-	category.setId(idToString(id));
-	
-	mEventBus.post(new CategoryEvent(ObjectEvent.Actions.ADDED, category));
 }
 
-public void getCategories() {
-	new GetCategoryTask().execute(this);
+private static long idToLong(String id) {
+	return Long.parseLong(id);
 }
 
-@Override
-public void updateCategories(@NotNull List<Category> categories) {
+/**
+ * @return the write statements, creates them the first time this is called. Only call this from
+ * the writer thread
+ */
+private Statements getStatements() {
+	if (mStatements == null) {
+		mStatements = new Statements();
+	}
+	return mStatements;
+}
+
+/**
+ * Run writes inside a transaction. The transaction is rolled back if the writes throw
+ * @param writes the writes to run
+ */
+private void runInTransaction(Runnable writes) {
 	beginTransaction();
-	
-	for (Category category : categories) {
-		updateCategory(category);
+	try {
+		writes.run();
+		setTransactionSuccessful();
+	} finally {
+		endTransaction();
 	}
-	
-	setTransactionSuccessful();
-	endTransaction();
-	
-	mEventBus.post(new CategoryEvent(ObjectEvent.Actions.EDITED, categories));
 }
 
-private void updateCategory(@NotNull Category category) {
-	Resources resources = AppActivity.getActivity().getResources();
-	
-	ContentValues contentValues = new ContentValues(2);
-	contentValues.put(resources.getString(R.string.table_category_name), category.getName());
-	contentValues.put(resources.getString(R.string.table_category_order), category.getOrder());
-	
-	String table = resources.getString(R.string.table_category);
-	String where = resources.getString(R.string.table_category_id) + "=" + category.getId();
-	update(table, contentValues, where);
+/**
+ * @return remote id for a new row, null if new rows aren't synced
+ */
+@Nullable
+private String newRemoteId() {
+	return mIsSynced ? ItemSyncStore.newRemoteId() : null;
 }
 
-private static class GetCategoryTask extends AsyncTask<ItemSqliteGateway, Void, List<Category>> {
-	@Override
-	protected List<Category> doInBackground(ItemSqliteGateway... itemSqliteGateways) {
-		ItemSqliteGateway itemSqliteGateway = itemSqliteGateways[0];
-		Resources resources = AppActivity.getActivity().getResources();
-		
-		String sql = "SELECT " +
-				resources.getString(R.string.table_category_id) + ", " +
-				resources.getString(R.string.table_category_name) + ", " +
-				resources.getString(R.string.table_category_order) +
-				" FROM " + resources.getString(R.string.table_category) +
-				" ORDER BY " + resources.getString(R.string.table_category_order) + " ASC";
-		
-		Cursor cursor = itemSqliteGateway.rawQuery(sql);
-		List<Category> categories = new ArrayList<>(cursor.getCount());
-		while (cursor.moveToNext()) {
-			Category category = new Category();
-			int i = 0;
-			category.setId(idToString(cursor.getLong(i++)));
-			category.setName(cursor.getString(i++));
-			category.setOrder(cursor.getInt(i));
-			
-			categories.add(category);
-		}
-		itemSqliteGateway.close(cursor);
-		
-		return categories;
+private void recordCategoryChange(@NotNull Category category, @NotNull SyncOperation operation, long updatedAt) {
+	mSyncStore.recordCategoryChange(idToLong(category.getId()), operation, updatedAt);
+}
+
+private void recordItemChange(@NotNull Item item, @NotNull SyncOperation operation, long updatedAt) {
+	mSyncStore.recordItemChange(idToLong(item.getId()), operation, updatedAt);
+}
+
+/**
+ * Post an event on the main thread
+ * @param event the event to post
+ */
+private static void postEvent(Object event) {
+	SqliteExecutors.postOnMainThread(event);
+}
+
+@Override
+public void addCategories(@NotNull List<Category> categories) {
+	// The ids are set on the writer thread, the caller's categories may still be used on the main thread
+	List<Category> addedCategories = new ArrayList<>(categories.size());
+	for (Category category : categories) {
+		Category addedCategory = new Category();
+		addedCategory.set(category);
+		addedCategories.add(addedCategory);
 	}
 	
-	@Override
-	protected void onPostExecute(List<Category> categories) {
-		EventBus.getInstance().post(new CategoryEvent(ObjectEvent.Actions.GET_RESPONSE, categories));
+	SqliteExecutors.write(ADD_CATEGORIES.measure(() -> {
+		runInTransaction(() -> {
+			for (Category category : addedCategories) {
+				insertCategory(category);
+			}
+		});
+		ADD_CATEGORIES.recordRows(addedCategories.size());
+		postEvent(new CategoryEvent(ObjectEvent.Actions.ADDED, addedCategories));
+	}), e -> {
+		Log.e(TAG, "addCategories()", e);
+		ADD_CATEGORIES.recordFailure();
+		postEvent(new CategoryEvent(ObjectEvent.Actions.ADD_FAILED, categories));
+	});
+}
+
+/**
+ * Insert a category. Other categories keep their order as the order is sparse, see
+ * {@link CategoryOrder}. Call inside a transaction
+ * @param category the category to add, will set the category id
+ * @throws SQLiteException if the category couldn't be added
+ */
+private void insertCategory(@NotNull Category category) {
+	long updatedAt = System.currentTimeMillis();
+	long id = getStatements().insertCategory(category, newRemoteId(), updatedAt);
+	category.setId(insertIdToString(id));
+	if (category.getId().isEmpty()) {
+		throw new SQLiteException("Failed to add category " + category.getName());
 	}
+	recordCategoryChange(category, SyncOperation.UPSERT, updatedAt);
+}
+
+public void getCategories() {
+	SqliteExecutors.read(GET_CATEGORIES.measure(() -> {
+		List<Category> categories = queryCategories();
+		GET_CATEGORIES.recordRows(categories.size());
+		postEvent(new CategoryEvent(ObjectEvent.Actions.GET_RESPONSE, categories));
+	}), e -> {
+		Log.e(TAG, "getCategories()", e);
+		GET_CATEGORIES.recordFailure();
+		postEvent(new CategoryEvent(ObjectEvent.Actions.GET_FAILED));
+	});
 }
 
-public void removeCategory(@NotNull Category category) {
+/**
+ * @return all categories sorted by order
+ */
+private List<Category> queryCategories() {
 	Resources resources = AppActivity.getActivity().getResources();
 	
-	beginTransaction();
-	
-	String table = resources.getString(R.string.table_category);
-	String where = resources.getString(R.string.table_category_id) + "=" + category.getId();
-	delete(table, where);
-	
-	// Update order of categories after this category
-	try {
-		String sql = "UPDATE " + table + " SET " +
-				resources.getString(R.string.table_category_order) + "=" + resources.getString(R.string.table_category_order) + "-1 " +
-				"WHERE " +
-				resources.getString(R.string.table_category_order) + ">" + category.getOrder();
-		execSQL(sql);
-	} catch (SQLException e) {
-		Log.e(TAG, "removeCategory() — Invalid SQL syntax", e);
-	}
+	String sql = "SELECT " +
+			resources.getString(R.string.table_category_id) + ", " +
+			resources.getString(R.string.table_category_name) + ", " +
+			resources.getString(R.string.table_category_order) +
+			" FROM " + resources.getString(R.string.table_category) +
+			" ORDER BY " + resources.getString(R.string.table_category_order) + " ASC";
 	
-	// Remove all items in the category
-	try {
-		String sql = "DELETE FROM " + resources.getString(R.string.table_item) +
-				"WHERE " +
-				resources.getString(R.string.table_category_id) + "=" + category.getId();
-		execSQL(sql);
-	} catch (SQLException e) {
-		Log.e(TAG, "removeCategory() — Invalid SQL syntax", e);
+	Cursor cursor = rawQuery(sql);
+	List<Category> categories = new ArrayList<>(cursor.getCount());
+	while (cursor.moveToNext()) {
+		Category category = new Category();
+		int i = 0;
+		category.setId(idToString(cursor.getLong(i++)));
+		category.setName(cursor.getString(i++));
+		category.setOrder(cursor.getInt(i));
+		
+		categories.add(category);
 	}
+	close(cursor);
 	
-	setTransactionSuccessful();
-	endTransaction();
-	
-	mEventBus.post(new CategoryEvent(ObjectEvent.Actions.REMOVED, category));
+	return categories;
+}
+
+@Override
+public void updateCategories(@NotNull List<Category> categories) {
+	SqliteExecutors.write(UPDATE_CATEGORIES.measure(() -> {
+		Statements statements = getStatements();
+		long updatedAt = System.currentTimeMillis();
+		runInTransaction(() -> {
+			for (Category category : categories) {
+				statements.updateCategory(category, updatedAt);
+				recordCategoryChange(category, SyncOperation.UPSERT, updatedAt);
+			}
+		});
+		UPDATE_CATEGORIES.recordRows(categories.size());
+		postEvent(new CategoryEvent(ObjectEvent.Actions.EDITED, categories));
+	}), e -> {
+		Log.e(TAG, "updateCategories()", e);
+		UPDATE_CATEGORIES.recordFailure();
+		postEvent(new CategoryEvent(ObjectEvent.Actions.EDIT_FAILED, categories));
+	});
+}
+
+@Override
+public void removeCategories(@NotNull List<Category> categories) {
+	SqliteExecutors.write(REMOVE_CATEGORIES.measure(() -> {
+		// Items in the categories are removed by the foreign key (ON DELETE CASCADE), other
+		// categories keep their order
+		Statements statements = getStatements();
+		long updatedAt = System.currentTimeMillis();
+		runInTransaction(() -> {
+			for (Category category : categories) {
+				recordCategoryChange(category, SyncOperation.REMOVE, updatedAt);
+				statements.deleteCategory(category);
+			}
+		});
+		REMOVE_CATEGORIES.recordRows(categories.size());
+		postEvent(new CategoryEvent(ObjectEvent.Actions.REMOVED, categories));
+	}), e -> {
+		Log.e(TAG, "removeCategories()", e);
+		REMOVE_CATEGORIES.recordFailure();
+		postEvent(new CategoryEvent(ObjectEvent.Actions.REMOVE_FAILED, categories));
+	});
 }
 
 @Override
 public void addItems(@NotNull List<Item> items) {
-	beginTransaction();
-	
+	// The ids are set on the writer thread, the caller's items may still be used on the main thread
+	List<Item> addedItems = new ArrayList<>(items.size());
 	for (Item item : items) {
-		addItem(item);
+		Item addedItem = new Item();
+		addedItem.set(item);
+		addedItems.add(addedItem);
 	}
 	
-	setTransactionSuccessful();
-	endTransaction();
+	SqliteExecutors.write(ADD_ITEMS.measure(() -> {
+		Statements statements = getStatements();
+		long updatedAt = System.currentTimeMillis();
+		runInTransaction(() -> {
+			for (Item item : addedItems) {
+				statements.insertItem(item, newRemoteId(), updatedAt);
+				recordItemChange(item, SyncOperation.UPSERT, updatedAt);
+			}
+		});
+		ADD_ITEMS.recordRows(addedItems.size());
+		postEvent(new ItemEvent(ObjectEvent.Actions.ADDED, addedItems));
+	}), e -> {
+		Log.e(TAG, "addItems()", e);
+		ADD_ITEMS.recordFailure();
+		postEvent(new ItemEvent(ObjectEvent.Actions.ADD_FAILED, items));
+	});
+}
+
+public void getItems(@NotNull String categoryId) {
+	SqliteExecutors.read(GET_ITEMS.measure(() -> {
+		List<Item> items = queryItems(categoryId, null, null, -1);
+		GET_ITEMS.recordRows(items.size());
+		postEvent(ItemEvent.allItems(items, categoryId));
+	}), e -> {
+		Log.e(TAG, "getItems()", e);
+		GET_ITEMS.recordFailure();
+		postEvent(ItemEvent.getFailed(categoryId));
+	});
+}
+
+@Override
+public void getItems(@NotNull String categoryId, Long afterDate, String afterId, int limit) {
+	SqliteExecutors.read(GET_ITEMS_PAGE.measure(() -> readItemsPage(GET_ITEMS_PAGE, categoryId, afterDate, afterId, limit, false)),
+			e -> onReadItemsPageFailed(e, GET_ITEMS_PAGE, categoryId, afterDate, afterId, false));
+}
+
+@Override
+public Future<?> prefetchItems(@NotNull String categoryId, int limit) {
+	return SqliteExecutors.prefetch(PREFETCH_ITEMS.measure(() -> readItemsPage(PREFETCH_ITEMS, categoryId, null, null, limit, true)),
+			e -> onReadItemsPageFailed(e, PREFETCH_ITEMS, categoryId, null, null, true));
+}
+
+/**
+ * Read a page of items and send it as an {@link ItemEvent}. Call on a DB thread
+ * @param operation records the rows and failures
+ * @param categoryId the category to get the items from, {@link ItemEventKt#GET_ALL_ITEMS} to get from all categories
+ * @param afterDate date of the last item in the previous page, null to get the first page
+ * @param afterId id of the last item in the previous page, null to get the first page
+ * @param limit maximum number of items to get
+ * @param isPrefetch true if the page is prefetched
+ */
+private void readItemsPage(MeasuredOperation operation, @NotNull String categoryId, Long afterDate, String afterId, int limit, boolean isPrefetch) {
+	boolean isNextPage = afterDate != null && afterId != null;
+	
+	// Fetch one extra item to know if there are more pages
+	List<Item> items = queryItems(categoryId, afterDate, afterId, limit + 1);
+	boolean hasMorePages = items.size() > limit;
+	if (hasMorePages) {
+		items.remove(items.size() - 1);
+	}
+	
+	// Counted by the stats triggers, items in later pages don't have to be read
+	int totalCount = mStatsGateway.queryItemCount(categoryId);
 	
-	mEventBus.post(new ItemEvent(ObjectEvent.Actions.ADDED, items));
+	operation.recordRows(items.size());
+	if (isPrefetch) {
+		postEvent(ItemEvent.prefetch(items, categoryId, hasMorePages, totalCount));
+	} else {
+		postEvent(ItemEvent.page(items, categoryId, isNextPage, hasMorePages, totalCount));
+	}
+}
+
+/**
+ * Send a failed {@link #readItemsPage} as an {@link ItemEvent}. Call on a DB thread
+ * @param e why the page couldn't be read
+ */
+private static void onReadItemsPageFailed(RuntimeException e, MeasuredOperation operation, @NotNull String categoryId, Long afterDate, String afterId, boolean isPrefetch) {
+	boolean isNextPage = afterDate != null && afterId != null;
+	Log.e(TAG, "getItems()", e);
+	operation.recordFailure();
+	postEvent(ItemEvent.getFailed(categoryId, isNextPage, isPrefetch));
 }
 
-public void getItems(String categoryId) {
+/**
+ * Query items ordered by date and id, newest first
+ * @param categoryId the category to get the items from, {@link ItemEventKt#GET_ALL_ITEMS} to get from all categories
+ * @param afterDate only get items after (older than) this date and id, null to start from the newest item
+ * @param afterId only get items after this date and id, null to start from the newest item
+ * @param limit maximum number of items to get, -1 to get all
+ * @return items ordered by date and id
+ */
+private List<Item> queryItems(@NotNull String categoryId, Long afterDate, String afterId, int limit) {
 	Resources resources = AppActivity.getActivity().getResources();
+	String itemDate = resources.getString(R.string.table_item_date);
+	String itemId = resources.getString(R.string.table_item_id);
 	
 	String sql = "SELECT " +
-			resources.getString(R.string.table_item_id) + ", " +
+			itemId + ", " +
 			resources.getString(R.string.table_category_id) + ", " +
 			resources.getString(R.string.table_item_text) + ", " +
-			resources.getString(R.string.table_item_date) +
+			itemDate +
 			" FROM " + resources.getString(R.string.table_item);
 	
-	if (categoryId != null) {
-		sql += " WHERE " + resources.getString(R.string.table_category_id) + "=" + categoryId;
+	List<String> where = new ArrayList<>(2);
+	if (!categoryId.equals(ItemEventKt.GET_ALL_ITEMS)) {
+		where.add(resources.getString(R.string.table_category_id) + "=" + idToLong(categoryId));
+	}
+	// Keyset — continue after the last item of the previous page
+	if (afterDate != null && afterId != null) {
+		long id = idToLong(afterId);
+		where.add("(" + itemDate + "<" + afterDate + " OR (" + itemDate + "=" + afterDate + " AND " + itemId + "<" + id + "))");
+	}
+	if (!where.isEmpty()) {
+		sql += " WHERE " + TextUtils.join(" AND ", where);
 	}
 	sql += " ORDER BY " +
-			resources.getString(R.string.table_item_date) + " DESC, " +
-			resources.getString(R.string.table_item_id) + " DESC";
+			itemDate + " DESC, " +
+			itemId + " DESC";
+	if (limit >= 0) {
+		sql += " LIMIT " + limit;
+	}
 	
 	
 	Cursor cursor = rawQuery(sql);
@@ -206,122 +415,443 @@ public void getItems(String categoryId) {
 	}
 	close(cursor);
 	
-	EventBus.getInstance().post(new ItemEvent(ObjectEvent.Actions.GET_RESPONSE, items));
+	return items;
 }
 
 @Override
-public void updateItems(@NotNull List<Item> items) {
-	beginTransaction();
+public void searchItems(@NotNull String query, @NotNull String categoryId, int limit) {
+	SqliteExecutors.read(SEARCH_ITEMS.measure(() -> {
+		List<Item> items = querySearch(query, categoryId, limit);
+		SEARCH_ITEMS.recordRows(items.size());
+		postEvent(new ItemSearchEvent(ObjectEvent.Actions.GET_RESPONSE, query, categoryId, items));
+	}), e -> {
+		Log.e(TAG, "searchItems()", e);
+		SEARCH_ITEMS.recordFailure();
+		postEvent(new ItemSearchEvent(ObjectEvent.Actions.GET_FAILED, query, categoryId));
+	});
+}
+
+/**
+ * Search items with the full-text search table. All matches are ranked with
+ * {@link ItemSearchRanking#score(int, int, int)} from the FTS match info
+ * @param query the words to search for, each word is prefix matched
+ * @param categoryId the category to search in, {@link ItemEventKt#GET_ALL_ITEMS} to search all categories
+ * @param limit maximum number of items to get
+ * @return the best matching items, best match first
+ */
+private List<Item> querySearch(@NotNull String query, @NotNull String categoryId, int limit) {
+	List<String> words = ItemSearchRanking.tokenize(query);
+	if (words.isEmpty()) {
+		return new ArrayList<>();
+	}
 	
-	for (Item item : items) {
-		updateItem(item);
+	Resources resources = AppActivity.getActivity().getResources();
+	String itemTable = resources.getString(R.string.table_item);
+	String itemId = itemTable + "." + resources.getString(R.string.table_item_id);
+	String itemCategoryId = itemTable + "." + resources.getString(R.string.table_category_id);
+	String itemFts = resources.getString(R.string.table_item_fts);
+	
+	// Words only contain letters and digits so they can't contain any FTS syntax
+	StringBuilder match = new StringBuilder();
+	for (String word : words) {
+		if (match.length() > 0) {
+			match.append(' ');
+		}
+		match.append(word).append('*');
+	}
+	
+	String sql = "SELECT " +
+			itemId + ", " +
+			itemCategoryId + ", " +
+			itemTable + "." + resources.getString(R.string.table_item_text) + ", " +
+			itemTable + "." + resources.getString(R.string.table_item_date) + ", " +
+			"matchinfo(" + itemFts + ", 'pcnx')" +
+			" FROM " + itemFts +
+			" JOIN " + itemTable + " ON " + itemId + "=" + itemFts + ".docid" +
+			" WHERE " + itemFts + " MATCH " + DatabaseUtils.sqlEscapeString(match.toString());
+	if (!categoryId.equals(ItemEventKt.GET_ALL_ITEMS)) {
+		sql += " AND " + itemCategoryId + "=" + idToLong(categoryId);
 	}
 	
-	setTransactionSuccessful();
-	endTransaction();
+	Cursor cursor = rawQuery(sql);
+	ItemSearchRanking.Ranking ranking = new ItemSearchRanking.Ranking(limit);
+	while (cursor.moveToNext()) {
+		Item item = new Item();
+		int i = 0;
+		item.setId(idToString(cursor.getLong(i++)));
+		item.setCategoryId(idToString(cursor.getLong(i++)));
+		item.setText(cursor.getString(i++));
+		item.setDate(cursor.getLong(i++));
+		
+		ranking.add(item, matchScore(cursor.getBlob(i)));
+	}
+	close(cursor);
 	
-	mEventBus.post(new ItemEvent(ObjectEvent.Actions.EDITED, items));
+	return ranking.getItems();
 }
 
-private void updateItem(@NotNull Item item) {
-	Resources resources = AppActivity.getActivity().getResources();
-	
-	ContentValues contentValues = new ContentValues(2);
-	contentValues.put(resources.getString(R.string.table_item_text), item.getText());
-	contentValues.put(resources.getString(R.string.table_item_date), item.getDate());
-	
-	String table = resources.getString(R.string.table_item);
-	String where = resources.getString(R.string.table_item_id) + "=" + item.getId();
-	update(table, contentValues, where);
+/**
+ * Calculate the score of a match from the FTS match info
+ * @param matchInfo result of matchinfo() with the 'pcnx' format. 32-bit integers in native byte
+ * order: phrase count, column count, row count and then 3 integers for each phrase and column
+ * (hits in this row, hits in all rows, rows with hits)
+ * @return score of the match, higher is better
+ */
+private static double matchScore(byte[] matchInfo) {
+	IntBuffer info = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder()).asIntBuffer();
+	int phraseCount = info.get(0);
+	int columnCount = info.get(1);
+	int rowCount = info.get(2);
+	
+	double score = 0;
+	for (int phrase = 0; phrase < phraseCount; ++phrase) {
+		for (int column = 0; column < columnCount; ++column) {
+			int offset = 3 + 3 * (phrase * columnCount + column);
+			score += ItemSearchRanking.score(info.get(offset), info.get(offset + 2), rowCount);
+		}
+	}
+	return score;
+}
+
+@Override
+public void listenToItems(@NotNull String categoryId) {
+	// All changes are made on this device and already sent as events
+}
+
+@Override
+public void stopListeningToItems(@NotNull String categoryId) {
+
+}
+
+@Override
+public void listenToCategories() {
+	// All changes are made on this device and already sent as events
+}
+
+@Override
+public void stopListeningToCategories() {
+
+}
+
+@Override
+public void stopListening() {
+
+}
+
+@Override
+public void updateItems(@NotNull List<Item> items) {
+	SqliteExecutors.write(UPDATE_ITEMS.measure(() -> {
+		Statements statements = getStatements();
+		long updatedAt = System.currentTimeMillis();
+		runInTransaction(() -> {
+			for (Item item : items) {
+				statements.updateItem(item, updatedAt);
+				recordItemChange(item, SyncOperation.UPSERT, updatedAt);
+			}
+		});
+		UPDATE_ITEMS.recordRows(items.size());
+		postEvent(new ItemEvent(ObjectEvent.Actions.EDITED, items));
+	}), e -> {
+		Log.e(TAG, "updateItems()", e);
+		UPDATE_ITEMS.recordFailure();
+		postEvent(new ItemEvent(ObjectEvent.Actions.EDIT_FAILED, items));
+	});
 }
 
 public void importData(@NotNull List<Category> categories, @NotNull List<Item> items) {
-	Resources resources = AppActivity.getActivity().getResources();
-	HashMap<String, String> idMap = new HashMap<>(categories.size());
-	
-	// Check database for existing categories with matching names
-	for (Category category : categories) {
-		String sql = "SELECT " +
-				resources.getString(R.string.table_category_id) +
-				" FROM " + resources.getString(R.string.table_category) +
-				" WHERE " + resources.getString(R.string.table_category_name) + "=" + category.getName() +
-				" COLLATE NOCASE";
-		
-		Cursor cursor = rawQuery(sql);
-		
-		// Found category with same name -> Use its id
-		if (cursor.moveToNext()) {
-			String existingId = idToString(cursor.getLong(0));
-			idMap.put(category.getId(), existingId);
-		}
-		// Didn't find category with same name -> Insert category
-		else {
-			String oldId = category.getId();
-			addCategory(category);
-			idMap.put(oldId, category.getId());
+	SqliteExecutors.write(IMPORT_DATA.measure(() -> {
+		runInTransaction(() -> {
+			CategoryImportMap idMap = importCategories(categories);
+			importItems(items, idMap);
+		});
+		IMPORT_DATA.recordRows(categories.size() + items.size());
+	}), e -> {
+		Log.e(TAG, "importData()", e);
+		IMPORT_DATA.recordFailure();
+	});
+}
+
+@Override
+public void importData(@NotNull InputStream inputStream, @NotNull BackupListener listener) {
+	BackupListener mainListener = new MainThreadBackupListener(listener);
+	
+	SqliteExecutors.write(IMPORT_BACKUP.measure(() -> {
+		try (ItemBackupReader reader = new ItemBackupReader(inputStream)) {
+			List<Category> categories = reader.readCategories();
+			CategoryImportMap idMap = new CategoryImportMap(queryCategories());
+			runInTransaction(() -> importCategories(categories, idMap));
+			
+			// Each chunk is stored in its own transaction to not keep the writer locked for too long
+			int itemCount = 0;
+			List<Item> items = reader.readItems(ItemBackupKt.BACKUP_CHUNK_SIZE);
+			while (!items.isEmpty()) {
+				List<Item> chunk = items;
+				runInTransaction(() -> importItems(chunk, idMap));
+				itemCount += chunk.size();
+				mainListener.onProgress(itemCount);
+				items = reader.readItems(ItemBackupKt.BACKUP_CHUNK_SIZE);
+			}
+			
+			IMPORT_BACKUP.recordRows(itemCount);
+			mainListener.onComplete(itemCount);
+		} catch (IOException e) {
+			onBackupFailed("importData()", IMPORT_BACKUP, mainListener, e);
 		}
-		
-		close(cursor);
+	}), e -> onBackupFailed("importData()", IMPORT_BACKUP, mainListener, e));
+}
+
+/**
+ * Report a failed import or export of a backup. Call on a DB thread
+ * @param method name of the method that failed, for the log
+ * @param operation records the failure
+ * @param listener gets the exception on the main thread
+ * @param e why the backup failed
+ */
+private static void onBackupFailed(String method, MeasuredOperation operation, BackupListener listener, Exception e) {
+	Log.e(TAG, method, e);
+	operation.recordFailure();
+	listener.onFailed(e);
+}
+
+/**
+ * Add categories that don't exist yet. Call inside a transaction
+ * @param categories the categories to import. If a category with the same name already exists
+ * that category is used instead
+ * @return map from the imported category ids to the category ids in the database
+ */
+private CategoryImportMap importCategories(@NotNull List<Category> categories) {
+	CategoryImportMap idMap = new CategoryImportMap(queryCategories());
+	importCategories(categories, idMap);
+	return idMap;
+}
+
+/**
+ * Add categories that don't exist yet. Call inside a transaction
+ * @param categories the categories to import. If a category with the same name already exists
+ * that category is used instead
+ * @param idMap gets the imported category ids mapped to the category ids in the database
+ */
+private void importCategories(@NotNull List<Category> categories, @NotNull CategoryImportMap idMap) {
+	for (Category category : categories) {
+		idMap.map(category, this::insertCategory, this::updateImportedCategory);
 	}
-	
-	// Add all items
-	beginTransaction();
-	boolean success = true;
+}
+
+/**
+ * Save the new order of a category that was rebalanced to make room for imported categories. Call
+ * inside a transaction
+ * @param category the rebalanced category
+ */
+private void updateImportedCategory(@NotNull Category category) {
+	long updatedAt = System.currentTimeMillis();
+	getStatements().updateCategory(category, updatedAt);
+	recordCategoryChange(category, SyncOperation.UPSERT, updatedAt);
+}
+
+/**
+ * Add imported items. Call inside a transaction
+ * @param items the items to add, items in categories that weren't imported are skipped
+ * @param idMap map from the imported category ids to the category ids in the database
+ * @throws SQLiteException if an item couldn't be added
+ */
+private void importItems(@NotNull List<Item> items, @NotNull CategoryImportMap idMap) {
+	Statements statements = getStatements();
+	long updatedAt = System.currentTimeMillis();
 	for (Item item : items) {
-		String newCategoryId = idMap.get(item.getCategoryId());
+		String newCategoryId = idMap.getId(item.getCategoryId());
+		if (newCategoryId == null) {
+			continue;
+		}
+		
 		item.setCategoryId(newCategoryId);
-		addItem(item);
+		statements.insertItem(item, newRemoteId(), updatedAt);
 		
 		// Failed to add item
 		if (item.getId().isEmpty()) {
-			success = false;
-			break;
+			throw new SQLiteException("Failed to import item");
 		}
+		recordItemChange(item, SyncOperation.UPSERT, updatedAt);
 	}
-	if (success) {
-		setTransactionSuccessful();
-	}
-	endTransaction();
 }
 
-
 @Override
-public void removeItems(@NotNull List<Item> items) {
-	beginTransaction();
+public void exportData(@NotNull OutputStream outputStream, @NotNull BackupListener listener) {
+	BackupListener mainListener = new MainThreadBackupListener(listener);
+	
+	SqliteExecutors.read(EXPORT_BACKUP.measure(() -> {
+		try (ItemBackupWriter writer = new ItemBackupWriter(outputStream)) {
+			writer.writeCategories(queryCategories());
+			int itemCount = exportItems(writer, mainListener);
+			writer.finish();
+			EXPORT_BACKUP.recordRows(itemCount);
+			mainListener.onComplete(itemCount);
+		} catch (IOException e) {
+			onBackupFailed("exportData()", EXPORT_BACKUP, mainListener, e);
+		}
+	}), e -> onBackupFailed("exportData()", EXPORT_BACKUP, mainListener, e));
+}
+
+/**
+ * Write all items directly from the cursor, the cursor only holds one window of rows at a time
+ * @param writer where to write the items
+ * @param listener gets the progress after every {@link ItemBackupKt#BACKUP_CHUNK_SIZE} items
+ * @return number of written items
+ */
+private int exportItems(@NotNull ItemBackupWriter writer, @NotNull BackupListener listener) throws IOException {
+	Resources resources = AppActivity.getActivity().getResources();
 	
-	for (Item item : items) {
-		removeItem(item);
-	}
+	String sql = "SELECT " +
+			resources.getString(R.string.table_category_id) + ", " +
+			resources.getString(R.string.table_item_text) + ", " +
+			resources.getString(R.string.table_item_date) +
+			" FROM " + resources.getString(R.string.table_item);
 	
-	setTransactionSuccessful();
-	endTransaction();
+	Cursor cursor = rawQuery(sql);
+	int itemCount = 0;
+	try {
+		while (cursor.moveToNext()) {
+			writer.writeItem(idToString(cursor.getLong(0)), cursor.getString(1), cursor.getLong(2));
+			++itemCount;
+			
+			if (itemCount % ItemBackupKt.BACKUP_CHUNK_SIZE == 0) {
+				listener.onProgress(itemCount);
+			}
+		}
+	} finally {
+		close(cursor);
+	}
 	
-	mEventBus.post(new ItemEvent(ObjectEvent.Actions.REMOVED, items));
+	return itemCount;
 }
 
-private void removeItem(@NotNull Item item) {
-	Resources resources = AppActivity.getActivity().getResources();
-	
-	String table = resources.getString(R.string.table_item);
-	String where = resources.getString(R.string.table_item_id) + "=" + item.getId();
-	delete(table, where);
+@Override
+public void removeItems(@NotNull List<Item> items) {
+	SqliteExecutors.write(REMOVE_ITEMS.measure(() -> {
+		Statements statements = getStatements();
+		long updatedAt = System.currentTimeMillis();
+		runInTransaction(() -> {
+			for (Item item : items) {
+				recordItemChange(item, SyncOperation.REMOVE, updatedAt);
+				statements.deleteItem(item);
+			}
+		});
+		REMOVE_ITEMS.recordRows(items.size());
+		postEvent(new ItemEvent(ObjectEvent.Actions.REMOVED, items));
+	}), e -> {
+		Log.e(TAG, "removeItems()", e);
+		REMOVE_ITEMS.recordFailure();
+		postEvent(new ItemEvent(ObjectEvent.Actions.REMOVE_FAILED, items));
+	});
 }
 
 /**
- * Add a new item. Will automatically set the item id.
- * @param item the item to add
+ * Write statements for items and categories. The SQL is only compiled once for the DB, see
+ * {@link Sqlite#getWriteStatement(String)}, and the statements are then reused with positional
+ * arguments. Only use these from the writer thread.
  */
-private void addItem(@NotNull Item item) {
-	Resources resources = AppActivity.getActivity().getResources();
+private static class Statements {
+	private final String mInsertItemSql;
+	private final String mUpdateItemSql;
+	private final String mDeleteItemSql;
+	private final String mInsertCategorySql;
+	private final String mUpdateCategorySql;
+	private final String mDeleteCategorySql;
+	
+	Statements() {
+		Resources resources = AppActivity.getActivity().getResources();
+		String itemTable = resources.getString(R.string.table_item);
+		String itemId = resources.getString(R.string.table_item_id);
+		String itemText = resources.getString(R.string.table_item_text);
+		String itemDate = resources.getString(R.string.table_item_date);
+		String itemRemoteId = resources.getString(R.string.table_item_remote_id);
+		String itemUpdatedAt = resources.getString(R.string.table_item_updated_at);
+		String categoryTable = resources.getString(R.string.table_category);
+		String categoryId = resources.getString(R.string.table_category_id);
+		String categoryName = resources.getString(R.string.table_category_name);
+		String categoryOrder = resources.getString(R.string.table_category_order);
+		String categoryRemoteId = resources.getString(R.string.table_category_remote_id);
+		String categoryUpdatedAt = resources.getString(R.string.table_category_updated_at);
+		
+		mInsertItemSql = "INSERT INTO " + itemTable +
+				" (" + categoryId + ", " + itemText + ", " + itemDate + ", " + itemRemoteId + ", " + itemUpdatedAt + ") VALUES (?, ?, ?, ?, ?)";
+		mUpdateItemSql = "UPDATE " + itemTable +
+				" SET " + itemText + "=?, " + itemDate + "=?, " + itemUpdatedAt + "=? WHERE " + itemId + "=?";
+		mDeleteItemSql = "DELETE FROM " + itemTable + " WHERE " + itemId + "=?";
+		mInsertCategorySql = "INSERT INTO " + categoryTable +
+				" (" + categoryOrder + ", " + categoryName + ", " + categoryRemoteId + ", " + categoryUpdatedAt + ") VALUES (?, ?, ?, ?)";
+		mUpdateCategorySql = "UPDATE " + categoryTable +
+				" SET " + categoryName + "=?, " + categoryOrder + "=?, " + categoryUpdatedAt + "=? WHERE " + categoryId + "=?";
+		mDeleteCategorySql = "DELETE FROM " + categoryTable + " WHERE " + categoryId + "=?";
+	}
 	
-	ContentValues contentValues = new ContentValues();
-	contentValues.put(resources.getString(R.string.table_category_id), item.getCategoryId());
-	contentValues.put(resources.getString(R.string.table_item_text), item.getText());
-	contentValues.put(resources.getString(R.string.table_item_date), item.getDate());
+	/**
+	 * Add a new item. Will automatically set the item id, the id will be empty if it failed.
+	 * @param item the item to add
+	 * @param remoteId id of the synced item, null if it isn't synced
+	 * @param updatedAt time of the change
+	 */
+	void insertItem(@NotNull Item item, @Nullable String remoteId, long updatedAt) {
+		SQLiteStatement statement = Sqlite.getWriteStatement(mInsertItemSql);
+		statement.bindLong(1, idToLong(item.getCategoryId()));
+		statement.bindString(2, item.getText());
+		statement.bindLong(3, item.getDate());
+		bindRemoteId(statement, 4, remoteId);
+		statement.bindLong(5, updatedAt);
+		item.setId(insertIdToString(statement.executeInsert()));
+	}
+	
+	void updateItem(@NotNull Item item, long updatedAt) {
+		SQLiteStatement statement = Sqlite.getWriteStatement(mUpdateItemSql);
+		statement.bindString(1, item.getText());
+		statement.bindLong(2, item.getDate());
+		statement.bindLong(3, updatedAt);
+		statement.bindLong(4, idToLong(item.getId()));
+		statement.executeUpdateDelete();
+	}
+	
+	void deleteItem(@NotNull Item item) {
+		SQLiteStatement statement = Sqlite.getWriteStatement(mDeleteItemSql);
+		statement.bindLong(1, idToLong(item.getId()));
+		statement.executeUpdateDelete();
+	}
+	
+	/**
+	 * Add a new category
+	 * @param category the category to add
+	 * @param remoteId id of the synced category, null if it isn't synced
+	 * @param updatedAt time of the change
+	 * @return row id of the new category, -1 if it failed
+	 */
+	long insertCategory(@NotNull Category category, @Nullable String remoteId, long updatedAt) {
+		SQLiteStatement statement = Sqlite.getWriteStatement(mInsertCategorySql);
+		statement.bindLong(1, category.getOrder());
+		statement.bindString(2, category.getName());
+		bindRemoteId(statement, 3, remoteId);
+		statement.bindLong(4, updatedAt);
+		return statement.executeInsert();
+	}
 	
-	long id = insert(resources.getString(R.string.table_item), contentValues);
-	item.setId(idToString(id));
+	void updateCategory(@NotNull Category category, long updatedAt) {
+		SQLiteStatement statement = Sqlite.getWriteStatement(mUpdateCategorySql);
+		statement.bindString(1, category.getName());
+		statement.bindLong(2, category.getOrder());
+		statement.bindLong(3, updatedAt);
+		statement.bindLong(4, idToLong(category.getId()));
+		statement.executeUpdateDelete();
+	}
+	
+	void deleteCategory(@NotNull Category category) {
+		SQLiteStatement statement = Sqlite.getWriteStatement(mDeleteCategorySql);
+		statement.bindLong(1, idToLong(category.getId()));
+		statement.executeUpdateDelete();
+	}
+	
+	private static void bindRemoteId(SQLiteStatement statement, int index, @Nullable String remoteId) {
+		if (remoteId != null) {
+			statement.bindString(index, remoteId);
+		} else {
+			statement.bindNull(index);
+		}
+	}
 }
-
-
 }
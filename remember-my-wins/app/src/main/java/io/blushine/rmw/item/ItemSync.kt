@@ -0,0 +1,73 @@
+package io.blushine.rmw.item
+
+/**
+ * Type of a synced object
+ * @param code stored in the outbox
+ */
+internal enum class SyncType(val code: Int) {
+	CATEGORY(0),
+	ITEM(1);
+
+	companion object {
+		@JvmStatic
+		fun fromCode(code: Int): SyncType {
+			return values().first { it.code == code }
+		}
+	}
+}
+
+/**
+ * What happened to a synced object
+ * @param code stored in the outbox
+ */
+internal enum class SyncOperation(val code: Int) {
+	/** Added or updated */
+	UPSERT(0),
+	REMOVE(1);
+
+	companion object {
+		@JvmStatic
+		fun fromCode(code: Int): SyncOperation {
+			return values().first { it.code == code }
+		}
+	}
+}
+
+/**
+ * A change of a category or item that is synced between SQLite and Firestore. All ids are remote
+ * (Firestore) ids, the categoryId of an item is the remote id of its category.
+ * @param type category or item
+ * @param operation added/updated or removed
+ * @param remoteId id of the changed document
+ * @param updatedAt when the change was made, the latest change wins
+ * @param outboxId id of the outbox entry, only set for local changes
+ */
+internal class SyncChange @JvmOverloads constructor(
+		val type: SyncType,
+		val operation: SyncOperation,
+		val remoteId: String,
+		val updatedAt: Long,
+		val outboxId: Long = 0
+) {
+	/** The category, set for upserted categories */
+	var category: Category? = null
+	/** The item, set for upserted items */
+	var item: Item? = null
+}
+/**
+ * Item counts of a synced category that have changed since they were last pushed. Pushed as a
+ * counter document with the remote id of the category
+ * @param categoryId local id of the category
+ * @param categoryRemoteId remote id of the category
+ * @param itemCount number of items in the category
+ * @param monthCounts number of items per month, the month is formatted as yyyyMM
+ * @param changeCount number of changes when the counts were read, the counts are only marked as
+ * pushed if they haven't changed since
+ */
+internal class StatsChange(
+		val categoryId: Long,
+		val categoryRemoteId: String,
+		val itemCount: Int,
+		val monthCounts: Map<String, Int>,
+		val changeCount: Long
+)
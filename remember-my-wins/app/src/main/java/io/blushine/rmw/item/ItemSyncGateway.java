@@ -0,0 +1,231 @@
+package io.blushine.rmw.item;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import io.blushine.android.firebase.FirebaseAuth;
+import io.blushine.rmw.item.firestore.FirestoreChangeSource;
+import io.blushine.rmw.item.firestore.SyncTask;
+
+/**
+ * Offline-first gateway that stores everything in SQLite and syncs with Firestore in the
+ * background. All reads and writes are local, writes are recorded in the outbox and then pushed
+ * by {@link SyncTask} together with fetching the changes made on other devices. A sync is run
+ * shortly after each change, when categories or items are shown, when Firestore reports a remote
+ * change while they're shown, and retried with a backoff if it fails.
+ */
+class ItemSyncGateway implements ItemGateway {
+private static final String TAG = ItemSyncGateway.class.getSimpleName();
+/** Wait a bit after a change before syncing so several changes are pushed together */
+private static final long SYNC_DELAY_MS = 2000;
+private static final long RETRY_DELAY_MIN_MS = 30 * 1000;
+private static final long RETRY_DELAY_MAX_MS = 10 * 60 * 1000;
+private final ItemSyncStore mSyncStore = new ItemSyncStore();
+private final ItemSqliteGateway mLocalGateway = new ItemSqliteGateway(mSyncStore, true);
+private final Handler mHandler = new Handler(Looper.getMainLooper());
+private final Runnable mSyncRunnable = this::sync;
+/** Syncs when something is changed on another device while categories or items are shown */
+private final SyncListeners mListeners = new SyncListeners(new FirestoreChangeSource(), this::requestSync);
+private long mRetryDelay = RETRY_DELAY_MIN_MS;
+private boolean mIsSyncing = false;
+private boolean mSyncAgain = false;
+private boolean mIsStopped = false;
+
+ItemSyncGateway() {
+	requestSync();
+}
+
+/**
+ * Sync soon. Several requests close together only sync once
+ */
+private void requestSync() {
+	if (!mIsStopped) {
+		mHandler.removeCallbacks(mSyncRunnable);
+		mHandler.postDelayed(mSyncRunnable, SYNC_DELAY_MS);
+	}
+}
+
+private void sync() {
+	if (mIsStopped || FirebaseAuth.INSTANCE.getCurrentUser() == null) {
+		return;
+	}
+	// Changes made during the sync might not be pushed, sync again when done
+	if (mIsSyncing) {
+		mSyncAgain = true;
+		return;
+	}
+	
+	mIsSyncing = true;
+	new SyncTask(mSyncStore)
+			.run()
+			.addOnCompleteListener(task -> {
+				mIsSyncing = false;
+				
+				if (task.isSuccessful()) {
+					mRetryDelay = RETRY_DELAY_MIN_MS;
+					if (mSyncAgain) {
+						mSyncAgain = false;
+						requestSync();
+					}
+				} else {
+					Log.w(TAG, "sync() — retrying in " + mRetryDelay + " ms", task.getException());
+					mSyncAgain = false;
+					if (!mIsStopped) {
+						mHandler.postDelayed(mSyncRunnable, mRetryDelay);
+					}
+					mRetryDelay = Math.min(mRetryDelay * 2, RETRY_DELAY_MAX_MS);
+				}
+			});
+}
+
+@Override
+public void addCategories(@NotNull List<Category> categories) {
+	mLocalGateway.addCategories(categories);
+	requestSync();
+}
+
+@Override
+public void getCategories() {
+	mLocalGateway.getCategories();
+}
+
+@Override
+public void updateCategories(@NotNull List<Category> categories) {
+	mLocalGateway.updateCategories(categories);
+	requestSync();
+}
+
+@Override
+public void removeCategories(@NotNull List<Category> categories) {
+	mLocalGateway.removeCategories(categories);
+	requestSync();
+}
+
+@Override
+public void addItems(@NotNull List<Item> items) {
+	mLocalGateway.addItems(items);
+	requestSync();
+}
+
+@Override
+public void getItems(@NotNull String categoryId) {
+	mLocalGateway.getItems(categoryId);
+}
+
+@Override
+public void getItems(@NotNull String categoryId, Long afterDate, String afterId, int limit) {
+	mLocalGateway.getItems(categoryId, afterDate, afterId, limit);
+}
+
+@Override
+public Future<?> prefetchItems(@NotNull String categoryId, int limit) {
+	return mLocalGateway.prefetchItems(categoryId, limit);
+}
+
+@Override
+public void searchItems(@NotNull String query, @NotNull String categoryId, int limit) {
+	mLocalGateway.searchItems(query, categoryId, limit);
+}
+
+@Override
+public void listenToItems(@NotNull String categoryId) {
+	mListeners.listenToItems(categoryId);
+	// Fetch the changes made on other devices while the items weren't shown
+	requestSync();
+}
+
+@Override
+public void stopListeningToItems(@NotNull String categoryId) {
+	mListeners.stopListeningToItems(categoryId);
+}
+
+@Override
+public void listenToCategories() {
+	mListeners.listenToCategories();
+	// Fetch the changes made on other devices while the categories weren't shown
+	requestSync();
+}
+
+@Override
+public void stopListeningToCategories() {
+	mListeners.stopListeningToCategories();
+}
+
+@Override
+public void stopListening() {
+	// The gateway is being replaced, pending changes are pushed the next time this gateway is used
+	mListeners.stopAll();
+	mIsStopped = true;
+	mHandler.removeCallbacks(mSyncRunnable);
+}
+
+@Override
+public void updateItems(@NotNull List<Item> items) {
+	mLocalGateway.updateItems(items);
+	requestSync();
+}
+
+@Override
+public void removeItems(@NotNull List<Item> items) {
+	mLocalGateway.removeItems(items);
+	requestSync();
+}
+
+@Override
+public void importData(@NotNull List<Category> categories, @NotNull List<Item> items) {
+	mLocalGateway.importData(categories, items);
+	requestSync();
+}
+
+/**
+ * Export the local copy. When signed in it is synced first, so the backup has the changes made on
+ * other devices too. If the sync fails the local copy is exported as it is
+ */
+@Override
+public void exportData(@NotNull OutputStream outputStream, @NotNull BackupListener listener) {
+	if (FirebaseAuth.INSTANCE.getCurrentUser() == null) {
+		mLocalGateway.exportData(outputStream, listener);
+		return;
+	}
+	
+	new SyncTask(mSyncStore)
+			.run()
+			.addOnCompleteListener(task -> {
+				if (!task.isSuccessful()) {
+					Log.w(TAG, "exportData() — exporting without syncing", task.getException());
+				}
+				mLocalGateway.exportData(outputStream, listener);
+			});
+}
+
+@Override
+public void importData(@NotNull InputStream inputStream, @NotNull BackupListener listener) {
+	mLocalGateway.importData(inputStream, new BackupListener() {
+		@Override
+		public void onProgress(int itemCount) {
+			listener.onProgress(itemCount);
+		}
+		
+		@Override
+		public void onComplete(int itemCount) {
+			requestSync();
+			listener.onComplete(itemCount);
+		}
+		
+		@Override
+		public void onFailed(@NotNull Exception exception) {
+			// Chunks before the failure have been imported
+			requestSync();
+			listener.onFailed(exception);
+		}
+	});
+}
+}
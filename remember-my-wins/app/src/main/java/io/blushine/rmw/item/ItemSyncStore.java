@@ -0,0 +1,629 @@
+package io.blushine.rmw.item;
+
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import io.blushine.android.common.ObjectEvent;
+import io.blushine.rmw.R;
+import io.blushine.rmw.util.AppActivity;
+import io.blushine.rmw.util.Sqlite;
+import io.blushine.rmw.util.SqliteExecutors;
+
+/**
+ * Local side of syncing categories and items with Firestore. Records local changes in the outbox,
+ * reads the changes that haven't been pushed yet, and applies changes fetched from Firestore.
+ * Changes are matched by remote id and a change is only applied if it's newer than the local one
+ * (last writer wins). Only use from the writer thread, see {@link SqliteExecutors#submitWrite}
+ */
+public class ItemSyncStore {
+private final String mCategoryTable;
+private final String mCategoryId;
+private final String mCategoryName;
+private final String mCategoryOrder;
+private final String mCategoryRemoteId;
+private final String mCategoryUpdatedAt;
+private final String mItemTable;
+private final String mItemId;
+private final String mItemText;
+private final String mItemDate;
+private final String mItemRemoteId;
+private final String mItemUpdatedAt;
+private final String mOutbox;
+private final String mOutboxId;
+private final String mOutboxType;
+private final String mOutboxOperation;
+private final String mOutboxRemoteId;
+private final String mOutboxUpdatedAt;
+private final String mCategoryStats;
+private final String mCategoryStatsCount;
+private final String mCategoryStatsChanged;
+private final String mMonthStats;
+private final String mMonthStatsMonth;
+private final String mMonthStatsCount;
+private final String mRecordCategoryChangeSql;
+private final String mRecordItemChangeSql;
+
+ItemSyncStore() {
+	Resources resources = AppActivity.getActivity().getResources();
+	mCategoryTable = resources.getString(R.string.table_category);
+	mCategoryId = resources.getString(R.string.table_category_id);
+	mCategoryName = resources.getString(R.string.table_category_name);
+	mCategoryOrder = resources.getString(R.string.table_category_order);
+	mCategoryRemoteId = resources.getString(R.string.table_category_remote_id);
+	mCategoryUpdatedAt = resources.getString(R.string.table_category_updated_at);
+	mItemTable = resources.getString(R.string.table_item);
+	mItemId = resources.getString(R.string.table_item_id);
+	mItemText = resources.getString(R.string.table_item_text);
+	mItemDate = resources.getString(R.string.table_item_date);
+	mItemRemoteId = resources.getString(R.string.table_item_remote_id);
+	mItemUpdatedAt = resources.getString(R.string.table_item_updated_at);
+	mOutbox = resources.getString(R.string.table_outbox);
+	mOutboxId = resources.getString(R.string.table_outbox_id);
+	mOutboxType = resources.getString(R.string.table_outbox_type);
+	mOutboxOperation = resources.getString(R.string.table_outbox_operation);
+	mOutboxRemoteId = resources.getString(R.string.table_outbox_remote_id);
+	mOutboxUpdatedAt = resources.getString(R.string.table_outbox_updated_at);
+	mCategoryStats = resources.getString(R.string.table_category_stats);
+	mCategoryStatsCount = resources.getString(R.string.table_category_stats_count);
+	mCategoryStatsChanged = resources.getString(R.string.table_category_stats_changed);
+	mMonthStats = resources.getString(R.string.table_month_stats);
+	mMonthStatsMonth = resources.getString(R.string.table_month_stats_month);
+	mMonthStatsCount = resources.getString(R.string.table_month_stats_count);
+	mRecordCategoryChangeSql = recordChangeSql(SyncType.CATEGORY, mCategoryTable, mCategoryId, mCategoryRemoteId);
+	mRecordItemChangeSql = recordChangeSql(SyncType.ITEM, mItemTable, mItemId, mItemRemoteId);
+}
+
+/**
+ * @return a new unique id for a row that is synced, used as the id of its Firestore document
+ */
+static String newRemoteId() {
+	return UUID.randomUUID().toString().replace("-", "");
+}
+
+/**
+ * Record that a category was added, updated or is about to be removed. Call inside the same
+ * transaction as the change, and before the category is deleted. Categories without a remote id
+ * aren't synced and are skipped
+ * @param categoryId local id of the category
+ * @param operation what happened to the category
+ * @param updatedAt time of the change
+ */
+void recordCategoryChange(long categoryId, @NotNull SyncOperation operation, long updatedAt) {
+	recordChange(Sqlite.getWriteStatement(mRecordCategoryChangeSql), categoryId, operation, updatedAt);
+}
+
+/**
+ * Record that an item was added, updated or is about to be removed. Call inside the same
+ * transaction as the change, and before the item is deleted. Items without a remote id aren't
+ * synced and are skipped
+ * @param itemId local id of the item
+ * @param operation what happened to the item
+ * @param updatedAt time of the change
+ */
+void recordItemChange(long itemId, @NotNull SyncOperation operation, long updatedAt) {
+	recordChange(Sqlite.getWriteStatement(mRecordItemChangeSql), itemId, operation, updatedAt);
+}
+
+private String recordChangeSql(SyncType type, String table, String idColumn, String remoteIdColumn) {
+	// An older change of the same row is replaced, see UNIQUE(type, remote_id) in the outbox
+	return "INSERT INTO " + mOutbox + " (" +
+			mOutboxType + ", " + mOutboxOperation + ", " + mOutboxRemoteId + ", " + mOutboxUpdatedAt +
+			") SELECT " + type.getCode() + ", ?, " + remoteIdColumn + ", ? FROM " + table +
+			" WHERE " + idColumn + "=? AND " + remoteIdColumn + " IS NOT NULL";
+}
+
+private static void recordChange(SQLiteStatement statement, long id, SyncOperation operation, long updatedAt) {
+	statement.bindLong(1, operation.getCode());
+	statement.bindLong(2, updatedAt);
+	statement.bindLong(3, id);
+	statement.executeInsert();
+}
+
+/**
+ * Give rows that haven't been synced a remote id and add them to the outbox, used when moving
+ * local data to the cloud. All categories get a remote id before any item so items can refer to
+ * their category. Each call is one transaction, rows that already have a remote id are skipped so
+ * this can be called again after a crash
+ * @param limit max number of rows to update
+ * @return number of updated rows, 0 when all rows have a remote id
+ */
+public int assignRemoteIds(int limit) {
+	SQLiteDatabase db = Sqlite.getDatabase();
+	long updatedAt = System.currentTimeMillis();
+	int assignedCount = 0;
+	db.beginTransaction();
+	try {
+		assignedCount += assignRemoteIds(db, SyncType.CATEGORY, mCategoryTable, mCategoryId, mCategoryRemoteId, mCategoryUpdatedAt, limit, updatedAt);
+		if (assignedCount < limit) {
+			assignedCount += assignRemoteIds(db, SyncType.ITEM, mItemTable, mItemId, mItemRemoteId, mItemUpdatedAt, limit - assignedCount, updatedAt);
+		}
+		db.setTransactionSuccessful();
+	} finally {
+		db.endTransaction();
+	}
+	return assignedCount;
+}
+
+private int assignRemoteIds(SQLiteDatabase db, SyncType type, String table, String idColumn, String remoteIdColumn, String updatedAtColumn, int limit, long updatedAt) {
+	Cursor cursor = db.rawQuery("SELECT " + idColumn + " FROM " + table +
+			" WHERE " + remoteIdColumn + " IS NULL LIMIT " + limit, null);
+	SQLiteStatement update = db.compileStatement("UPDATE " + table +
+			" SET " + remoteIdColumn + "=?, " + updatedAtColumn + "=? WHERE " + idColumn + "=?");
+	int assignedCount = 0;
+	while (cursor.moveToNext()) {
+		long id = cursor.getLong(0);
+		update.bindString(1, newRemoteId());
+		update.bindLong(2, updatedAt);
+		update.bindLong(3, id);
+		update.executeUpdateDelete();
+		
+		if (type == SyncType.CATEGORY) {
+			recordCategoryChange(id, SyncOperation.UPSERT, updatedAt);
+		} else {
+			recordItemChange(id, SyncOperation.UPSERT, updatedAt);
+		}
+		++assignedCount;
+	}
+	cursor.close();
+	update.close();
+	return assignedCount;
+}
+
+/**
+ * @return number of categories and items that haven't been synced
+ */
+public int countUnsynced() {
+	SQLiteDatabase db = Sqlite.getDatabase();
+	return (int) (DatabaseUtils.queryNumEntries(db, mCategoryTable, mCategoryRemoteId + " IS NULL") +
+			DatabaseUtils.queryNumEntries(db, mItemTable, mItemRemoteId + " IS NULL"));
+}
+
+/**
+ * @return number of local changes that haven't been pushed
+ */
+public int countPendingChanges() {
+	return (int) DatabaseUtils.queryNumEntries(Sqlite.getDatabase(), mOutbox);
+}
+
+/**
+ * Count categories and items after moving them to another storage location
+ * @param toCloud true if they were moved to the cloud, then all rows have to be synced. When moved
+ * locally only the pending changes have to be pushed
+ * @return number of categories, items and the rows or changes that weren't moved
+ */
+@NotNull
+public MigrationCounts getMigrationCounts(boolean toCloud) {
+	SQLiteDatabase db = Sqlite.getDatabase();
+	int categoryCount = (int) DatabaseUtils.queryNumEntries(db, mCategoryTable);
+	int itemCount = (int) DatabaseUtils.queryNumEntries(db, mItemTable);
+	int notMovedCount = countPendingChanges();
+	if (toCloud) {
+		notMovedCount += countUnsynced();
+	}
+	return new MigrationCounts(categoryCount, itemCount, notMovedCount);
+}
+
+/**
+ * Get the oldest local changes that haven't been pushed yet. Upserts of rows that have been
+ * removed since have neither a category nor an item set, they only have to be removed from the
+ * outbox
+ * @param limit max number of changes to get
+ * @return the oldest changes first
+ */
+@NotNull
+public List<SyncChange> getPendingChanges(int limit) {
+	String itemCategoryRemoteId = "item_category." + mCategoryRemoteId;
+	String sql = "SELECT " +
+			mOutbox + "." + mOutboxId + ", " +
+			mOutbox + "." + mOutboxType + ", " +
+			mOutbox + "." + mOutboxOperation + ", " +
+			mOutbox + "." + mOutboxRemoteId + ", " +
+			mOutbox + "." + mOutboxUpdatedAt + ", " +
+			mCategoryTable + "." + mCategoryName + ", " +
+			mCategoryTable + "." + mCategoryOrder + ", " +
+			mItemTable + "." + mItemText + ", " +
+			mItemTable + "." + mItemDate + ", " +
+			itemCategoryRemoteId +
+			" FROM " + mOutbox +
+			" LEFT JOIN " + mCategoryTable + " ON " + mOutbox + "." + mOutboxType + "=" + SyncType.CATEGORY.getCode() +
+			" AND " + mCategoryTable + "." + mCategoryRemoteId + "=" + mOutbox + "." + mOutboxRemoteId +
+			" LEFT JOIN " + mItemTable + " ON " + mOutbox + "." + mOutboxType + "=" + SyncType.ITEM.getCode() +
+			" AND " + mItemTable + "." + mItemRemoteId + "=" + mOutbox + "." + mOutboxRemoteId +
+			" LEFT JOIN " + mCategoryTable + " AS item_category ON item_category." + mCategoryId + "=" + mItemTable + "." + mCategoryId +
+			" ORDER BY " + mOutbox + "." + mOutboxId + " ASC" +
+			" LIMIT " + limit;
+	
+	Cursor cursor = Sqlite.getDatabase().rawQuery(sql, null);
+	List<SyncChange> changes = new ArrayList<>(cursor.getCount());
+	while (cursor.moveToNext()) {
+		SyncType type = SyncType.fromCode(cursor.getInt(1));
+		SyncOperation operation = SyncOperation.fromCode(cursor.getInt(2));
+		String remoteId = cursor.getString(3);
+		SyncChange change = new SyncChange(type, operation, remoteId, cursor.getLong(4), cursor.getLong(0));
+		
+		if (operation == SyncOperation.UPSERT) {
+			if (type == SyncType.CATEGORY && !cursor.isNull(5)) {
+				Category category = new Category();
+				category.setId(remoteId);
+				category.setName(cursor.getString(5));
+				category.setOrder(cursor.getInt(6));
+				change.setCategory(category);
+			}
+			// Items in categories that aren't synced can't be pushed
+			else if (type == SyncType.ITEM && !cursor.isNull(7) && !cursor.isNull(9)) {
+				Item item = new Item();
+				item.setId(remoteId);
+				item.setText(cursor.getString(7));
+				item.setDate(cursor.getLong(8));
+				item.setCategoryId(cursor.getString(9));
+				change.setItem(item);
+			}
+		}
+		
+		changes.add(change);
+	}
+	cursor.close();
+	
+	return changes;
+}
+
+/**
+ * Remove pushed changes from the outbox. Rows that have been changed again after they were read
+ * have a new outbox entry and are kept
+ * @param changes the pushed changes
+ */
+public void removePendingChanges(@NotNull List<SyncChange> changes) {
+	SQLiteDatabase db = Sqlite.getDatabase();
+	SQLiteStatement delete = db.compileStatement("DELETE FROM " + mOutbox + " WHERE " + mOutboxId + "=?");
+	db.beginTransaction();
+	try {
+		for (SyncChange change : changes) {
+			delete.bindLong(1, change.getOutboxId());
+			delete.executeUpdateDelete();
+		}
+		db.setTransactionSuccessful();
+	} finally {
+		db.endTransaction();
+		delete.close();
+	}
+}
+
+/**
+ * Get the item counts of synced categories that have changed since they were pushed. The counts
+ * are kept up to date by triggers, see {@link Sqlite}
+ * @param limit max number of categories to get
+ * @return changed counts of synced categories
+ */
+@NotNull
+public List<StatsChange> getChangedStats(int limit) {
+	SQLiteDatabase db = Sqlite.getDatabase();
+	String sql = "SELECT " +
+			mCategoryStats + "." + mCategoryId + ", " +
+			mCategoryTable + "." + mCategoryRemoteId + ", " +
+			mCategoryStats + "." + mCategoryStatsCount + ", " +
+			mCategoryStats + "." + mCategoryStatsChanged +
+			" FROM " + mCategoryStats +
+			" INNER JOIN " + mCategoryTable + " ON " + mCategoryTable + "." + mCategoryId + "=" + mCategoryStats + "." + mCategoryId +
+			" WHERE " + mCategoryStats + "." + mCategoryStatsChanged + ">0" +
+			" AND " + mCategoryTable + "." + mCategoryRemoteId + " IS NOT NULL" +
+			" LIMIT " + limit;
+	
+	Cursor cursor = db.rawQuery(sql, null);
+	List<StatsChange> changes = new ArrayList<>(cursor.getCount());
+	while (cursor.moveToNext()) {
+		long categoryId = cursor.getLong(0);
+		changes.add(new StatsChange(categoryId, cursor.getString(1), cursor.getInt(2), getMonthCounts(db, categoryId), cursor.getLong(3)));
+	}
+	cursor.close();
+	
+	return changes;
+}
+
+private Map<String, Integer> getMonthCounts(SQLiteDatabase db, long categoryId) {
+	Cursor cursor = db.rawQuery("SELECT " + mMonthStatsMonth + ", " + mMonthStatsCount + " FROM " + mMonthStats +
+			" WHERE " + mCategoryId + "=" + categoryId, null);
+	Map<String, Integer> monthCounts = new HashMap<>(cursor.getCount());
+	while (cursor.moveToNext()) {
+		monthCounts.put(Integer.toString(cursor.getInt(0)), cursor.getInt(1));
+	}
+	cursor.close();
+	return monthCounts;
+}
+
+/**
+ * Mark pushed item counts as pushed. Counts that have changed again after they were read are
+ * pushed again later
+ * @param changes the pushed counts
+ */
+public void removeStatsChanges(@NotNull List<StatsChange> changes) {
+	SQLiteDatabase db = Sqlite.getDatabase();
+	SQLiteStatement update = db.compileStatement("UPDATE " + mCategoryStats + " SET " + mCategoryStatsChanged + "=0" +
+			" WHERE " + mCategoryId + "=? AND " + mCategoryStatsChanged + "=?");
+	db.beginTransaction();
+	try {
+		for (StatsChange change : changes) {
+			update.bindLong(1, change.getCategoryId());
+			update.bindLong(2, change.getChangeCount());
+			update.executeUpdateDelete();
+		}
+		db.setTransactionSuccessful();
+	} finally {
+		db.endTransaction();
+		update.close();
+	}
+}
+
+/**
+ * Apply changes fetched from Firestore in one transaction. A change is skipped if the local row or
+ * its pending change is as new or newer. Applied changes replace any pending local change of the
+ * same row. The applied changes are sent as {@link CategoryEvent} and {@link ItemEvent} with
+ * isRemoteChange set
+ * @param changes the fetched changes, categories should be applied before their items
+ */
+public void applyRemoteChanges(@NotNull List<SyncChange> changes) {
+	AppliedChanges applied = new AppliedChanges();
+	SQLiteDatabase db = Sqlite.getDatabase();
+	db.beginTransaction();
+	try {
+		for (SyncChange change : changes) {
+			if (change.getType() == SyncType.CATEGORY) {
+				applyCategoryChange(db, change, applied);
+			} else {
+				applyItemChange(db, change, applied);
+			}
+		}
+		db.setTransactionSuccessful();
+	} finally {
+		db.endTransaction();
+	}
+	
+	applied.post();
+}
+
+private void applyCategoryChange(SQLiteDatabase db, SyncChange change, AppliedChanges applied) {
+	Cursor cursor = db.rawQuery("SELECT " + mCategoryId + ", " + mCategoryName + ", " + mCategoryOrder + ", " + mCategoryUpdatedAt +
+			" FROM " + mCategoryTable + " WHERE " + mCategoryRemoteId + "=?", new String[]{change.getRemoteId()});
+	Category localCategory = null;
+	long localUpdatedAt = 0;
+	if (cursor.moveToNext()) {
+		localCategory = new Category();
+		localCategory.setId(Long.toString(cursor.getLong(0)));
+		localCategory.setName(cursor.getString(1));
+		localCategory.setOrder(cursor.getInt(2));
+		localUpdatedAt = cursor.getLong(3);
+	}
+	cursor.close();
+	
+	if (!isNewer(db, change, localCategory != null, localUpdatedAt)) {
+		return;
+	}
+	
+	Category remoteCategory = change.getCategory();
+	if (change.getOperation() == SyncOperation.REMOVE) {
+		if (localCategory != null) {
+			// Items are removed by the foreign key
+			db.delete(mCategoryTable, mCategoryId + "=?", new String[]{localCategory.getId()});
+			applied.mRemovedCategories.add(localCategory);
+		}
+	} else if (remoteCategory != null) {
+		Category category = new Category();
+		category.setName(remoteCategory.getName());
+		category.setOrder(remoteCategory.getOrder());
+		
+		String sql;
+		Object[] args;
+		if (localCategory != null) {
+			category.setId(localCategory.getId());
+			sql = "UPDATE " + mCategoryTable + " SET " + mCategoryName + "=?, " + mCategoryOrder + "=?, " + mCategoryUpdatedAt + "=? WHERE " + mCategoryId + "=?";
+			args = new Object[]{category.getName(), category.getOrder(), change.getUpdatedAt(), localCategory.getId()};
+			db.execSQL(sql, args);
+			applied.mEditedCategories.add(category);
+		} else {
+			sql = "INSERT INTO " + mCategoryTable + " (" + mCategoryName + ", " + mCategoryOrder + ", " + mCategoryRemoteId + ", " + mCategoryUpdatedAt + ") VALUES (?, ?, ?, ?)";
+			SQLiteStatement insert = Sqlite.getWriteStatement(sql);
+			insert.bindString(1, category.getName());
+			insert.bindLong(2, category.getOrder());
+			insert.bindString(3, change.getRemoteId());
+			insert.bindLong(4, change.getUpdatedAt());
+			category.setId(Long.toString(insert.executeInsert()));
+			applied.mAddedCategories.add(category);
+		}
+	}
+	
+	removeOutboxEntry(db, change);
+}
+
+private void applyItemChange(SQLiteDatabase db, SyncChange change, AppliedChanges applied) {
+	Cursor cursor = db.rawQuery("SELECT " + mItemId + ", " + mCategoryId + ", " + mItemText + ", " + mItemDate + ", " + mItemUpdatedAt +
+			" FROM " + mItemTable + " WHERE " + mItemRemoteId + "=?", new String[]{change.getRemoteId()});
+	Item localItem = null;
+	long localUpdatedAt = 0;
+	if (cursor.moveToNext()) {
+		localItem = new Item();
+		localItem.setId(Long.toString(cursor.getLong(0)));
+		localItem.setCategoryId(Long.toString(cursor.getLong(1)));
+		localItem.setText(cursor.getString(2));
+		localItem.setDate(cursor.getLong(3));
+		localUpdatedAt = cursor.getLong(4);
+	}
+	cursor.close();
+	
+	if (!isNewer(db, change, localItem != null, localUpdatedAt)) {
+		return;
+	}
+	
+	Item remoteItem = change.getItem();
+	if (change.getOperation() == SyncOperation.REMOVE) {
+		if (localItem != null) {
+			db.delete(mItemTable, mItemId + "=?", new String[]{localItem.getId()});
+			applied.mRemovedItems.add(localItem);
+		}
+	} else if (remoteItem != null) {
+		String categoryId = findCategoryId(db, remoteItem.getCategoryId());
+		// Category hasn't been synced or has been removed
+		if (categoryId == null) {
+			return;
+		}
+		
+		Item item = new Item();
+		item.setCategoryId(categoryId);
+		item.setText(remoteItem.getText());
+		item.setDate(remoteItem.getDate());
+		
+		if (localItem != null) {
+			item.setId(localItem.getId());
+			String sql = "UPDATE " + mItemTable + " SET " + mCategoryId + "=?, " + mItemText + "=?, " + mItemDate + "=?, " + mItemUpdatedAt + "=? WHERE " + mItemId + "=?";
+			db.execSQL(sql, new Object[]{categoryId, item.getText(), item.getDate(), change.getUpdatedAt(), localItem.getId()});
+			applied.mEditedItems.add(item);
+		} else {
+			String sql = "INSERT INTO " + mItemTable + " (" + mCategoryId + ", " + mItemText + ", " + mItemDate + ", " + mItemRemoteId + ", " + mItemUpdatedAt + ") VALUES (?, ?, ?, ?, ?)";
+			SQLiteStatement insert = Sqlite.getWriteStatement(sql);
+			insert.bindString(1, categoryId);
+			insert.bindString(2, item.getText());
+			insert.bindLong(3, item.getDate());
+			insert.bindString(4, change.getRemoteId());
+			insert.bindLong(5, change.getUpdatedAt());
+			item.setId(Long.toString(insert.executeInsert()));
+			applied.mAddedItems.add(item);
+		}
+	}
+	
+	removeOutboxEntry(db, change);
+}
+
+/**
+ * Check if a fetched change is newer than the local row, or newer than the pending removal of the
+ * row if it has been removed locally
+ * @param change the fetched change
+ * @param rowExists true if the local row exists
+ * @param localUpdatedAt when the local row was changed
+ * @return true if the fetched change should be applied
+ */
+private boolean isNewer(SQLiteDatabase db, SyncChange change, boolean rowExists, long localUpdatedAt) {
+	if (rowExists) {
+		return change.getUpdatedAt() > localUpdatedAt;
+	}
+	
+	Cursor cursor = db.rawQuery("SELECT " + mOutboxUpdatedAt + " FROM " + mOutbox +
+					" WHERE " + mOutboxType + "=? AND " + mOutboxRemoteId + "=?",
+			new String[]{Integer.toString(change.getType().getCode()), change.getRemoteId()});
+	boolean isNewer = !cursor.moveToNext() || change.getUpdatedAt() > cursor.getLong(0);
+	cursor.close();
+	return isNewer;
+}
+
+@Nullable
+private String findCategoryId(SQLiteDatabase db, String categoryRemoteId) {
+	Cursor cursor = db.rawQuery("SELECT " + mCategoryId + " FROM " + mCategoryTable + " WHERE " + mCategoryRemoteId + "=?", new String[]{categoryRemoteId});
+	String categoryId = null;
+	if (cursor.moveToNext()) {
+		categoryId = Long.toString(cursor.getLong(0));
+	}
+	cursor.close();
+	return categoryId;
+}
+
+/**
+ * Spread out the order of the categories if they still use the old dense order (1, 2, 3...).
+ * Older versions of the app wrote that order to the cloud, so categories fetched from there may
+ * still use it after the local upgrade in {@link Sqlite} has spread out the local ones. The new
+ * orders are added to the outbox so they're pushed, and sent as an edited {@link CategoryEvent}
+ * with isRemoteChange set. Call on the writer thread, see {@link SqliteExecutors#submitWrite}
+ * @return number of categories that got a new order
+ */
+public int spreadDenseCategoryOrder() {
+	SQLiteDatabase db = Sqlite.getDatabase();
+	List<Category> changedCategories;
+	db.beginTransaction();
+	try {
+		Cursor cursor = db.rawQuery("SELECT " + mCategoryId + ", " + mCategoryName + ", " + mCategoryOrder +
+				" FROM " + mCategoryTable + " ORDER BY " + mCategoryOrder + " ASC", null);
+		List<Category> categories = new ArrayList<>(cursor.getCount());
+		while (cursor.moveToNext()) {
+			Category category = new Category();
+			category.setId(Long.toString(cursor.getLong(0)));
+			category.setName(cursor.getString(1));
+			category.setOrder(cursor.getInt(2));
+			categories.add(category);
+		}
+		cursor.close();
+		
+		if (!CategoryOrder.isDenseOrder(categories)) {
+			return 0;
+		}
+		
+		changedCategories = CategoryOrder.rebalance(categories);
+		long updatedAt = System.currentTimeMillis();
+		SQLiteStatement update = db.compileStatement("UPDATE " + mCategoryTable +
+				" SET " + mCategoryOrder + "=?, " + mCategoryUpdatedAt + "=? WHERE " + mCategoryId + "=?");
+		for (Category category : changedCategories) {
+			long id = Long.parseLong(category.getId());
+			update.bindLong(1, category.getOrder());
+			update.bindLong(2, updatedAt);
+			update.bindLong(3, id);
+			update.executeUpdateDelete();
+			recordCategoryChange(id, SyncOperation.UPSERT, updatedAt);
+		}
+		update.close();
+		db.setTransactionSuccessful();
+	} finally {
+		db.endTransaction();
+	}
+	
+	SqliteExecutors.postOnMainThread(new CategoryEvent(ObjectEvent.Actions.EDITED, changedCategories, -1, -1, true));
+	return changedCategories.size();
+}
+
+/**
+ * Remove the pending local change of a row, the fetched change is newer
+ */
+private void removeOutboxEntry(SQLiteDatabase db, SyncChange change) {
+	db.delete(mOutbox, mOutboxType + "=? AND " + mOutboxRemoteId + "=?",
+			new String[]{Integer.toString(change.getType().getCode()), change.getRemoteId()});
+}
+
+/**
+ * Fetched changes that were applied, sent as events when the transaction is done
+ */
+private static class AppliedChanges {
+	final List<Category> mAddedCategories = new ArrayList<>();
+	final List<Category> mEditedCategories = new ArrayList<>();
+	final List<Category> mRemovedCategories = new ArrayList<>();
+	final List<Item> mAddedItems = new ArrayList<>();
+	final List<Item> mEditedItems = new ArrayList<>();
+	final List<Item> mRemovedItems = new ArrayList<>();
+	
+	void post() {
+		postCategories(ObjectEvent.Actions.ADDED, mAddedCategories);
+		postCategories(ObjectEvent.Actions.EDITED, mEditedCategories);
+		postCategories(ObjectEvent.Actions.REMOVED, mRemovedCategories);
+		postItems(ObjectEvent.Actions.ADDED, mAddedItems);
+		postItems(ObjectEvent.Actions.EDITED, mEditedItems);
+		postItems(ObjectEvent.Actions.REMOVED, mRemovedItems);
+	}
+	
+	private static void postCategories(ObjectEvent.Actions action, List<Category> categories) {
+		if (!categories.isEmpty()) {
+			SqliteExecutors.postOnMainThread(new CategoryEvent(action, categories, -1, -1, true));
+		}
+	}
+	
+	private static void postItems(ObjectEvent.Actions action, List<Item> items) {
+		if (!items.isEmpty()) {
+			SqliteExecutors.postOnMainThread(ItemEvent.remoteChange(action, items));
+		}
+	}
+}
+}
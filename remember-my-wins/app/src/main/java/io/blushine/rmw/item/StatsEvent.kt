@@ -0,0 +1,32 @@
+package io.blushine.rmw.item
+
+/**
+ * Statistics of the items in a category, see [StatsGateway]
+ * @param categoryId the category the stats are for, [GET_ALL_ITEMS] for all categories
+ * @param stats the statistics, null if they couldn't be read
+ */
+internal class StatsEvent(val categoryId: String, val stats: ItemStats?)
+
+/**
+ * Item statistics
+ * @param itemCount number of items in the category, or in all categories
+ * @param categoryCounts number of items in each category by category id. Categories without items
+ * may be missing
+ * @param monthCounts number of items per month with the oldest month first. Months without items
+ * are left out
+ * @param longestStreak most consecutive days with items, counted over all categories
+ */
+internal class ItemStats(
+		val itemCount: Int,
+		val categoryCounts: Map<String, Int>,
+		val monthCounts: List<MonthCount>,
+		val longestStreak: Int
+)
+
+/**
+ * Number of items in a month
+ * @param year the year
+ * @param month the month, 1 for January
+ * @param itemCount number of items in the month
+ */
+internal class MonthCount(val year: Int, val month: Int, val itemCount: Int)
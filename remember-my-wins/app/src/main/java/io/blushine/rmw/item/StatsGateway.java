@@ -0,0 +1,175 @@
+package io.blushine.rmw.item;
+
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.util.Log;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import io.blushine.android.sqlite.SqliteGateway;
+import io.blushine.rmw.R;
+import io.blushine.rmw.util.AppActivity;
+import io.blushine.rmw.util.MeasuredOperation;
+import io.blushine.rmw.util.Metrics;
+import io.blushine.rmw.util.Sqlite;
+import io.blushine.rmw.util.SqliteExecutors;
+
+/**
+ * Gateway for item statistics. Only reads the summary tables that triggers keep up to date when
+ * items are added, edited or removed, see {@link Sqlite}. Counts take one row per category,
+ * histograms one row per month, and the longest streak is read through an index. Both storage
+ * locations keep their items in SQLite so this is used for both
+ */
+class StatsGateway extends SqliteGateway {
+private static final String TAG = StatsGateway.class.getSimpleName();
+private static final MeasuredOperation GET_STATS = Metrics.operation(TAG + ".getStats");
+private static final MeasuredOperation REBUILD_DATE_STATS = Metrics.operation(TAG + ".rebuildDateStats");
+private final String mCategoryId;
+private final String mCategoryStats;
+private final String mCategoryStatsCount;
+private final String mMonthStats;
+private final String mMonthStatsMonth;
+private final String mMonthStatsCount;
+private final String mStreakStats;
+private final String mStreakStatsLength;
+
+StatsGateway() {
+	Resources resources = AppActivity.getActivity().getResources();
+	mCategoryId = resources.getString(R.string.table_category_id);
+	mCategoryStats = resources.getString(R.string.table_category_stats);
+	mCategoryStatsCount = resources.getString(R.string.table_category_stats_count);
+	mMonthStats = resources.getString(R.string.table_month_stats);
+	mMonthStatsMonth = resources.getString(R.string.table_month_stats_month);
+	mMonthStatsCount = resources.getString(R.string.table_month_stats_count);
+	mStreakStats = resources.getString(R.string.table_streak_stats);
+	mStreakStatsLength = resources.getString(R.string.table_streak_stats_length);
+}
+
+private static boolean isAllCategories(String categoryId) {
+	return categoryId.equals(ItemEventKt.GET_ALL_ITEMS);
+}
+
+/**
+ * Get the statistics of a category. The result is sent as a {@link StatsEvent}. Months and days
+ * are counted again first if the time zone has changed since they were counted
+ * @param categoryId the category, {@link ItemEventKt#GET_ALL_ITEMS} for all categories
+ */
+void getStats(@NotNull String categoryId) {
+	Runnable readStats = GET_STATS.measure(() -> {
+		ItemStats stats = queryStats(categoryId);
+		GET_STATS.recordRows(stats.getMonthCounts().size());
+		SqliteExecutors.postOnMainThread(new StatsEvent(categoryId, stats));
+	});
+	SqliteExecutors.FailureHandler onReadStatsFailed = e -> {
+		Log.e(TAG, "getStats()", e);
+		GET_STATS.recordFailure();
+		SqliteExecutors.postOnMainThread(new StatsEvent(categoryId, null));
+	};
+	
+	String timeZone = TimeZone.getDefault().getID();
+	String statsTimeZone = ItemPrefsGateway.INSTANCE.getStatsTimeZone();
+	if (statsTimeZone == null) {
+		// Counted in the current time zone when the tables were created
+		ItemPrefsGateway.INSTANCE.setStatsTimeZone(timeZone);
+	}
+	
+	if (statsTimeZone == null || statsTimeZone.equals(timeZone)) {
+		SqliteExecutors.read(readStats, onReadStatsFailed);
+	} else {
+		ItemPrefsGateway.INSTANCE.setStatsTimeZone(timeZone);
+		SqliteExecutors.write(REBUILD_DATE_STATS.measure(() -> {
+			Sqlite.rebuildDateStats(Sqlite.getDatabase());
+			SqliteExecutors.read(readStats, onReadStatsFailed);
+		}), e -> {
+			Log.e(TAG, "getStats() — rebuildDateStats()", e);
+			REBUILD_DATE_STATS.recordFailure();
+			// Read the stats counted in the old time zone
+			SqliteExecutors.read(readStats, onReadStatsFailed);
+		});
+	}
+}
+
+private ItemStats queryStats(String categoryId) {
+	Map<String, Integer> categoryCounts = queryCategoryCounts();
+	int itemCount = 0;
+	if (isAllCategories(categoryId)) {
+		for (int count : categoryCounts.values()) {
+			itemCount += count;
+		}
+	} else {
+		Integer count = categoryCounts.get(categoryId);
+		itemCount = count != null ? count : 0;
+	}
+	
+	return new ItemStats(itemCount, categoryCounts, queryMonthCounts(categoryId), queryLongestStreak());
+}
+
+/**
+ * Get the number of items in a category. Can be called from any DB thread
+ * @param categoryId the category, {@link ItemEventKt#GET_ALL_ITEMS} for all categories
+ * @return number of items in the category
+ */
+int queryItemCount(@NotNull String categoryId) {
+	String sql = "SELECT SUM(" + mCategoryStatsCount + ") FROM " + mCategoryStats;
+	if (!isAllCategories(categoryId)) {
+		sql += " WHERE " + mCategoryId + "=" + Long.parseLong(categoryId);
+	}
+	
+	Cursor cursor = rawQuery(sql);
+	int itemCount = cursor.moveToNext() ? cursor.getInt(0) : 0;
+	close(cursor);
+	return itemCount;
+}
+
+/**
+ * @return number of items in each category by category id
+ */
+private Map<String, Integer> queryCategoryCounts() {
+	Cursor cursor = rawQuery("SELECT " + mCategoryId + ", " + mCategoryStatsCount + " FROM " + mCategoryStats);
+	Map<String, Integer> categoryCounts = new HashMap<>(cursor.getCount());
+	while (cursor.moveToNext()) {
+		categoryCounts.put(Long.toString(cursor.getLong(0)), cursor.getInt(1));
+	}
+	close(cursor);
+	return categoryCounts;
+}
+
+/**
+ * @param categoryId the category, {@link ItemEventKt#GET_ALL_ITEMS} for all categories
+ * @return number of items per month, oldest month first
+ */
+private List<MonthCount> queryMonthCounts(String categoryId) {
+	String sql = "SELECT " + mMonthStatsMonth + ", SUM(" + mMonthStatsCount + ") FROM " + mMonthStats;
+	if (!isAllCategories(categoryId)) {
+		sql += " WHERE " + mCategoryId + "=" + Long.parseLong(categoryId);
+	}
+	sql += " GROUP BY " + mMonthStatsMonth +
+			" ORDER BY " + mMonthStatsMonth + " ASC";
+	
+	Cursor cursor = rawQuery(sql);
+	List<MonthCount> monthCounts = new ArrayList<>(cursor.getCount());
+	while (cursor.moveToNext()) {
+		// Stored as yyyyMM
+		int month = cursor.getInt(0);
+		monthCounts.add(new MonthCount(month / 100, month % 100, cursor.getInt(1)));
+	}
+	close(cursor);
+	return monthCounts;
+}
+
+/**
+ * @return most consecutive days with items in any category
+ */
+private int queryLongestStreak() {
+	Cursor cursor = rawQuery("SELECT MAX(" + mStreakStatsLength + ") FROM " + mStreakStats);
+	int longestStreak = cursor.moveToNext() ? cursor.getInt(0) : 0;
+	close(cursor);
+	return longestStreak;
+}
+}
@@ -0,0 +1,55 @@
+package io.blushine.rmw.item
+
+import io.blushine.rmw.settings.StorageLocations
+
+/**
+ * Progress of moving all categories and items to a new storage location, see [ItemMigrator]
+ * @param state how far the migration has come
+ * @param storageLocation the location the data is moved to
+ * @param movedCount number of categories and items moved so far
+ * @param totalCount number of categories and items to move, 0 if not known
+ * @param counts the counts checked after the migration, only set when [State.COMPLETED]
+ */
+internal class StorageMigrationEvent @JvmOverloads constructor(
+		val state: State,
+		val storageLocation: StorageLocations,
+		val movedCount: Int = 0,
+		val totalCount: Int = 0,
+		val counts: MigrationCounts? = null
+) {
+	enum class State {
+		PROGRESS,
+		COMPLETED,
+		CANCELLED,
+		/** Moving to the cloud needs a signed in user, it's started the next time the app is started with one */
+		WAITING_FOR_SIGN_IN,
+		/** The migration is resumed the next time the app is started */
+		FAILED,
+	}
+}
+
+/**
+ * Counts checked after a migration
+ * @param categoryCount number of categories
+ * @param itemCount number of items
+ * @param notMovedCount number of categories, items or changes that weren't moved
+ * @param remoteCategoryCount number of categories in the cloud, -1 if not checked
+ * @param remoteItemCount number of items in the cloud, -1 if not checked
+ */
+internal class MigrationCounts @JvmOverloads constructor(
+		val categoryCount: Int,
+		val itemCount: Int,
+		val notMovedCount: Int,
+		val remoteCategoryCount: Int = -1,
+		val remoteItemCount: Int = -1
+) {
+	/**
+	 * @return true if everything was moved and the cloud has as many categories and items as the
+	 * phone
+	 */
+	fun isVerified(): Boolean {
+		return notMovedCount == 0 &&
+				(remoteCategoryCount < 0 || remoteCategoryCount == categoryCount) &&
+				(remoteItemCount < 0 || remoteItemCount == itemCount)
+	}
+}
\ No newline at end of file
@@ -0,0 +1,102 @@
+package io.blushine.rmw.item
+
+/**
+ * Tells [SyncListeners] when something was changed outside of this device
+ */
+internal interface RemoteChangeSource {
+	/**
+	 * Start listening to changes made outside of this device
+	 * @param onRemoteChange called on the main thread when something was changed
+	 * @return stops listening when removed
+	 */
+	fun listen(onRemoteChange: Runnable): Registration
+
+	interface Registration {
+		fun remove()
+	}
+}
+
+/**
+ * Keeps one listener to remote changes while categories or items are shown, see
+ * [ItemGateway.listenToItems]. The listener doesn't fetch the changes itself, it calls
+ * [onRemoteChange] so they're fetched by a sync and sent as events with isRemoteChange set like
+ * all other remote changes. Only use from the main thread.
+ * @param source listens to the remote changes
+ * @param onRemoteChange called when something was changed outside of this device
+ */
+internal class SyncListeners(private val source: RemoteChangeSource, private val onRemoteChange: Runnable) {
+	/** Number of listeners to the items of each category */
+	private val itemListenerCounts = HashMap<String, Int>()
+	private var categoryListenerCount = 0
+	private var registration: RemoteChangeSource.Registration? = null
+
+	/**
+	 * True while something listens to remote changes
+	 */
+	val isListening: Boolean
+		get() = registration != null
+
+	/**
+	 * Listen to changes of items in a category. Each call has to be matched by a call to
+	 * [stopListeningToItems]
+	 * @param categoryId the category to listen to
+	 */
+	fun listenToItems(categoryId: String) {
+		itemListenerCounts[categoryId] = (itemListenerCounts[categoryId] ?: 0) + 1
+		update()
+	}
+
+	/**
+	 * Stop listening to changes of items in a category
+	 * @param categoryId the category to stop listening to
+	 */
+	fun stopListeningToItems(categoryId: String) {
+		val count = itemListenerCounts[categoryId] ?: return
+		if (count > 1) {
+			itemListenerCounts[categoryId] = count - 1
+		} else {
+			itemListenerCounts.remove(categoryId)
+		}
+		update()
+	}
+
+	/**
+	 * Listen to changes of categories. Each call has to be matched by a call to
+	 * [stopListeningToCategories]
+	 */
+	fun listenToCategories() {
+		categoryListenerCount++
+		update()
+	}
+
+	/**
+	 * Stop listening to changes of categories
+	 */
+	fun stopListeningToCategories() {
+		categoryListenerCount = Math.max(categoryListenerCount - 1, 0)
+		update()
+	}
+
+	/**
+	 * Stop all listeners, e.g. when the gateway is replaced
+	 */
+	fun stopAll() {
+		itemListenerCounts.clear()
+		categoryListenerCount = 0
+		update()
+	}
+
+	/**
+	 * Listen to the source while anything is listening, one registration is used for all
+	 */
+	private fun update() {
+		val shouldListen = categoryListenerCount > 0 || itemListenerCounts.isNotEmpty()
+		val registration = registration
+		if (shouldListen && registration == null) {
+			this.registration = source.listen(onRemoteChange)
+		} else if (!shouldListen && registration != null) {
+			registration.remove()
+			this.registration = null
+		}
+	}
+}
@@ -4,7 +4,7 @@ import android.os.Bundle;
 import androidx.annotation.Nullable;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.tabs.TabLayout;
-import androidx.viewpager.widget.ViewPager;
+import androidx.viewpager2.widget.ViewPager2;
 import androidx.appcompat.widget.Toolbar;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -12,13 +12,13 @@ import android.view.MenuInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageButton;
-import android.widget.LinearLayout;
 
 import com.squareup.otto.Subscribe;
 
 import java.util.List;
 
 import io.blushine.android.AppFragment;
+import io.blushine.android.common.ObjectEvent;
 import io.blushine.rmw.R;
 import io.blushine.rmw.settings.StorageLocationSetEvent;
 import io.blushine.rmw.util.AppActivity;
@@ -30,16 +30,30 @@ import io.blushine.utils.EventBus;
 public class TabViewFragment extends AppFragment {
 private static final EventBus mEventBus = EventBus.getInstance();
 private static final String PAGE_POSITION_KEY = "page_position";
-private ViewPager mCategoryViewPager;
+/** Number of pages on each side of the current page to keep, other pages only keep their state */
+private static final int OFFSCREEN_PAGE_LIMIT = 1;
+private ViewPager2 mCategoryViewPager;
 private CategoryPagerAdapter mCategoryAdapter;
+private CategoryTabs mCategoryTabs;
+private CategoryPrefetcher mCategoryPrefetcher;
 private TabLayout mTabLayout;
 private FloatingActionButton mAddButton;
 private int mPositionAfterUpdate = -1;
+/** Open the category that was shown last when the app is started */
+private boolean mShowViewedCategory = false;
+private final ViewPager2.OnPageChangeCallback mViewedCategoryCallback = new ViewPager2.OnPageChangeCallback() {
+	@Override
+	public void onPageSelected(int position) {
+		onViewedCategory();
+	}
+};
 
 @Override
 public void onCreate(Bundle savedInstanceState) {
 	super.onCreate(savedInstanceState);
 	mEventBus.register(this);
+	mShowViewedCategory = savedInstanceState == null;
+	ItemRepo.getInstance().listenToCategories();
 }
 
 @Override
@@ -71,8 +85,14 @@ public View onCreateViewImpl(LayoutInflater inflater, ViewGroup container, Bundl
 	
 	ImageButton addCategoryButton = view.findViewById(R.id.add_category_button);
 	addCategoryButton.setOnClickListener(v -> {
+		// Make room after the last category first, rebalanced categories need to be saved
+		List<Category> rebalancedCategories = mCategoryAdapter.makeRoomForNextCategory();
+		if (!rebalancedCategories.isEmpty()) {
+			mEventBus.post(new CategoryEvent(ObjectEvent.Actions.EDIT, rebalancedCategories));
+		}
+		
 		CategoryAddFragment categoryAddFragment = new CategoryAddFragment();
-		categoryAddFragment.setArguments(mCategoryAdapter.getCount());
+		categoryAddFragment.setArguments(mCategoryAdapter.getNextOrder());
 		categoryAddFragment.show();
 	});
 	
@@ -81,8 +101,8 @@ public View onCreateViewImpl(LayoutInflater inflater, ViewGroup container, Bundl
 	}
 	
 	mCategoryViewPager = view.findViewById(R.id.view_pager);
+	mCategoryViewPager.setOffscreenPageLimit(OFFSCREEN_PAGE_LIMIT);
 	mTabLayout = view.findViewById(R.id.view_pager_tabs);
-	mTabLayout.setupWithViewPager(mCategoryViewPager);
 	bindAdapter();
 	
 	return view;
@@ -96,13 +116,17 @@ private Category getSelectedCategory() {
 private void bindAdapter() {
 	if (mCategoryViewPager != null && mCategoryViewPager.getAdapter() == null) {
 		if (mCategoryAdapter == null) {
-			mCategoryAdapter = new CategoryPagerAdapter(getChildFragmentManager());
+			mCategoryAdapter = new CategoryPagerAdapter(this);
 		}
 		mCategoryViewPager.setAdapter(mCategoryAdapter);
-		updateLongPressListeners();
+		mCategoryTabs = new CategoryTabs(mTabLayout, mCategoryViewPager, mCategoryAdapter, this::editCategory);
+		mCategoryTabs.attach();
+		mCategoryPrefetcher = new CategoryPrefetcher(mCategoryAdapter, OFFSCREEN_PAGE_LIMIT);
+		mCategoryViewPager.registerOnPageChangeCallback(mCategoryPrefetcher);
+		mCategoryViewPager.registerOnPageChangeCallback(mViewedCategoryCallback);
 		
 		// Hide add button
-		if (mCategoryAdapter.getCount() == 0) {
+		if (mCategoryAdapter.getItemCount() == 0) {
 			mAddButton.setVisibility(View.GONE);
 		}
 		ItemRepo.getInstance().getCategories();
@@ -110,23 +134,11 @@ private void bindAdapter() {
 	}
 }
 
-private void updateLongPressListeners() {
-	LinearLayout slidingTabStrip = (LinearLayout) mTabLayout.getChildAt(0);
-	for (int i = 0; i < slidingTabStrip.getChildCount(); i++) {
-		final int position = i;
-		View tabView = slidingTabStrip.getChildAt(position);
-		tabView.setLongClickable(true);
-		tabView.setOnLongClickListener(view -> {
-			Category category = mCategoryAdapter.getCategory(position);
-			
-			if (category != null && !category.getId().isEmpty()) {
-				CategoryEditFragment categoryEditFragment = new CategoryEditFragment();
-				categoryEditFragment.setArguments(category);
-				categoryEditFragment.show();
-			}
-			
-			return true;
-		});
+private void editCategory(Category category) {
+	if (!category.getId().isEmpty()) {
+		CategoryEditFragment categoryEditFragment = new CategoryEditFragment();
+		categoryEditFragment.setArguments(category);
+		categoryEditFragment.show();
 	}
 }
 
@@ -171,10 +183,22 @@ public void onSaveInstanceState(Bundle outState) {
 	outState.putInt(PAGE_POSITION_KEY, mCategoryViewPager.getCurrentItem());
 }
 
+@Override
+public void onDestroyView() {
+	super.onDestroyView();
+	// The adapter is kept for the next view
+	mCategoryTabs.detach();
+	mCategoryViewPager.unregisterOnPageChangeCallback(mCategoryPrefetcher);
+	mCategoryViewPager.unregisterOnPageChangeCallback(mViewedCategoryCallback);
+	mCategoryPrefetcher.cancel();
+	mCategoryViewPager.setAdapter(null);
+}
+
 @Override
 public void onDestroy() {
 	super.onDestroy();
 	mEventBus.unregister(this);
+	ItemRepo.getInstance().stopListeningToCategories();
 }
 
 @SuppressWarnings("unused")
@@ -182,11 +206,10 @@ public void onDestroy() {
 public synchronized void onCategory(CategoryEvent event) {
 	// Update tabs
 	if (mCategoryAdapter != null && event.hasObjects()) {
-		Category category = event.getFirstObject();
-		
 		switch (event.getAction()) {
-		case ADD:
-			addCategory(category);
+		// Added categories get their ids when they have been stored
+		case ADDED:
+			addCategories(event.getObjects());
 			break;
 		
 		case EDIT:
@@ -194,11 +217,7 @@ public synchronized void onCategory(CategoryEvent event) {
 			break;
 		
 		case REMOVE:
-			removeCategory(category);
-			break;
-		
-		case ADD_FAILED:
-			removeCategory(category);
+			removeCategories(event.getObjects());
 			break;
 		
 		case EDIT_FAILED:
@@ -206,11 +225,28 @@ public synchronized void onCategory(CategoryEvent event) {
 			break;
 		
 		case REMOVE_FAILED:
-			addCategory(category);
+			addCategories(event.getObjects());
+			break;
+		
+		// Changes made on another device
+		case EDITED:
+			if (event.isRemoteChange()) {
+				editCategories(event.getObjects());
+			}
+			break;
+		
+		case REMOVED:
+			if (event.isRemoteChange()) {
+				removeCategories(event.getObjects());
+			}
 			break;
 		
 		case GET_RESPONSE:
 			Category selectedCategory = getSelectedCategory();
+			if (selectedCategory == null && mShowViewedCategory) {
+				selectedCategory = ItemRepo.getInstance().getViewedCategory();
+			}
+			mShowViewedCategory = false;
 			mCategoryAdapter.setItems(event.getObjects());
 			mAddButton.setVisibility(View.VISIBLE);
 			sortAndSetSelected(selectedCategory);
@@ -218,14 +254,29 @@ public synchronized void onCategory(CategoryEvent event) {
 		}
 		
 		mCategoryViewPager.setCurrentItem(mPositionAfterUpdate, false);
-		updateLongPressListeners();
+		mCategoryTabs.selectTab(mPositionAfterUpdate);
+		mCategoryPrefetcher.prefetch(mCategoryViewPager.getCurrentItem());
+		onViewedCategory();
+	}
+}
+
+private void onViewedCategory() {
+	Category category = getSelectedCategory();
+	if (category != null) {
+		ItemRepo.getInstance().setViewedCategory(category);
+	}
+}
+
+private void addCategories(List<Category> categories) {
+	for (Category category : categories) {
+		addCategory(category);
 	}
 }
 
 private void addCategory(Category category) {
 	Category selectedCategory = getSelectedCategory();
 	// Added first category -> Show add item button
-	if (mCategoryAdapter.getCount() == 0) {
+	if (mCategoryAdapter.getItemCount() == 0) {
 		mAddButton.setVisibility(View.VISIBLE);
 		mPositionAfterUpdate = 1;
 	}
@@ -238,15 +289,15 @@ private void addCategory(Category category) {
 }
 
 private void editCategories(List<Category> categories) {
-	for (Category editedCategory : categories) {
-		Category tabCategory = mCategoryAdapter.findCategory(editedCategory);
-		
-		if (tabCategory != null) {
-			tabCategory.set(editedCategory);
-		}
+	Category selectedCategory = getSelectedCategory();
+	mCategoryAdapter.editItems(categories);
+	setSelected(selectedCategory);
+}
+
+private void removeCategories(List<Category> categories) {
+	for (Category category : categories) {
+		removeCategory(category);
 	}
-	
-	sortAndSetSelected(getSelectedCategory());
 }
 
 private void removeCategory(Category category) {
@@ -254,7 +305,7 @@ private void removeCategory(Category category) {
 	mCategoryAdapter.removeItem(category);
 	
 	// Removed the last category -> Hide add item button
-	if (mCategoryAdapter.getCount() == 0) {
+	if (mCategoryAdapter.getItemCount() == 0) {
 		mAddButton.setVisibility(View.GONE);
 	}
 	// Adjust position if we removed an item before the selected item
@@ -269,15 +320,17 @@ private void sortAndSetSelected(Category selectedCategory) {
 	}
 	
 	mCategoryAdapter.sortItems();
+	setSelected(selectedCategory);
+}
+
+private void setSelected(Category selectedCategory) {
+	if (selectedCategory == null) {
+		return;
+	}
 	
-	// Find the selected category
-	for (int i = 0; i < mCategoryAdapter.getCount(); ++i) {
-		Category categoryInAdapter = mCategoryAdapter.getCategory(i);
-		
-		if (selectedCategory.equals(categoryInAdapter)) {
-			mPositionAfterUpdate = i;
-			break;
-		}
+	int position = mCategoryAdapter.getPosition(selectedCategory);
+	if (position != -1) {
+		mPositionAfterUpdate = position;
 	}
 }
 
@@ -0,0 +1,33 @@
+package io.blushine.rmw.item.firestore
+
+/**
+ * Remove documents in rounds of batches that are committed at the same time, until there are no
+ * documents left. Each round fetches the documents that are still left, so it can be run again if
+ * it was stopped, e.g. if the app was killed
+ * @param batchSize max number of documents in a batch
+ * @param parallelBatches max number of batches committed at the same time
+ * @param fetch get at most this number of the documents that are left, empty when all are removed
+ * @param commit remove the batches of a round, returns when all of them have been committed
+ * @param onProgress called after each round with the total number of removed documents
+ * @return number of removed documents
+ */
+internal fun <T> removeInBatches(
+		batchSize: Int,
+		parallelBatches: Int,
+		fetch: (limit: Int) -> List<T>,
+		commit: (batches: List<List<T>>) -> Unit,
+		onProgress: (Int) -> Unit = {}
+): Int {
+	var removedCount = 0
+
+	while (true) {
+		val documents = fetch.invoke(batchSize * parallelBatches)
+		if (documents.isEmpty()) {
+			return removedCount
+		}
+
+		commit.invoke(documents.chunked(batchSize))
+		removedCount += documents.size
+		onProgress.invoke(removedCount)
+	}
+}
@@ -1,11 +1,8 @@
 package io.blushine.rmw.item.firestore
 
-import com.google.android.gms.tasks.Continuation
-import com.google.android.gms.tasks.Task
 import com.google.android.gms.tasks.Tasks
 import com.google.firebase.firestore.Transaction
 import io.blushine.rmw.item.Category
-import io.blushine.rmw.item.Item
 
 /**
  * Task for getting categories
@@ -34,32 +31,6 @@ internal class GetCategoriesTask(
 	}
 }
 
-/**
- * Task for adding a new category. This will also update all categories after this one.
- * Call [GetCategoriesTask] before calling this one
- * @param category the category to add
- */
-internal class AddCategoryTask(val category: Category) : FirestoreTask(), Continuation<List<Category>, Unit> {
-	override fun then(getCategoriesTask: Task<List<Category>>) {
-		val task = db().runTransaction { transaction ->
-			// Add new category
-			val newDoc = getCategory()
-			category.userId = getUserId()
-			category.id = newDoc.id
-
-			transaction.set(newDoc, category)
-
-			// Update all categories after this one
-			val resultList = getCategoriesTask.result
-			if (resultList != null) {
-				UpdateCategoriesTask.transactionImpl(transaction, resultList)
-			}
-		}
-
-		Tasks.await(task)
-	}
-}
-
 internal class UpdateCategoriesTask(val categories: List<Category>) : FirestoreCallableTask<Unit>() {
 	override fun call() {
 		val task = db().runTransaction { transaction ->
@@ -82,33 +53,51 @@ internal class UpdateCategoriesTask(val categories: List<Category>) : FirestoreC
 	}
 }
 
-internal class RemoveCategoryTask(val category: Category) : FirestoreTask(), Continuation<Pair<List<Item>, List<Category>>, Unit> {
-	override fun then(combineTask: Task<Pair<List<Item>, List<Category>>>) {
-		val taskResult = combineTask.result
-		if (taskResult != null) {
-		val itemsToRemove = taskResult.first
-		val categories = taskResult.second
-
-		db().runTransaction { transaction ->
-			// Delete category
-			transaction.delete(getCategory(category.id))
-
-			// Delete items
-			itemsToRemove.forEach { item ->
-				val doc = getItem(item.id)
-				transaction.delete(doc)
-			}
+/**
+ * Task for removing a category and all its items. Items are removed first in batches, several
+ * batches at a time. The category is removed last, other categories keep their order as the
+ * order is sparse. Can be run again for the same category if it was stopped, e.g. if
+ * the app was killed
+ * @param category the category to remove, only the id and order are needed
+ * @param onProgress called after each round of removed items with the total number of removed
+ * items, called from the task's thread
+ * @return number of removed items
+ */
+internal class RemoveCategoryTask(
+		val category: Category,
+		private val onProgress: (Int) -> Unit = {}
+) : FirestoreCallableTask<Int>() {
+	override fun call(): Int {
+		val removedItemCount = removeItems()
+		removeCategory()
+		return removedItemCount
+	}
 
-			// Decrease category order for categories after this
-			categories.forEach { category ->
-				// Skip if it's this category
-				if (category != this.category) {
-					category.order -= 1
-					val doc = getCategory(category.id)
-					transaction.set(doc, category)
+	private fun removeItems(): Int {
+		val query = GetItemTask.categoryQuery(category.id)
+
+		return removeInBatches(REMOVE_BATCH_SIZE, REMOVE_PARALLEL_BATCHES, fetch = { limit ->
+			Tasks.await(query.limit(limit.toLong()).get()).documents
+		}, commit = { batches ->
+			// Commit the batches in parallel
+			val commitTasks = batches.map { batchDocuments ->
+				val batch = db().batch()
+				for (document in batchDocuments) {
+					batch.delete(document.reference)
 				}
+				batch.commit()
 			}
-		}
-		}
+			Tasks.await(Tasks.whenAll(commitTasks))
+		}, onProgress = onProgress)
 	}
-}
+
+	private fun removeCategory() {
+		Tasks.await(getCategory(category.id).delete())
+	}
+
+	companion object {
+		/** Max writes in a Firestore batch */
+		private const val REMOVE_BATCH_SIZE = 500
+		private const val REMOVE_PARALLEL_BATCHES = 4
+	}
+}
\ No newline at end of file
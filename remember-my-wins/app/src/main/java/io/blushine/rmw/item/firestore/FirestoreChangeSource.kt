@@ -0,0 +1,40 @@
+package io.blushine.rmw.item.firestore
+
+import android.util.Log
+import io.blushine.rmw.item.RemoteChangeSource
+import java.util.*
+
+private val TAG = FirestoreChangeSource::class.simpleName ?: "INVALID"
+
+/**
+ * Listens to Firestore snapshots of the collections [SyncTask] fetches from. Only documents synced
+ * after the listener was added are watched, everything older is fetched by the sync anyway. Local
+ * writes are skipped while they're pending as they're already stored locally. Pushed changes show
+ * up once they've been committed, the sync they cause only fetches them back and skips them.
+ */
+internal class FirestoreChangeSource : RemoteChangeSource {
+	override fun listen(onRemoteChange: Runnable): RemoteChangeSource.Registration {
+		val userId = FirestoreTask.getUserId()
+		val since = Date()
+		val registrations = listOf(CATEGORY_TABLE, ITEM_TABLE, TOMBSTONE_TABLE).map { collection ->
+			FirestoreTask.db().collection(collection)
+					.whereEqualTo(USER_ID_FIELD, userId)
+					.whereGreaterThan(SYNCED_AT_FIELD, since)
+					.addSnapshotListener { snapshot, exception ->
+						if (exception != null) {
+							Log.w(TAG, "listen() — $collection", exception)
+						} else if (snapshot != null && !snapshot.metadata.hasPendingWrites() && snapshot.documentChanges.isNotEmpty()) {
+							onRemoteChange.run()
+						}
+					}
+		}
+
+		return object : RemoteChangeSource.Registration {
+			override fun remove() {
+				for (registration in registrations) {
+					registration.remove()
+				}
+			}
+		}
+	}
+}
@@ -12,8 +12,8 @@ import io.blushine.rmw.R
 import io.blushine.rmw.util.AppActivity
 import java.util.concurrent.Callable
 
-internal val CATEGORY_TABLE = AppActivity.getActivity()!!.resources!!.getString(R.string.table_category);
-internal val ITEM_TABLE = AppActivity.getActivity()!!.resources!!.getString(R.string.table_item)
+internal val CATEGORY_TABLE by lazy { AppActivity.getActivity()!!.resources!!.getString(R.string.table_category) }
+internal val ITEM_TABLE by lazy { AppActivity.getActivity()!!.resources!!.getString(R.string.table_item) }
 internal const val USER_ID_FIELD = "userId"
 internal const val CATEGORY_ID_FIELD = "categoryId"
 internal const val ORDER_FIELD = "order"
@@ -1,6 +1,7 @@
 package io.blushine.rmw.item.firestore
 
 import com.google.android.gms.tasks.Tasks
+import com.google.firebase.firestore.FieldPath
 import com.google.firebase.firestore.Query
 import io.blushine.rmw.item.GET_ALL_ITEMS
 import io.blushine.rmw.item.Item
@@ -9,23 +10,53 @@ import io.blushine.rmw.item.Item
  * Task for getting items
  * @param categoryId get all items from this category. To get from all categories set this to [GET_ALL_ITEMS]
  * @param orderByDate set to true to order by date in DESCENDING order
+ * @param afterDate only get items after this date and [afterId]. Requires [orderByDate]
+ * @param afterId only get items after [afterDate] and this id. Requires [orderByDate]
+ * @param limit maximum number of items to get, null to get all
  */
-internal class GetItemTask(val categoryId: String, val orderByDate: Boolean = false) : FirestoreCallableTask<List<Item>>() {
+internal class GetItemTask(
+		val categoryId: String,
+		val orderByDate: Boolean = false,
+		val afterDate: Long? = null,
+		val afterId: String? = null,
+		val limit: Int? = null
+) : FirestoreCallableTask<List<Item>>() {
 	override fun call(): List<Item> {
-		val itemCollection = db().collection(ITEM_TABLE)
+		var query = categoryQuery(categoryId)
 
-		var query = itemCollection.whereEqualTo(USER_ID_FIELD, getUserId())
+		if (orderByDate) {
+			query = query.orderBy(DATE_FIELD, Query.Direction.DESCENDING)
+					.orderBy(FieldPath.documentId(), Query.Direction.DESCENDING)
 
-		if (categoryId != GET_ALL_ITEMS) {
-			query = query.whereEqualTo(CATEGORY_ID_FIELD, categoryId)
+			if (afterDate != null && afterId != null) {
+				query = query.startAfter(afterDate, afterId)
+			}
 		}
 
-		if (orderByDate) {
-			query = query.orderBy(DATE_FIELD, Query.Direction.DESCENDING)
+		if (limit != null) {
+			query = query.limit(limit.toLong())
 		}
 
 		val task = query.get()
 		val querySnapshot = Tasks.await(task)
 		return querySnapshot.toList(Item::class.java)
 	}
+
+	companion object {
+		/**
+		 * Query for all items of the current user in a category
+		 * @param categoryId the category to get the items from, [GET_ALL_ITEMS] for all categories
+		 */
+		fun categoryQuery(categoryId: String): Query {
+			val itemCollection = db().collection(ITEM_TABLE)
+
+			var query = itemCollection.whereEqualTo(USER_ID_FIELD, getUserId())
+
+			if (categoryId != GET_ALL_ITEMS) {
+				query = query.whereEqualTo(CATEGORY_ID_FIELD, categoryId)
+			}
+
+			return query
+		}
+	}
 }
\ No newline at end of file
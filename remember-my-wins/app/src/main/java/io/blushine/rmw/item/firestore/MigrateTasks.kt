@@ -0,0 +1,93 @@
+package io.blushine.rmw.item.firestore
+
+import com.google.android.gms.tasks.Tasks
+import com.google.firebase.firestore.Source
+import io.blushine.android.firebase.FirebaseAuth
+import io.blushine.rmw.item.ItemSyncStore
+import io.blushine.rmw.item.MigrationCounts
+import io.blushine.rmw.util.SqliteExecutors
+import java.util.concurrent.CancellationException
+import java.util.concurrent.atomic.AtomicBoolean
+
+/** Number of rows to give a remote id in each transaction */
+private const val MIGRATE_CHUNK_SIZE = 500
+
+/**
+ * Task for moving local categories and items to the cloud. Rows that haven't been synced get a
+ * remote id (their Firestore document id) and are added to the outbox, one transaction per chunk.
+ * They are then pushed in batches by [SyncTask]. Rows keep their remote id so running the task
+ * again after a crash or cancellation writes the same documents instead of duplicating them.
+ * Afterwards the categories and the item counts in the cloud are read from the server and
+ * returned with the local counts.
+ * @param store local side of the sync
+ * @param cancelled set to true to stop after the current chunk or batch
+ * @param onProgress called with the number of moved rows and the total number of rows to move
+ * @return counts checked after moving
+ */
+internal class MigrateToCloudTask(
+		private val store: ItemSyncStore,
+		private val cancelled: AtomicBoolean,
+		private val onProgress: (Int, Int) -> Unit
+) : FirestoreCallableTask<MigrationCounts>() {
+	override fun call(): MigrationCounts {
+		if (FirebaseAuth.getCurrentUser() == null) {
+			throw IllegalStateException("Can't move to the cloud without a signed in user")
+		}
+
+		val totalCount = SqliteExecutors.submitWrite { store.countUnsynced() + store.countPendingChanges() }.get()
+		do {
+			val assignedCount = SqliteExecutors.submitWrite { store.assignRemoteIds(MIGRATE_CHUNK_SIZE) }.get()
+			if (cancelled.get()) {
+				throw CancellationException("Migration cancelled")
+			}
+		} while (assignedCount > 0)
+
+		SyncTask(store, cancelled) { syncedCount ->
+			onProgress.invoke(Math.min(syncedCount, totalCount), totalCount)
+		}.call()
+
+		val counts = SqliteExecutors.submitWrite { store.getMigrationCounts(true) }.get()
+		val (remoteCategoryCount, remoteItemCount) = countRemote()
+		return MigrationCounts(counts.categoryCount, counts.itemCount, counts.notMovedCount, remoteCategoryCount, remoteItemCount)
+	}
+
+	/**
+	 * Count the categories and items of the user in the cloud. The items are counted from the
+	 * item count of each category in [CATEGORY_STATS_TABLE], so only one document per category is
+	 * read. Read from the server as the cache also has writes that haven't been committed
+	 * @return number of categories and number of items
+	 */
+	private fun countRemote(): Pair<Int, Int> {
+		val userId = getUserId()
+		val categories = Tasks.await(db().collection(CATEGORY_TABLE).whereEqualTo(USER_ID_FIELD, userId).get(Source.SERVER))
+		val stats = Tasks.await(db().collection(CATEGORY_STATS_TABLE).whereEqualTo(USER_ID_FIELD, userId).get(Source.SERVER))
+		val itemCount = stats.documents.sumBy { it.getLong(ITEM_COUNT_FIELD)?.toInt() ?: 0 }
+		return Pair(categories.size(), itemCount)
+	}
+}
+
+/**
+ * Task for moving cloud categories and items to local storage. Cloud data is already stored
+ * locally, a sync fetches everything that hasn't been fetched yet and pushes the pending local
+ * changes so the cloud is up to date when it's left. Can be run again after a crash or cancellation
+ * @param store local side of the sync
+ * @param cancelled set to true to stop after the current page
+ * @param onProgress called with the number of moved rows, the total isn't known so it's always 0
+ * @return counts checked after moving
+ */
+internal class MigrateToLocalTask(
+		private val store: ItemSyncStore,
+		private val cancelled: AtomicBoolean,
+		private val onProgress: (Int, Int) -> Unit
+) : FirestoreCallableTask<MigrationCounts>() {
+	override fun call(): MigrationCounts {
+		// Nothing has been stored in the cloud without a signed in user
+		if (FirebaseAuth.getCurrentUser() != null) {
+			SyncTask(store, cancelled) { syncedCount ->
+				onProgress.invoke(syncedCount, 0)
+			}.call()
+		}
+
+		return SqliteExecutors.submitWrite { store.getMigrationCounts(false) }.get()
+	}
+}
\ No newline at end of file
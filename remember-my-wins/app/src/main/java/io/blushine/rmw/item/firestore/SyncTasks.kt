@@ -0,0 +1,287 @@
+package io.blushine.rmw.item.firestore
+
+import com.google.android.gms.tasks.Tasks
+import com.google.firebase.firestore.DocumentSnapshot
+import com.google.firebase.firestore.FieldPath
+import com.google.firebase.firestore.FieldValue
+import io.blushine.rmw.item.*
+import io.blushine.rmw.util.SqliteExecutors
+import java.util.*
+import java.util.concurrent.CancellationException
+import java.util.concurrent.atomic.AtomicBoolean
+
+internal const val UPDATED_AT_FIELD = "updatedAt"
+internal const val SYNCED_AT_FIELD = "syncedAt"
+/** Removed categories and items, lets other devices remove them too */
+internal const val TOMBSTONE_TABLE = "tombstone"
+/** Item counts of each category, the document id is the id of the category */
+internal const val CATEGORY_STATS_TABLE = "category_stats"
+private const val ID_FIELD = "id"
+private const val NAME_FIELD = "name"
+private const val TEXT_FIELD = "text"
+private const val TYPE_FIELD = "type"
+internal const val ITEM_COUNT_FIELD = "itemCount"
+private const val MONTH_COUNTS_FIELD = "monthCounts"
+/** Max number of changes to fetch or push at once. A removed item is two writes in the batch */
+private const val SYNC_PAGE_SIZE = 200
+/** Max number of category counts to push with a page of changes, a batch has at most 500 writes */
+private const val STATS_PAGE_SIZE = 50
+/**
+ * Fetch changes a bit before the watermark. A write with an earlier server timestamp can become
+ * visible after a later one, changes that have already been applied are skipped
+ */
+private const val SYNC_OVERLAP_MS = 60 * 1000L
+
+/**
+ * Task for syncing the local SQLite store with Firestore. Fetches the changes made on other
+ * devices since the last sync and then pushes the local changes in the outbox, so only changed
+ * documents are read and written. The first sync fetches all documents. Each document has the
+ * time of the change in [UPDATED_AT_FIELD], the latest change wins, see
+ * [ItemSyncStore.applyRemoteChanges]. Changes are fetched before pushing so newer remote changes
+ * replace older pending local changes. Fetched categories that still use the old dense order
+ * are spread out before pushing, see [ItemSyncStore.spreadDenseCategoryOrder]. The items of
+ * removed categories are removed after all changes have been pushed, see [removeCategories].
+ * Only one sync runs at a time.
+ * @param store local side of the sync
+ * @param cancelled set to true to stop the sync after the current page, the task then fails with
+ * a [CancellationException]. Everything synced until then is kept
+ * @param onProgress called after every page with the number of fetched and pushed changes so far
+ */
+internal class SyncTask @JvmOverloads constructor(
+		private val store: ItemSyncStore,
+		private val cancelled: AtomicBoolean? = null,
+		private val onProgress: (Int) -> Unit = {}
+) : FirestoreCallableTask<Unit>() {
+	private var syncedCount = 0
+
+	override fun call() {
+		synchronized(syncLock) {
+			pull(CATEGORY_TABLE) { toCategoryChange(it) }
+			pull(ITEM_TABLE) { toItemChange(it) }
+			pull(TOMBSTONE_TABLE) { toTombstoneChange(it) }
+			SqliteExecutors.submitWrite { store.spreadDenseCategoryOrder() }.get()
+			push()
+			removeCategories()
+		}
+	}
+
+	/**
+	 * Count synced changes and stop if the sync has been cancelled
+	 * @param count number of changes in the page
+	 */
+	private fun onPageSynced(count: Int) {
+		syncedCount += count
+		onProgress.invoke(syncedCount)
+		if (cancelled?.get() == true) {
+			throw CancellationException("Sync cancelled")
+		}
+	}
+
+	/**
+	 * Fetch and apply all changes in a collection since the watermark, one page at a time. The
+	 * first sync fetches all documents ordered by id, also the ones that were added before they
+	 * were synced. It isn't ordered by time, so until it has fetched all documents the id of the
+	 * last fetched document is saved with the watermark and an interrupted first sync continues
+	 * from there. The query on [SYNCED_AT_FIELD] needs the composite indexes in
+	 * firestore.indexes.json
+	 * @param collection the collection to fetch changes from
+	 * @param toChange converts a document to a change, null to skip the document
+	 */
+	private fun pull(collection: String, toChange: (DocumentSnapshot) -> SyncChange?) {
+		val watermark = ItemPrefsGateway.getSyncWatermark(collection)
+		val firstSyncCursor = ItemPrefsGateway.getSyncCursor(collection)
+		val isFirstSync = watermark < 0 || firstSyncCursor != null
+		var query = db().collection(collection)
+				.whereEqualTo(USER_ID_FIELD, getUserId())
+		query = if (isFirstSync) {
+			query.orderBy(FieldPath.documentId())
+		} else {
+			query.whereGreaterThan(SYNCED_AT_FIELD, Date(watermark - SYNC_OVERLAP_MS))
+					.orderBy(SYNCED_AT_FIELD)
+		}
+		query = query.limit(SYNC_PAGE_SIZE.toLong())
+
+		var newWatermark = Math.max(watermark, 0)
+		var lastDocument: DocumentSnapshot? = null
+		do {
+			val pageQuery = when {
+				lastDocument != null -> query.startAfter(lastDocument)
+				firstSyncCursor != null -> query.startAfter(firstSyncCursor)
+				else -> query
+			}
+			val documents = Tasks.await(pageQuery.get()).documents
+			val changes = documents.mapNotNull(toChange)
+			SqliteExecutors.submitWrite { store.applyRemoteChanges(changes) }.get()
+
+			for (document in documents) {
+				val syncedAt = document.getDate(SYNCED_AT_FIELD)
+				if (syncedAt != null) {
+					newWatermark = Math.max(newWatermark, syncedAt.time)
+				}
+			}
+			lastDocument = documents.lastOrNull()
+			val hasMorePages = documents.size == SYNC_PAGE_SIZE
+			val cursor = if (isFirstSync && hasMorePages) lastDocument?.id else null
+			ItemPrefsGateway.setSyncWatermark(collection, newWatermark, cursor)
+			onPageSynced(changes.size)
+		} while (hasMorePages)
+	}
+
+	/**
+	 * Push all local changes in the outbox, one batch at a time. The changed item counts of the
+	 * categories are written in the same batch. Changes are removed from the outbox after their
+	 * batch has been committed
+	 */
+	private fun push() {
+		val userId = getUserId()
+
+		while (true) {
+			val (changes, statsChanges) = SqliteExecutors.submitWrite {
+				Pair(store.getPendingChanges(SYNC_PAGE_SIZE), store.getChangedStats(STATS_PAGE_SIZE))
+			}.get()
+			if (changes.isEmpty() && statsChanges.isEmpty()) {
+				break
+			}
+
+			val batch = db().batch()
+			for (change in changes) {
+				val category = change.category
+				val item = change.item
+
+				if (change.operation == SyncOperation.REMOVE) {
+					if (change.type == SyncType.CATEGORY) {
+						// Items of the category are only removed by the foreign key locally, they're
+						// removed from the cloud after the batches. Saved before the change leaves the outbox
+						val removedCategory = Category()
+						removedCategory.id = change.remoteId
+						ItemPrefsGateway.addPendingCategoryRemoval(removedCategory)
+						batch.delete(db().collection(CATEGORY_STATS_TABLE).document(change.remoteId))
+					} else {
+						batch.delete(getItem(change.remoteId))
+					}
+					batch.set(db().collection(TOMBSTONE_TABLE).document(change.remoteId), toTombstone(change, userId))
+				} else if (category != null) {
+					batch.set(getCategory(change.remoteId), toDocument(category, change.updatedAt, userId))
+				} else if (item != null) {
+					batch.set(getItem(change.remoteId), toDocument(item, change.updatedAt, userId))
+				}
+				// Else the row has been removed since, the removal is pushed instead
+			}
+			for (statsChange in statsChanges) {
+				batch.set(db().collection(CATEGORY_STATS_TABLE).document(statsChange.categoryRemoteId), toDocument(statsChange, userId))
+			}
+
+			Tasks.await(batch.commit())
+			SqliteExecutors.submitWrite {
+				store.removePendingChanges(changes)
+				store.removeStatsChanges(statsChanges)
+			}.get()
+			onPageSynced(changes.size)
+		}
+	}
+
+	/**
+	 * Remove the items and the documents of the categories that were removed in the pushed
+	 * batches, and of the categories that were being removed when the app was stopped. A removal
+	 * can take a long time for a large category so it isn't done while the batches are built.
+	 * Progress is sent as [CategoryRemoveProgressEvent]
+	 */
+	private fun removeCategories() {
+		for (category in ItemPrefsGateway.getPendingCategoryRemovals()) {
+			val removedItemCount = RemoveCategoryTask(category) { removedItemCount ->
+				SqliteExecutors.postOnMainThread(CategoryRemoveProgressEvent(category, removedItemCount, false))
+			}.call()
+			ItemPrefsGateway.removePendingCategoryRemoval(category)
+			SqliteExecutors.postOnMainThread(CategoryRemoveProgressEvent(category, removedItemCount, true))
+			if (cancelled?.get() == true) {
+				throw CancellationException("Sync cancelled")
+			}
+		}
+	}
+
+	private fun toCategoryChange(document: DocumentSnapshot): SyncChange? {
+		val category = Category()
+		category.id = document.id
+		category.name = document.getString(NAME_FIELD) ?: return null
+		category.order = document.getLong(ORDER_FIELD)?.toInt() ?: return null
+
+		val change = SyncChange(SyncType.CATEGORY, SyncOperation.UPSERT, document.id, getUpdatedAt(document))
+		change.category = category
+		return change
+	}
+
+	private fun toItemChange(document: DocumentSnapshot): SyncChange? {
+		val item = Item()
+		item.id = document.id
+		item.categoryId = document.getString(CATEGORY_ID_FIELD) ?: return null
+		item.text = document.getString(TEXT_FIELD) ?: ""
+		item.date = document.getLong(DATE_FIELD) ?: return null
+
+		val change = SyncChange(SyncType.ITEM, SyncOperation.UPSERT, document.id, getUpdatedAt(document))
+		change.item = item
+		return change
+	}
+
+	private fun toTombstoneChange(document: DocumentSnapshot): SyncChange? {
+		val type = when (document.getString(TYPE_FIELD)) {
+			CATEGORY_TABLE -> SyncType.CATEGORY
+			ITEM_TABLE -> SyncType.ITEM
+			else -> return null
+		}
+		return SyncChange(type, SyncOperation.REMOVE, document.id, getUpdatedAt(document))
+	}
+
+	/**
+	 * @return time of the change, 0 for documents that were added before they were synced
+	 */
+	private fun getUpdatedAt(document: DocumentSnapshot): Long {
+		return document.getLong(UPDATED_AT_FIELD) ?: 0
+	}
+
+	private fun toDocument(category: Category, updatedAt: Long, userId: String): Map<String, Any> {
+		return hashMapOf(
+				USER_ID_FIELD to userId,
+				ID_FIELD to category.id,
+				NAME_FIELD to category.name,
+				ORDER_FIELD to category.order,
+				UPDATED_AT_FIELD to updatedAt,
+				SYNCED_AT_FIELD to FieldValue.serverTimestamp()
+		)
+	}
+
+	private fun toDocument(item: Item, updatedAt: Long, userId: String): Map<String, Any> {
+		return hashMapOf(
+				USER_ID_FIELD to userId,
+				ID_FIELD to item.id,
+				CATEGORY_ID_FIELD to item.categoryId,
+				TEXT_FIELD to item.text,
+				DATE_FIELD to item.date,
+				UPDATED_AT_FIELD to updatedAt,
+				SYNCED_AT_FIELD to FieldValue.serverTimestamp()
+		)
+	}
+
+	private fun toDocument(statsChange: StatsChange, userId: String): Map<String, Any> {
+		return hashMapOf(
+				USER_ID_FIELD to userId,
+				ITEM_COUNT_FIELD to statsChange.itemCount,
+				MONTH_COUNTS_FIELD to statsChange.monthCounts,
+				SYNCED_AT_FIELD to FieldValue.serverTimestamp()
+		)
+	}
+
+	private fun toTombstone(change: SyncChange, userId: String): Map<String, Any> {
+		val type = if (change.type == SyncType.CATEGORY) CATEGORY_TABLE else ITEM_TABLE
+		return hashMapOf(
+				USER_ID_FIELD to userId,
+				TYPE_FIELD to type,
+				UPDATED_AT_FIELD to change.updatedAt,
+				SYNCED_AT_FIELD to FieldValue.serverTimestamp()
+		)
+	}
+
+	companion object {
+		/** Syncs from the gateway and migrations would otherwise push the same changes */
+		private val syncLock = Any()
+	}
+}
\ No newline at end of file
@@ -9,10 +9,14 @@ import io.blushine.rmw.util.AppActivity
  * Gateway for settings in the preference file
  */
 internal object SettingsPrefsGateway {
-	private val REMINDER_TIME_1_KEY = AppActivity.getActivity()
-			.resources.getString(R.string.setting_reminder_time_1_key)
-	private val STORE_LOCATION_KEY = AppActivity.getActivity()!!.resources!!.getString(R.string.setting_store_location_key)
-	private val preferences = PreferenceManager.getDefaultSharedPreferences(AppActivity.getActivity())
+	// Read the first time they're used, usually on a background thread during the startup
+	private val REMINDER_TIME_1_KEY by lazy {
+		AppActivity.getActivity().resources.getString(R.string.setting_reminder_time_1_key)
+	}
+	private val STORE_LOCATION_KEY by lazy {
+		AppActivity.getActivity()!!.resources!!.getString(R.string.setting_store_location_key)
+	}
+	private val preferences by lazy { PreferenceManager.getDefaultSharedPreferences(AppActivity.getActivity()) }
 
 	/**
 	 * @return reminder (notification) time
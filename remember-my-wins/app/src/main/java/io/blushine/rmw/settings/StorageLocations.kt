@@ -5,13 +5,17 @@ import io.blushine.rmw.util.AppActivity
 
 /**
  * The various storage locations
+ * @param keyId string resource of the key, the key is read the first time it's used
  */
-enum class StorageLocations(val key: String) {
-	CLOUD(AppActivity.getActivity()!!.resources!!.getString(R.string.setting_store_location_cloud_key)),
-	LOCAL(AppActivity.getActivity()!!.resources!!.getString(R.string.setting_store_location_local_key)),
-	NOT_SET(AppActivity.getActivity()!!.resources!!.getString(R.string.setting_store_location_not_set_key)),
+enum class StorageLocations(private val keyId: Int) {
+	CLOUD(R.string.setting_store_location_cloud_key),
+	LOCAL(R.string.setting_store_location_local_key),
+	NOT_SET(R.string.setting_store_location_not_set_key),
 	;
 
+	/** Key of the storage location in the preferences */
+	val key: String by lazy { AppActivity.getActivity()!!.resources!!.getString(keyId) }
+
 	/**
 	 * @return the enum matching to the specified key. If not found [NOT_SET] will be returned.
 	 */
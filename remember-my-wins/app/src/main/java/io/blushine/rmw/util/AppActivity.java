@@ -7,6 +7,9 @@ import android.view.MenuItem;
 
 import com.squareup.otto.ThreadEnforcer;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 import de.mrapp.android.dialog.MaterialDialog;
 import io.blushine.android.common.DocumentChangeChecker;
 import io.blushine.android.firebase.FirebaseAuth;
@@ -14,6 +17,7 @@ import io.blushine.rmw.R;
 import io.blushine.rmw.item.CategoryOrderFragment;
 import io.blushine.rmw.settings.SettingsActivity;
 import io.blushine.rmw.settings.SettingsRepo;
+import io.blushine.rmw.settings.StorageLocations;
 import io.blushine.utils.EventBus;
 
 /**
@@ -24,25 +28,23 @@ public abstract class AppActivity extends io.blushine.android.AppActivity {
 @Override
 protected void onCreate(Bundle savedInstanceState) {
 	super.onCreate(savedInstanceState);
+	Startup.measureFirstDraw(this);
 }
 
+/**
+ * Starts initializing the DB, preferences and Firebase in parallel, see {@link Startup}. Work that
+ * isn't needed for the first frame is run after it has been drawn
+ */
 protected void onFirstTime() {
 	EventBus.setThreadEnforcer(ThreadEnforcer.ANY);
+	Startup.start();
 	
-	// TODO only init Firebase or Sqlite not both (depending on what backend the user has selected)
-	switch (SettingsRepo.INSTANCE.getStorageLocation()) {
-	case CLOUD:
-		FirebaseAuth.INSTANCE.getCurrentUser();
-		checkDocumentUpdates();
-		break;
-	case LOCAL:
-		Sqlite.init();
-		checkDocumentUpdates();
-		break;
-	case NOT_SET:
+	Startup.runAfterFirstDraw(() -> {
 		// TODO Initialize onboarding?
-		break;
-	}
+		if (SettingsRepo.INSTANCE.getStorageLocation() != StorageLocations.NOT_SET) {
+			checkDocumentUpdates();
+		}
+	});
 }
 
 private void checkDocumentUpdates() {
@@ -52,6 +54,15 @@ private void checkDocumentUpdates() {
 	documentChangeChecker.checkDocument(R.raw.privacy_policy, R.string.legal_privacy_policy_title, R.string.legal_privacy_policy_changed);
 }
 
+/**
+ * Also dumps the {@link Metrics}, run {@code adb shell dumpsys activity top} to see them
+ */
+@Override
+public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+	super.dump(prefix, fd, writer, args);
+	Metrics.dump(prefix, writer);
+}
+
 @Override
 public boolean onOptionsItemSelected(MenuItem item) {
 	switch (item.getItemId()) {
@@ -0,0 +1,28 @@
+package io.blushine.rmw.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counter in the {@link Metrics} registry. Thread safe
+ */
+public class Counter {
+private final AtomicLong mCount = new AtomicLong();
+
+Counter() {}
+
+public void increment() {
+	mCount.incrementAndGet();
+}
+
+public void add(long count) {
+	mCount.addAndGet(count);
+}
+
+public long getCount() {
+	return mCount.get();
+}
+
+void reset() {
+	mCount.set(0);
+}
+}
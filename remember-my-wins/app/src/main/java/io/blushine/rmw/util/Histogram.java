@@ -0,0 +1,109 @@
+package io.blushine.rmw.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * HDR-style histogram in the {@link Metrics} registry. Values are counted in log-linear buckets:
+ * every power of two is split into {@link #SUB_BUCKET_COUNT} buckets, so values are kept with a
+ * relative error of at most 1/16 while the memory stays fixed. Recording is lock-free and doesn't
+ * allocate, percentiles are calculated from the buckets when read.
+ */
+public class Histogram {
+private static final int SUB_BUCKET_BITS = 4;
+private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+/** Larger values are recorded as this value, e.g. 19 hours in microseconds */
+private static final long MAX_VALUE = (1L << 36) - 1;
+private static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+private final AtomicLong mCount = new AtomicLong();
+private final AtomicLong mSum = new AtomicLong();
+private final AtomicLong mMax = new AtomicLong();
+
+Histogram() {}
+
+/**
+ * Record a value
+ * @param value the value to record, negative values are recorded as 0
+ */
+public void record(long value) {
+	value = Math.max(0, Math.min(value, MAX_VALUE));
+	mBuckets.incrementAndGet(bucketIndex(value));
+	mCount.incrementAndGet();
+	mSum.addAndGet(value);
+	
+	long max = mMax.get();
+	while (value > max && !mMax.compareAndSet(max, value)) {
+		max = mMax.get();
+	}
+}
+
+/**
+ * Values below {@link #SUB_BUCKET_COUNT} get a bucket each. Larger values get the bucket of their
+ * power of two and the {@link #SUB_BUCKET_BITS} bits after the highest bit
+ */
+private static int bucketIndex(long value) {
+	if (value < SUB_BUCKET_COUNT) {
+		return (int) value;
+	}
+	int magnitude = 63 - Long.numberOfLeadingZeros(value);
+	int shift = magnitude - SUB_BUCKET_BITS;
+	int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+	return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+}
+
+/**
+ * @return the highest value that is counted in the bucket
+ */
+private static long highestValue(int bucketIndex) {
+	if (bucketIndex < SUB_BUCKET_COUNT) {
+		return bucketIndex;
+	}
+	int shift = (bucketIndex - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+	int subBucket = (bucketIndex - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+	return ((long) (SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+}
+
+/**
+ * Get the value at a percentile. Values recorded while reading may or may not be included
+ * @param percentile 0-100
+ * @return highest value of the bucket at the percentile, 0 if nothing has been recorded
+ */
+public long getValueAtPercentile(double percentile) {
+	long count = mCount.get();
+	if (count == 0) {
+		return 0;
+	}
+	
+	long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+	long seen = 0;
+	for (int i = 0; i < BUCKET_COUNT; ++i) {
+		seen += mBuckets.get(i);
+		if (seen >= rank) {
+			return Math.min(highestValue(i), getMax());
+		}
+	}
+	return getMax();
+}
+
+public long getCount() {
+	return mCount.get();
+}
+
+public long getSum() {
+	return mSum.get();
+}
+
+public long getMax() {
+	return mMax.get();
+}
+
+void reset() {
+	for (int i = 0; i < BUCKET_COUNT; ++i) {
+		mBuckets.set(i, 0);
+	}
+	mCount.set(0);
+	mSum.set(0);
+	mMax.set(0);
+}
+}
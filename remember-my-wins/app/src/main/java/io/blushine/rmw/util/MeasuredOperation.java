@@ -0,0 +1,74 @@
+package io.blushine.rmw.util;
+
+import android.os.Trace;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Metrics of an operation in the {@link Metrics} registry: latency in microseconds, number of rows
+ * and failures. The operation is shown as an {@link Trace} section with the same name. Get it with
+ * {@link Metrics#operation(String)} and keep it in a static field so recording doesn't allocate.
+ */
+public class MeasuredOperation {
+private final String mName;
+private final Histogram mLatency;
+private final Histogram mRows;
+private final Counter mFailures;
+
+MeasuredOperation(@NotNull String name) {
+	mName = name;
+	mLatency = Metrics.histogram(name + ".latency_us");
+	mRows = Metrics.histogram(name + ".rows");
+	mFailures = Metrics.counter(name + ".failures");
+}
+
+/**
+ * Start measuring an operation that runs on this thread. Has to be matched by a call to
+ * {@link #end(long)} on the same thread
+ * @return the start time to pass to {@link #end(long)}
+ */
+public long begin() {
+	Trace.beginSection(mName);
+	return System.nanoTime();
+}
+
+/**
+ * Stop measuring an operation started with {@link #begin()}
+ * @param startedAt the start time returned by {@link #begin()}
+ */
+public void end(long startedAt) {
+	Trace.endSection();
+	mLatency.record((System.nanoTime() - startedAt) / 1000);
+}
+
+/**
+ * Measure work that is run later, e.g. on an executor. The latency is measured from this call
+ * until the work has finished so it includes the time waiting in the queue
+ * @param work the work to measure
+ * @return runs and measures the work
+ */
+@NotNull
+public Runnable measure(@NotNull Runnable work) {
+	long calledAt = System.nanoTime();
+	return () -> {
+		Trace.beginSection(mName);
+		try {
+			work.run();
+		} finally {
+			Trace.endSection();
+			mLatency.record((System.nanoTime() - calledAt) / 1000);
+		}
+	};
+}
+
+/**
+ * @param count number of rows read or written by the operation
+ */
+public void recordRows(int count) {
+	mRows.record(count);
+}
+
+public void recordFailure() {
+	mFailures.increment();
+}
+}
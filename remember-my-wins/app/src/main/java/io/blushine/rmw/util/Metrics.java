@@ -0,0 +1,125 @@
+package io.blushine.rmw.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of counters and histograms for the hot paths: gateway calls, event dispatch and adapter
+ * binds. Recording is lock-free and doesn't allocate so it's always on, also in release builds.
+ * The metrics are shown with {@code adb shell dumpsys activity top}, see
+ * {@link AppActivity#dump(String, java.io.FileDescriptor, PrintWriter, String[])}.
+ */
+public class Metrics {
+private static final ConcurrentHashMap<String, Counter> mCounters = new ConcurrentHashMap<>();
+private static final ConcurrentHashMap<String, Histogram> mHistograms = new ConcurrentHashMap<>();
+private static final ConcurrentHashMap<String, MeasuredOperation> mOperations = new ConcurrentHashMap<>();
+/** Operations for posting events, by event type */
+private static final ConcurrentHashMap<Class<?>, MeasuredOperation> mEventOperations = new ConcurrentHashMap<>();
+
+private Metrics() {}
+
+/**
+ * Get or create a counter
+ * @param name unique name of the counter
+ */
+@NotNull
+public static Counter counter(@NotNull String name) {
+	Counter counter = mCounters.get(name);
+	if (counter == null) {
+		mCounters.putIfAbsent(name, new Counter());
+		counter = mCounters.get(name);
+	}
+	return counter;
+}
+
+/**
+ * Get or create a histogram
+ * @param name unique name of the histogram, should end with the unit
+ */
+@NotNull
+public static Histogram histogram(@NotNull String name) {
+	Histogram histogram = mHistograms.get(name);
+	if (histogram == null) {
+		mHistograms.putIfAbsent(name, new Histogram());
+		histogram = mHistograms.get(name);
+	}
+	return histogram;
+}
+
+/**
+ * Get or create the metrics of an operation
+ * @param name unique name of the operation, also used as the trace section name
+ */
+@NotNull
+public static MeasuredOperation operation(@NotNull String name) {
+	MeasuredOperation operation = mOperations.get(name);
+	if (operation == null) {
+		mOperations.putIfAbsent(name, new MeasuredOperation(name));
+		operation = mOperations.get(name);
+	}
+	return operation;
+}
+
+/**
+ * Get the metrics for posting an event. The latency is from when the event is posted until all
+ * event handlers have run
+ * @param eventType class of the event
+ */
+@NotNull
+public static MeasuredOperation eventOperation(@NotNull Class<?> eventType) {
+	MeasuredOperation operation = mEventOperations.get(eventType);
+	if (operation == null) {
+		operation = operation("EventBus.post " + eventType.getSimpleName());
+		mEventOperations.putIfAbsent(eventType, operation);
+	}
+	return operation;
+}
+
+/**
+ * Write all metrics that have been recorded, sorted by name. Latencies are in microseconds
+ * @param prefix written before every line
+ * @param writer where to write the metrics
+ */
+public static void dump(@NotNull String prefix, @NotNull PrintWriter writer) {
+	writer.print(prefix);
+	writer.println("Metrics:");
+	
+	for (Map.Entry<String, Counter> entry : new TreeMap<>(mCounters).entrySet()) {
+		long count = entry.getValue().getCount();
+		if (count > 0) {
+			writer.print(prefix);
+			writer.println("  " + entry.getKey() + ": " + count);
+		}
+	}
+	
+	for (Map.Entry<String, Histogram> entry : new TreeMap<>(mHistograms).entrySet()) {
+		Histogram histogram = entry.getValue();
+		if (histogram.getCount() > 0) {
+			writer.print(prefix);
+			writer.println("  " + entry.getKey() +
+					": count=" + histogram.getCount() +
+					" p50=" + histogram.getValueAtPercentile(50) +
+					" p90=" + histogram.getValueAtPercentile(90) +
+					" p99=" + histogram.getValueAtPercentile(99) +
+					" max=" + histogram.getMax() +
+					" mean=" + histogram.getSum() / histogram.getCount());
+		}
+	}
+}
+
+/**
+ * Reset all counters and histograms
+ */
+public static void reset() {
+	for (Counter counter : mCounters.values()) {
+		counter.reset();
+	}
+	for (Histogram histogram : mHistograms.values()) {
+		histogram.reset();
+	}
+}
+}
@@ -0,0 +1,57 @@
+package io.blushine.rmw.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Helpers for lists that are kept sorted
+ */
+public class SortedLists {
+private SortedLists() {}
+
+/**
+ * Find where to insert an element with a binary search. The element is placed after all equal
+ * elements so elements that compare equal keep the order they were added in
+ * @param list the sorted list
+ * @param element the element to find the position for
+ * @param comparator the order of the list
+ * @param <T> type of the elements
+ * @return index where the element should be inserted
+ */
+public static <T> int insertIndex(@NotNull List<T> list, @NotNull T element, @NotNull Comparator<? super T> comparator) {
+	int low = 0;
+	int high = list.size();
+	while (low < high) {
+		int middle = (low + high) >>> 1;
+		if (comparator.compare(list.get(middle), element) <= 0) {
+			low = middle + 1;
+		} else {
+			high = middle;
+		}
+	}
+	return low;
+}
+
+/**
+ * Get the elements that don't sort after a bound, e.g. the items that belong to the pages that
+ * have already been fetched
+ * @param elements the elements to filter, don't have to be sorted
+ * @param bound the last element to keep
+ * @param comparator the order to compare the elements in
+ * @param <T> type of the elements
+ * @return elements that compare less than or equal to the bound, in the order they were in
+ */
+@NotNull
+public static <T> List<T> notAfter(@NotNull List<T> elements, @NotNull T bound, @NotNull Comparator<? super T> comparator) {
+	List<T> filteredElements = new ArrayList<>(elements.size());
+	for (T element : elements) {
+		if (comparator.compare(element, bound) <= 0) {
+			filteredElements.add(element);
+		}
+	}
+	return filteredElements;
+}
+}
@@ -1,38 +1,69 @@
 package io.blushine.rmw.util;
 
+import android.content.Context;
 import android.content.res.Resources;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.os.AsyncTask;
 import android.util.Log;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import io.blushine.android.AppActivity;
 import io.blushine.android.sqlite.SqliteGateway;
 import io.blushine.rmw.R;
+import io.blushine.rmw.item.CategoryOrder;
 import io.blushine.utils.EventBus;
 
 /**
  * Contains the SQLite DB and handles upgrades
  */
 public class Sqlite extends SQLiteOpenHelper {
-private static final String DB_NAME = AppActivity.getActivity().getResources().getString(R.string.sqlite_db_name);
-private static final int DB_VERSION = AppActivity.getActivity().getResources().getInteger(R.integer.sqlite_db_version);
 private static final String TAG = Sqlite.class.getSimpleName();
 private static InitTask mInitTask = null;
+private static Sqlite mInstance = null;
+private static SqliteConnectionProfile mConnectionProfile = SqliteConnectionProfile.WAL;
+/** Compiled write statements by SQL, shared by all gateways. Only accessed from the writer thread */
+private static final Map<String, SQLiteStatement> mWriteStatements = new HashMap<>();
+
+/**
+ * @param context the application context, the name and version are read from its resources
+ */
+private Sqlite(Context context) {
+	this(context, context.getString(R.string.sqlite_db_name));
+}
 
-private Sqlite() {
-	super(AppActivity.getActivity(), DB_NAME, null, DB_VERSION);
+/**
+ * Use {@link #init()}, only created directly by tests that need their own DB
+ * @param context the application context, the version is read from its resources
+ * @param name file name of the DB
+ */
+Sqlite(Context context, String name) {
+	super(context, name, null, context.getResources().getInteger(R.integer.sqlite_db_version));
 }
 
 /**
- * Initialize the SQL DB in a background thread
+ * Set the connection profile to use when opening the DB. Call before {@link #init()}
+ * @param connectionProfile the connection settings to use, defaults to {@link SqliteConnectionProfile#WAL}
+ */
+public static void setConnectionProfile(SqliteConnectionProfile connectionProfile) {
+	mConnectionProfile = connectionProfile;
+}
+
+/**
+ * Initialize the SQL DB in a background thread. The DB is opened, and created or upgraded, on that
+ * thread. The {@link SqliteExecutors} wait for it before they run anything
  */
 public static void init() {
 	Log.d(TAG, "init()");
 	if (!isInitialized() && mInitTask == null) {
 		Log.d(TAG, "init() - Not initialized, initializing");
-		mInitTask = new InitTask();
-		mInitTask.execute();
+		mInitTask = new InitTask(AppActivity.getActivity().getApplicationContext());
+		// Don't wait for other async tasks
+		mInitTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
 	} else {
 		Log.d(TAG, "init() - Already initialized");
 	}
@@ -45,6 +76,55 @@ public static boolean isInitialized() {
 	return SqliteGateway.isInitialized();
 }
 
+/**
+ * Get the database for compiling statements directly
+ * @return the writable database, null if Sqlite hasn't been initialized yet
+ */
+public static SQLiteDatabase getDatabase() {
+	if (mInstance != null) {
+		return mInstance.getWritableDatabase();
+	} else {
+		return null;
+	}
+}
+
+/**
+ * Get a compiled write statement. Each statement is only compiled once for the DB and then shared
+ * by everything that writes, however many gateways are created. They're closed with the DB. Only
+ * call from the {@link SqliteExecutors} writer thread
+ * @param sql the statement to get
+ * @return the compiled statement, bind all arguments before running it
+ */
+public static SQLiteStatement getWriteStatement(String sql) {
+	SQLiteStatement statement = mWriteStatements.get(sql);
+	if (statement == null) {
+		statement = getDatabase().compileStatement(sql);
+		mWriteStatements.put(sql, statement);
+	}
+	return statement;
+}
+
+@Override
+public synchronized void close() {
+	// Tests open their own DBs, only the shared DB has the write statements
+	if (this == mInstance) {
+		for (SQLiteStatement statement : mWriteStatements.values()) {
+			statement.close();
+		}
+		mWriteStatements.clear();
+	}
+	super.close();
+}
+
+@Override
+public void onConfigure(SQLiteDatabase db) {
+	super.onConfigure(db);
+	Log.d(TAG, "onConfigure() — " + mConnectionProfile);
+	
+	db.setForeignKeyConstraintsEnabled(true);
+	mConnectionProfile.apply(db);
+}
+
 @Override
 public void onCreate(SQLiteDatabase db) {
 	Log.d(TAG, "onCreate()");
@@ -52,6 +132,10 @@ public void onCreate(SQLiteDatabase db) {
 	Resources resources = AppActivity.getActivity().getResources();
 	createCategoryTable(resources, db);
 	createItemTable(resources, db);
+	createIndexes(resources, db);
+	createItemSearchTable(resources, db);
+	createSyncTables(resources, db);
+	createStatsTables(resources, db);
 }
 
 @Override
@@ -64,6 +148,36 @@ public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
 	if (oldVersion < 3) {
 		upgrade1To3(resources, db);
 	}
+	
+	// 3 -> 4 - Added indexes for getting items in a category and sorting categories
+	if (oldVersion < 4) {
+		upgrade3To4(resources, db);
+	}
+	
+	// 4 -> 5 - Remove items together with their category
+	if (oldVersion < 5) {
+		upgrade4To5(resources, db);
+	}
+	
+	// 5 -> 6 - Added full-text search of item texts
+	if (oldVersion < 6) {
+		upgrade5To6(resources, db);
+	}
+	
+	// 6 -> 7 - Sparse category order
+	if (oldVersion < 7) {
+		upgrade6To7(resources, db);
+	}
+	
+	// 7 -> 8 - Added remote ids, change times and outbox for syncing with Firestore
+	if (oldVersion < 8) {
+		upgrade7To8(resources, db);
+	}
+	
+	// 8 -> 9 - Added item statistics
+	if (oldVersion < 9) {
+		upgrade8To9(resources, db);
+	}
 }
 
 private void upgrade1To3(Resources resources, SQLiteDatabase db) {
@@ -89,6 +203,97 @@ private void upgrade1To3(Resources resources, SQLiteDatabase db) {
 	db.endTransaction();
 }
 
+private void upgrade3To4(Resources resources, SQLiteDatabase db) {
+	db.beginTransaction();
+	createIndexes(resources, db);
+	db.setTransactionSuccessful();
+	db.endTransaction();
+}
+
+private void upgrade4To5(Resources resources, SQLiteDatabase db) {
+	String itemTable = resources.getString(R.string.table_item);
+	String categoryId = resources.getString(R.string.table_category_id);
+	
+	db.beginTransaction();
+	// Remove items that don't belong to a category, otherwise the foreign key fails
+	String sql = "DELETE FROM " + itemTable + " WHERE " + categoryId + " NOT IN " +
+			"(SELECT " + categoryId + " FROM " + resources.getString(R.string.table_category) + ")";
+	db.execSQL(sql);
+	
+	// Recreate item table with ON DELETE CASCADE
+	db.execSQL("ALTER TABLE " + itemTable + " RENAME TO item_old");
+	createItemTable(resources, db);
+	sql = "INSERT INTO " + itemTable + " SELECT * FROM item_old";
+	db.execSQL(sql);
+	db.execSQL("DROP TABLE item_old");
+	createIndexes(resources, db);
+	db.setTransactionSuccessful();
+	db.endTransaction();
+}
+
+private void upgrade5To6(Resources resources, SQLiteDatabase db) {
+	String itemFts = resources.getString(R.string.table_item_fts);
+	
+	db.beginTransaction();
+	createItemSearchTable(resources, db);
+	// Index all existing items
+	db.execSQL("INSERT INTO " + itemFts + "(" + itemFts + ") VALUES('rebuild')");
+	db.setTransactionSuccessful();
+	db.endTransaction();
+}
+
+private void upgrade6To7(Resources resources, SQLiteDatabase db) {
+	String categoryTable = resources.getString(R.string.table_category);
+	String categoryId = resources.getString(R.string.table_category_id);
+	String categoryOrder = resources.getString(R.string.table_category_order);
+	
+	db.beginTransaction();
+	// Spread out the categories in their current order
+	Cursor cursor = db.rawQuery("SELECT " + categoryId + " FROM " + categoryTable +
+			" ORDER BY " + categoryOrder + " ASC, " + categoryId + " ASC", null);
+	SQLiteStatement updateOrder = db.compileStatement("UPDATE " + categoryTable +
+			" SET " + categoryOrder + "=? WHERE " + categoryId + "=?");
+	int order = 0;
+	while (cursor.moveToNext()) {
+		order += CategoryOrder.ORDER_GAP;
+		updateOrder.bindLong(1, order);
+		updateOrder.bindLong(2, cursor.getLong(0));
+		updateOrder.executeUpdateDelete();
+	}
+	cursor.close();
+	updateOrder.close();
+	db.setTransactionSuccessful();
+	db.endTransaction();
+}
+
+private void upgrade7To8(Resources resources, SQLiteDatabase db) {
+	db.beginTransaction();
+	createSyncTables(resources, db);
+	db.setTransactionSuccessful();
+	db.endTransaction();
+}
+
+private void upgrade8To9(Resources resources, SQLiteDatabase db) {
+	String categoryTable = resources.getString(R.string.table_category);
+	String categoryId = resources.getString(R.string.table_category_id);
+	String itemTable = resources.getString(R.string.table_item);
+	
+	db.beginTransaction();
+	createStatsTables(resources, db);
+	// Count the existing items, all categories have to be pushed to Firestore once
+	String sql = "INSERT INTO " + resources.getString(R.string.table_category_stats) + " (" +
+			categoryId + ", " +
+			resources.getString(R.string.table_category_stats_count) + ", " +
+			resources.getString(R.string.table_category_stats_changed) + ") SELECT " +
+			categoryTable + "." + categoryId + ", COUNT(" + itemTable + "." + resources.getString(R.string.table_item_id) + "), 1" +
+			" FROM " + categoryTable + " LEFT JOIN " + itemTable + " ON " + itemTable + "." + categoryId + "=" + categoryTable + "." + categoryId +
+			" GROUP BY " + categoryTable + "." + categoryId;
+	db.execSQL(sql);
+	rebuildDateStats(resources, db);
+	db.setTransactionSuccessful();
+	db.endTransaction();
+}
+
 private void createCategoryTable(Resources resources, SQLiteDatabase db) {
 	Log.d(TAG, "createCategoryTable()");
 	
@@ -108,21 +313,309 @@ private void createItemTable(Resources resources, SQLiteDatabase db) {
 			resources.getString(R.string.table_category_id) + " INTEGER, " +
 			resources.getString(R.string.table_item_text) + " TEXT, " +
 			resources.getString(R.string.table_item_date) + " INTEGER, " +
-			"FOREIGN KEY(" + resources.getString(R.string.table_category_id) + ") REFERENCES " + resources.getString(R.string.table_category) + "(" + resources.getString(R.string.table_category_id) + "))";
+			"FOREIGN KEY(" + resources.getString(R.string.table_category_id) + ") REFERENCES " + resources.getString(R.string.table_category) + "(" + resources.getString(R.string.table_category_id) + ") ON DELETE CASCADE)";
+	db.execSQL(sql);
+}
+
+/**
+ * Create indexes for getting items in a category sorted by date, and for sorting and shifting
+ * the order of categories
+ */
+private void createIndexes(Resources resources, SQLiteDatabase db) {
+	Log.d(TAG, "createIndexes()");
+	
+	String sql = "CREATE INDEX IF NOT EXISTS " + resources.getString(R.string.index_item_category_date) +
+			" ON " + resources.getString(R.string.table_item) + " (" +
+			resources.getString(R.string.table_category_id) + ", " +
+			resources.getString(R.string.table_item_date) + " DESC, " +
+			resources.getString(R.string.table_item_id) + " DESC)";
+	db.execSQL(sql);
+	
+	sql = "CREATE INDEX IF NOT EXISTS " + resources.getString(R.string.index_category_order) +
+			" ON " + resources.getString(R.string.table_category) + " (" +
+			resources.getString(R.string.table_category_order) + ")";
+	db.execSQL(sql);
+}
+
+/**
+ * Create the full-text search table for item texts. FTS4 is used as FTS5 isn't available in the
+ * SQLite versions shipped with Android. The table only holds the search index, texts are read
+ * from the item table (external content) and triggers keep the index in sync with the item table
+ */
+private void createItemSearchTable(Resources resources, SQLiteDatabase db) {
+	Log.d(TAG, "createItemSearchTable()");
+	
+	String itemTable = resources.getString(R.string.table_item);
+	String itemId = resources.getString(R.string.table_item_id);
+	String itemText = resources.getString(R.string.table_item_text);
+	String itemFts = resources.getString(R.string.table_item_fts);
+	
+	String sql = "CREATE VIRTUAL TABLE IF NOT EXISTS " + itemFts +
+			" USING fts4(content=\"" + itemTable + "\", " + itemText + ")";
 	db.execSQL(sql);
+	
+	// Old texts have to be removed from the index before the item is changed
+	String deleteOld = "DELETE FROM " + itemFts + " WHERE docid=old." + itemId + ";";
+	String insertNew = "INSERT INTO " + itemFts + "(docid, " + itemText + ") VALUES(new." + itemId + ", new." + itemText + ");";
+	db.execSQL("CREATE TRIGGER IF NOT EXISTS " + itemFts + "_before_update BEFORE UPDATE ON " + itemTable + " BEGIN " + deleteOld + " END");
+	db.execSQL("CREATE TRIGGER IF NOT EXISTS " + itemFts + "_before_delete BEFORE DELETE ON " + itemTable + " BEGIN " + deleteOld + " END");
+	db.execSQL("CREATE TRIGGER IF NOT EXISTS " + itemFts + "_after_update AFTER UPDATE ON " + itemTable + " BEGIN " + insertNew + " END");
+	db.execSQL("CREATE TRIGGER IF NOT EXISTS " + itemFts + "_after_insert AFTER INSERT ON " + itemTable + " BEGIN " + insertNew + " END");
+}
+
+/**
+ * Add the remote id and change time columns to categories and items, and create the outbox with
+ * changes that haven't been synced yet. Remote ids are only set for rows that are synced, the
+ * columns are added instead of being part of the tables so older upgrades can still copy all
+ * columns of the tables
+ */
+private void createSyncTables(Resources resources, SQLiteDatabase db) {
+	Log.d(TAG, "createSyncTables()");
+	
+	String categoryTable = resources.getString(R.string.table_category);
+	String categoryRemoteId = resources.getString(R.string.table_category_remote_id);
+	String itemTable = resources.getString(R.string.table_item);
+	String itemRemoteId = resources.getString(R.string.table_item_remote_id);
+	
+	db.execSQL("ALTER TABLE " + categoryTable + " ADD COLUMN " + categoryRemoteId + " TEXT");
+	db.execSQL("ALTER TABLE " + categoryTable + " ADD COLUMN " + resources.getString(R.string.table_category_updated_at) + " INTEGER NOT NULL DEFAULT 0");
+	db.execSQL("ALTER TABLE " + itemTable + " ADD COLUMN " + itemRemoteId + " TEXT");
+	db.execSQL("ALTER TABLE " + itemTable + " ADD COLUMN " + resources.getString(R.string.table_item_updated_at) + " INTEGER NOT NULL DEFAULT 0");
+	
+	db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + resources.getString(R.string.index_category_remote_id) +
+			" ON " + categoryTable + " (" + categoryRemoteId + ")");
+	db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + resources.getString(R.string.index_item_remote_id) +
+			" ON " + itemTable + " (" + itemRemoteId + ")");
+	
+	// Only the latest change of each row is kept
+	String sql = "CREATE TABLE IF NOT EXISTS " + resources.getString(R.string.table_outbox) + " (" +
+			resources.getString(R.string.table_outbox_id) + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+			resources.getString(R.string.table_outbox_type) + " INTEGER, " +
+			resources.getString(R.string.table_outbox_operation) + " INTEGER, " +
+			resources.getString(R.string.table_outbox_remote_id) + " TEXT, " +
+			resources.getString(R.string.table_outbox_updated_at) + " INTEGER, " +
+			"UNIQUE(" + resources.getString(R.string.table_outbox_type) + ", " + resources.getString(R.string.table_outbox_remote_id) + ") ON CONFLICT REPLACE)";
+	db.execSQL(sql);
+}
+
+/**
+ * Create the summary tables with item statistics. Triggers keep them up to date when items are
+ * added, edited or removed, also when items are removed together with their category or changed
+ * by a sync. Items are counted per category, per category and month, and per day. Days with items
+ * are also stored as streaks of consecutive days so the longest streak can be found by an index.
+ * Months and days are in the device time zone, see {@link #rebuildDateStats(SQLiteDatabase)}
+ */
+private void createStatsTables(Resources resources, SQLiteDatabase db) {
+	Log.d(TAG, "createStatsTables()");
+	
+	String categoryTable = resources.getString(R.string.table_category);
+	String categoryId = resources.getString(R.string.table_category_id);
+	String itemTable = resources.getString(R.string.table_item);
+	String itemDate = resources.getString(R.string.table_item_date);
+	String categoryStats = resources.getString(R.string.table_category_stats);
+	String categoryStatsCount = resources.getString(R.string.table_category_stats_count);
+	String categoryStatsChanged = resources.getString(R.string.table_category_stats_changed);
+	String monthStats = resources.getString(R.string.table_month_stats);
+	String monthStatsMonth = resources.getString(R.string.table_month_stats_month);
+	String monthStatsCount = resources.getString(R.string.table_month_stats_count);
+	String dayStats = resources.getString(R.string.table_day_stats);
+	String dayStatsDay = resources.getString(R.string.table_day_stats_day);
+	String dayStatsCount = resources.getString(R.string.table_day_stats_count);
+	String streakStats = resources.getString(R.string.table_streak_stats);
+	String streakStart = resources.getString(R.string.table_streak_stats_start);
+	String streakEnd = resources.getString(R.string.table_streak_stats_end);
+	String streakLength = resources.getString(R.string.table_streak_stats_length);
+	
+	// Stats are removed together with their category
+	String categoryForeignKey = "FOREIGN KEY(" + categoryId + ") REFERENCES " + categoryTable + "(" + categoryId + ") ON DELETE CASCADE";
+	
+	// The changed column is incremented on every change, used for pushing the counts to Firestore
+	db.execSQL("CREATE TABLE IF NOT EXISTS " + categoryStats + " (" +
+			categoryId + " INTEGER PRIMARY KEY, " +
+			categoryStatsCount + " INTEGER NOT NULL DEFAULT 0, " +
+			categoryStatsChanged + " INTEGER NOT NULL DEFAULT 0, " +
+			categoryForeignKey + ")");
+	db.execSQL("CREATE TABLE IF NOT EXISTS " + monthStats + " (" +
+			categoryId + " INTEGER, " +
+			monthStatsMonth + " INTEGER, " +
+			monthStatsCount + " INTEGER NOT NULL DEFAULT 0, " +
+			"PRIMARY KEY(" + categoryId + ", " + monthStatsMonth + "), " +
+			categoryForeignKey + ")");
+	db.execSQL("CREATE TABLE IF NOT EXISTS " + dayStats + " (" +
+			dayStatsDay + " INTEGER PRIMARY KEY, " +
+			dayStatsCount + " INTEGER NOT NULL DEFAULT 0)");
+	db.execSQL("CREATE TABLE IF NOT EXISTS " + streakStats + " (" +
+			streakStart + " INTEGER PRIMARY KEY, " +
+			streakEnd + " INTEGER, " +
+			streakLength + " INTEGER)");
+	db.execSQL("CREATE INDEX IF NOT EXISTS " + resources.getString(R.string.index_streak_stats_end) +
+			" ON " + streakStats + " (" + streakEnd + ")");
+	db.execSQL("CREATE INDEX IF NOT EXISTS " + resources.getString(R.string.index_streak_stats_length) +
+			" ON " + streakStats + " (" + streakLength + ")");
+	
+	// Count items, empty months and days are removed while the category keeps its count of 0
+	String addItem = countItemSql(resources, true) +
+			"INSERT OR IGNORE INTO " + categoryStats + " (" + categoryId + ") VALUES(new." + categoryId + ");" +
+			"UPDATE " + categoryStats + " SET " + categoryStatsCount + "=" + categoryStatsCount + "+1, " + categoryStatsChanged + "=" + categoryStatsChanged + "+1" +
+			" WHERE " + categoryId + "=new." + categoryId + ";";
+	String removeItem = countItemSql(resources, false) +
+			"UPDATE " + categoryStats + " SET " + categoryStatsCount + "=" + categoryStatsCount + "-1, " + categoryStatsChanged + "=" + categoryStatsChanged + "+1" +
+			" WHERE " + categoryId + "=old." + categoryId + ";";
+	db.execSQL("CREATE TRIGGER IF NOT EXISTS " + categoryStats + "_after_insert AFTER INSERT ON " + itemTable + " BEGIN " + addItem + " END");
+	db.execSQL("CREATE TRIGGER IF NOT EXISTS " + categoryStats + "_after_delete AFTER DELETE ON " + itemTable + " BEGIN " + removeItem + " END");
+	db.execSQL("CREATE TRIGGER IF NOT EXISTS " + categoryStats + "_after_update AFTER UPDATE OF " + categoryId + ", " + itemDate + " ON " + itemTable +
+			" WHEN old." + categoryId + "!=new." + categoryId + " OR old." + itemDate + "!=new." + itemDate +
+			" BEGIN " + removeItem + addItem + " END");
+	
+	// A new day joins the streaks ending the day before and starting the day after. Streaks are
+	// never next to each other so the streak starting the day after can be removed. Conflicts
+	// can't be used to replace streaks, triggers use the conflict handling of the outer INSERT OR IGNORE
+	String newDay = "new." + dayStatsDay;
+	String joinedEnd = "COALESCE((SELECT " + streakEnd + " FROM " + streakStats + " WHERE " + streakStart + "=" + newDay + "+1), " + newDay + ")";
+	String joinStreaks = "UPDATE " + streakStats + " SET " + streakEnd + "=" + joinedEnd + ", " + streakLength + "=" + joinedEnd + "-" + streakStart + "+1" +
+			" WHERE " + streakEnd + "=" + newDay + "-1;" +
+			"INSERT INTO " + streakStats + " (" + streakStart + ", " + streakEnd + ", " + streakLength + ")" +
+			" SELECT " + newDay + ", " + joinedEnd + ", " + joinedEnd + "-" + newDay + "+1" +
+			" WHERE NOT EXISTS (SELECT 1 FROM " + streakStats + " WHERE " + streakEnd + ">=" + newDay +
+			" AND " + streakStart + "=(SELECT MAX(" + streakStart + ") FROM " + streakStats + " WHERE " + streakStart + "<" + newDay + "));" +
+			"DELETE FROM " + streakStats + " WHERE " + streakStart + "=" + newDay + "+1;";
+	db.execSQL("CREATE TRIGGER IF NOT EXISTS " + streakStats + "_after_insert AFTER INSERT ON " + dayStats + " BEGIN " + joinStreaks + " END");
+	
+	// A removed day splits its streak in the days before and after it
+	String oldDay = "old." + dayStatsDay;
+	String streakOfDay = "(SELECT MAX(" + streakStart + ") FROM " + streakStats + " WHERE " + streakStart + "<=" + oldDay + ")";
+	String splitStreak = "INSERT INTO " + streakStats + " (" + streakStart + ", " + streakEnd + ", " + streakLength + ")" +
+			" SELECT " + oldDay + "+1, " + streakEnd + ", " + streakEnd + "-" + oldDay + " FROM " + streakStats +
+			" WHERE " + streakStart + "=" + streakOfDay + " AND " + streakEnd + ">" + oldDay + ";" +
+			"UPDATE " + streakStats + " SET " + streakEnd + "=" + oldDay + "-1, " + streakLength + "=" + oldDay + "-" + streakStart +
+			" WHERE " + streakStart + "=" + streakOfDay + ";" +
+			"DELETE FROM " + streakStats + " WHERE " + streakLength + "<=0;";
+	db.execSQL("CREATE TRIGGER IF NOT EXISTS " + streakStats + "_after_delete AFTER DELETE ON " + dayStats + " BEGIN " + splitStreak + " END");
+}
+
+/**
+ * Trigger statements for counting an item in its month and day
+ * @param isAdded true to count an added item ("new" row), false to uncount a removed item ("old" row)
+ * @return statements that update the month and day counts
+ */
+private static String countItemSql(Resources resources, boolean isAdded) {
+	String row = isAdded ? "new" : "old";
+	String categoryId = resources.getString(R.string.table_category_id);
+	String itemDate = row + "." + resources.getString(R.string.table_item_date);
+	String monthStats = resources.getString(R.string.table_month_stats);
+	String monthStatsMonth = resources.getString(R.string.table_month_stats_month);
+	String monthStatsCount = resources.getString(R.string.table_month_stats_count);
+	String dayStats = resources.getString(R.string.table_day_stats);
+	String dayStatsDay = resources.getString(R.string.table_day_stats_day);
+	String dayStatsCount = resources.getString(R.string.table_day_stats_count);
+	String month = toMonth(itemDate);
+	String day = toDay(itemDate);
+	String whereMonth = " WHERE " + categoryId + "=" + row + "." + categoryId + " AND " + monthStatsMonth + "=" + month;
+	String whereDay = " WHERE " + dayStatsDay + "=" + day;
+	
+	if (isAdded) {
+		return "INSERT OR IGNORE INTO " + monthStats + " (" + categoryId + ", " + monthStatsMonth + ") VALUES(" + row + "." + categoryId + ", " + month + ");" +
+				"UPDATE " + monthStats + " SET " + monthStatsCount + "=" + monthStatsCount + "+1" + whereMonth + ";" +
+				"INSERT OR IGNORE INTO " + dayStats + " (" + dayStatsDay + ") VALUES(" + day + ");" +
+				"UPDATE " + dayStats + " SET " + dayStatsCount + "=" + dayStatsCount + "+1" + whereDay + ";";
+	} else {
+		return "UPDATE " + monthStats + " SET " + monthStatsCount + "=" + monthStatsCount + "-1" + whereMonth + ";" +
+				"DELETE FROM " + monthStats + whereMonth + " AND " + monthStatsCount + "<=0;" +
+				"UPDATE " + dayStats + " SET " + dayStatsCount + "=" + dayStatsCount + "-1" + whereDay + ";" +
+				"DELETE FROM " + dayStats + whereDay + " AND " + dayStatsCount + "<=0;";
+	}
+}
+
+/**
+ * @param date SQL expression with a date in milliseconds
+ * @return SQL expression with the month in the device time zone as yyyyMM
+ */
+private static String toMonth(String date) {
+	return "CAST(strftime('%Y%m', " + date + "/1000, 'unixepoch', 'localtime') AS INTEGER)";
+}
+
+/**
+ * @param date SQL expression with a date in milliseconds
+ * @return SQL expression with the day number in the device time zone, consecutive days have
+ * consecutive numbers
+ */
+private static String toDay(String date) {
+	return "CAST(julianday(" + date + "/1000, 'unixepoch', 'localtime', 'start of day') AS INTEGER)";
+}
+
+/**
+ * Count the items per month and day again. Months and days are in the device time zone so this
+ * has to be done when the time zone has changed. Counts per category don't depend on the time zone
+ * and are kept
+ * @param db the database, only call from the writer thread
+ */
+public static void rebuildDateStats(SQLiteDatabase db) {
+	rebuildDateStats(AppActivity.getActivity().getResources(), db);
+}
+
+private static void rebuildDateStats(Resources resources, SQLiteDatabase db) {
+	Log.d(TAG, "rebuildDateStats()");
+	
+	String categoryId = resources.getString(R.string.table_category_id);
+	String itemTable = resources.getString(R.string.table_item);
+	String itemDate = resources.getString(R.string.table_item_date);
+	String monthStats = resources.getString(R.string.table_month_stats);
+	String dayStats = resources.getString(R.string.table_day_stats);
+	
+	db.beginTransaction();
+	try {
+		db.execSQL("DELETE FROM " + monthStats);
+		db.execSQL("DELETE FROM " + dayStats);
+		db.execSQL("DELETE FROM " + resources.getString(R.string.table_streak_stats));
+		
+		db.execSQL("INSERT INTO " + monthStats + " (" +
+				categoryId + ", " +
+				resources.getString(R.string.table_month_stats_month) + ", " +
+				resources.getString(R.string.table_month_stats_count) + ") SELECT " +
+				categoryId + ", " + toMonth(itemDate) + " AS month, COUNT(*) FROM " + itemTable +
+				" GROUP BY " + categoryId + ", month");
+		// Streaks are built by the trigger on the day table
+		db.execSQL("INSERT INTO " + dayStats + " (" +
+				resources.getString(R.string.table_day_stats_day) + ", " +
+				resources.getString(R.string.table_day_stats_count) + ") SELECT " +
+				toDay(itemDate) + " AS day, COUNT(*) FROM " + itemTable +
+				" GROUP BY day");
+		db.setTransactionSuccessful();
+	} finally {
+		db.endTransaction();
+	}
 }
 
 private static class InitTask extends AsyncTask<Void, Void, Sqlite> {
+	private final Context mContext;
+	
+	InitTask(Context context) {
+		mContext = context;
+	}
+	
 	@Override
 	protected Sqlite doInBackground(Void... params) {
-		return new Sqlite();
+		try {
+			Sqlite sqlite = new Sqlite(mContext);
+			sqlite.getWritableDatabase();
+			mInstance = sqlite;
+			SqliteGateway.setSqlite(sqlite);
+			return sqlite;
+		} catch (RuntimeException e) {
+			// Not only SQLiteException, e.g. an upgrade can fail on bad data
+			Log.e(TAG, "doInBackground()", e);
+			SqliteExecutors.onDbOpenFailed();
+			return null;
+		} finally {
+			// Queued work fails instead of waiting forever if the DB couldn't be opened
+			SqliteExecutors.onDbOpened();
+		}
 	}
 	
 	@Override
 	protected void onPostExecute(Sqlite sqlite) {
 		if (sqlite != null) {
-			Log.d(TAG, "onPostExecute() - Setting sqlite");
-			SqliteGateway.setSqlite(sqlite);
+			Log.d(TAG, "onPostExecute() - Initialized");
 			EventBus.getInstance().post(new SqliteInitializedEvent());
 		} else {
 			Log.e(TAG, "Failed to initialize SQLite");
@@ -0,0 +1,86 @@
+package io.blushine.rmw.util;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Connection settings applied to the SQLite DB when it's opened.
+ * <p>
+ * The journal mode is set for the whole DB file, but the pragmas are only set for the connection
+ * they're run on. {@link android.database.sqlite.SQLiteOpenHelper#onConfigure(SQLiteDatabase)} is
+ * called for the primary connection only, and Android has no hook for the other connections. In WAL
+ * mode the reads outside transactions are run on the other connections of the pool, so they use
+ * SQLite's defaults for {@code cache_size}, {@code mmap_size} and {@code temp_store}. Writes and
+ * everything in a transaction are run on the primary connection and get the whole profile.
+ * {@code synchronous} only affects writes so it always applies.
+ */
+public enum SqliteConnectionProfile {
+	/** Android defaults, rollback journal and full synchronous writes */
+	DEFAULT(false, null, 0, 0, false),
+	/**
+	 * Write-ahead log so reads can run while writing. Only syncs on checkpoints, which is still
+	 * safe from corruption but can lose the latest transactions on power loss
+	 */
+	WAL(true, "NORMAL", 2 * 1024, 0, true),
+	/**
+	 * Same as {@link #WAL} but also memory-maps the DB file for faster reads. Only the primary
+	 * connection memory-maps, see the class comment
+	 */
+	WAL_MMAP(true, "NORMAL", 2 * 1024, 32 * 1024 * 1024, true);
+
+private final boolean mWriteAheadLogging;
+private final String mSynchronous;
+private final int mCacheSizeKiB;
+private final long mMmapSize;
+private final boolean mTempStoreInMemory;
+
+/**
+ * @param writeAheadLogging true to use WAL journal mode
+ * @param synchronous synchronous mode, null to use the default
+ * @param cacheSizeKiB page cache size in KiB, 0 to use the default
+ * @param mmapSize max bytes to memory-map, 0 to not memory-map
+ * @param tempStoreInMemory true to store temporary tables and indexes in memory
+ */
+SqliteConnectionProfile(boolean writeAheadLogging, String synchronous, int cacheSizeKiB, long mmapSize, boolean tempStoreInMemory) {
+	mWriteAheadLogging = writeAheadLogging;
+	mSynchronous = synchronous;
+	mCacheSizeKiB = cacheSizeKiB;
+	mMmapSize = mmapSize;
+	mTempStoreInMemory = tempStoreInMemory;
+}
+
+/**
+ * Apply the profile to the database. Call from {@link android.database.sqlite.SQLiteOpenHelper#onConfigure(SQLiteDatabase)}.
+ * The pragmas are only applied to the primary connection
+ * @param db the database to configure
+ */
+void apply(SQLiteDatabase db) {
+	if (mWriteAheadLogging) {
+		db.enableWriteAheadLogging();
+	}
+	if (mSynchronous != null) {
+		pragma(db, "synchronous=" + mSynchronous);
+	}
+	if (mCacheSizeKiB > 0) {
+		// Negative value sets the size in KiB instead of pages
+		pragma(db, "cache_size=-" + mCacheSizeKiB);
+	}
+	if (mMmapSize > 0) {
+		pragma(db, "mmap_size=" + mMmapSize);
+	}
+	if (mTempStoreInMemory) {
+		pragma(db, "temp_store=MEMORY");
+	}
+}
+
+/**
+ * Run a pragma. Some pragmas return the new value so they have to be run as queries
+ * @param db the database to run the pragma on
+ * @param pragma the pragma statement without the PRAGMA keyword
+ */
+private static void pragma(SQLiteDatabase db, String pragma) {
+	Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+	cursor.moveToFirst();
+	cursor.close();
+}
+}
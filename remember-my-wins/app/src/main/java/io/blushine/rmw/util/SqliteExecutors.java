@@ -0,0 +1,180 @@
+package io.blushine.rmw.util;
+
+import android.database.sqlite.SQLiteException;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.blushine.utils.EventBus;
+
+/**
+ * Executors for running SQLite work off the main thread. All writes are run in order on a single
+ * writer thread, while reads are run on a small pool of reader threads. Reads that aren't needed
+ * yet are run on a prefetch thread with the lowest priority. Work can be added before the DB has
+ * been opened, the threads wait for {@link Sqlite#init()} to open it. Work that throws is passed to
+ * its {@link FailureHandler} so the threads never die, and work isn't run at all if the DB couldn't
+ * be opened.
+ */
+public class SqliteExecutors {
+private static final String TAG = SqliteExecutors.class.getSimpleName();
+private static final int READER_COUNT = 2;
+private static final ExecutorService mWriter = Executors.newSingleThreadExecutor(new DbThreadFactory("sqlite-writer", Thread.NORM_PRIORITY - 1));
+private static final ExecutorService mReaders = Executors.newFixedThreadPool(READER_COUNT, new DbThreadFactory("sqlite-reader", Thread.NORM_PRIORITY - 1));
+private static final ExecutorService mPrefetcher = Executors.newSingleThreadExecutor(new DbThreadFactory("sqlite-prefetch", Thread.MIN_PRIORITY));
+private static final Handler mMainHandler = new Handler(Looper.getMainLooper());
+private static final CountDownLatch mDbOpened = new CountDownLatch(1);
+private static volatile boolean mDbFailed = false;
+
+private SqliteExecutors() {}
+
+/**
+ * Run a write on the writer thread. Writes are run one at a time in the order they were added
+ * @param runnable the write to run
+ * @param failureHandler called on the writer thread if the write throws or the DB couldn't be opened
+ */
+public static void write(Runnable runnable, @NotNull FailureHandler failureHandler) {
+	mWriter.execute(guard(runnable, failureHandler));
+}
+
+/**
+ * Run a write on the writer thread and get the result. Used by background work that has to wait
+ * for the write, never wait for the result on the main thread
+ * @param callable the write to run
+ * @return the result of the write
+ */
+public static <T> Future<T> submitWrite(Callable<T> callable) {
+	// Exceptions are thrown by Future.get()
+	return mWriter.submit(() -> {
+		checkDbOpened();
+		return callable.call();
+	});
+}
+
+/**
+ * Run a read on one of the reader threads
+ * @param runnable the read to run
+ * @param failureHandler called on the reader thread if the read throws or the DB couldn't be opened
+ */
+public static void read(Runnable runnable, @NotNull FailureHandler failureHandler) {
+	mReaders.execute(guard(runnable, failureHandler));
+}
+
+/**
+ * Run a read that isn't needed yet on the prefetch thread. Prefetches are run one at a time with
+ * the lowest priority so they don't slow down the reads that are waited for
+ * @param runnable the read to run
+ * @param failureHandler called on the prefetch thread if the read throws or the DB couldn't be opened
+ * @return cancel the read with this if it's no longer needed before it has started
+ */
+public static Future<?> prefetch(Runnable runnable, @NotNull FailureHandler failureHandler) {
+	return mPrefetcher.submit(guard(runnable, failureHandler));
+}
+
+/**
+ * Let the threads run their work, called by {@link Sqlite} when the DB has been opened
+ */
+static void onDbOpened() {
+	mDbOpened.countDown();
+}
+
+/**
+ * Fail all work instead of running it, called by {@link Sqlite} before {@link #onDbOpened()} if
+ * the DB couldn't be opened
+ */
+static void onDbOpenFailed() {
+	mDbFailed = true;
+}
+
+/**
+ * @throws SQLiteException if the DB couldn't be opened
+ */
+private static void checkDbOpened() {
+	if (mDbFailed) {
+		throw new SQLiteException("The DB couldn't be opened");
+	}
+}
+
+/**
+ * Pass exceptions to the failure handler, an uncaught exception would kill the thread and the app
+ * @param work the work to run on a DB thread
+ * @param failureHandler called if the work throws or the DB couldn't be opened
+ * @return runs the work
+ */
+private static Runnable guard(Runnable work, FailureHandler failureHandler) {
+	return () -> {
+		try {
+			checkDbOpened();
+			work.run();
+		} catch (RuntimeException e) {
+			try {
+				failureHandler.onFailed(e);
+			} catch (RuntimeException handlerException) {
+				Log.e(TAG, "guard() — Failure handler threw", handlerException);
+			}
+		}
+	};
+}
+
+/**
+ * Post an event on the main thread. The time until all event handlers have run is measured per
+ * event type, see {@link Metrics#eventOperation(Class)}
+ * @param event the event to post
+ */
+public static void postOnMainThread(Object event) {
+	MeasuredOperation operation = Metrics.eventOperation(event.getClass());
+	mMainHandler.post(operation.measure(() -> EventBus.getInstance().post(event)));
+}
+
+/**
+ * Handles work on a DB thread that failed
+ */
+public interface FailureHandler {
+	/**
+	 * Called on the DB thread the work was run on
+	 * @param e why the work failed, a {@link SQLiteException} if the DB couldn't be opened
+	 */
+	void onFailed(@NotNull RuntimeException e);
+}
+
+private static class DbThreadFactory implements ThreadFactory {
+	private final AtomicInteger mThreadCount = new AtomicInteger();
+	private final String mName;
+	private final int mPriority;
+	
+	DbThreadFactory(String name, int priority) {
+		mName = name;
+		mPriority = priority;
+	}
+	
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(() -> {
+			awaitDbOpened();
+			runnable.run();
+		}, mName + "-" + mThreadCount.incrementAndGet());
+		thread.setPriority(mPriority);
+		return thread;
+	}
+	
+	/**
+	 * Threads are created for their first work, they only have to wait once
+	 */
+	private static void awaitDbOpened() {
+		try {
+			mDbOpened.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
+}
@@ -0,0 +1,160 @@
+package io.blushine.rmw.util;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.blushine.android.firebase.FirebaseAuth;
+import io.blushine.rmw.settings.SettingsRepo;
+
+/**
+ * Cold start of the app. The DB, the preferences and Firebase are initialized at the same time on
+ * background threads while the main thread creates the first activity, so the main thread only
+ * waits for what the first frame needs. Work that isn't needed for the first frame is run after it
+ * has been drawn, see {@link #runAfterFirstDraw(Runnable)}.
+ * <p>
+ * The time to the first draw is recorded in the {@link Metrics}: {@code Startup.cold_time_to_first_draw_us}
+ * from when the process was started until the first activity has been drawn, and
+ * {@code Startup.time_to_first_draw_us} from when each activity is created until it has been drawn.
+ * Only use from the main thread.
+ */
+public class Startup {
+private static final String TAG = Startup.class.getSimpleName();
+private static final Histogram COLD_TIME_TO_FIRST_DRAW = Metrics.histogram(TAG + ".cold_time_to_first_draw_us");
+private static final Histogram TIME_TO_FIRST_DRAW = Metrics.histogram(TAG + ".time_to_first_draw_us");
+private static final MeasuredOperation INIT_PREFS = Metrics.operation(TAG + ".initPrefs");
+private static final MeasuredOperation INIT_FIREBASE = Metrics.operation(TAG + ".initFirebase");
+/** One thread for each part that is initialized at the same time */
+private static final ExecutorService mExecutor = Executors.newFixedThreadPool(2, new StartupThreadFactory());
+private static final Handler mMainHandler = new Handler(Looper.getMainLooper());
+private static final List<Runnable> mAfterFirstDraw = new ArrayList<>();
+private static boolean mStarted = false;
+private static boolean mFirstDrawn = false;
+
+private Startup() {}
+
+/**
+ * Start initializing the DB, the preferences and Firebase in the background. Call once when the
+ * first activity is created
+ */
+public static void start() {
+	if (mStarted) {
+		return;
+	}
+	mStarted = true;
+	
+	// Both storage locations keep their items in SQLite
+	Sqlite.init();
+	
+	mExecutor.execute(INIT_PREFS.measure(() -> {
+		SettingsRepo.INSTANCE.getStorageLocation();
+		SettingsRepo.INSTANCE.getReminderTime();
+	}));
+	// Signing in is possible with both storage locations
+	mExecutor.execute(INIT_FIREBASE.measure(() -> FirebaseAuth.INSTANCE.getCurrentUser()));
+}
+
+/**
+ * Run work that isn't needed for the first frame after the first activity has been drawn. Runs
+ * the work directly if the first activity has already been drawn
+ * @param work the work to run on the main thread
+ */
+public static void runAfterFirstDraw(@NotNull Runnable work) {
+	if (mFirstDrawn) {
+		work.run();
+	} else {
+		mAfterFirstDraw.add(work);
+	}
+}
+
+/**
+ * Record the time to the first draw of an activity. Call from {@link Activity#onCreate}
+ * @param activity the activity that was created
+ */
+public static void measureFirstDraw(@NotNull Activity activity) {
+	long createdAt = SystemClock.elapsedRealtime();
+	boolean isColdStart = !mFirstDrawn;
+	View decorView = activity.getWindow().getDecorView();
+	
+	decorView.getViewTreeObserver().addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+		private boolean mDrawn = false;
+		
+		@Override
+		public void onDraw() {
+			if (mDrawn) {
+				return;
+			}
+			mDrawn = true;
+			
+			long drawnAt = SystemClock.elapsedRealtime();
+			TIME_TO_FIRST_DRAW.record((drawnAt - createdAt) * 1000);
+			if (isColdStart) {
+				long coldTime = drawnAt - getProcessStartedAt(createdAt);
+				COLD_TIME_TO_FIRST_DRAW.record(coldTime * 1000);
+				Log.i(TAG, "First draw " + coldTime + " ms after the process was started");
+			}
+			
+			// Listeners can't be removed while drawing
+			mMainHandler.post(() -> {
+				decorView.getViewTreeObserver().removeOnDrawListener(this);
+				if (isColdStart) {
+					onFirstDraw();
+				}
+			});
+		}
+	});
+}
+
+/**
+ * @param createdAt when the first activity was created, used before Android N
+ * @return when the process was started, in {@link SystemClock#elapsedRealtime()} time
+ */
+private static long getProcessStartedAt(long createdAt) {
+	if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+		return Process.getStartElapsedRealtime();
+	} else {
+		return createdAt;
+	}
+}
+
+private static void onFirstDraw() {
+	if (mFirstDrawn) {
+		return;
+	}
+	mFirstDrawn = true;
+	
+	for (Runnable work : mAfterFirstDraw) {
+		work.run();
+	}
+	mAfterFirstDraw.clear();
+}
+
+/**
+ * Daemon threads so an unfinished initialization never keeps the process alive
+ */
+private static class StartupThreadFactory implements ThreadFactory {
+	private final AtomicInteger mThreadCount = new AtomicInteger();
+	
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, "startup-" + mThreadCount.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
+}
@@ -0,0 +1,125 @@
+package io.blushine.rmw.item;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CategoryOrder} and {@link CategoryImportMap} when the last category is close to
+ * the highest order
+ */
+public class CategoryOrderTest {
+@Test
+public void nextOrderAtBoundary() {
+	assertTrue(CategoryOrder.hasRoomAfter(null));
+	assertTrue(CategoryOrder.hasRoomAfter(createCategory(1, CategoryOrder.ORDER_MAX)));
+	assertEquals(Integer.MAX_VALUE, CategoryOrder.nextOrder(createCategory(1, CategoryOrder.ORDER_MAX)));
+	assertFalse(CategoryOrder.hasRoomAfter(createCategory(1, CategoryOrder.ORDER_MAX + 1)));
+}
+
+@Test(expected = IllegalStateException.class)
+public void nextOrderThrowsInsteadOfOverflowing() {
+	CategoryOrder.nextOrder(createCategory(1, CategoryOrder.ORDER_MAX + 1));
+}
+
+@Test
+public void makeRoomAfterOnlyRebalancesAtBoundary() {
+	List<Category> categories = createCategories(CategoryOrder.ORDER_MAX);
+	assertTrue(CategoryOrder.makeRoomAfter(categories).isEmpty());
+	
+	categories = createCategories(CategoryOrder.ORDER_MAX + 1);
+	List<Category> changedCategories = CategoryOrder.makeRoomAfter(categories);
+	// The first category already has the rebalanced order
+	assertEquals(categories.subList(1, categories.size()), changedCategories);
+	assertOrdered(categories);
+	assertTrue(CategoryOrder.hasRoomAfter(categories.get(categories.size() - 1)));
+}
+
+@Test
+public void appendUntilRebalanced() {
+	List<Category> categories = new ArrayList<>();
+	int rebalanceCount = 0;
+	for (int i = 0; i < 40000; ++i) {
+		if (!CategoryOrder.makeRoomAfter(categories).isEmpty()) {
+			++rebalanceCount;
+		}
+		Category last = !categories.isEmpty() ? categories.get(categories.size() - 1) : null;
+		categories.add(createCategory(i + 1, CategoryOrder.nextOrder(last)));
+		
+		// Keep only a few categories so the appends reach the highest order
+		if (categories.size() > 3) {
+			categories.remove(0);
+		}
+	}
+	
+	assertTrue(rebalanceCount > 0);
+	assertOrdered(categories);
+}
+
+@Test
+public void moveLastRebalancesAtBoundary() {
+	List<Category> categories = createCategories(CategoryOrder.ORDER_MAX + 1);
+	
+	// Move the first category last
+	categories.add(categories.remove(0));
+	List<Category> changedCategories = CategoryOrder.move(categories, categories.size() - 1);
+	
+	assertEquals(categories.size(), changedCategories.size());
+	assertOrdered(categories);
+}
+
+@Test
+public void importRebalancesAtBoundary() {
+	List<Category> existingCategories = createCategories(CategoryOrder.ORDER_MAX + 1);
+	CategoryImportMap idMap = new CategoryImportMap(existingCategories);
+	List<Category> updatedCategories = new ArrayList<>();
+	List<Category> allCategories = new ArrayList<>(existingCategories);
+	
+	Category importedCategory = createCategory(100, 1);
+	importedCategory.setName("imported");
+	idMap.map(importedCategory, category -> {
+		category.setId("101");
+		allCategories.add(category);
+	}, updatedCategories::add);
+	
+	assertEquals(existingCategories.subList(1, existingCategories.size()), updatedCategories);
+	assertEquals("101", idMap.getId("100"));
+	assertOrdered(allCategories);
+}
+
+/**
+ * @param lastOrder order of the last category
+ * @return three categories where the last one has the specified order
+ */
+private static List<Category> createCategories(int lastOrder) {
+	List<Category> categories = new ArrayList<>();
+	categories.add(createCategory(1, CategoryOrder.ORDER_GAP));
+	categories.add(createCategory(2, lastOrder - CategoryOrder.ORDER_GAP));
+	categories.add(createCategory(3, lastOrder));
+	return categories;
+}
+
+private static Category createCategory(long id, int order) {
+	Category category = new Category();
+	category.setId(String.valueOf(id));
+	category.setName("category " + id);
+	category.setOrder(order);
+	return category;
+}
+
+private static void assertOrdered(List<Category> categories) {
+	for (int i = 1; i < categories.size(); ++i) {
+		assertTrue(categories.get(i - 1).getOrder() > 0);
+		assertTrue(categories.get(i - 1).getOrder() < categories.get(i).getOrder());
+	}
+	List<Category> sortedCategories = new ArrayList<>(categories);
+	Collections.sort(sortedCategories);
+	assertEquals(categories, sortedCategories);
+}
+}
@@ -0,0 +1,244 @@
+package io.blushine.rmw.item;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests that {@link ItemAdapter} notifies changes that match its items when they are changed while
+ * the difference of a {@link ItemAdapter#replaceItems} is calculated in the background. A
+ * RecyclerView crashes with "Inconsistency detected" if they don't match
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ItemAdapterTest {
+private static final long TIMEOUT_MS = 10 * 1000;
+/** Time for the background diff to finish after it has been skipped */
+private static final long SKIPPED_DIFF_MS = 200;
+private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+private ItemAdapter mAdapter;
+private CountingObserver mObserver;
+private int mReplacedCount = 0;
+
+@Before
+public void setUp() {
+	mAdapter = new ItemAdapter();
+	mObserver = new CountingObserver();
+	mAdapter.registerAdapterDataObserver(mObserver);
+	
+	mAdapter.replaceItems(createItems(10, 6), null);
+	assertItems(10, 6);
+}
+
+@Test
+public void replace() throws Exception {
+	mAdapter.replaceItems(createItems(12, 8), this::onReplaced);
+	
+	awaitReplaced(1);
+	assertItems(12, 8);
+}
+
+@Test
+public void addToEndWhileDiffIsPending() throws Exception {
+	mAdapter.replaceItems(createItems(11, 6), this::onReplaced);
+	mAdapter.addToEnd(createItems(5, 3));
+	
+	// Applied before the items were added
+	assertEquals(1, mReplacedCount);
+	assertItems(11, 3);
+	
+	awaitSkippedDiff();
+	assertEquals(1, mReplacedCount);
+	assertItems(11, 3);
+}
+
+@Test
+public void addWhileDiffIsPending() throws Exception {
+	mAdapter.replaceItems(createItems(9, 4), this::onReplaced);
+	mAdapter.add(Collections.singletonList(createItem(20)));
+	
+	awaitSkippedDiff();
+	assertEquals(1, mReplacedCount);
+	assertEquals(7, mAdapter.getItemCount());
+	assertEquals("20", mAdapter.getItem(0).getId());
+	assertEquals("4", mAdapter.getItem(6).getId());
+	assertObserverMatches();
+}
+
+@Test
+public void removeAndUpdateWhileDiffIsPending() throws Exception {
+	mAdapter.replaceItems(createItems(12, 6), this::onReplaced);
+	mAdapter.removeItems(Arrays.asList(createItem(12), createItem(7)));
+	Item editedItem = createItem(11);
+	editedItem.setDate(0);
+	mAdapter.update(Collections.singletonList(editedItem), true);
+	
+	awaitSkippedDiff();
+	assertEquals(1, mReplacedCount);
+	List<String> ids = new ArrayList<>();
+	for (Item item : mAdapter.getItems()) {
+		ids.add(item.getId());
+	}
+	assertEquals(Arrays.asList("10", "9", "8", "6", "11"), ids);
+	assertObserverMatches();
+}
+
+@Test
+public void removeSkipsItemsThatArentFetched() {
+	// As many items as the adapter has, but two of them are only in later pages
+	mAdapter.removeItems(Arrays.asList(createItem(10), createItem(8), createItem(7), createItem(3), createItem(2)));
+	
+	List<String> ids = new ArrayList<>();
+	for (Item item : mAdapter.getItems()) {
+		ids.add(item.getId());
+	}
+	assertEquals(Arrays.asList("9", "6"), ids);
+	assertObserverMatches();
+}
+
+@Test
+public void removeAllFetched() {
+	mAdapter.removeItems(Arrays.asList(createItem(3), createItem(10), createItem(9), createItem(8), createItem(7), createItem(6)));
+	
+	assertEquals(0, mAdapter.getItemCount());
+	assertObserverMatches();
+}
+
+@Test
+public void newerReplaceWins() throws Exception {
+	mAdapter.replaceItems(createItems(15, 1), this::onReplaced);
+	mAdapter.replaceItems(createItems(8, 7), this::onReplaced);
+	
+	awaitReplaced(1);
+	awaitSkippedDiff();
+	assertEquals(1, mReplacedCount);
+	assertItems(8, 7);
+}
+
+private void onReplaced() {
+	++mReplacedCount;
+}
+
+private void awaitReplaced(int replacedCount) throws Exception {
+	long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+	while (mReplacedCount < replacedCount) {
+		ShadowLooper.idleMainLooper();
+		if (System.currentTimeMillis() > deadline) {
+			throw new TimeoutException("Items weren't replaced");
+		}
+		Thread.sleep(1);
+	}
+}
+
+/**
+ * Let the background diff of a replace that has already been applied finish and post its result
+ */
+private static void awaitSkippedDiff() throws InterruptedException {
+	Thread.sleep(SKIPPED_DIFF_MS);
+	ShadowLooper.idleMainLooper();
+}
+
+/**
+ * Check that the adapter has all items from the newest to the oldest id, and that the notified
+ * changes add up to the same number of items
+ */
+private void assertItems(long newestId, long oldestId) {
+	assertEquals(createItems(newestId, oldestId), mAdapter.getItems());
+	for (Item item : mAdapter.getItems()) {
+		assertEquals("item " + item.getId(), item.getText());
+	}
+	assertObserverMatches();
+}
+
+private void assertObserverMatches() {
+	assertFalse(mObserver.mInvalidRange);
+	assertEquals(mAdapter.getItemCount(), mObserver.mItemCount);
+	List<Item> sortedItems = new ArrayList<>(mAdapter.getItems());
+	Collections.sort(sortedItems, ItemKt.NEWEST_FIRST);
+	assertEquals(sortedItems, mAdapter.getItems());
+}
+
+/**
+ * @return items with ids from newest to oldest, sorted by {@link ItemKt#NEWEST_FIRST}
+ */
+private static List<Item> createItems(long newestId, long oldestId) {
+	List<Item> items = new ArrayList<>();
+	for (long id = newestId; id >= oldestId; --id) {
+		items.add(createItem(id));
+	}
+	return items;
+}
+
+/**
+ * @return item with one item a day, higher ids are newer
+ */
+private static Item createItem(long id) {
+	Item item = new Item();
+	item.setId(String.valueOf(id));
+	item.setCategoryId("1");
+	item.setText("item " + id);
+	item.setDate(id * DAY_MILLIS);
+	return item;
+}
+
+/**
+ * Keeps track of the number of items from the notified changes, like a RecyclerView does
+ */
+private class CountingObserver extends RecyclerView.AdapterDataObserver {
+	int mItemCount = 0;
+	boolean mInvalidRange = false;
+	
+	@Override
+	public void onChanged() {
+		mItemCount = mAdapter.getItemCount();
+	}
+	
+	@Override
+	public void onItemRangeChanged(int positionStart, int itemCount) {
+		checkRange(positionStart, itemCount);
+	}
+	
+	@Override
+	public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+		checkRange(positionStart, itemCount);
+	}
+	
+	@Override
+	public void onItemRangeInserted(int positionStart, int itemCount) {
+		mItemCount += itemCount;
+		checkRange(positionStart, itemCount);
+	}
+	
+	@Override
+	public void onItemRangeRemoved(int positionStart, int itemCount) {
+		checkRange(positionStart, itemCount);
+		mItemCount -= itemCount;
+	}
+	
+	@Override
+	public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+		checkRange(fromPosition, itemCount);
+		checkRange(toPosition, itemCount);
+	}
+	
+	private void checkRange(int positionStart, int itemCount) {
+		if (positionStart < 0 || positionStart + itemCount > mItemCount) {
+			mInvalidRange = true;
+		}
+	}
+}
+}
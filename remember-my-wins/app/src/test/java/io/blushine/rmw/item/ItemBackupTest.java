@@ -0,0 +1,123 @@
+package io.blushine.rmw.item;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the streamed backup format and measures its throughput on {@link #ITEM_COUNT} items. Only
+ * one chunk of items is read at a time, like {@code ItemSqliteGateway.importData()} does. The
+ * throughput is written as a {@link PerfReport} to {@link #REPORT_PATH}, or to
+ * {@code rmw.backup.report} when set
+ */
+public class ItemBackupTest {
+private static final int ITEM_COUNT = 100000;
+private static final int CATEGORY_COUNT = 50;
+private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+private static final String REPORT_PATH = "build/reports/perf/item-backup.json";
+
+@Test(timeout = 60 * 1000)
+public void roundTrip() throws IOException {
+	List<Category> categories = createCategories();
+	ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+	
+	long startedAt = System.nanoTime();
+	try (ItemBackupWriter writer = new ItemBackupWriter(outputStream)) {
+		writer.writeCategories(categories);
+		for (int i = 0; i < ITEM_COUNT; ++i) {
+			writer.writeItem(createItem(i));
+		}
+		writer.finish();
+	}
+	long writeNanos = System.nanoTime() - startedAt;
+	
+	startedAt = System.nanoTime();
+	int itemCount = 0;
+	try (ItemBackupReader reader = new ItemBackupReader(new ByteArrayInputStream(outputStream.toByteArray()))) {
+		List<Category> readCategories = reader.readCategories();
+		assertEquals(CATEGORY_COUNT, readCategories.size());
+		for (int i = 0; i < CATEGORY_COUNT; ++i) {
+			assertEquals(categories.get(i).getId(), readCategories.get(i).getId());
+			assertEquals(categories.get(i).getName(), readCategories.get(i).getName());
+			assertEquals(categories.get(i).getOrder(), readCategories.get(i).getOrder());
+		}
+		
+		List<Item> items = reader.readItems(ItemBackupKt.BACKUP_CHUNK_SIZE);
+		while (!items.isEmpty()) {
+			assertTrue(items.size() <= ItemBackupKt.BACKUP_CHUNK_SIZE);
+			for (Item item : items) {
+				Item expected = createItem(itemCount++);
+				assertEquals(expected.getCategoryId(), item.getCategoryId());
+				assertEquals(expected.getText(), item.getText());
+				assertEquals(expected.getDate(), item.getDate());
+			}
+			items = reader.readItems(ItemBackupKt.BACKUP_CHUNK_SIZE);
+		}
+	}
+	long readNanos = System.nanoTime() - startedAt;
+	
+	assertEquals(ITEM_COUNT, itemCount);
+	
+	PerfReport report = new PerfReport();
+	report.add("writeBackup", ITEM_COUNT, new long[]{writeNanos}, ITEM_COUNT);
+	report.add("readBackup", ITEM_COUNT, new long[]{readNanos}, ITEM_COUNT);
+	report.write(new File(System.getProperty("rmw.backup.report", REPORT_PATH)));
+}
+
+@Test
+public void skipsUnknownFields() throws IOException {
+	String json = "{\"version\": 1, \"exportedAt\": 5, \"categories\": [{\"id\": \"1\", \"name\": \"Work\", \"order\": 10, \"color\": \"red\"}]," +
+			" \"items\": [{\"categoryId\": \"1\", \"text\": null, \"date\": 7, \"mood\": 3}], \"end\": true}";
+	try (ItemBackupReader reader = createReader(json)) {
+		assertEquals("Work", reader.readCategories().get(0).getName());
+		List<Item> items = reader.readItems(ItemBackupKt.BACKUP_CHUNK_SIZE);
+		assertEquals(1, items.size());
+		assertEquals("", items.get(0).getText());
+		assertEquals(7, items.get(0).getDate());
+		assertTrue(reader.readItems(ItemBackupKt.BACKUP_CHUNK_SIZE).isEmpty());
+	}
+}
+
+@Test(expected = IOException.class)
+public void rejectsNewerVersion() throws IOException {
+	try (ItemBackupReader reader = createReader("{\"version\": " + (ItemBackupKt.BACKUP_VERSION + 1) + ", \"categories\": [], \"items\": []}")) {
+		reader.readCategories();
+	}
+}
+
+private static ItemBackupReader createReader(String json) {
+	return new ItemBackupReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+}
+
+private static List<Category> createCategories() {
+	List<Category> categories = new ArrayList<>(CATEGORY_COUNT);
+	for (int i = 0; i < CATEGORY_COUNT; ++i) {
+		Category category = new Category();
+		category.setId(String.valueOf(i + 1));
+		category.setName("Category \"" + (i + 1) + "\"");
+		category.setOrder((i + 1) * CategoryOrder.ORDER_GAP);
+		categories.add(category);
+	}
+	return categories;
+}
+
+/**
+ * @return the same item for the same index
+ */
+private static Item createItem(int index) {
+	Item item = new Item();
+	item.setCategoryId(String.valueOf(1 + index % CATEGORY_COUNT));
+	item.setText("Win " + index + " — ran 5k, fixed bike");
+	item.setDate(index * DAY_MILLIS);
+	return item;
+}
+}
@@ -0,0 +1,95 @@
+package io.blushine.rmw.item;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import io.blushine.rmw.util.SortedLists;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that items fetched again for the pages that are shown, e.g. when the items are updated,
+ * are filtered like {@code CategoryPageFragment} does so they don't overlap the next keyset page
+ */
+public class ItemPagesTest {
+private static final int PAGE_SIZE = 50;
+private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+@Test
+public void sameDayItemsAcrossPageBoundary() {
+	// Eight items a day so the boundary of the first page is in the middle of a day
+	List<Item> allItems = new ArrayList<>();
+	for (int i = 0; i < 2 * PAGE_SIZE; ++i) {
+		allItems.add(createItem(i + 1, (i / 8) * DAY_MILLIS));
+	}
+	Collections.shuffle(allItems, new Random(42));
+	List<Item> sortedItems = new ArrayList<>(allItems);
+	Collections.sort(sortedItems, ItemKt.NEWEST_FIRST);
+	
+	List<Item> firstPage = sortedItems.subList(0, PAGE_SIZE);
+	Item lastItem = firstPage.get(PAGE_SIZE - 1);
+	List<Item> nextPage = getPageAfter(sortedItems, lastItem);
+	assertEquals(lastItem.getDate(), nextPage.get(0).getDate());
+	
+	List<Item> fetchedAgain = SortedLists.notAfter(allItems, lastItem, ItemKt.NEWEST_FIRST);
+	Collections.sort(fetchedAgain, ItemKt.NEWEST_FIRST);
+	assertEquals(firstPage, fetchedAgain);
+	
+	// The shown pages and the next page together have every item exactly once
+	Set<Item> shownItems = new HashSet<>(fetchedAgain);
+	for (Item item : nextPage) {
+		assertTrue(shownItems.add(item));
+	}
+	assertEquals(allItems.size(), shownItems.size());
+}
+
+@Test
+public void keepsItemsInTheirOrder() {
+	Item lastItem = createItem(5, DAY_MILLIS);
+	List<Item> items = new ArrayList<>();
+	items.add(createItem(4, DAY_MILLIS));
+	items.add(createItem(7, 2 * DAY_MILLIS));
+	items.add(createItem(5, DAY_MILLIS));
+	items.add(createItem(6, DAY_MILLIS));
+	items.add(createItem(1, 0));
+	
+	List<Item> filteredItems = SortedLists.notAfter(items, lastItem, ItemKt.NEWEST_FIRST);
+	
+	List<Item> expectedItems = new ArrayList<>();
+	expectedItems.add(items.get(1));
+	expectedItems.add(items.get(2));
+	expectedItems.add(items.get(3));
+	assertEquals(expectedItems, filteredItems);
+}
+
+/**
+ * Get the next page like the gateways do, items that sort after the item by date and id
+ */
+private static List<Item> getPageAfter(List<Item> sortedItems, Item afterItem) {
+	List<Item> page = new ArrayList<>();
+	for (Item item : sortedItems) {
+		boolean isAfter = item.getDate() < afterItem.getDate() ||
+				(item.getDate() == afterItem.getDate() && Long.parseLong(item.getId()) < Long.parseLong(afterItem.getId()));
+		if (isAfter && page.size() < PAGE_SIZE) {
+			page.add(item);
+		}
+	}
+	return page;
+}
+
+private static Item createItem(long id, long date) {
+	Item item = new Item();
+	item.setId(String.valueOf(id));
+	item.setCategoryId("1");
+	item.setText("item " + id);
+	item.setDate(date);
+	return item;
+}
+}
@@ -0,0 +1,567 @@
+package io.blushine.rmw.item;
+
+import android.content.ContentValues;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.squareup.otto.Subscribe;
+import com.squareup.otto.ThreadEnforcer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.blushine.android.common.ObjectEvent;
+import io.blushine.rmw.R;
+import io.blushine.rmw.util.AppActivity;
+import io.blushine.rmw.util.Sqlite;
+import io.blushine.rmw.util.SqliteConnectionProfile;
+import io.blushine.rmw.util.SqliteExecutors;
+import io.blushine.utils.EventBus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Performance suite for {@link ItemSqliteGateway} using the real {@link Sqlite} helper under
+ * Robolectric. The database is seeded with generated items spread over {@link #CATEGORY_COUNT}
+ * categories and grown to each dataset size in turn. Every call is measured from when it's made
+ * until its transaction has been committed, or for reads until the response has been posted.
+ * {@code insertItemsContentValues} and {@code insertItemsStatement} insert items the way the gateway
+ * did before and after it reused compiled statements, so their rows/s can be compared.
+ * {@code readPageWhileWriting} and {@code addItemsWhileReading} read pages on several threads while
+ * items are added. To compare the connection profiles, run the suite once with each profile and
+ * compare the write latencies and the rows/s of the reads in the reports.
+ * <p>
+ * The results are written as JSON to the report file. When {@code rmw.perf.gate} is set they're
+ * also compared with the baseline in {@code src/test/resources/perf/sqlite_gateway_baseline.json},
+ * and the test fails if an operation is slower than the threshold allows or isn't in the baseline.
+ * The baseline has to be measured on the machine that runs the gate, so it's off by default. To
+ * update the baseline, copy the report from the CI machine.
+ * <p>
+ * Settings are system properties, the Gradle build passes on project properties with the same name:
+ * <ul>
+ * <li>{@code rmw.perf.sizes} dataset sizes, defaults to 1000. CI uses 1000,100000,1000000</li>
+ * <li>{@code rmw.perf.runs} measured runs per operation and dataset, defaults to 20</li>
+ * <li>{@code rmw.perf.gate} true to fail on regressions from the baseline, defaults to false</li>
+ * <li>{@code rmw.perf.threshold} how many times slower than the baseline is allowed, defaults to 1.5</li>
+ * <li>{@code rmw.perf.profile} {@link SqliteConnectionProfile} to use, defaults to WAL</li>
+ * <li>{@code rmw.perf.report} where to write the report, defaults to one file per profile</li>
+ * </ul>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ItemSqliteGatewayPerfTest {
+private static final String TAG = ItemSqliteGatewayPerfTest.class.getSimpleName();
+private static final int CATEGORY_COUNT = 100;
+/** Items added in each transaction when seeding */
+private static final int SEED_CHUNK_SIZE = 10000;
+/** Items added or updated in each measured call */
+private static final int BATCH_SIZE = 100;
+/** Threads reading at the same time, as many as the readers of {@link SqliteExecutors} */
+private static final int READER_THREADS = 2;
+private static final int PAGE_SIZE = 50;
+/** Items in the categories that are removed or imported */
+private static final int SCRATCH_ITEM_COUNT = 1000;
+private static final int WARMUP_RUNS = 3;
+private static final long TIMEOUT_MS = 10 * 60 * 1000;
+private static final long YEAR_MILLIS = 365L * 24 * 60 * 60 * 1000;
+private static final String[] WORDS = {"finished", "report", "team", "presented", "ran", "5k", "learned", "new", "recipe", "helped", "friend", "move", "fixed", "bike", "called", "mom"};
+private final Random mRandom = new Random(42);
+private final BlockingQueue<ItemEvent> mItemEvents = new LinkedBlockingQueue<>();
+private final BlockingQueue<CategoryEvent> mCategoryEvents = new LinkedBlockingQueue<>();
+private final List<Category> mCategories = new ArrayList<>();
+private ItemSqliteGateway mGateway;
+private SQLiteStatement mInsertItem = null;
+private int mItemCount = 0;
+private int mScratchCount = 0;
+
+@Before
+public void setUp() throws Exception {
+	Robolectric.buildActivity(PerfTestActivity.class).setup();
+	EventBus.setThreadEnforcer(ThreadEnforcer.ANY);
+	EventBus.getInstance().register(this);
+	
+	Sqlite.setConnectionProfile(SqliteConnectionProfile.valueOf(System.getProperty("rmw.perf.profile", "WAL")));
+	Sqlite.init();
+	long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+	while (!Sqlite.isInitialized()) {
+		Robolectric.flushBackgroundThreadScheduler();
+		ShadowLooper.idleMainLooper();
+		checkDeadline(deadline, "Sqlite.init()");
+	}
+	
+	mGateway = new ItemSqliteGateway();
+}
+
+@After
+public void tearDown() {
+	EventBus.getInstance().unregister(this);
+	if (mInsertItem != null) {
+		mInsertItem.close();
+	}
+}
+
+@Subscribe
+public void onItemEvent(ItemEvent event) {
+	mItemEvents.add(event);
+}
+
+@Subscribe
+public void onCategoryEvent(CategoryEvent event) {
+	mCategoryEvents.add(event);
+}
+
+@Test
+public void measureGateway() throws Exception {
+	PerfReport report = new PerfReport();
+	report.profile = System.getProperty("rmw.perf.profile", "WAL");
+	int runs = Integer.parseInt(System.getProperty("rmw.perf.runs", "20"));
+	
+	seedCategories();
+	for (int size : getSizes()) {
+		seedItems(size);
+		measureGetItems(report, size, runs);
+		measureAddAndUpdateItems(report, size, runs);
+		measureInsertItems(report, size, runs);
+		measureConcurrentReads(report, size, runs);
+		measureRemoveCategory(report, size, runs);
+		measureImportData(report, size, runs);
+	}
+	
+	for (PerfReport.Result result : report.results) {
+		Log.i(TAG, result.toString());
+	}
+	String reportPath = System.getProperty("rmw.perf.report", "build/reports/perf/sqlite-gateway-" + report.profile + ".json");
+	report.write(new File(reportPath));
+	
+	if (!Boolean.getBoolean("rmw.perf.gate")) {
+		Log.i(TAG, "Not compared with the baseline, set rmw.perf.gate to fail on regressions");
+		return;
+	}
+	PerfReport baseline = PerfReport.read(getClass().getResourceAsStream("/perf/sqlite_gateway_baseline.json"));
+	double threshold = Double.parseDouble(System.getProperty("rmw.perf.threshold", "1.5"));
+	List<String> regressions = report.findRegressions(baseline, threshold);
+	assertTrue("Slower than or missing from the baseline, see " + reportPath + ":\n" + String.join("\n", regressions), regressions.isEmpty());
+}
+
+private static List<Integer> getSizes() {
+	List<Integer> sizes = new ArrayList<>();
+	for (String size : System.getProperty("rmw.perf.sizes", "1000").split(",")) {
+		sizes.add(Integer.parseInt(size.trim()));
+	}
+	Collections.sort(sizes);
+	return sizes;
+}
+
+private void measureGetItems(PerfReport report, int size, int runs) throws Exception {
+	long[] latencies = new long[runs];
+	long rowCount = 0;
+	for (int run = -WARMUP_RUNS; run < runs; ++run) {
+		String categoryId = randomCategory().getId();
+		mItemEvents.clear();
+		
+		long start = System.nanoTime();
+		mGateway.getItems(categoryId);
+		ItemEvent event = awaitEvent(mItemEvents, ObjectEvent.Actions.GET_RESPONSE);
+		long latency = System.nanoTime() - start;
+		
+		if (run >= 0) {
+			latencies[run] = latency;
+			rowCount += event.getObjects().size();
+		}
+	}
+	report.add("getItems", size, latencies, rowCount);
+}
+
+/**
+ * Measure adding a batch of items and then updating the same items. The added items are kept
+ */
+private void measureAddAndUpdateItems(PerfReport report, int size, int runs) throws Exception {
+	long[] addLatencies = new long[runs];
+	long[] updateLatencies = new long[runs];
+	for (int run = -WARMUP_RUNS; run < runs; ++run) {
+		List<Item> items = createItems(randomCategory(), BATCH_SIZE);
+		mItemEvents.clear();
+		
+		long start = System.nanoTime();
+		mGateway.addItems(items);
+		awaitWrites();
+		long addLatency = System.nanoTime() - start;
+		mItemCount += items.size();
+		
+		// The gateway sets the ids on copies of the items
+		items = awaitEvent(mItemEvents, ObjectEvent.Actions.ADDED).getObjects();
+		for (Item item : items) {
+			item.setText(item.getText() + " edited");
+			item.setDate(randomDate());
+		}
+		start = System.nanoTime();
+		mGateway.updateItems(items);
+		awaitWrites();
+		long updateLatency = System.nanoTime() - start;
+		
+		if (run >= 0) {
+			addLatencies[run] = addLatency;
+			updateLatencies[run] = updateLatency;
+		}
+	}
+	report.add("addItems", size, addLatencies, (long) runs * BATCH_SIZE);
+	report.add("updateItems", size, updateLatencies, (long) runs * BATCH_SIZE);
+}
+
+/**
+ * Measure inserting batches of items with a new ContentValues for each row and the column names read
+ * from the resources, like the gateway did before it reused compiled statements, and then a batch of
+ * the same size with one compiled statement that is rebound for each row. Both write the same columns in one
+ * transaction on the write thread. The added items are kept
+ */
+private void measureInsertItems(PerfReport report, int size, int runs) throws Exception {
+	long[] contentValuesLatencies = new long[runs];
+	long[] statementLatencies = new long[runs];
+	for (int run = -WARMUP_RUNS; run < runs; ++run) {
+		List<Item> contentValuesItems = createItems(randomCategory(), BATCH_SIZE);
+		long contentValuesLatency = measureWrite(() -> insertWithContentValues(contentValuesItems));
+		List<Item> statementItems = createItems(randomCategory(), BATCH_SIZE);
+		long statementLatency = measureWrite(() -> insertWithStatement(statementItems));
+		mItemCount += 2 * BATCH_SIZE;
+		
+		if (run >= 0) {
+			contentValuesLatencies[run] = contentValuesLatency;
+			statementLatencies[run] = statementLatency;
+		}
+	}
+	report.add("insertItemsContentValues", size, contentValuesLatencies, (long) runs * BATCH_SIZE);
+	report.add("insertItemsStatement", size, statementLatencies, (long) runs * BATCH_SIZE);
+}
+
+/**
+ * @return nanoseconds until the write has been committed
+ */
+private static long measureWrite(Runnable write) throws Exception {
+	long start = System.nanoTime();
+	SqliteExecutors.submitWrite(() -> {
+		SQLiteDatabase db = Sqlite.getDatabase();
+		db.beginTransaction();
+		try {
+			write.run();
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+		return null;
+	}).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+	return System.nanoTime() - start;
+}
+
+private static void insertWithContentValues(List<Item> items) {
+	Resources resources = AppActivity.getActivity().getResources();
+	long updatedAt = System.currentTimeMillis();
+	for (Item item : items) {
+		ContentValues contentValues = new ContentValues();
+		contentValues.put(resources.getString(R.string.table_category_id), item.getCategoryId());
+		contentValues.put(resources.getString(R.string.table_item_text), item.getText());
+		contentValues.put(resources.getString(R.string.table_item_date), item.getDate());
+		contentValues.put(resources.getString(R.string.table_item_updated_at), updatedAt);
+		item.setId(String.valueOf(Sqlite.getDatabase().insert(resources.getString(R.string.table_item), null, contentValues)));
+	}
+}
+
+/**
+ * Compiled once and reused by all runs, like the statements of the gateway
+ */
+private void insertWithStatement(List<Item> items) {
+	if (mInsertItem == null) {
+		Resources resources = AppActivity.getActivity().getResources();
+		mInsertItem = Sqlite.getDatabase().compileStatement("INSERT INTO " + resources.getString(R.string.table_item) + " (" +
+				resources.getString(R.string.table_category_id) + ", " +
+				resources.getString(R.string.table_item_text) + ", " +
+				resources.getString(R.string.table_item_date) + ", " +
+				resources.getString(R.string.table_item_updated_at) + ") VALUES (?, ?, ?, ?)");
+	}
+	
+	long updatedAt = System.currentTimeMillis();
+	for (Item item : items) {
+		mInsertItem.bindLong(1, Long.parseLong(item.getCategoryId()));
+		mInsertItem.bindString(2, item.getText());
+		mInsertItem.bindLong(3, item.getDate());
+		mInsertItem.bindLong(4, updatedAt);
+		item.setId(String.valueOf(mInsertItem.executeInsert()));
+	}
+}
+
+/**
+ * Measure reading the first page of random categories on {@link #READER_THREADS} threads while
+ * batches of items are added. Reads outside a transaction use the other connections in WAL mode, so
+ * the profile decides if the reads wait for the writes. The rows/s of the reads is for each thread,
+ * all threads together read about {@link #READER_THREADS} times as many. The added items are kept
+ */
+private void measureConcurrentReads(PerfReport report, int size, int runs) throws Exception {
+	long[] readLatencies = new long[READER_THREADS * runs];
+	AtomicLong rowCount = new AtomicLong();
+	ExecutorService readers = Executors.newFixedThreadPool(READER_THREADS);
+	List<Future<?>> readersDone = new ArrayList<>();
+	for (int thread = 0; thread < READER_THREADS; ++thread) {
+		int offset = thread * runs;
+		readersDone.add(readers.submit(() -> {
+			for (int run = -WARMUP_RUNS; run < runs; ++run) {
+				String categoryId = mCategories.get(ThreadLocalRandom.current().nextInt(mCategories.size())).getId();
+				
+				long start = System.nanoTime();
+				int pageRowCount = readFirstPage(categoryId);
+				long latency = System.nanoTime() - start;
+				
+				if (run >= 0) {
+					readLatencies[offset + run] = latency;
+					rowCount.addAndGet(pageRowCount);
+				}
+			}
+		}));
+	}
+	readers.shutdown();
+	
+	// Keep writing until all reads are done
+	List<Long> writeLatencies = new ArrayList<>();
+	while (!readers.isTerminated()) {
+		List<Item> items = createItems(randomCategory(), BATCH_SIZE);
+		writeLatencies.add(measureWrite(() -> insertWithStatement(items)));
+		mItemCount += items.size();
+	}
+	for (Future<?> readerDone : readersDone) {
+		readerDone.get();
+	}
+	
+	long[] writeLatenciesArray = new long[writeLatencies.size()];
+	for (int i = 0; i < writeLatenciesArray.length; ++i) {
+		writeLatenciesArray[i] = writeLatencies.get(i);
+	}
+	report.add("readPageWhileWriting", size, readLatencies, rowCount.get());
+	report.add("addItemsWhileReading", size, writeLatenciesArray, (long) writeLatenciesArray.length * BATCH_SIZE);
+}
+
+/**
+ * Read the first page of a category like {@link ItemSqliteGateway#getItems(String, Long, String, int)}
+ * @return number of rows in the page
+ */
+private static int readFirstPage(String categoryId) {
+	Resources resources = AppActivity.getActivity().getResources();
+	String itemDate = resources.getString(R.string.table_item_date);
+	String itemId = resources.getString(R.string.table_item_id);
+	String sql = "SELECT " +
+			itemId + ", " +
+			resources.getString(R.string.table_category_id) + ", " +
+			resources.getString(R.string.table_item_text) + ", " +
+			itemDate +
+			" FROM " + resources.getString(R.string.table_item) +
+			" WHERE " + resources.getString(R.string.table_category_id) + "=?" +
+			" ORDER BY " + itemDate + " DESC, " + itemId + " DESC" +
+			" LIMIT " + PAGE_SIZE;
+	
+	Cursor cursor = Sqlite.getDatabase().rawQuery(sql, new String[]{categoryId});
+	try {
+		// Reads all rows of the page
+		return cursor.getCount();
+	} finally {
+		cursor.close();
+	}
+}
+
+/**
+ * Measure removing a category together with its items. The removed categories are added just for
+ * this so the dataset keeps its size
+ */
+private void measureRemoveCategory(PerfReport report, int size, int runs) throws Exception {
+	long[] latencies = new long[runs];
+	for (int run = -WARMUP_RUNS; run < runs; ++run) {
+		Category category = addCategories(Collections.singletonList(createCategory("Remove " + (++mScratchCount)))).get(0);
+		mGateway.addItems(createItems(category, SCRATCH_ITEM_COUNT));
+		awaitWrites();
+		
+		long start = System.nanoTime();
+		mGateway.removeCategories(Collections.singletonList(category));
+		awaitWrites();
+		long latency = System.nanoTime() - start;
+		
+		if (run >= 0) {
+			latencies[run] = latency;
+		}
+	}
+	report.add("removeCategory", size, latencies, (long) runs * (SCRATCH_ITEM_COUNT + 1));
+}
+
+/**
+ * Measure importing a new category with items. The imported category is removed afterwards so the
+ * dataset keeps its size
+ */
+private void measureImportData(PerfReport report, int size, int runs) throws Exception {
+	long[] latencies = new long[runs];
+	for (int run = -WARMUP_RUNS; run < runs; ++run) {
+		Category category = createCategory("Import " + (++mScratchCount));
+		category.setId("imported");
+		List<Item> items = createItems(category, SCRATCH_ITEM_COUNT);
+		
+		long start = System.nanoTime();
+		mGateway.importData(Collections.singletonList(category), items);
+		awaitWrites();
+		long latency = System.nanoTime() - start;
+		
+		assertEquals(SCRATCH_ITEM_COUNT, countAdded(items));
+		// The imported category got its new id when it was added
+		mGateway.removeCategories(Collections.singletonList(category));
+		awaitWrites();
+		
+		if (run >= 0) {
+			latencies[run] = latency;
+		}
+	}
+	report.add("importData", size, latencies, (long) runs * (SCRATCH_ITEM_COUNT + 1));
+}
+
+private static int countAdded(List<Item> items) {
+	int count = 0;
+	for (Item item : items) {
+		if (!item.getId().isEmpty()) {
+			++count;
+		}
+	}
+	return count;
+}
+
+private void seedCategories() throws Exception {
+	for (int i = 0; i < CATEGORY_COUNT; ++i) {
+		mCategories.add(createCategory("Category " + (i + 1)));
+	}
+	List<Category> addedCategories = addCategories(mCategories);
+	mCategories.clear();
+	mCategories.addAll(addedCategories);
+}
+
+/**
+ * Add categories and wait until they have been added
+ * @return the added categories with their ids
+ */
+private List<Category> addCategories(List<Category> categories) throws Exception {
+	mCategoryEvents.clear();
+	mGateway.addCategories(categories);
+	return awaitEvent(mCategoryEvents, ObjectEvent.Actions.ADDED).getObjects();
+}
+
+/**
+ * Add items until the database has the specified number of items
+ */
+private void seedItems(int size) throws Exception {
+	while (mItemCount < size) {
+		int count = Math.min(SEED_CHUNK_SIZE, size - mItemCount);
+		List<Item> items = new ArrayList<>(count);
+		for (int i = 0; i < count; ++i) {
+			items.add(createItem(mCategories.get((mItemCount + i) % CATEGORY_COUNT)));
+		}
+		mGateway.addItems(items);
+		awaitWrites();
+		mItemCount += count;
+	}
+}
+
+private Category createCategory(String name) {
+	Category category = new Category();
+	category.setName(name);
+	category.setOrder(CategoryOrder.ORDER_GAP * (mCategories.size() + mScratchCount + 1));
+	return category;
+}
+
+private List<Item> createItems(Category category, int count) {
+	List<Item> items = new ArrayList<>(count);
+	for (int i = 0; i < count; ++i) {
+		items.add(createItem(category));
+	}
+	return items;
+}
+
+private Item createItem(Category category) {
+	StringBuilder text = new StringBuilder();
+	int wordCount = 3 + mRandom.nextInt(10);
+	for (int i = 0; i < wordCount; ++i) {
+		if (i > 0) {
+			text.append(' ');
+		}
+		text.append(WORDS[mRandom.nextInt(WORDS.length)]);
+	}
+	
+	Item item = new Item();
+	item.setCategoryId(category.getId());
+	item.setText(text.toString());
+	item.setDate(randomDate());
+	return item;
+}
+
+/**
+ * @return random date within the last 10 years
+ */
+private long randomDate() {
+	return System.currentTimeMillis() - (long) (mRandom.nextDouble() * 10 * YEAR_MILLIS);
+}
+
+private Category randomCategory() {
+	return mCategories.get(mRandom.nextInt(mCategories.size()));
+}
+
+/**
+ * Wait until all queued writes have been committed. Writes are run in order on a single thread
+ */
+private static void awaitWrites() throws Exception {
+	SqliteExecutors.submitWrite(() -> null).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+}
+
+/**
+ * Wait for an event posted on the main thread
+ * @param events where the subscriber puts the events
+ * @param action the action of the event to wait for, other events are skipped
+ */
+private static <E extends ObjectEvent<?>> E awaitEvent(BlockingQueue<E> events, ObjectEvent.Actions action) throws Exception {
+	long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+	while (true) {
+		ShadowLooper.idleMainLooper();
+		E event = events.poll(100, TimeUnit.MICROSECONDS);
+		if (event != null && event.getAction() == action) {
+			return event;
+		}
+		checkDeadline(deadline, action.toString());
+	}
+}
+
+private static void checkDeadline(long deadline, String waitingFor) throws TimeoutException {
+	if (System.currentTimeMillis() > deadline) {
+		throw new TimeoutException("Timed out waiting for " + waitingFor);
+	}
+}
+
+/**
+ * Sets {@link io.blushine.android.AppActivity#getActivity()} which the gateway and Sqlite use to
+ * get resources
+ */
+public static class PerfTestActivity extends AppActivity {
+}
+}
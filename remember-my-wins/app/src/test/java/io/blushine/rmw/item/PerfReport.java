@@ -0,0 +1,169 @@
+package io.blushine.rmw.item;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Machine-readable report of performance measurements. Written as JSON and compared with a
+ * baseline report to find regressions
+ */
+class PerfReport {
+private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+/** Connection profile the measurements were made with */
+String profile = "";
+List<Result> results = new ArrayList<>();
+
+/**
+ * Read a report
+ * @param inputStream the JSON report, null if there is none
+ * @return the report, an empty report if inputStream is null
+ */
+static PerfReport read(InputStream inputStream) throws IOException {
+	if (inputStream == null) {
+		return new PerfReport();
+	}
+	try (Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8)) {
+		PerfReport report = GSON.fromJson(reader, PerfReport.class);
+		return report != null ? report : new PerfReport();
+	}
+}
+
+/**
+ * Add the measurements of an operation
+ * @param operation name of the measured operation
+ * @param datasetSize number of items in the database when measured
+ * @param latenciesNanos latency of each run
+ * @param rowCount total number of rows read or written in all runs
+ * @return the added result
+ */
+Result add(String operation, int datasetSize, long[] latenciesNanos, long rowCount) {
+	long[] sorted = latenciesNanos.clone();
+	Arrays.sort(sorted);
+	long totalNanos = 0;
+	for (long latency : sorted) {
+		totalNanos += latency;
+	}
+	
+	Result result = new Result();
+	result.operation = operation;
+	result.datasetSize = datasetSize;
+	result.runs = sorted.length;
+	result.rows = rowCount;
+	result.p50Ms = toMillis(percentile(sorted, 50));
+	result.p90Ms = toMillis(percentile(sorted, 90));
+	result.p99Ms = toMillis(percentile(sorted, 99));
+	result.maxMs = toMillis(sorted[sorted.length - 1]);
+	result.rowsPerSecond = totalNanos > 0 ? rowCount * 1e9 / totalNanos : 0;
+	results.add(result);
+	return result;
+}
+
+/**
+ * Nearest-rank percentile
+ * @param sorted latencies sorted in ascending order
+ * @param percentile 0-100
+ */
+private static long percentile(long[] sorted, int percentile) {
+	int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+	return sorted[Math.max(rank - 1, 0)];
+}
+
+private static double toMillis(long nanos) {
+	return nanos / 1e6;
+}
+
+/**
+ * Write the report as JSON
+ * @param file where to write the report, parent directories are created
+ */
+void write(File file) throws IOException {
+	File parent = file.getParentFile();
+	if (parent != null && !parent.exists() && !parent.mkdirs()) {
+		throw new IOException("Failed to create " + parent);
+	}
+	try (Writer writer = new FileWriter(file)) {
+		GSON.toJson(this, writer);
+	}
+}
+
+/**
+ * Compare with a baseline. A missing baseline counts as a regression, otherwise the gate would
+ * silently pass for new operations, dataset sizes and profiles
+ * @param baseline the report to compare with
+ * @param threshold how many times slower than the baseline an operation may be, e.g. 1.5
+ * @return description of every regression, empty if there are none
+ */
+List<String> findRegressions(PerfReport baseline, double threshold) {
+	List<String> regressions = new ArrayList<>();
+	if (baseline.results.isEmpty()) {
+		regressions.add("No baseline results, commit a measured report as the baseline");
+		return regressions;
+	}
+	if (!profile.equals(baseline.profile)) {
+		regressions.add("Measured with the " + profile + " profile, the baseline was measured with " + baseline.profile);
+		return regressions;
+	}
+	
+	for (Result result : results) {
+		Result baselineResult = baseline.find(result.operation, result.datasetSize);
+		if (baselineResult == null) {
+			regressions.add(String.format(Locale.ROOT, "%s (%d items): no baseline", result.operation, result.datasetSize));
+			continue;
+		}
+		
+		if (result.p90Ms > baselineResult.p90Ms * threshold) {
+			regressions.add(String.format(Locale.ROOT, "%s (%d items): p90 %.2f ms, baseline %.2f ms",
+					result.operation, result.datasetSize, result.p90Ms, baselineResult.p90Ms));
+		}
+		if (result.rowsPerSecond < baselineResult.rowsPerSecond / threshold) {
+			regressions.add(String.format(Locale.ROOT, "%s (%d items): %.0f rows/s, baseline %.0f rows/s",
+					result.operation, result.datasetSize, result.rowsPerSecond, baselineResult.rowsPerSecond));
+		}
+	}
+	return regressions;
+}
+
+private Result find(String operation, int datasetSize) {
+	for (Result result : results) {
+		if (result.operation.equals(operation) && result.datasetSize == datasetSize) {
+			return result;
+		}
+	}
+	return null;
+}
+
+/**
+ * Measurements of one operation on one dataset
+ */
+static class Result {
+	String operation;
+	int datasetSize;
+	int runs;
+	/** Total number of rows read or written in all runs */
+	long rows;
+	double p50Ms;
+	double p90Ms;
+	double p99Ms;
+	double maxMs;
+	double rowsPerSecond;
+	
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "%s (%d items): p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms, %.0f rows/s",
+				operation, datasetSize, p50Ms, p90Ms, p99Ms, maxMs, rowsPerSecond);
+	}
+}
+}
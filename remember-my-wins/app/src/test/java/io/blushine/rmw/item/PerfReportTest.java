@@ -0,0 +1,60 @@
+package io.blushine.rmw.item;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the {@link PerfReport} gate fails when there is nothing to compare with
+ */
+public class PerfReportTest {
+private static final double THRESHOLD = 1.5;
+
+@Test
+public void missingBaselineFails() throws Exception {
+	assertEquals(1, createReport("WAL", 10).findRegressions(PerfReport.read(null), THRESHOLD).size());
+}
+
+@Test
+public void emptyBaselineFails() throws Exception {
+	String json = "{\"profile\": \"WAL\", \"results\": []}";
+	PerfReport baseline = PerfReport.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+	assertEquals(1, createReport("WAL", 10).findRegressions(baseline, THRESHOLD).size());
+}
+
+@Test
+public void otherProfileFails() {
+	assertEquals(1, createReport("WAL", 10).findRegressions(createReport("DEFAULT", 10), THRESHOLD).size());
+}
+
+@Test
+public void missingResultFails() {
+	PerfReport report = createReport("WAL", 10);
+	report.add("removeCategory", 1000, new long[]{1000000}, 1);
+	List<String> regressions = report.findRegressions(createReport("WAL", 10), THRESHOLD);
+	assertEquals(1, regressions.size());
+	assertTrue(regressions.get(0).startsWith("removeCategory (1000 items)"));
+}
+
+@Test
+public void slowerThanThresholdFails() {
+	PerfReport baseline = createReport("WAL", 10);
+	assertTrue(createReport("WAL", 14).findRegressions(baseline, THRESHOLD).isEmpty());
+	assertEquals(2, createReport("WAL", 16).findRegressions(baseline, THRESHOLD).size());
+}
+
+/**
+ * @param latencyMs latency of the only run of getItems on 1000 items
+ */
+private static PerfReport createReport(String profile, long latencyMs) {
+	PerfReport report = new PerfReport();
+	report.profile = profile;
+	report.add("getItems", 1000, new long[]{latencyMs * 1000000}, 100);
+	return report;
+}
+}
@@ -0,0 +1,125 @@
+package io.blushine.rmw.item;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that {@link SyncListeners} keeps one listener while anything is listening and syncs on
+ * remote changes, with a fake in place of the Firestore snapshot listeners
+ */
+public class SyncListenersTest {
+private FakeChangeSource mSource;
+private SyncListeners mListeners;
+private int mSyncCount = 0;
+
+@Before
+public void setUp() {
+	mSource = new FakeChangeSource();
+	mListeners = new SyncListeners(mSource, () -> ++mSyncCount);
+}
+
+@Test
+public void oneRegistrationForAllListeners() {
+	mListeners.listenToCategories();
+	mListeners.listenToItems("1");
+	mListeners.listenToItems("1");
+	mListeners.listenToItems("2");
+	
+	assertTrue(mListeners.isListening());
+	assertEquals(1, mSource.mListenCount);
+	assertEquals(1, mSource.mActive.size());
+}
+
+@Test
+public void removedAfterTheLastListenerStops() {
+	mListeners.listenToCategories();
+	mListeners.listenToItems("1");
+	mListeners.listenToItems("1");
+	
+	mListeners.stopListeningToCategories();
+	mListeners.stopListeningToItems("1");
+	assertTrue(mListeners.isListening());
+	
+	mListeners.stopListeningToItems("1");
+	assertFalse(mListeners.isListening());
+	assertTrue(mSource.mActive.isEmpty());
+	
+	// Listens again when something is shown again
+	mListeners.listenToItems("2");
+	assertEquals(2, mSource.mListenCount);
+	assertEquals(1, mSource.mActive.size());
+}
+
+@Test
+public void unmatchedStopsAreIgnored() {
+	mListeners.stopListeningToItems("1");
+	mListeners.stopListeningToCategories();
+	mListeners.listenToItems("1");
+	
+	mListeners.stopListeningToItems("2");
+	mListeners.stopListeningToCategories();
+	assertTrue(mListeners.isListening());
+	
+	mListeners.stopListeningToItems("1");
+	assertFalse(mListeners.isListening());
+}
+
+@Test
+public void syncsOnRemoteChanges() {
+	mListeners.listenToItems("1");
+	
+	mSource.change();
+	mSource.change();
+	assertEquals(2, mSyncCount);
+	
+	mListeners.stopListeningToItems("1");
+	mSource.change();
+	assertEquals(2, mSyncCount);
+}
+
+@Test
+public void stopAllRemovesTheRegistration() {
+	mListeners.listenToCategories();
+	mListeners.listenToItems("1");
+	
+	mListeners.stopAll();
+	assertFalse(mListeners.isListening());
+	assertTrue(mSource.mActive.isEmpty());
+	
+	// Stops from pages that are destroyed afterwards don't affect new listeners
+	mListeners.listenToCategories();
+	mListeners.stopListeningToItems("1");
+	assertTrue(mListeners.isListening());
+}
+
+/**
+ * Calls the active listeners when {@link #change()} is called, like a Firestore snapshot with
+ * changes from another device
+ */
+private static class FakeChangeSource implements RemoteChangeSource {
+	final List<Runnable> mActive = new ArrayList<>();
+	int mListenCount = 0;
+	
+	@NotNull
+	@Override
+	public Registration listen(@NotNull Runnable onRemoteChange) {
+		++mListenCount;
+		mActive.add(onRemoteChange);
+		return () -> mActive.remove(onRemoteChange);
+	}
+	
+	void change() {
+		for (Runnable listener : new ArrayList<>(mActive)) {
+			listener.run();
+		}
+	}
+}
+}
@@ -0,0 +1,98 @@
+package io.blushine.rmw.item.firestore;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import kotlin.Unit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link BatchedRemovalKt#removeInBatches} on a category with {@link #ITEM_COUNT} items in an
+ * in-process fake of the item collection, like {@link RemoveCategoryTask} removes them from Firestore
+ */
+public class BatchedRemovalTest {
+private static final int ITEM_COUNT = 10000;
+/** Max writes in a Firestore batch */
+private static final int BATCH_SIZE = 500;
+private static final int PARALLEL_BATCHES = 4;
+/** Documents left in the fake collection, in query order */
+private final List<String> mDocuments = new ArrayList<>();
+private final List<Integer> mProgress = new ArrayList<>();
+private int mRoundCount = 0;
+
+@Before
+public void setUp() {
+	for (int i = 0; i < ITEM_COUNT; ++i) {
+		mDocuments.add("item" + i);
+	}
+}
+
+@Test
+public void removesAllInBoundedBatches() {
+	int removedCount = removeInBatches(Integer.MAX_VALUE);
+	
+	assertEquals(ITEM_COUNT, removedCount);
+	assertTrue(mDocuments.isEmpty());
+	assertEquals(ITEM_COUNT / (BATCH_SIZE * PARALLEL_BATCHES), mRoundCount);
+	assertEquals(mRoundCount, mProgress.size());
+	for (int i = 0; i < mProgress.size(); ++i) {
+		assertEquals((i + 1) * BATCH_SIZE * PARALLEL_BATCHES, (int) mProgress.get(i));
+	}
+}
+
+@Test
+public void resumesAfterStop() {
+	try {
+		removeInBatches(2);
+		fail("Expected to be stopped");
+	} catch (IllegalStateException e) {
+		// Stopped like the app was killed
+	}
+	int removedBeforeStop = ITEM_COUNT - mDocuments.size();
+	assertEquals(2 * BATCH_SIZE * PARALLEL_BATCHES, removedBeforeStop);
+	
+	mProgress.clear();
+	int removedCount = removeInBatches(Integer.MAX_VALUE);
+	
+	assertEquals(ITEM_COUNT - removedBeforeStop, removedCount);
+	assertTrue(mDocuments.isEmpty());
+}
+
+@Test
+public void emptyCategory() {
+	mDocuments.clear();
+	
+	assertEquals(0, removeInBatches(Integer.MAX_VALUE));
+	assertEquals(0, mRoundCount);
+	assertTrue(mProgress.isEmpty());
+}
+
+/**
+ * @param stopAfterRounds throw when this many rounds have been committed, before the next round
+ * @return number of removed documents
+ */
+private int removeInBatches(int stopAfterRounds) {
+	return BatchedRemovalKt.removeInBatches(BATCH_SIZE, PARALLEL_BATCHES, limit ->
+			new ArrayList<>(mDocuments.subList(0, Math.min(limit, mDocuments.size()))), batches -> {
+		if (mRoundCount == stopAfterRounds) {
+			throw new IllegalStateException("Stopped");
+		}
+		assertTrue(batches.size() <= PARALLEL_BATCHES);
+		for (List<? extends String> batch : batches) {
+			assertTrue(batch.size() <= BATCH_SIZE);
+			mDocuments.removeAll(batch);
+		}
+		++mRoundCount;
+		return Unit.INSTANCE;
+	}, removedCount -> {
+		mProgress.add(removedCount);
+		return Unit.INSTANCE;
+	});
+}
+}
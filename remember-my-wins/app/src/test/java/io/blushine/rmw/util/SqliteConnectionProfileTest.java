@@ -0,0 +1,113 @@
+package io.blushine.rmw.util;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Reads back the pragmas that a {@link SqliteConnectionProfile} sets. They're read in a transaction
+ * so they're read from the primary connection, the only connection the profile is applied to
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SqliteConnectionProfileTest {
+/** SQLite's value of temp_store=MEMORY */
+private static final long TEMP_STORE_MEMORY = 2;
+/** SQLite's value of synchronous=NORMAL */
+private static final long SYNCHRONOUS_NORMAL = 1;
+@Rule
+public TemporaryFolder mFolder = new TemporaryFolder();
+private File mDbFile;
+private SQLiteDatabase mDb;
+
+@Before
+public void setUp() {
+	mDbFile = new File(mFolder.getRoot(), "profile.db");
+}
+
+@After
+public void tearDown() {
+	if (mDb != null) {
+		mDb.close();
+	}
+}
+
+@Test
+public void walAppliesPragmas() {
+	open(SqliteConnectionProfile.WAL);
+	
+	assertEquals("wal", readPragma("journal_mode"));
+	assertEquals(SYNCHRONOUS_NORMAL, readPragmaLong("synchronous"));
+	assertEquals(-2 * 1024, readPragmaLong("cache_size"));
+	assertEquals(0, readPragmaLong("mmap_size"));
+	assertEquals(TEMP_STORE_MEMORY, readPragmaLong("temp_store"));
+}
+
+@Test
+public void walMmapAppliesPragmas() {
+	open(SqliteConnectionProfile.WAL_MMAP);
+	
+	assertEquals("wal", readPragma("journal_mode"));
+	assertEquals(-2 * 1024, readPragmaLong("cache_size"));
+	assertEquals(32 * 1024 * 1024, readPragmaLong("mmap_size"));
+	assertEquals(TEMP_STORE_MEMORY, readPragmaLong("temp_store"));
+}
+
+@Test
+public void defaultKeepsSqliteDefaults() {
+	SQLiteDatabase defaultDb = SQLiteDatabase.openOrCreateDatabase(new File(mFolder.getRoot(), "default.db"), null);
+	long defaultCacheSize = readPragmaLong(defaultDb, "cache_size");
+	defaultDb.close();
+	
+	open(SqliteConnectionProfile.DEFAULT);
+	
+	assertEquals(defaultCacheSize, readPragmaLong("cache_size"));
+	assertEquals(0, readPragmaLong("mmap_size"));
+}
+
+private void open(SqliteConnectionProfile profile) {
+	mDb = SQLiteDatabase.openOrCreateDatabase(mDbFile, null);
+	profile.apply(mDb);
+}
+
+private String readPragma(String pragma) {
+	mDb.beginTransactionNonExclusive();
+	try {
+		Cursor cursor = mDb.rawQuery("PRAGMA " + pragma, null);
+		try {
+			cursor.moveToFirst();
+			return cursor.getString(0);
+		} finally {
+			cursor.close();
+		}
+	} finally {
+		mDb.endTransaction();
+	}
+}
+
+private long readPragmaLong(String pragma) {
+	return Long.parseLong(readPragma(pragma));
+}
+
+private static long readPragmaLong(SQLiteDatabase db, String pragma) {
+	Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+	try {
+		cursor.moveToFirst();
+		return cursor.getLong(0);
+	} finally {
+		cursor.close();
+	}
+}
+}
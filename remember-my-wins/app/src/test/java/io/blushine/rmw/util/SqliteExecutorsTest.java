@@ -0,0 +1,88 @@
+package io.blushine.rmw.util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that work which throws on a DB thread is passed to its failure handler and doesn't kill the
+ * thread, later work still has to be run
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SqliteExecutorsTest {
+private static final long TIMEOUT_MS = 10 * 1000;
+private final List<String> mRun = new CopyOnWriteArrayList<>();
+private final List<RuntimeException> mFailures = new CopyOnWriteArrayList<>();
+
+@Before
+public void setUp() {
+	SqliteExecutors.onDbOpened();
+}
+
+@Test
+public void writerSurvivesThrowingWrite() throws Exception {
+	SqliteExecutors.write(() -> {
+		mRun.add("first");
+		Long.parseLong("not an id");
+	}, mFailures::add);
+	SqliteExecutors.write(() -> mRun.add("second"), mFailures::add);
+	awaitWrites();
+	
+	assertEquals(2, mRun.size());
+	assertEquals("second", mRun.get(1));
+	assertEquals(1, mFailures.size());
+	assertTrue(mFailures.get(0) instanceof NumberFormatException);
+}
+
+@Test
+public void writerSurvivesThrowingFailureHandler() throws Exception {
+	SqliteExecutors.write(() -> {
+		throw new IllegalStateException("write");
+	}, e -> {
+		throw new IllegalStateException("failure handler");
+	});
+	SqliteExecutors.write(() -> mRun.add("after"), mFailures::add);
+	awaitWrites();
+	
+	assertEquals(1, mRun.size());
+	assertTrue(mFailures.isEmpty());
+}
+
+@Test
+public void readerSurvivesThrowingRead() throws Exception {
+	// More reads than reader threads
+	for (int i = 0; i < 4; ++i) {
+		SqliteExecutors.read(() -> {
+			throw new IllegalArgumentException("read");
+		}, mFailures::add);
+	}
+	SqliteExecutors.prefetch(() -> mRun.add("prefetch"), mFailures::add).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+	for (int i = 0; i < 2; ++i) {
+		SqliteExecutors.read(() -> mRun.add("read"), mFailures::add);
+	}
+	long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+	while ((mRun.size() < 3 || mFailures.size() < 4) && System.currentTimeMillis() < deadline) {
+		Thread.sleep(1);
+	}
+	
+	assertEquals(3, mRun.size());
+	assertEquals(4, mFailures.size());
+}
+
+/**
+ * Wait until all writes added before this have been run
+ */
+private static void awaitWrites() throws Exception {
+	SqliteExecutors.submitWrite(() -> null).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+}
+}
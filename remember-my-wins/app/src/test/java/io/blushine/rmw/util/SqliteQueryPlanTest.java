@@ -0,0 +1,145 @@
+package io.blushine.rmw.util;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import io.blushine.rmw.R;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks with EXPLAIN QUERY PLAN that getting a page of items in a category, removing the items of a
+ * category and sorting the categories use the indexes from {@link Sqlite}, both in a new DB and in a
+ * DB upgraded from version 3 which didn't have the indexes. "USE TEMP B-TREE" in a plan means the
+ * rows are sorted instead of read in index order
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SqliteQueryPlanTest {
+private static final int VERSION_WITHOUT_INDEXES = 3;
+/** Not the app's DB, which the activity may start opening with {@link Sqlite#init()} */
+private static final String DB_NAME = "query_plan_test.db";
+private Context mContext;
+private String mItemIndex;
+private String mCategoryIndex;
+private Sqlite mSqlite;
+private SQLiteDatabase mDb;
+
+@Before
+public void setUp() {
+	Robolectric.buildActivity(QueryPlanTestActivity.class).setup();
+	mContext = AppActivity.getActivity().getApplicationContext();
+	mContext.deleteDatabase(DB_NAME);
+	mItemIndex = mContext.getString(R.string.index_item_category_date);
+	mCategoryIndex = mContext.getString(R.string.index_category_order);
+}
+
+@After
+public void tearDown() {
+	if (mSqlite != null) {
+		mSqlite.close();
+	}
+	mContext.deleteDatabase(DB_NAME);
+}
+
+@Test
+public void newDbUsesIndexes() {
+	open();
+	
+	assertUsesIndexes();
+}
+
+@Test
+public void upgradedDbUsesIndexes() {
+	createVersion3Db();
+	open();
+	
+	assertUsesIndexes();
+}
+
+private void assertUsesIndexes() {
+	String firstPage = selectItems("category_id=1") + " LIMIT 51";
+	assertUsesIndex(firstPage, mItemIndex);
+	
+	String nextPage = selectItems("category_id=1 AND (item_date<1000 OR (item_date=1000 AND item_id<5))") + " LIMIT 51";
+	assertUsesIndex(nextPage, mItemIndex);
+	
+	// Run by the foreign key when a category is removed
+	assertUsesIndex("DELETE FROM item WHERE category_id=1", mItemIndex);
+	
+	String categories = "SELECT category_id, category_name, category_order FROM category ORDER BY category_order ASC";
+	assertUsesIndex(categories, mCategoryIndex);
+}
+
+private static String selectItems(String where) {
+	return "SELECT item_id, category_id, item_text, item_date FROM item WHERE " + where +
+			" ORDER BY item_date DESC, item_id DESC";
+}
+
+/**
+ * Check that the query uses the index and doesn't sort the rows after reading them
+ */
+private void assertUsesIndex(String sql, String index) {
+	String plan = explain(sql);
+	assertTrue(sql + "\n" + plan, plan.contains("USING INDEX " + index));
+	assertFalse(sql + "\n" + plan, plan.contains("TEMP B-TREE"));
+}
+
+/**
+ * @return the details of each step in the query plan, one per line
+ */
+private String explain(String sql) {
+	StringBuilder plan = new StringBuilder();
+	Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+	try {
+		int detailColumn = cursor.getColumnIndexOrThrow("detail");
+		while (cursor.moveToNext()) {
+			plan.append(cursor.getString(detailColumn)).append('\n');
+		}
+	} finally {
+		cursor.close();
+	}
+	return plan.toString();
+}
+
+/**
+ * Open the DB with its own helper, the shared one from {@link Sqlite#init()} is kept between tests
+ */
+private void open() {
+	mSqlite = new Sqlite(mContext, DB_NAME);
+	mDb = mSqlite.getWritableDatabase();
+}
+
+/**
+ * Create the tables as they were in version 3 with a few rows, so the upgrade has to add the indexes
+ */
+private void createVersion3Db() {
+	File dbFile = mContext.getDatabasePath(DB_NAME);
+	dbFile.getParentFile().mkdirs();
+	SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(dbFile, null);
+	db.execSQL("CREATE TABLE category (category_id INTEGER PRIMARY KEY AUTOINCREMENT, category_order INTEGER, category_name TEXT)");
+	db.execSQL("CREATE TABLE item (item_id INTEGER PRIMARY KEY AUTOINCREMENT, category_id INTEGER, item_text TEXT, item_date INTEGER)");
+	db.execSQL("INSERT INTO category (category_order, category_name) VALUES (1, 'Work'), (2, 'Home')");
+	db.execSQL("INSERT INTO item (category_id, item_text, item_date) VALUES (1, 'finished report', 1000), (1, 'presented', 2000), (2, 'fixed bike', 1500)");
+	db.setVersion(VERSION_WITHOUT_INDEXES);
+	db.close();
+}
+
+/**
+ * Sets {@link AppActivity#getActivity()} which Sqlite uses to get resources
+ */
+public static class QueryPlanTestActivity extends AppActivity {
+}
+}
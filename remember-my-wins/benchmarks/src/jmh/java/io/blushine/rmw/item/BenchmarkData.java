@@ -0,0 +1,67 @@
+package io.blushine.rmw.item;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Creates the categories and items used by the benchmarks. Ids are numeric like the SQLite ids
+ */
+class BenchmarkData {
+/** Same data for every run so results can be compared */
+static final long SEED = 42;
+private static final long YEAR_MILLIS = 365L * 24 * 60 * 60 * 1000;
+/** Dates are spread over this many years back from {@link #NOW} */
+private static final int YEARS = 10;
+private static final long NOW = 1546300800000L;
+
+private BenchmarkData() {}
+
+/**
+ * @param count number of items to create
+ * @param firstId id of the first item, the following items get the next ids
+ * @param categoryCount the items are spread over this many categories with ids 1 to categoryCount
+ * @param random source for the dates
+ * @return items sorted by {@link ItemKt#NEWEST_FIRST}
+ */
+static List<Item> createItems(int count, long firstId, int categoryCount, Random random) {
+	List<Item> items = new ArrayList<>(count);
+	for (int i = 0; i < count; ++i) {
+		items.add(createItem(firstId + i, 1 + i % categoryCount, random));
+	}
+	Collections.sort(items, ItemKt.NEWEST_FIRST);
+	return items;
+}
+
+static Item createItem(long id, long categoryId, Random random) {
+	Item item = new Item();
+	item.setId(String.valueOf(id));
+	item.setCategoryId(String.valueOf(categoryId));
+	item.setText("Win " + id);
+	item.setDate(NOW - (long) (random.nextDouble() * YEARS * YEAR_MILLIS));
+	return item;
+}
+
+/**
+ * @param count number of categories to create
+ * @return categories sorted by order, with {@link CategoryOrder#ORDER_GAP} between them. The gap
+ * is smaller when there are too many categories to fit in an int
+ */
+static List<Category> createCategories(int count) {
+	int gap = Math.min(CategoryOrder.ORDER_GAP, Integer.MAX_VALUE / (count + 1));
+	List<Category> categories = new ArrayList<>(count);
+	for (int i = 0; i < count; ++i) {
+		categories.add(createCategory(i + 1, "Category " + (i + 1), (i + 1) * gap));
+	}
+	return categories;
+}
+
+static Category createCategory(long id, String name, int order) {
+	Category category = new Category();
+	category.setId(String.valueOf(id));
+	category.setName(name);
+	category.setOrder(order);
+	return category;
+}
+}
@@ -0,0 +1,62 @@
+package io.blushine.rmw.item;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reorder math when a category is moved, as done by {@code CategoryOrderAdapter.move()}. Moves are
+ * random so the gaps run out now and then and all categories are rebalanced, like they would be
+ * after many moves in the app
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CategoryMoveBenchmark {
+@Param({"1000", "100000", "1000000"})
+public int size;
+private List<Category> mCategories;
+private Random mRandom;
+
+@Setup
+public void setup() {
+	mRandom = new Random(BenchmarkData.SEED);
+	mCategories = BenchmarkData.createCategories(size);
+}
+
+@Benchmark
+public List<Category> move() {
+	int fromPosition = mRandom.nextInt(size);
+	int toPosition = mRandom.nextInt(size);
+	mCategories.add(toPosition, mCategories.remove(fromPosition));
+	return CategoryOrder.move(mCategories, toPosition);
+}
+
+@Benchmark
+public List<Category> moveToNeighbor() {
+	int fromPosition = mRandom.nextInt(size - 1);
+	int toPosition = fromPosition + 1;
+	mCategories.add(toPosition, mCategories.remove(fromPosition));
+	return CategoryOrder.move(mCategories, toPosition);
+}
+
+/**
+ * Migrating the old dense order. Resetting the dense order is part of the measurement
+ */
+@Benchmark
+public List<Category> rebalanceDenseOrder() {
+	for (int i = 0; i < size; ++i) {
+		mCategories.get(i).setOrder(i + 1);
+	}
+	return CategoryOrder.rebalance(mCategories);
+}
+}
@@ -0,0 +1,54 @@
+package io.blushine.rmw.item;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting and parsing the dates of all items with {@link ItemKt#DATE_FORMAT}, e.g. when all
+ * items are shown or edited
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DateFormatBenchmark {
+@Param({"1000", "100000", "1000000"})
+public int size;
+private List<Item> mItems;
+private String[] mDateStrings;
+
+@Setup
+public void setup() {
+	mItems = BenchmarkData.createItems(size, 1, 10, new Random(BenchmarkData.SEED));
+	mDateStrings = new String[size];
+	for (int i = 0; i < size; ++i) {
+		mDateStrings[i] = mItems.get(i).getDateFromFormat();
+	}
+}
+
+@Benchmark
+public void formatDates(Blackhole blackhole) {
+	for (Item item : mItems) {
+		blackhole.consume(item.getDateFromFormat());
+	}
+}
+
+@Benchmark
+public void parseDates(Blackhole blackhole) {
+	for (int i = 0; i < size; ++i) {
+		Item item = mItems.get(i);
+		item.setDateFromFormat(mDateStrings[i]);
+		blackhole.consume(item.getDate());
+	}
+}
+}
@@ -0,0 +1,95 @@
+package io.blushine.rmw.item;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Equality and hashing of {@link Item} and {@link Category}. Lookups use copies with the same id,
+ * like the items in events that are looked up in the adapters
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EqualityBenchmark {
+/** Number of different elements to look up, cycled through */
+private static final int LOOKUP_COUNT = 1024;
+@Param({"1000", "100000", "1000000"})
+public int size;
+private List<Item> mItems;
+private List<Category> mCategories;
+private Set<Item> mItemSet;
+private Set<Category> mCategorySet;
+private Item[] mLookupItems;
+private Category[] mLookupCategories;
+private int mNext = 0;
+
+@Setup
+public void setup() {
+	Random random = new Random(BenchmarkData.SEED);
+	mItems = BenchmarkData.createItems(size, 1, 10, random);
+	mCategories = BenchmarkData.createCategories(size);
+	mItemSet = new HashSet<>(mItems);
+	mCategorySet = new HashSet<>(mCategories);
+	
+	mLookupItems = new Item[LOOKUP_COUNT];
+	mLookupCategories = new Category[LOOKUP_COUNT];
+	for (int i = 0; i < LOOKUP_COUNT; ++i) {
+		Item item = new Item();
+		item.setId(mItems.get(random.nextInt(size)).getId());
+		mLookupItems[i] = item;
+		
+		Category category = new Category();
+		category.set(mCategories.get(random.nextInt(size)));
+		mLookupCategories[i] = category;
+	}
+}
+
+/**
+ * {@code ItemAdapter.update()} searches the list for the edited item
+ */
+@Benchmark
+public int indexOfItem() {
+	return mItems.indexOf(mLookupItems[nextIndex()]);
+}
+
+/**
+ * {@code CategoryPagerAdapter.findCategory()} and {@code removeItem()} search the list
+ */
+@Benchmark
+public int indexOfCategory() {
+	return mCategories.indexOf(mLookupCategories[nextIndex()]);
+}
+
+@Benchmark
+public boolean containsItem() {
+	return mItemSet.contains(mLookupItems[nextIndex()]);
+}
+
+@Benchmark
+public boolean containsCategory() {
+	return mCategorySet.contains(mLookupCategories[nextIndex()]);
+}
+
+@Benchmark
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public Set<Item> hashAllItems() {
+	return new HashSet<>(mItems);
+}
+
+private int nextIndex() {
+	mNext = (mNext + 1) % LOOKUP_COUNT;
+	return mNext;
+}
+}
@@ -0,0 +1,109 @@
+package io.blushine.rmw.item;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.blushine.android.common.ObjectEvent;
+
+/**
+ * Dispatching an added items event to the pages of {@link #CATEGORY_COUNT} categories. Compares
+ * {@link ItemEventRouter} with the old broadcast, where every page got every event and filtered it
+ * by the category of the first item. The batch either has items in one category or is spread over
+ * all categories. The reflection of the event bus isn't part of the broadcast, so it's the lower
+ * bound of what the broadcast cost
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EventDispatchBenchmark {
+private static final int CATEGORY_COUNT = 50;
+/** Number of items in the event */
+@Param({"1", "100", "1000"})
+public int size;
+private final List<Page> mPages = new ArrayList<>(CATEGORY_COUNT);
+private ItemEvent mSingleCategoryEvent;
+private ItemEvent mMixedCategoryEvent;
+
+@Setup
+public void setup(Blackhole blackhole) {
+	Random random = new Random(BenchmarkData.SEED);
+	mSingleCategoryEvent = new ItemEvent(ObjectEvent.Actions.ADDED, BenchmarkData.createItems(size, 1, 1, random));
+	mMixedCategoryEvent = new ItemEvent(ObjectEvent.Actions.ADDED, BenchmarkData.createItems(size, 1, CATEGORY_COUNT, random));
+	
+	for (int i = 0; i < CATEGORY_COUNT; ++i) {
+		Page page = new Page(String.valueOf(i + 1), blackhole);
+		ItemEventRouter.getInstance().register(page.mCategoryId, page);
+		mPages.add(page);
+	}
+}
+
+@TearDown
+public void tearDown() {
+	for (Page page : mPages) {
+		ItemEventRouter.getInstance().unregister(page.mCategoryId, page);
+	}
+	mPages.clear();
+}
+
+@Benchmark
+public void routeSingleCategory() {
+	ItemEventRouter.getInstance().onItem(mSingleCategoryEvent);
+}
+
+@Benchmark
+public void routeMixedCategories() {
+	ItemEventRouter.getInstance().onItem(mMixedCategoryEvent);
+}
+
+@Benchmark
+public void broadcastSingleCategory(Blackhole blackhole) {
+	broadcast(mSingleCategoryEvent, blackhole);
+}
+
+/**
+ * Only the page of the first item gets the items, the old broadcast didn't split mixed batches
+ */
+@Benchmark
+public void broadcastMixedCategories(Blackhole blackhole) {
+	broadcast(mMixedCategoryEvent, blackhole);
+}
+
+private void broadcast(ItemEvent event, Blackhole blackhole) {
+	for (Page page : mPages) {
+		if (event.getFirstObject().getCategoryId().equals(page.mCategoryId)) {
+			blackhole.consume(event.getObjects());
+		}
+	}
+}
+
+/**
+ * Page of a category that consumes the events it gets
+ */
+private static class Page implements ItemEventRouter.Listener {
+	final String mCategoryId;
+	private final Blackhole mBlackhole;
+	
+	Page(String categoryId, Blackhole blackhole) {
+		mCategoryId = categoryId;
+		mBlackhole = blackhole;
+	}
+	
+	@Override
+	public void onItemEvent(ItemEvent event) {
+		mBlackhole.consume(event.getObjects());
+	}
+}
+}
@@ -0,0 +1,68 @@
+package io.blushine.rmw.item;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping imported category ids to the stored ids when importing a backup, as done by
+ * {@code importData()} in the gateways. Half of the imported categories already exist (with
+ * different case), the other half are added. Storing is not part of the measurement
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ImportIdMapBenchmark {
+private static final int EXISTING_CATEGORY_COUNT = 50;
+private static final int IMPORTED_CATEGORY_COUNT = 100;
+/** Number of imported items */
+@Param({"1000", "100000", "1000000"})
+public int size;
+private List<Category> mExistingCategories;
+private List<Category> mImportedCategories;
+private List<Item> mImportedItems;
+private long mNextId = 0;
+
+@Setup
+public void setup() {
+	mExistingCategories = BenchmarkData.createCategories(EXISTING_CATEGORY_COUNT);
+	
+	mImportedCategories = new ArrayList<>(IMPORTED_CATEGORY_COUNT);
+	for (int i = 0; i < IMPORTED_CATEGORY_COUNT; ++i) {
+		String name = "CATEGORY " + (EXISTING_CATEGORY_COUNT / 2 + i + 1);
+		mImportedCategories.add(BenchmarkData.createCategory(i + 1, name, i + 1));
+	}
+	
+	mImportedItems = BenchmarkData.createItems(size, 1, IMPORTED_CATEGORY_COUNT, new Random(BenchmarkData.SEED));
+}
+
+@Benchmark
+public void mapIds(Blackhole blackhole) {
+	CategoryImportMap idMap = new CategoryImportMap(mExistingCategories);
+	for (Category importedCategory : mImportedCategories) {
+		// The map changes the order and id of added categories
+		Category category = new Category();
+		category.set(importedCategory);
+		idMap.map(category, this::insertCategory, blackhole::consume);
+	}
+	
+	for (Item item : mImportedItems) {
+		blackhole.consume(idMap.getId(item.getCategoryId()));
+	}
+}
+
+private void insertCategory(Category category) {
+	category.setId(String.valueOf(++mNextId));
+}
+}
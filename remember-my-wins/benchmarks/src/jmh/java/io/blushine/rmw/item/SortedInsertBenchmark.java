@@ -0,0 +1,82 @@
+package io.blushine.rmw.item;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.blushine.rmw.util.SortedLists;
+
+/**
+ * Sorted insertion of a single item or category into a list, as done by {@code ItemAdapter.add()}
+ * and {@code CategoryPagerAdapter.addItem()}. The inserted element is removed again so the list
+ * keeps its size
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SortedInsertBenchmark {
+/** Number of different elements to insert, cycled through */
+private static final int NEW_COUNT = 1024;
+@Param({"1000", "100000", "1000000"})
+public int size;
+private List<Item> mItems;
+private List<Category> mCategories;
+private Item[] mNewItems;
+private Category[] mNewCategories;
+private int mNext = 0;
+
+@Setup
+public void setup() {
+	Random random = new Random(BenchmarkData.SEED);
+	mItems = BenchmarkData.createItems(size, 1, 10, random);
+	mCategories = BenchmarkData.createCategories(size);
+	
+	int lastOrder = mCategories.get(size - 1).getOrder();
+	
+	mNewItems = new Item[NEW_COUNT];
+	mNewCategories = new Category[NEW_COUNT];
+	for (int i = 0; i < NEW_COUNT; ++i) {
+		mNewItems[i] = BenchmarkData.createItem(size + i + 1, 1, random);
+		int order = 1 + random.nextInt(lastOrder);
+		mNewCategories[i] = BenchmarkData.createCategory(size + i + 1, "New " + i, order);
+	}
+}
+
+@Benchmark
+public int findItemIndex() {
+	Item item = mNewItems[nextIndex()];
+	return SortedLists.insertIndex(mItems, item, ItemKt.NEWEST_FIRST);
+}
+
+@Benchmark
+public int insertItem() {
+	Item item = mNewItems[nextIndex()];
+	int index = SortedLists.insertIndex(mItems, item, ItemKt.NEWEST_FIRST);
+	mItems.add(index, item);
+	mItems.remove(index);
+	return index;
+}
+
+@Benchmark
+public int insertCategory() {
+	Category category = mNewCategories[nextIndex()];
+	int index = SortedLists.insertIndex(mCategories, category, Category::compareTo);
+	mCategories.add(index, category);
+	mCategories.remove(index);
+	return index;
+}
+
+private int nextIndex() {
+	mNext = (mNext + 1) % NEW_COUNT;
+	return mNext;
+}
+}
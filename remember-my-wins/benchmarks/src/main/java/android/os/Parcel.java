@@ -0,0 +1,39 @@
+package android.os;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Shadows the Android class so the app models can be compiled for the JVM. Values are read in
+ * the order they were written
+ */
+public class Parcel {
+/** Stored instead of null strings, ArrayDeque doesn't allow null */
+private static final Object NULL_STRING = new Object();
+private final Queue<Object> mValues = new ArrayDeque<>();
+
+public void writeString(String value) {
+	mValues.add(value != null ? value : NULL_STRING);
+}
+
+public void writeInt(int value) {
+	mValues.add(value);
+}
+
+public void writeLong(long value) {
+	mValues.add(value);
+}
+
+public String readString() {
+	Object value = mValues.remove();
+	return value != NULL_STRING ? (String) value : null;
+}
+
+public int readInt() {
+	return (Integer) mValues.remove();
+}
+
+public long readLong() {
+	return (Long) mValues.remove();
+}
+}
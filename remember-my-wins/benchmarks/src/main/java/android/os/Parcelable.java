@@ -0,0 +1,16 @@
+package android.os;
+
+/**
+ * Shadows the Android interface so the app models can be compiled for the JVM
+ */
+public interface Parcelable {
+void writeToParcel(Parcel parcel, int flags);
+
+int describeContents();
+
+interface Creator<T> {
+	T createFromParcel(Parcel parcel);
+	
+	T[] newArray(int size);
+}
+}
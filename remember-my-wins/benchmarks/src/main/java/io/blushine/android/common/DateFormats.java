@@ -0,0 +1,16 @@
+package io.blushine.android.common;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+
+/**
+ * Shadows the framework class so the app models can be compiled for the JVM. Uses the medium date
+ * format of the default locale like the Android version
+ */
+public class DateFormats {
+private DateFormats() {}
+
+public static SimpleDateFormat getMediumDateFormat() {
+	return (SimpleDateFormat) DateFormat.getDateInstance(DateFormat.MEDIUM);
+}
+}
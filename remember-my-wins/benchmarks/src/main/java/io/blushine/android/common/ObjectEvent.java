@@ -0,0 +1,47 @@
+package io.blushine.android.common;
+
+import java.util.List;
+
+/**
+ * Shadows the framework class so the item events can be compiled for the JVM. Only has the actions
+ * the app uses
+ */
+public class ObjectEvent<T> {
+private final Actions mAction;
+private final List<T> mObjects;
+
+public ObjectEvent(Actions action, List<T> objects) {
+	mAction = action;
+	mObjects = objects;
+}
+
+public Actions getAction() {
+	return mAction;
+}
+
+public List<T> getObjects() {
+	return mObjects;
+}
+
+public T getFirstObject() {
+	return mObjects.isEmpty() ? null : mObjects.get(0);
+}
+
+public boolean hasObjects() {
+	return !mObjects.isEmpty();
+}
+
+public enum Actions {
+	ADD,
+	ADDED,
+	ADD_FAILED,
+	EDIT,
+	EDITED,
+	EDIT_FAILED,
+	REMOVE,
+	REMOVED,
+	REMOVE_FAILED,
+	GET_RESPONSE,
+	GET_FAILED,
+}
+}
@@ -0,0 +1,21 @@
+package io.blushine.utils;
+
+/**
+ * Shadows the event bus so the item event router can be compiled for the JVM. Nothing is posted,
+ * the benchmarks call the subscribers directly
+ */
+public class EventBus {
+private static final EventBus mInstance = new EventBus();
+
+private EventBus() {}
+
+public static EventBus getInstance() {
+	return mInstance;
+}
+
+public void register(Object subscriber) {}
+
+public void unregister(Object subscriber) {}
+
+public void post(Object event) {}
+}